@@ -0,0 +1,90 @@
+package io.antmedia.webrtcandroidframework.api;
+
+import org.webrtc.DataChannel;
+
+/**
+ * Parameters of an additional data channel created for each peer. See {@link WebRTCClientBuilder#addDataChannel(DataChannelParams)}
+ * Messages are sent with {@link IWebRTCClient#sendMessageViaDataChannel(String, String, DataChannel.Buffer)}
+ * and received by {@link IDataChannelObserver} with the name of the channel as the label.
+ */
+public class DataChannelParams {
+    private String name;
+    private boolean ordered = true;
+    private int maxRetransmits = -1;
+    private int maxPacketLifeTimeMs = -1;
+    private String protocol = "";
+
+    // Constructors
+    public DataChannelParams() {}
+
+    public DataChannelParams(String name, boolean ordered, int maxRetransmits, int maxPacketLifeTimeMs, String protocol) {
+        this.name = name;
+        this.ordered = ordered;
+        this.maxRetransmits = maxRetransmits;
+        this.maxPacketLifeTimeMs = maxPacketLifeTimeMs;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Ordered channel that retransmits until the message is delivered, e.g. for chat and control messages
+     */
+    public static DataChannelParams reliable(String name) {
+        return new DataChannelParams(name, true, -1, -1, "");
+    }
+
+    /**
+     * Unordered channel that never retransmits, e.g. for telemetry and cursor positions where only the latest value matters
+     */
+    public static DataChannelParams unreliable(String name) {
+        return new DataChannelParams(name, false, 0, -1, "");
+    }
+
+    /**
+     * Unordered channel that stops retransmitting a message when it's older than maxPacketLifeTimeMs
+     */
+    public static DataChannelParams partiallyReliable(String name, int maxPacketLifeTimeMs) {
+        return new DataChannelParams(name, false, -1, maxPacketLifeTimeMs, "");
+    }
+
+    /**
+     * @return init of the in-band negotiated data channel. Stream id is assigned by WebRTC.
+     */
+    public DataChannel.Init toInit() {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Data channel name should not be empty");
+        }
+        if (maxRetransmits >= 0 && maxPacketLifeTimeMs >= 0) {
+            throw new IllegalArgumentException("Only one of maxRetransmits and maxPacketLifeTimeMs can be set for data channel " + name);
+        }
+        DataChannel.Init init = new DataChannel.Init();
+        init.ordered = ordered;
+        init.negotiated = false;
+        init.maxRetransmits = maxRetransmits;
+        init.maxRetransmitTimeMs = maxPacketLifeTimeMs;
+        init.id = -1;
+        init.protocol = protocol != null ? protocol : "";
+        return init;
+    }
+
+    // Getters and Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public boolean isOrdered() { return ordered; }
+    public void setOrdered(boolean ordered) { this.ordered = ordered; }
+
+    /**
+     * -1 means unlimited retransmits
+     */
+    public int getMaxRetransmits() { return maxRetransmits; }
+    public void setMaxRetransmits(int maxRetransmits) { this.maxRetransmits = maxRetransmits; }
+
+    /**
+     * -1 means no lifetime limit
+     */
+    public int getMaxPacketLifeTimeMs() { return maxPacketLifeTimeMs; }
+    public void setMaxPacketLifeTimeMs(int maxPacketLifeTimeMs) { this.maxPacketLifeTimeMs = maxPacketLifeTimeMs; }
+
+    public String getProtocol() { return protocol; }
+    public void setProtocol(String protocol) { this.protocol = protocol; }
+}
@@ -35,8 +35,14 @@ public class DefaultDataChannelObserver implements IDataChannelObserver {
     @NonNull
     protected String toTextMessage(DataChannel.Buffer buffer) {
         ByteBuffer data = buffer.data;
-        String messageText = new String(data.array(), StandardCharsets.UTF_8);
-        return messageText;
+        if (data.hasArray()) {
+            //buffer may be a slice of its array, e.g. an unbatched message
+            return new String(data.array(), data.arrayOffset() + data.position(), data.remaining(), StandardCharsets.UTF_8);
+        }
+        //pooled and native buffers are direct
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     @Override
@@ -49,6 +55,12 @@ public class DefaultDataChannelObserver implements IDataChannelObserver {
         }
     }
 
+    @Override
+    public void onWritabilityChanged(boolean writable, String dataChannelLabel) {
+        String logText = "Data channel writability changed: " + dataChannelLabel + ": " + writable;
+        Log.d(DefaultDataChannelObserver.class.getName(), logText);
+    }
+
     public void textMessageReceived(String messageText) {
         Log.i(DefaultDataChannelObserver.class.getSimpleName(), "Text message received: " + messageText);
     }
@@ -9,6 +9,8 @@ import java.util.ArrayList;
 
 import de.tavendo.autobahn.WebSocket;
 import io.antmedia.webrtcandroidframework.core.StreamInfo;
+import io.antmedia.webrtcandroidframework.core.model.QualityScore;
+import io.antmedia.webrtcandroidframework.core.model.TransportStats;
 import io.antmedia.webrtcandroidframework.websocket.Broadcast;
 import io.antmedia.webrtcandroidframework.websocket.Subscriber;
 
@@ -293,4 +295,40 @@ public class DefaultWebRTCListener implements IWebRTCListener {
         callbackCalled(messageText);
     }
 
-}
\ No newline at end of file
+    @Override
+    public void onSelectedCandidatePairChanged(String streamId, TransportStats transportStats) {
+        String messageText = "Selected candidate pair changed for stream " + streamId + ": " + transportStats;
+        callbackCalled(messageText);
+    }
+
+    @Override
+    public void onCodecImplementationChanged(String streamId, String trackId, boolean encoder, String previousImplementation, String implementation) {
+        String messageText = (encoder ? "Encoder" : "Decoder") + " implementation changed from " + previousImplementation
+                + " to " + implementation + " for track " + trackId + " of stream " + streamId;
+        callbackCalled(messageText);
+    }
+
+    @Override
+    public void onVideoStalled(String streamId, String trackId) {
+        String messageText = "Video stalled for track " + trackId + " of stream " + streamId;
+        callbackCalled(messageText);
+    }
+
+    @Override
+    public void onVideoResumed(String streamId, String trackId, long stallDurationMs) {
+        String messageText = "Video resumed after " + stallDurationMs + "ms for track " + trackId + " of stream " + streamId;
+        callbackCalled(messageText);
+    }
+
+    @Override
+    public void onAudioConcealmentBurst(String streamId, String trackId, long concealmentEvents) {
+        String messageText = concealmentEvents + " audio concealment events for track " + trackId + " of stream " + streamId;
+        callbackCalled(messageText);
+    }
+
+    @Override
+    public void onNetworkQuality(String streamId, QualityScore qualityScore) {
+        String messageText = "Network quality for stream " + streamId + ": " + qualityScore;
+        callbackCalled(messageText);
+    }
+}
@@ -14,8 +14,25 @@ public interface IDataChannelObserver {
     void onStateChange(DataChannel.State state, String dataChannelLabel);
     /**
      * A data buffer was successfully received.
+     * By default it's called on the main thread with a copy of the received data. The data is valid only during the call
+     * if the observer is synchronous or the delivery mode is {@link IWebRTCClient.DataChannelDeliveryMode#DATA_CHANNEL_THREAD}.
      */
     void onMessage(DataChannel.Buffer buffer, String dataChannelLabel);
 
     void onMessageSent(DataChannel.Buffer buffer, boolean successful);
+
+    /**
+     * The data channel became writable or not writable. It's not writable while its buffered and queued data
+     * exceeds the high watermark and it's writable again when the data drops to the low watermark.
+     */
+    void onWritabilityChanged(boolean writable, String dataChannelLabel);
+
+    /**
+     * A synchronous observer is called on the WebRTC thread that receives the message and the received buffer
+     * is passed without copying. It should return quickly and it shouldn't keep the buffer after the call.
+     * @return true if the observer is synchronous, false by default
+     */
+    default boolean isSynchronous() {
+        return false;
+    }
 }
@@ -0,0 +1,37 @@
+package io.antmedia.webrtcandroidframework.api;
+
+import org.webrtc.DataChannel;
+
+/**
+ * This interface is used to observe the large payload transfers via data channel.
+ * See {@link IWebRTCClient#startDataChannelTransfer(String, DataChannel.Buffer)}
+ */
+public interface IDataChannelTransferListener {
+
+    /**
+     * Called when a chunk of the transfer is sent or received
+     * @param incoming true if the transfer is received from the remote peer
+     */
+    void onTransferProgress(String streamId, long transferId, boolean incoming, long transferredBytes, long totalBytes);
+
+    /**
+     * Called when all chunks of the transfer are received. Buffer is reused after the call,
+     * so its data should be copied if it's kept.
+     */
+    void onTransferReceived(String streamId, long transferId, DataChannel.Buffer buffer);
+
+    /**
+     * Called when all chunks of the outgoing transfer are passed to the data channel
+     */
+    void onTransferSent(String streamId, long transferId);
+
+    /**
+     * Called when the transfer is cancelled by either peer
+     */
+    void onTransferCancelled(String streamId, long transferId, boolean incoming);
+
+    /**
+     * Called when a chunk of the outgoing transfer cannot be sent or the data channel is closed during the transfer
+     */
+    void onTransferFailed(String streamId, long transferId, boolean incoming);
+}
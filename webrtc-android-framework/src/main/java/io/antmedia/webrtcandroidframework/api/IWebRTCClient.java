@@ -10,6 +10,7 @@ import org.webrtc.VideoCapturer;
 import org.webrtc.VideoTrack;
 import org.webrtc.audio.CustomWebRtcAudioRecord;
 
+import io.antmedia.webrtcandroidframework.core.DataChannelMessenger;
 import io.antmedia.webrtcandroidframework.core.StatsCollector;
 
 /**
@@ -29,6 +30,21 @@ public interface IWebRTCClient {
         CUSTOM
     }
 
+    /**
+     * This enum is used to specify the thread that data channel events are delivered on
+     */
+    enum DataChannelDeliveryMode {
+        /*
+         * Events are delivered on the main thread with a heap copy of the received messages
+         */
+        MAIN_THREAD,
+        /*
+         * Events are delivered on a dedicated data channel thread with pooled direct buffers
+         * that are reused after the observer returns
+         */
+        DATA_CHANNEL_THREAD
+    }
+
     /**
      * This method is used to initialize the WebRTCClient and configure it
      */
@@ -152,6 +168,60 @@ public interface IWebRTCClient {
      */
     void sendMessageViaDataChannel(String streamId, DataChannel.Buffer buffer);
 
+    /**
+     * This is used to check if more data can be sent via data channel without overflowing its buffers
+     *
+     * @param streamId: id for the stream
+     * @return false if the data channel is not writable or it doesn't exist
+     */
+    boolean isDataChannelWritable(String streamId);
+
+    /**
+     * This is used to send data via one of the additional data channels. See {@link WebRTCClientBuilder#addDataChannel(DataChannelParams)}
+     *
+     * @param streamId:    id for the stream
+     * @param channelName: name of the data channel. Default data channel is used if it's null or the stream id
+     * @param buffer:      data to send
+     */
+    void sendMessageViaDataChannel(String streamId, String channelName, DataChannel.Buffer buffer);
+
+    /**
+     * This is used to check if more data can be sent via one of the additional data channels
+     *
+     * @param streamId:    id for the stream
+     * @param channelName: name of the data channel. Default data channel is used if it's null or the stream id
+     * @return false if the data channel is not writable or it doesn't exist
+     */
+    boolean isDataChannelWritable(String streamId, String channelName);
+
+    /**
+     * This is used to get the messenger that provides topics and request/response over data channels.
+     * It's created on the first call and it's installed as the data channel observer. The previous
+     * observer receives the messages that are not routed by the messenger.
+     *
+     * @return messenger of this client
+     */
+    DataChannelMessenger getDataChannelMessenger();
+
+    /**
+     * This is used to send a payload that is larger than the data channel message size. It's sent in chunks
+     * and the remote peer receives it with {@link IDataChannelTransferListener#onTransferReceived(String, long, DataChannel.Buffer)}
+     *
+     * @param streamId: id for the stream
+     * @param buffer:   data to send, it shouldn't be modified until the transfer ends
+     * @return id of the transfer, -1 if it cannot be started
+     */
+    long startDataChannelTransfer(String streamId, DataChannel.Buffer buffer);
+
+    /**
+     * This is used to cancel an outgoing or incoming transfer
+     *
+     * @param streamId:   id for the stream
+     * @param transferId: id of the transfer
+     * @return false if there is no such transfer
+     */
+    boolean cancelDataChannelTransfer(String streamId, long transferId);
+
     /**
      * This Function Can be used to set Degradation Preference for the Stream such as to
      * Maintaining resolution or FrameRate in bad network conditions
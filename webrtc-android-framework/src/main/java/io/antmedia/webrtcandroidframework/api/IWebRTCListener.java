@@ -6,6 +6,8 @@ import java.util.ArrayList;
 
 import de.tavendo.autobahn.WebSocket;
 import io.antmedia.webrtcandroidframework.core.StreamInfo;
+import io.antmedia.webrtcandroidframework.core.model.QualityScore;
+import io.antmedia.webrtcandroidframework.core.model.TransportStats;
 import io.antmedia.webrtcandroidframework.websocket.Broadcast;
 import io.antmedia.webrtcandroidframework.websocket.Subscriber;
 
@@ -263,4 +265,44 @@ public interface IWebRTCListener {
   * It's called when Subscriber List received.
   */
  void onSubscriberList(String streamId, Subscriber[] subscribers);
+
+ /**
+  * It's called when the selected ICE candidate pair of the stream changes, including the first selection.
+  * Use {@link TransportStats#isRelayed()} to check if the media goes through a TURN server.
+  * It's called at the stats cadence, so stats events should be enabled for the stream.
+  */
+ void onSelectedCandidatePairChanged(String streamId, TransportStats transportStats);
+
+ /**
+  * It's called when the encoder or decoder implementation of a track changes,
+  * e.g. hardware encoder falls back to a software encoder.
+  * @param trackId "video" for the published video track, id of the track for played tracks
+  * @param encoder true for the encoder of the published track, false for the decoder of a played track
+  */
+ void onCodecImplementationChanged(String streamId, String trackId, boolean encoder, String previousImplementation, String implementation);
+
+ /**
+  * It's called when a played video track freezes, i.e. no frame is rendered for
+  * max(3 * average frame interval, average frame interval + 150ms)
+  */
+ void onVideoStalled(String streamId, String trackId);
+
+ /**
+  * It's called when a stalled video track renders frames again
+  * @param stallDurationMs duration of the stall in milliseconds
+  */
+ void onVideoResumed(String streamId, String trackId, long stallDurationMs);
+
+ /**
+  * It's called when a played audio track conceals many samples in a stats period, e.g. due to a burst of packet loss
+  * @param concealmentEvents number of the concealment events in the last stats period
+  */
+ void onAudioConcealmentBurst(String streamId, String trackId, long concealmentEvents);
+
+ /**
+  * It's called at each stats report of a stream with the quality scores of its tracks.
+  * See {@link io.antmedia.webrtcandroidframework.core.QualityScorer}
+  * @param qualityScore it's updated at each report, copy the values if they're kept
+  */
+ void onNetworkQuality(String streamId, QualityScore qualityScore);
 }
@@ -5,6 +5,7 @@ import android.app.Activity;
 import org.webrtc.RendererCommon;
 import org.webrtc.SurfaceViewRenderer;
 
+import java.io.File;
 import java.util.Arrays;
 
 import io.antmedia.webrtcandroidframework.core.WebRTCClient;
@@ -156,4 +157,104 @@ public class WebRTCClientBuilder {
         webRTCClientConfig.bluetoothEnabled = bluetoothEnabled;
         return this;
     }
+
+    public WebRTCClientBuilder setStatsRecordDuration(int statsRecordDurationMs) {
+        webRTCClientConfig.statsRecordDurationMs = statsRecordDurationMs;
+        return this;
+    }
+
+    public WebRTCClientBuilder setStatsRecordDirectory(File statsRecordDirectory) {
+        webRTCClientConfig.statsRecordDirectory = statsRecordDirectory;
+        return this;
+    }
+
+    public WebRTCClientBuilder setStallDetectionEnabled(boolean stallDetectionEnabled) {
+        webRTCClientConfig.stallDetectionEnabled = stallDetectionEnabled;
+        return this;
+    }
+
+    public WebRTCClientBuilder setStallDowngradeAfter(int stallDowngradeAfterMs) {
+        webRTCClientConfig.stallDowngradeAfterMs = stallDowngradeAfterMs;
+        return this;
+    }
+
+    public WebRTCClientBuilder setRtcEventLogEnabled(boolean rtcEventLogEnabled) {
+        webRTCClientConfig.rtcEventLogEnabled = rtcEventLogEnabled;
+        return this;
+    }
+
+    public WebRTCClientBuilder setRtcEventLogMaxBytes(int rtcEventLogMaxBytes) {
+        webRTCClientConfig.rtcEventLogMaxBytes = rtcEventLogMaxBytes;
+        return this;
+    }
+
+    public WebRTCClientBuilder setRtcEventLogDirectory(File rtcEventLogDirectory) {
+        webRTCClientConfig.rtcEventLogDirectory = rtcEventLogDirectory;
+        return this;
+    }
+
+    public WebRTCClientBuilder setMetricsServerPort(int metricsServerPort) {
+        webRTCClientConfig.metricsServerPort = metricsServerPort;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelDeliveryMode(IWebRTCClient.DataChannelDeliveryMode dataChannelDeliveryMode) {
+        webRTCClientConfig.dataChannelDeliveryMode = dataChannelDeliveryMode;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelHighWatermark(long dataChannelHighWatermark) {
+        webRTCClientConfig.dataChannelHighWatermark = dataChannelHighWatermark;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelLowWatermark(long dataChannelLowWatermark) {
+        webRTCClientConfig.dataChannelLowWatermark = dataChannelLowWatermark;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelTransferListener(IDataChannelTransferListener dataChannelTransferListener) {
+        webRTCClientConfig.dataChannelTransferListener = dataChannelTransferListener;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelChunkSize(int dataChannelChunkSize) {
+        webRTCClientConfig.dataChannelChunkSize = dataChannelChunkSize;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelMaxTransferSize(int dataChannelMaxTransferSize) {
+        webRTCClientConfig.dataChannelMaxTransferSize = dataChannelMaxTransferSize;
+        return this;
+    }
+
+    public WebRTCClientBuilder addDataChannel(DataChannelParams dataChannelParams) {
+        webRTCClientConfig.dataChannels.add(dataChannelParams);
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelBatchingEnabled(boolean dataChannelBatchingEnabled) {
+        webRTCClientConfig.dataChannelBatchingEnabled = dataChannelBatchingEnabled;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelBatchFlushWindowMs(int dataChannelBatchFlushWindowMs) {
+        webRTCClientConfig.dataChannelBatchFlushWindowMs = dataChannelBatchFlushWindowMs;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelMaxBatchSize(int dataChannelMaxBatchSize) {
+        webRTCClientConfig.dataChannelMaxBatchSize = dataChannelMaxBatchSize;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelCompressionEnabled(boolean dataChannelCompressionEnabled) {
+        webRTCClientConfig.dataChannelCompressionEnabled = dataChannelCompressionEnabled;
+        return this;
+    }
+
+    public WebRTCClientBuilder setDataChannelCompressionThreshold(int dataChannelCompressionThreshold) {
+        webRTCClientConfig.dataChannelCompressionThreshold = dataChannelCompressionThreshold;
+        return this;
+    }
 }
@@ -7,8 +7,15 @@ import android.media.projection.MediaProjection;
 import org.webrtc.RendererCommon;
 import org.webrtc.SurfaceViewRenderer;
 
+import java.io.File;
 import java.util.ArrayList;
 
+import io.antmedia.webrtcandroidframework.core.DataChannelBatcher;
+import io.antmedia.webrtcandroidframework.core.DataChannelCompressor;
+import io.antmedia.webrtcandroidframework.core.DataChannelSendQueue;
+import io.antmedia.webrtcandroidframework.core.DataChannelTransferManager;
+import io.antmedia.webrtcandroidframework.core.RtcEventLogRecorder;
+
 
 public class WebRTCClientConfig {
 
@@ -183,4 +190,116 @@ public class WebRTCClientConfig {
      * Flag for connecting bluetooth headphones.
      */
     public boolean bluetoothEnabled = false;
+
+    /*
+     * Duration of the stats history kept in memory in milliseconds. 0 disables recording.
+     * History is exported to statsRecordDirectory on ICE disconnection and on errors. A reason is exported
+     * once within the duration and the last files are kept, see StatsRecordExporter.
+     */
+    public int statsRecordDurationMs = 0;
+
+    /*
+     * Directory that stats history is exported to. Cache directory of the activity is used if it's null
+     */
+    public File statsRecordDirectory;
+
+    /*
+     * Flag for detecting the stalls of the played video tracks and the audio concealment bursts.
+     * They're reported with onVideoStalled, onVideoResumed and onAudioConcealmentBurst of IWebRTCListener
+     */
+    public boolean stallDetectionEnabled = false;
+
+    /*
+     * Duration of a video stall in milliseconds after which a lower resolution of the stream is requested.
+     * 0 disables the downgrade. It's only applied to the streams with adaptive bitrate.
+     */
+    public int stallDowngradeAfterMs = 0;
+
+    /*
+     * Flag for keeping the WebRTC event log always armed in rotating files. The log around an anomaly,
+     * e.g. RTT spike, loss burst, ICE disconnection or encoder fallback, is persisted for post-mortem analysis.
+     */
+    public boolean rtcEventLogEnabled = false;
+
+    /*
+     * Maximum bytes of the rotating event log files of a stream
+     */
+    public int rtcEventLogMaxBytes = RtcEventLogRecorder.DEFAULT_MAX_BYTES;
+
+    /*
+     * Directory of the event logs. Captures are kept in its captures subdirectory.
+     * rtc_event_logs in the cache directory of the activity is used if it's null
+     */
+    public File rtcEventLogDirectory;
+
+    /*
+     * Port of the local HTTP endpoint that serves the SDK metrics in OpenMetrics format. 0 disables it.
+     * It's only started if the app is debuggable. Metrics are also available with SdkMetrics.REGISTRY.toOpenMetrics()
+     */
+    public int metricsServerPort = 0;
+
+    /*
+     * Thread that data channel events are delivered on. Synchronous data channel observers are always called
+     * on the WebRTC thread without copying the messages
+     */
+    public IWebRTCClient.DataChannelDeliveryMode dataChannelDeliveryMode = IWebRTCClient.DataChannelDeliveryMode.MAIN_THREAD;
+
+    /*
+     * Sending via data channel is paused when its buffered amount reaches this value in bytes.
+     * Data channel is not writable while its buffered and queued messages exceed it
+     */
+    public long dataChannelHighWatermark = DataChannelSendQueue.DEFAULT_HIGH_WATERMARK;
+
+    /*
+     * Sending via data channel is resumed and the data channel becomes writable when its buffered amount drops to this value in bytes
+     */
+    public long dataChannelLowWatermark = DataChannelSendQueue.DEFAULT_LOW_WATERMARK;
+
+    /*
+     * Listener for the large payload transfers via data channel. Received transfer frames are passed to the data channel observer
+     * as regular messages if it's null
+     */
+    public IDataChannelTransferListener dataChannelTransferListener;
+
+    /*
+     * Maximum size of a transfer chunk in bytes including its header
+     */
+    public int dataChannelChunkSize = DataChannelTransferManager.DEFAULT_CHUNK_SIZE;
+
+    /*
+     * Maximum size of a transfer in bytes. Larger incoming transfers are rejected
+     */
+    public int dataChannelMaxTransferSize = DataChannelTransferManager.DEFAULT_MAX_TRANSFER_SIZE;
+
+    /*
+     * Additional data channels created for each peer next to the default one.
+     * Their names should be unique and different from the stream ids.
+     */
+    public ArrayList<DataChannelParams> dataChannels = new ArrayList<>();
+
+    /*
+     * Packs small messages sent within the flush window into a single data channel message.
+     * Messages are batched only after the remote peer announces that it accepts batches, see DataChannelBatcher
+     */
+    public boolean dataChannelBatchingEnabled = false;
+
+    /*
+     * Maximum time in milliseconds a message waits to be batched
+     */
+    public int dataChannelBatchFlushWindowMs = DataChannelBatcher.DEFAULT_FLUSH_WINDOW_MS;
+
+    /*
+     * Maximum size of a batch in bytes. Larger messages are sent without batching
+     */
+    public int dataChannelMaxBatchSize = DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE;
+
+    /*
+     * Compresses the data channel messages with deflate if the remote peer enables it too, see DataChannelCompressor
+     */
+    public boolean dataChannelCompressionEnabled = false;
+
+    /*
+     * Messages smaller than this size in bytes are not compressed
+     */
+    public int dataChannelCompressionThreshold = DataChannelCompressor.DEFAULT_THRESHOLD;
 }
@@ -16,9 +16,11 @@ import java.io.File;
 import java.io.IOException;
 import org.webrtc.PeerConnection;
 
-public class RtcEventLog {
+import io.antmedia.webrtcandroidframework.core.RtcEventLogRecorder;
+
+public class RtcEventLog implements RtcEventLogRecorder.EventLog {
   private static final String TAG = "RtcEventLog";
-  private static final int OUTPUT_FILE_MAX_BYTES = 10_000_000;
+  public static final int OUTPUT_FILE_MAX_BYTES = 10_000_000;
   private final PeerConnection peerConnection;
   private RtcEventLogState state = RtcEventLogState.INACTIVE;
 
@@ -36,9 +38,14 @@ public class RtcEventLog {
   }
 
   public void start(final File outputFile) {
+    start(outputFile, OUTPUT_FILE_MAX_BYTES);
+  }
+
+  @Override
+  public boolean start(final File outputFile, int maxSizeBytes) {
     if (state == RtcEventLogState.STARTED) {
       Log.e(TAG, "RtcEventLog has already started.");
-      return;
+      return false;
     }
     final ParcelFileDescriptor fileDescriptor;
     try {
@@ -47,20 +54,22 @@ public class RtcEventLog {
               | ParcelFileDescriptor.MODE_TRUNCATE);
     } catch (IOException e) {
       Log.e(TAG, "Failed to create a new file", e);
-      return;
+      return false;
     }
 
     // Passes ownership of the file to WebRTC.
     boolean success =
-        peerConnection.startRtcEventLog(fileDescriptor.detachFd(), OUTPUT_FILE_MAX_BYTES);
+        peerConnection.startRtcEventLog(fileDescriptor.detachFd(), maxSizeBytes);
     if (!success) {
       Log.e(TAG, "Failed to start RTC event log.");
-      return;
+      return false;
     }
     state = RtcEventLogState.STARTED;
     Log.d(TAG, "RtcEventLog started.");
+    return true;
   }
 
+  @Override
   public void stop() {
     if (state != RtcEventLogState.STARTED) {
       Log.e(TAG, "RtcEventLog was not started.");
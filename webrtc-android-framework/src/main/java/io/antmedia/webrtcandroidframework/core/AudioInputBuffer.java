@@ -0,0 +1,227 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffers custom audio between the thread that produces it and the thread that records it in 10 ms buffers.
+ * Producer writes PCM in chunks of any size, sample rate and channel count. It's resampled to the recording
+ * format and queued in a lock-free ring. Consumer reads a 10 ms buffer at each tick of its clock:
+ * <ul>
+ *     <li>Reading starts when the target delay is buffered, so jitter of the producer doesn't cause gaps</li>
+ *     <li>Missing audio is concealed with silence and buffering starts again</li>
+ *     <li>If the producer's clock is faster or slower than the consumer's, the buffered audio drifts away
+ *     from the target delay. A sample frame is dropped or repeated per buffer until it's back in range.</li>
+ *     <li>Audio that doesn't fit to the ring is dropped</li>
+ * </ul>
+ * Writing and reading don't allocate. There should be a single producer thread and a single consumer thread.
+ */
+public class AudioInputBuffer {
+
+    public static final int BUFFERS_PER_SECOND = 100;
+    public static final int DEFAULT_TARGET_DELAY_MS = 60;
+    public static final int DEFAULT_CAPACITY_MS = 500;
+
+    //buffered audio is allowed to drift this much from the target delay before it's corrected
+    private static final int DRIFT_TOLERANCE_MS = 20;
+    //buffered audio above this is dropped at once instead of a sample frame per buffer, e.g. after a burst
+    private static final int MAX_EXCESS_MS = 10 * DRIFT_TOLERANCE_MS;
+    //buffered audio is averaged over about this many buffers for the drift correction
+    private static final int AVERAGE_WINDOW = 64;
+
+    private final int sampleRate;
+    private final int channels;
+    private final int frameSize;
+    private final int bufferLength;
+    private final int targetBytes;
+    private final int toleranceBytes;
+    private final int maxExcessBytes;
+    private final AudioRingBuffer ringBuffer;
+
+    //accessed by the producer
+    private AudioResampler resampler;
+    private final ByteBuffer resampledBuffer;
+    private ByteBuffer inputBuffer;
+
+    //accessed by the consumer
+    private boolean buffering = true;
+    private double averageBytes;
+
+    private volatile long underrunCount;
+    private volatile long overrunCount;
+    private volatile long droppedFrameCount;
+    private volatile long repeatedFrameCount;
+
+    /**
+     * @param sampleRate rate of the recorded audio
+     * @param channels channel count of the recorded audio
+     */
+    public AudioInputBuffer(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_TARGET_DELAY_MS, DEFAULT_CAPACITY_MS);
+    }
+
+    public AudioInputBuffer(int sampleRate, int channels, int targetDelayMs, int capacityMs) {
+        if (targetDelayMs + MAX_EXCESS_MS > capacityMs) {
+            throw new IllegalArgumentException("Capacity should be at least " + MAX_EXCESS_MS + " ms more than the target delay");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        frameSize = channels * AudioResampler.BYTES_PER_SAMPLE;
+        bufferLength = sampleRate / BUFFERS_PER_SECOND * frameSize;
+        targetBytes = toBytes(targetDelayMs);
+        toleranceBytes = toBytes(DRIFT_TOLERANCE_MS);
+        maxExcessBytes = toBytes(MAX_EXCESS_MS);
+        ringBuffer = new AudioRingBuffer(toBytes(capacityMs));
+        resampledBuffer = ByteBuffer.allocate(bufferLength * 4);
+    }
+
+    private int toBytes(int durationMs) {
+        return (int) ((long) sampleRate * durationMs / 1000) * frameSize;
+    }
+
+    /**
+     * Producer side. Queues 16 bit interleaved PCM, a partial sample frame at the end is ignored.
+     * Array is wrapped again only if a different array is passed.
+     */
+    public void write(byte[] audio, int offset, int length, int inputSampleRate, int inputChannels) {
+        if (inputBuffer == null || inputBuffer.array() != audio) {
+            inputBuffer = ByteBuffer.wrap(audio);
+        }
+        inputBuffer.limit(offset + length).position(offset);
+        write(inputBuffer, inputSampleRate, inputChannels);
+    }
+
+    /**
+     * Producer side. Queues 16 bit interleaved PCM from the position to the limit of the buffer.
+     */
+    public void write(ByteBuffer audio, int inputSampleRate, int inputChannels) {
+        if (resampler == null || resampler.getInputSampleRate() != inputSampleRate || resampler.getInputChannels() != inputChannels) {
+            resampler = new AudioResampler(inputSampleRate, inputChannels, sampleRate, channels);
+        }
+        boolean overrun = false;
+        while (true) {
+            resampler.process(audio, resampledBuffer);
+            boolean full = !resampledBuffer.hasRemaining();
+            resampledBuffer.flip();
+            ringBuffer.write(resampledBuffer);
+            overrun |= resampledBuffer.hasRemaining();
+            resampledBuffer.clear();
+            if (!full) {
+                break;
+            }
+        }
+        if (overrun) {
+            overrunCount++;
+            SdkMetrics.REGISTRY.increment(SdkMetrics.CUSTOM_AUDIO_OVERRUNS);
+        }
+    }
+
+    /**
+     * Consumer side. Puts a 10 ms buffer to the destination from its position.
+     *
+     * @return true if the buffer has queued audio, false if it's silence
+     */
+    public boolean read(ByteBuffer destination) {
+        int available = ringBuffer.available();
+        if (buffering) {
+            if (available < targetBytes) {
+                putSilence(destination, bufferLength);
+                return false;
+            }
+            buffering = false;
+            averageBytes = available;
+        }
+
+        if (available < bufferLength) {
+            //conceal the rest with silence and wait for the target delay again
+            int length = ringBuffer.read(destination, available);
+            putSilence(destination, bufferLength - length);
+            buffering = true;
+            underrunCount++;
+            SdkMetrics.REGISTRY.increment(SdkMetrics.CUSTOM_AUDIO_UNDERRUNS);
+            return length > 0;
+        }
+
+        averageBytes += (available - averageBytes) / AVERAGE_WINDOW;
+        if (available > targetBytes + maxExcessBytes) {
+            //drop the excess at once, it'd take too long to correct it frame by frame
+            int excess = available - targetBytes;
+            ringBuffer.skip(excess - excess % frameSize);
+            droppedFrameCount += excess / frameSize;
+            averageBytes = targetBytes;
+            ringBuffer.read(destination, bufferLength);
+        } else if (averageBytes > targetBytes + toleranceBytes) {
+            //producer is faster, drop the last sample frame of this buffer
+            ringBuffer.read(destination, bufferLength);
+            droppedFrameCount += ringBuffer.skip(frameSize) / frameSize;
+            averageBytes -= frameSize;
+        } else if (averageBytes < targetBytes - toleranceBytes) {
+            //producer is slower, repeat the last sample frame of this buffer
+            ringBuffer.read(destination, bufferLength - frameSize);
+            int last = destination.position() - frameSize;
+            for (int i = 0; i < frameSize; i++) {
+                destination.put(destination.get(last + i));
+            }
+            repeatedFrameCount++;
+            averageBytes += frameSize;
+        } else {
+            ringBuffer.read(destination, bufferLength);
+        }
+        return true;
+    }
+
+    private static void putSilence(ByteBuffer destination, int length) {
+        for (int i = 0; i < length; i++) {
+            destination.put((byte) 0);
+        }
+    }
+
+    /**
+     * @return length of a 10 ms buffer in bytes
+     */
+    public int getBufferLength() {
+        return bufferLength;
+    }
+
+    /**
+     * @return duration of the queued audio
+     */
+    public int getBufferedMs() {
+        return (int) ((long) ringBuffer.available() / frameSize * 1000 / sampleRate);
+    }
+
+    /**
+     * @return times the queued audio ran out and silence is inserted
+     */
+    public long getUnderrunCount() {
+        return underrunCount;
+    }
+
+    /**
+     * @return times the written audio didn't fit and it's dropped
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * @return sample frames dropped to correct the drift
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return sample frames repeated to correct the drift
+     */
+    public long getRepeatedFrameCount() {
+        return repeatedFrameCount;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+}
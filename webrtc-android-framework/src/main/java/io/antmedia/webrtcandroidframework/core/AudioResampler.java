@@ -0,0 +1,354 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Converts 16 bit interleaved PCM between sample rates and channel layouts. Resampling is done with a
+ * polyphase windowed-sinc filter, so any rate pair is supported, e.g. 44.1 kHz to 48 kHz. Channels are
+ * mapped before filtering, so downmixing to mono also reduces the filtering work.
+ *
+ * All buffers are allocated in the constructor, {@link #process(ByteBuffer, ByteBuffer)} doesn't allocate.
+ * Input may be passed in chunks of any size, output is the same as if it's passed at once.
+ * It's not thread safe.
+ */
+public class AudioResampler {
+
+    public static final int BYTES_PER_SAMPLE = 2;
+
+    //zero crossings of the filter on both sides are half of this, it's scaled up when downsampling
+    public static final int DEFAULT_FILTER_LENGTH = 32;
+
+    //rate pairs that need more phases than this interpolate between the phases
+    private static final int MAX_PHASE_COUNT = 512;
+
+    //input frames that are filtered at once
+    private static final int BLOCK_FRAME_COUNT = 480;
+
+    //cutoff frequency relative to the lower nyquist frequency
+    private static final double ROLLOFF = 0.94;
+
+    private static final double KAISER_BETA = 8.6;
+
+    //-3 dB, ITU-R BS.775 downmix coefficient of center and surround channels
+    private static final float CENTER_GAIN = 0.7071f;
+
+    private final int inputSampleRate;
+    private final int outputSampleRate;
+    private final int inputChannels;
+    private final int outputChannels;
+    private final int inputFrameSize;
+    private final int outputFrameSize;
+
+    //output is at input time index * decimation / interpolation
+    private final int interpolation;
+    private final int decimation;
+    private final boolean passthrough;
+
+    private final float[][] mixMatrix;
+    private final float[] inputFrame;
+    private final float[] outputFrame;
+
+    private final int filterLength;
+    private final int phaseCount;
+    private final boolean exactPhases;
+    private final float[] coefficients;
+
+    //mapped input frames of each output channel, filter reads them from index
+    private final float[][] history;
+    private int available;
+    private int index;
+    private int phase;
+
+    public AudioResampler(int inputSampleRate, int inputChannels, int outputSampleRate, int outputChannels) {
+        this(inputSampleRate, inputChannels, outputSampleRate, outputChannels, DEFAULT_FILTER_LENGTH);
+    }
+
+    /**
+     * @param filterLength taps of the filter when upsampling. Longer filters have a sharper cutoff. Output is
+     *                     available after half of the filter length of input frames.
+     */
+    public AudioResampler(int inputSampleRate, int inputChannels, int outputSampleRate, int outputChannels, int filterLength) {
+        if (inputSampleRate <= 0 || outputSampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rates: " + inputSampleRate + " -> " + outputSampleRate);
+        }
+        if (inputChannels <= 0 || outputChannels <= 0) {
+            throw new IllegalArgumentException("Invalid channel counts: " + inputChannels + " -> " + outputChannels);
+        }
+        if (filterLength < 4) {
+            throw new IllegalArgumentException("Filter length should be at least 4");
+        }
+        this.inputSampleRate = inputSampleRate;
+        this.outputSampleRate = outputSampleRate;
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        this.inputFrameSize = inputChannels * BYTES_PER_SAMPLE;
+        this.outputFrameSize = outputChannels * BYTES_PER_SAMPLE;
+
+        int gcd = gcd(inputSampleRate, outputSampleRate);
+        interpolation = outputSampleRate / gcd;
+        decimation = inputSampleRate / gcd;
+        passthrough = interpolation == decimation;
+
+        mixMatrix = createMixMatrix(inputChannels, outputChannels);
+        inputFrame = new float[inputChannels];
+        outputFrame = new float[outputChannels];
+
+        double cutoff = Math.min(1.0, (double) interpolation / decimation);
+        //filter covers the same number of zero crossings when the cutoff is lower
+        int length = (int) Math.ceil(filterLength / cutoff);
+        this.filterLength = passthrough ? 0 : length + (length & 1);
+        exactPhases = interpolation <= MAX_PHASE_COUNT;
+        phaseCount = exactPhases ? interpolation : MAX_PHASE_COUNT;
+        coefficients = passthrough ? new float[0] : createCoefficients(this.filterLength, phaseCount, exactPhases ? phaseCount : phaseCount + 1, cutoff * ROLLOFF);
+
+        int capacity = passthrough ? 0 : this.filterLength + BLOCK_FRAME_COUNT + decimation / interpolation + 1;
+        history = new float[outputChannels][capacity];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * @return gain of each input channel in each output channel
+     */
+    private static float[][] createMixMatrix(int inputChannels, int outputChannels) {
+        float[][] matrix = new float[outputChannels][inputChannels];
+        if (inputChannels == outputChannels) {
+            for (int i = 0; i < inputChannels; i++) {
+                matrix[i][i] = 1;
+            }
+        } else if (inputChannels == 1) {
+            for (int i = 0; i < outputChannels; i++) {
+                matrix[i][0] = 1;
+            }
+        } else if (inputChannels == 6 && outputChannels <= 2) {
+            //5.1 in FL, FR, FC, LFE, BL, BR order, LFE is dropped. It's normalized so it can't clip.
+            float gain = 1 / (1 + 2 * CENTER_GAIN);
+            float[] left = {gain, 0, CENTER_GAIN * gain, 0, CENTER_GAIN * gain, 0};
+            float[] right = {0, gain, CENTER_GAIN * gain, 0, 0, CENTER_GAIN * gain};
+            for (int i = 0; i < inputChannels; i++) {
+                if (outputChannels == 1) {
+                    matrix[0][i] = (left[i] + right[i]) / 2;
+                } else {
+                    matrix[0][i] = left[i];
+                    matrix[1][i] = right[i];
+                }
+            }
+        } else {
+            //each input channel goes to output channel at its index modulo output channels, e.g. stereo to mono
+            //averages left and right
+            for (int i = 0; i < outputChannels; i++) {
+                int count = 0;
+                for (int j = i; j < inputChannels; j += outputChannels) {
+                    count++;
+                }
+                for (int j = i; j < inputChannels; j += outputChannels) {
+                    matrix[i][j] = 1f / count;
+                }
+                if (count == 0) {
+                    matrix[i][i % inputChannels] = 1;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Row p of the table is the filter of the output that is p / phaseCount input samples after the
+     * center tap. Each row is normalized to unity gain at DC.
+     */
+    private static float[] createCoefficients(int filterLength, int phaseCount, int rowCount, double cutoff) {
+        float[] table = new float[rowCount * filterLength];
+        int center = filterLength / 2 - 1;
+        double halfLength = filterLength / 2.0;
+        double besselBeta = bessel0(KAISER_BETA);
+        for (int p = 0; p < rowCount; p++) {
+            double sum = 0;
+            for (int k = 0; k < filterLength; k++) {
+                double x = k - center - (double) p / phaseCount;
+                double ratio = x / halfLength;
+                double window = Math.abs(ratio) >= 1 ? 0 : bessel0(KAISER_BETA * Math.sqrt(1 - ratio * ratio)) / besselBeta;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                double value = cutoff * sinc * window;
+                table[p * filterLength + k] = (float) value;
+                sum += value;
+            }
+            for (int k = 0; k < filterLength; k++) {
+                table[p * filterLength + k] = (float) (table[p * filterLength + k] / sum);
+            }
+        }
+        return table;
+    }
+
+    private static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Clears the buffered input, e.g. before the input of a seek position. It's final because the constructor calls it.
+     */
+    public final void reset() {
+        for (float[] samples : history) {
+            Arrays.fill(samples, 0);
+        }
+        //silence before the first input frame, so the first output is at the time of the first input
+        available = passthrough ? 0 : filterLength / 2 - 1;
+        index = 0;
+        phase = 0;
+    }
+
+    /**
+     * Reads whole frames from the input and writes the converted frames to the output. Returns when the input
+     * doesn't have a whole frame or the output doesn't have room for a frame. Input frames that are read
+     * are kept until they are filtered, so the input can be passed in chunks of any size.
+     *
+     * @param input 16 bit little endian interleaved PCM at the input rate
+     * @param output receives 16 bit little endian interleaved PCM at the output rate
+     */
+    public void process(ByteBuffer input, ByteBuffer output) {
+        if (passthrough) {
+            while (input.remaining() >= inputFrameSize && output.remaining() >= outputFrameSize) {
+                readFrame(input);
+                for (int c = 0; c < outputChannels; c++) {
+                    writeSample(output, outputFrame[c]);
+                }
+            }
+            return;
+        }
+
+        while (true) {
+            while (index + filterLength <= available) {
+                if (output.remaining() < outputFrameSize) {
+                    return;
+                }
+                filter(output);
+                phase += decimation;
+                index += phase / interpolation;
+                phase %= interpolation;
+            }
+            if (input.remaining() < inputFrameSize) {
+                return;
+            }
+            fill(input);
+        }
+    }
+
+    private void fill(ByteBuffer input) {
+        int shift = Math.min(index, available);
+        if (shift > 0) {
+            for (float[] samples : history) {
+                System.arraycopy(samples, shift, samples, 0, available - shift);
+            }
+            index -= shift;
+            available -= shift;
+        }
+        int capacity = history[0].length;
+        while (available < capacity && input.remaining() >= inputFrameSize) {
+            readFrame(input);
+            for (int c = 0; c < outputChannels; c++) {
+                history[c][available] = outputFrame[c];
+            }
+            available++;
+        }
+    }
+
+    private void filter(ByteBuffer output) {
+        int row;
+        float fraction = 0;
+        if (exactPhases) {
+            row = phase;
+        } else {
+            long scaledPhase = (long) phase * phaseCount;
+            row = (int) (scaledPhase / interpolation);
+            fraction = (float) (scaledPhase - (long) row * interpolation) / interpolation;
+        }
+        int offset = row * filterLength;
+        for (int c = 0; c < outputChannels; c++) {
+            float[] samples = history[c];
+            float value = 0;
+            for (int k = 0; k < filterLength; k++) {
+                value += coefficients[offset + k] * samples[index + k];
+            }
+            if (fraction != 0) {
+                float next = 0;
+                int nextOffset = offset + filterLength;
+                for (int k = 0; k < filterLength; k++) {
+                    next += coefficients[nextOffset + k] * samples[index + k];
+                }
+                value += (next - value) * fraction;
+            }
+            writeSample(output, value);
+        }
+    }
+
+    /**
+     * Reads a frame of the input and maps it to the output channels
+     */
+    private void readFrame(ByteBuffer input) {
+        for (int i = 0; i < inputChannels; i++) {
+            int low = input.get() & 0xFF;
+            inputFrame[i] = (short) ((input.get() << 8) | low);
+        }
+        for (int c = 0; c < outputChannels; c++) {
+            float[] gains = mixMatrix[c];
+            float value = 0;
+            for (int i = 0; i < inputChannels; i++) {
+                value += gains[i] * inputFrame[i];
+            }
+            outputFrame[c] = value;
+        }
+    }
+
+    private static void writeSample(ByteBuffer output, float value) {
+        int sample = Math.round(value);
+        if (sample > Short.MAX_VALUE) {
+            sample = Short.MAX_VALUE;
+        } else if (sample < Short.MIN_VALUE) {
+            sample = Short.MIN_VALUE;
+        }
+        output.put((byte) sample);
+        output.put((byte) (sample >> 8));
+    }
+
+    public int getInputFrameSize() {
+        return inputFrameSize;
+    }
+
+    public int getOutputFrameSize() {
+        return outputFrameSize;
+    }
+
+    public int getInputSampleRate() {
+        return inputSampleRate;
+    }
+
+    public int getOutputSampleRate() {
+        return outputSampleRate;
+    }
+
+    public int getInputChannels() {
+        return inputChannels;
+    }
+
+    public int getOutputChannels() {
+        return outputChannels;
+    }
+}
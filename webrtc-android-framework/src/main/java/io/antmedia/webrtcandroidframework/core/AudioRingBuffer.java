@@ -0,0 +1,119 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lock-free byte ring for a single producer thread and a single consumer thread. Producer only moves the
+ * write position and consumer only moves the read position. Each position is published after the bytes
+ * are copied, so the other side never sees a partially copied range.
+ */
+public class AudioRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    //total bytes written, updated by the producer
+    private volatile long writePosition;
+    //total bytes read, updated by the consumer
+    private volatile long readPosition;
+
+    /**
+     * @param minCapacity capacity is rounded up to a power of two
+     */
+    public AudioRingBuffer(int minCapacity) {
+        if (minCapacity <= 0 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return bytes that can be read
+     */
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    /**
+     * @return bytes that can be written
+     */
+    public int free() {
+        return buffer.length - available();
+    }
+
+    /**
+     * Producer side. Writes as many bytes of the source as there is room for.
+     *
+     * @return bytes written, source position is moved by this amount
+     */
+    public int write(ByteBuffer source) {
+        long write = writePosition;
+        int length = (int) Math.min(source.remaining(), buffer.length - (write - readPosition));
+        int offset = (int) write & mask;
+        int firstPart = Math.min(length, buffer.length - offset);
+        source.get(buffer, offset, firstPart);
+        source.get(buffer, 0, length - firstPart);
+        writePosition = write + length;
+        return length;
+    }
+
+    /**
+     * Producer side. Writes as many bytes of the source as there is room for.
+     *
+     * @return bytes written
+     */
+    public int write(byte[] source, int sourceOffset, int sourceLength) {
+        long write = writePosition;
+        int length = (int) Math.min(sourceLength, buffer.length - (write - readPosition));
+        int offset = (int) write & mask;
+        int firstPart = Math.min(length, buffer.length - offset);
+        System.arraycopy(source, sourceOffset, buffer, offset, firstPart);
+        System.arraycopy(source, sourceOffset + firstPart, buffer, 0, length - firstPart);
+        writePosition = write + length;
+        return length;
+    }
+
+    /**
+     * Consumer side. Reads at most length bytes to the destination.
+     *
+     * @return bytes read, destination position is moved by this amount
+     */
+    public int read(ByteBuffer destination, int length) {
+        long read = readPosition;
+        length = (int) Math.min(Math.min(length, destination.remaining()), writePosition - read);
+        int offset = (int) read & mask;
+        int firstPart = Math.min(length, buffer.length - offset);
+        destination.put(buffer, offset, firstPart);
+        destination.put(buffer, 0, length - firstPart);
+        readPosition = read + length;
+        return length;
+    }
+
+    /**
+     * Consumer side. Drops at most length bytes.
+     *
+     * @return bytes dropped
+     */
+    public int skip(int length) {
+        long read = readPosition;
+        length = (int) Math.min(length, writePosition - read);
+        readPosition = read + length;
+        return length;
+    }
+
+    /**
+     * Consumer side. Drops the bytes that are written so far.
+     */
+    public void clear() {
+        readPosition = writePosition;
+    }
+}
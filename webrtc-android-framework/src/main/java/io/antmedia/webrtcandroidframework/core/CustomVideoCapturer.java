@@ -2,7 +2,6 @@ package io.antmedia.webrtcandroidframework.core;
 
 import android.content.Context;
 import android.os.SystemClock;
-import android.util.Log;
 
 import org.webrtc.CapturerObserver;
 import org.webrtc.JavaI420Buffer;
@@ -29,6 +28,10 @@ public class CustomVideoCapturer implements VideoCapturer {
 
   public SurfaceTextureHelper surfaceTextureHelper;
 
+  //size of the frames that are rendered to the surface texture, capture format is used if it's not set
+  private volatile int textureWidth;
+  private volatile int textureHeight;
+
 
   public void writeFrame(VideoFrame videoFrame) {
     capturerObserver.onFrameCaptured(videoFrame);
@@ -44,19 +47,32 @@ public class CustomVideoCapturer implements VideoCapturer {
 
   @Override
   public void startCapture(int width, int height, int framerate) {
-    surfaceTextureHelper.setTextureSize(height, width);
+    if (textureWidth > 0 && textureHeight > 0) {
+      surfaceTextureHelper.setTextureSize(textureWidth, textureHeight);
+    } else {
+      surfaceTextureHelper.setTextureSize(height, width);
+    }
 
     surfaceTextureHelper.startListening(new VideoSink() {
       @Override
       public void onFrame(VideoFrame frame) {
-
         capturerObserver.onFrameCaptured(frame);
-        Log.i("CustomVideoCapturer****", "width:"+width+" height:"+height);
-
       }
     });
   }
 
+  /**
+   * Sets the size of the frames that a producer like a decoder renders to the surface texture. It's kept
+   * when the capture starts later.
+   */
+  public void setTextureSize(int width, int height) {
+    textureWidth = width;
+    textureHeight = height;
+    if (surfaceTextureHelper != null) {
+      surfaceTextureHelper.setTextureSize(width, height);
+    }
+  }
+
   @Override
   public void stopCapture() throws InterruptedException {
 
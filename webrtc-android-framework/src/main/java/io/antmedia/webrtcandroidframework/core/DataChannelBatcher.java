@@ -0,0 +1,382 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs small messages that are sent within a flush window into a single data channel message.
+ *
+ * Every data channel message costs a JNI call, an SCTP chunk, a DTLS record and an executor hop in the send queue.
+ * Messages are copied into the current batch until the batch reaches the byte budget or the flush window of
+ * its first message expires, so a message waits at most the flush window before it's queued. Messages that
+ * don't fit into an empty batch are sent as they are after the pending batch, so the order is kept.
+ * The receiver unpacks the batch with {@link #unbatch(DataChannel.Buffer, MessageHandler)}.
+ *
+ * Batching is negotiated per data channel: each peer that enables it sends a hello frame when the channel opens and
+ * messages are batched only after the hello of the remote peer is received. Until then, messages are sent one by one,
+ * so peers that don't know the frames, e.g. web peers, never receive a batch.
+ *
+ * Hello frame is big endian:
+ * <pre>
+ *  0: int  magic "AMBX"
+ *  4: byte version of the frames
+ * </pre>
+ * Batch frame is big endian:
+ * <pre>
+ *  0: int  magic "AMBX"
+ *  4: records of
+ *     byte flags, bit 0 is set if the message is binary
+ *     int  length of the message
+ *     message
+ * </pre>
+ * Hello is shorter than any batch, because a batch has at least one record. Hello frames are always consumed.
+ * Binary messages that start with the magic are consumed as batch frames if batching is enabled. Peers that don't
+ * know the frames only receive the hello as a binary message.
+ */
+public class DataChannelBatcher {
+
+    public static final int MAGIC = 0x414D4258;
+    public static final int HEADER_SIZE = 4;
+    public static final int RECORD_HEADER_SIZE = 5;
+    public static final int HELLO_SIZE = HEADER_SIZE + 1;
+    public static final byte VERSION = 1;
+    private static final byte FLAG_BINARY = 1;
+
+    public static final int DEFAULT_FLUSH_WINDOW_MS = 5;
+    //16 KiB messages are delivered by all browsers
+    public static final int DEFAULT_MAX_BATCH_SIZE = 16 * 1024;
+    private static final int MAX_FREE_BATCHES = 8;
+
+    public interface Listener {
+        /**
+         * Called for every message of a batch after the batch is passed to the channel or it failed
+         */
+        void onBatchedMessageSent(DataChannel.Buffer buffer, boolean successful);
+    }
+
+    public interface MessageHandler {
+        /**
+         * Called for every message of a received batch. Buffer is valid until the method returns.
+         */
+        void onMessage(DataChannel.Buffer buffer);
+    }
+
+    /**
+     * Batch that is queued to the send queue. It's reused after it's sent.
+     */
+    static class BatchBuffer extends DataChannel.Buffer {
+        final List<DataChannel.Buffer> messages = new ArrayList<>();
+        long startTimeNs;
+
+        BatchBuffer(int maxBatchSize) {
+            super(ByteBuffer.allocateDirect(maxBatchSize), true);
+        }
+    }
+
+    private final DataChannelSendQueue sendQueue;
+    private final ScheduledExecutorService scheduler;
+    private final int flushWindowMs;
+    private final int maxBatchSize;
+    private final Listener listener;
+    private final Runnable flushRunnable = this::onFlushTimer;
+    private final ArrayDeque<BatchBuffer> freeBatches = new ArrayDeque<>();
+
+    private BatchBuffer currentBatch;
+    private boolean flushScheduled;
+    private boolean closed;
+    private volatile boolean remoteEnabled;
+    private boolean helloSent;
+    private long batchCount;
+    private long batchedMessageCount;
+
+    /**
+     * @param flushWindowMs maximum time a message waits in a batch
+     * @param maxBatchSize maximum size of a batch frame including its header
+     * @param listener listener of the batched messages, it's called on the executor of the send queue
+     */
+    public DataChannelBatcher(DataChannelSendQueue sendQueue, ScheduledExecutorService scheduler, int flushWindowMs,
+                              int maxBatchSize, Listener listener) {
+        if (flushWindowMs < 0) {
+            throw new IllegalArgumentException("Flush window should not be negative");
+        }
+        if (maxBatchSize <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Batch size should be greater than " + (HEADER_SIZE + RECORD_HEADER_SIZE));
+        }
+        this.sendQueue = sendQueue;
+        this.scheduler = scheduler;
+        this.flushWindowMs = flushWindowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if the message is a batch frame
+     */
+    public static boolean isBatchFrame(DataChannel.Buffer buffer) {
+        ByteBuffer data = buffer.data;
+        return buffer.binary && data.remaining() >= HEADER_SIZE && data.getInt(data.position()) == MAGIC;
+    }
+
+    /**
+     * @return true if the message is a hello frame
+     */
+    public static boolean isHelloFrame(DataChannel.Buffer buffer) {
+        return isBatchFrame(buffer) && buffer.data.remaining() == HELLO_SIZE;
+    }
+
+    /**
+     * @return a new hello frame that announces that this peer accepts batches
+     */
+    public static DataChannel.Buffer createHelloFrame() {
+        ByteBuffer data = ByteBuffer.allocateDirect(HELLO_SIZE);
+        data.putInt(MAGIC);
+        data.put(VERSION);
+        data.flip();
+        return new DataChannel.Buffer(data, true);
+    }
+
+    /**
+     * Should be called with the hello frames of the remote peer. Messages are batched after the remote peer
+     * announces the same version.
+     */
+    public void onHello(DataChannel.Buffer buffer) {
+        if (isHelloFrame(buffer)) {
+            remoteEnabled = buffer.data.get(buffer.data.position() + HEADER_SIZE) == VERSION;
+        }
+    }
+
+    /**
+     * Should be called when the channel is opened. Batcher belongs to a single channel, so hello is sent once.
+     * @return true if the hello frame should be sent
+     */
+    public synchronized boolean onOpen() {
+        if (helloSent || closed) {
+            return false;
+        }
+        helloSent = true;
+        return true;
+    }
+
+    public boolean isRemoteEnabled() {
+        return remoteEnabled;
+    }
+
+    /**
+     * Passes the messages of the batch frame to the handler in order. Position of the frame is not changed.
+     * @return false if the frame is malformed, messages before the malformed record are passed to the handler
+     */
+    public static boolean unbatch(DataChannel.Buffer frame, MessageHandler handler) {
+        if (!isBatchFrame(frame)) {
+            return false;
+        }
+        ByteBuffer data = frame.data.duplicate();
+        int limit = data.limit();
+        int position = data.position() + HEADER_SIZE;
+        while (position < limit) {
+            if (limit - position < RECORD_HEADER_SIZE) {
+                return false;
+            }
+            boolean binary = (data.get(position) & FLAG_BINARY) != 0;
+            int length = data.getInt(position + 1);
+            int start = position + RECORD_HEADER_SIZE;
+            if (length < 0 || length > limit - start) {
+                return false;
+            }
+            data.limit(start + length);
+            data.position(start);
+            handler.onMessage(new DataChannel.Buffer(data.slice(), binary));
+            data.limit(limit);
+            position = start + length;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the remaining bytes of the message into the current batch. Large messages and the messages sent before
+     * the hello of the remote peer are queued as they are.
+     * Result is reported with {@link Listener#onBatchedMessageSent(DataChannel.Buffer, boolean)} for batched messages
+     * and with the listener of the send queue for the others.
+     * @return false if the batcher or the send queue is closed
+     */
+    public synchronized boolean send(DataChannel.Buffer buffer) {
+        if (closed) {
+            return false;
+        }
+        ByteBuffer data = buffer.data;
+        int length = data.remaining();
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (!remoteEnabled || HEADER_SIZE + recordSize > maxBatchSize) {
+            //pending messages are sent first to keep the order
+            flushLocked();
+            return sendQueue.send(buffer);
+        }
+
+        if (currentBatch != null && currentBatch.data.remaining() < recordSize) {
+            flushLocked();
+        }
+        if (currentBatch == null) {
+            currentBatch = obtainBatch();
+            currentBatch.startTimeNs = System.nanoTime();
+            scheduleFlush(flushWindowMs);
+        }
+
+        BatchBuffer batch = currentBatch;
+        ByteBuffer batchData = batch.data;
+        batchData.put(buffer.binary ? FLAG_BINARY : 0);
+        batchData.putInt(length);
+        int position = data.position();
+        batchData.put(data);
+        data.position(position);
+        batch.messages.add(buffer);
+
+        if (batchData.remaining() <= RECORD_HEADER_SIZE) {
+            flushLocked();
+        }
+        return true;
+    }
+
+    /**
+     * Queues the current batch without waiting for the flush window
+     */
+    public synchronized void flush() {
+        flushLocked();
+    }
+
+    private void flushLocked() {
+        BatchBuffer batch = currentBatch;
+        if (batch == null) {
+            return;
+        }
+        currentBatch = null;
+        batch.data.flip();
+        batchCount++;
+        batchedMessageCount += batch.messages.size();
+        if (!sendQueue.send(batch)) {
+            //queue is closed, messages are reported as failed
+            batch.data.rewind();
+            onMessageSent(batch, false);
+        }
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled) {
+            return;
+        }
+        try {
+            scheduler.schedule(flushRunnable, delayMs, TimeUnit.MILLISECONDS);
+            flushScheduled = true;
+        } catch (RejectedExecutionException e) {
+            //scheduler is shut down, batch is sent right away
+            flushLocked();
+        }
+    }
+
+    private synchronized void onFlushTimer() {
+        flushScheduled = false;
+        BatchBuffer batch = currentBatch;
+        if (batch == null || closed) {
+            return;
+        }
+        //the timer may belong to a batch that is flushed because it's full
+        long remainingMs = flushWindowMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.startTimeNs);
+        if (remainingMs > 0) {
+            scheduleFlush(remainingMs);
+        } else {
+            flushLocked();
+        }
+    }
+
+    /**
+     * Should be called when the send queue reports a sent message. Messages of the batch are reported to the listener
+     * and the batch is reused.
+     * @return true if the message is a batch of this batcher
+     */
+    public boolean onMessageSent(DataChannel.Buffer buffer, boolean successful) {
+        if (!(buffer instanceof BatchBuffer)) {
+            return false;
+        }
+        BatchBuffer batch = (BatchBuffer) buffer;
+        //batch is not referenced by the batcher until it's recycled
+        List<DataChannel.Buffer> messages = batch.messages;
+        for (int i = 0; i < messages.size(); i++) {
+            listener.onBatchedMessageSent(messages.get(i), successful);
+        }
+        messages.clear();
+        batch.data.clear();
+        synchronized (this) {
+            if (freeBatches.size() < MAX_FREE_BATCHES) {
+                freeBatches.add(batch);
+            }
+        }
+        return true;
+    }
+
+    private BatchBuffer obtainBatch() {
+        BatchBuffer batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new BatchBuffer(maxBatchSize);
+        }
+        batch.data.putInt(MAGIC);
+        return batch;
+    }
+
+    /**
+     * Closes the batcher. Messages of the current batch are reported as failed.
+     */
+    public void close() {
+        BatchBuffer batch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            batch = currentBatch;
+            currentBatch = null;
+        }
+        if (batch != null) {
+            batch.data.flip();
+            onMessageSent(batch, false);
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return number of the batches passed to the send queue
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return number of the messages passed to the send queue in batches
+     */
+    public synchronized long getBatchedMessageCount() {
+        return batchedMessageCount;
+    }
+
+    public synchronized int getPendingMessageCount() {
+        return currentBatch != null ? currentBatch.messages.size() : 0;
+    }
+
+    public DataChannelSendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    public int getFlushWindowMs() {
+        return flushWindowMs;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+}
@@ -0,0 +1,132 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of direct buffers for the data channel messages. Buffers are kept in power of two size classes
+ * from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE}, so a steady message flow doesn't allocate.
+ * Larger buffers are allocated on demand and they're not pooled.
+ */
+public class DataChannelBufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 1024;
+    public static final int MAX_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_MAX_POOLED_PER_SIZE = 16;
+
+    private static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+
+    /**
+     * A pooled direct buffer with its data channel buffer wrappers. {@link DataChannel.Buffer} is immutable,
+     * so a binary and a text wrapper are created once for the buffer.
+     */
+    public static class PooledBuffer {
+        public final ByteBuffer data;
+        private final DataChannel.Buffer binaryBuffer;
+        private final DataChannel.Buffer textBuffer;
+        private final int sizeClass;
+
+        private PooledBuffer(int capacity, int sizeClass) {
+            this.data = ByteBuffer.allocateDirect(capacity);
+            this.binaryBuffer = new DataChannel.Buffer(data, true);
+            this.textBuffer = new DataChannel.Buffer(data, false);
+            this.sizeClass = sizeClass;
+        }
+
+        public DataChannel.Buffer getBuffer(boolean binary) {
+            return binary ? binaryBuffer : textBuffer;
+        }
+
+        public boolean isPooled() {
+            return sizeClass >= 0;
+        }
+    }
+
+    private final PooledBuffer[][] freeBuffers;
+    private final int[] freeCounts = new int[SIZE_CLASS_COUNT];
+    private int allocatedCount;
+
+    public DataChannelBufferPool() {
+        this(DEFAULT_MAX_POOLED_PER_SIZE);
+    }
+
+    /**
+     * @param maxPooledPerSize maximum number of free buffers kept for a size class
+     */
+    public DataChannelBufferPool(int maxPooledPerSize) {
+        freeBuffers = new PooledBuffer[SIZE_CLASS_COUNT][maxPooledPerSize];
+    }
+
+    /**
+     * @return a cleared buffer whose capacity is at least the size. It should be released after it's used
+     */
+    public PooledBuffer acquire(int size) {
+        int sizeClass = getSizeClass(size);
+        if (sizeClass < 0) {
+            synchronized (this) {
+                allocatedCount++;
+            }
+            return new PooledBuffer(size, -1);
+        }
+        PooledBuffer pooledBuffer = null;
+        synchronized (this) {
+            if (freeCounts[sizeClass] > 0) {
+                freeCounts[sizeClass]--;
+                pooledBuffer = freeBuffers[sizeClass][freeCounts[sizeClass]];
+                freeBuffers[sizeClass][freeCounts[sizeClass]] = null;
+            } else {
+                allocatedCount++;
+            }
+        }
+        if (pooledBuffer == null) {
+            pooledBuffer = new PooledBuffer(MIN_BUFFER_SIZE << sizeClass, sizeClass);
+        }
+        pooledBuffer.data.clear();
+        return pooledBuffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffers that are not pooled or that exceed the pool limit are left to the GC.
+     */
+    public synchronized void release(PooledBuffer pooledBuffer) {
+        if (pooledBuffer == null || !pooledBuffer.isPooled()) {
+            return;
+        }
+        int sizeClass = pooledBuffer.sizeClass;
+        if (freeCounts[sizeClass] < freeBuffers[sizeClass].length) {
+            freeBuffers[sizeClass][freeCounts[sizeClass]] = pooledBuffer;
+            freeCounts[sizeClass]++;
+        }
+    }
+
+    /**
+     * @return number of buffers allocated by the pool
+     */
+    public synchronized int getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /**
+     * @return number of free buffers in the pool
+     */
+    public synchronized int getFreeCount() {
+        int count = 0;
+        for (int freeCount : freeCounts) {
+            count += freeCount;
+        }
+        return count;
+    }
+
+    private static int getSizeClass(int size) {
+        if (size > MAX_BUFFER_SIZE) {
+            return -1;
+        }
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        //index of the smallest power of two that is greater than or equal to the size
+        int capacity = Integer.highestOneBit(size - 1) << 1;
+        return Integer.numberOfTrailingZeros(capacity / MIN_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,405 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the data channel messages that are larger than a threshold with raw deflate and a preset dictionary.
+ *
+ * Event messages of Ant Media Server are short JSON objects that share most of their keys and values, so deflate
+ * can't find many matches in a single message. The preset dictionary holds these strings and the compressed
+ * messages refer to them from the first byte. Compression is negotiated per data channel: each peer that enables
+ * it sends a hello frame when the channel opens and messages are compressed only after the hello of the remote peer
+ * is received. Messages are sent as they are if compression doesn't save at least 1/8 of their size, and compression
+ * is paused for a while after consecutive messages that don't pay off, e.g. media or encrypted payloads.
+ *
+ * Deflater, inflater and their arrays are reused. Compressed messages are written to the buffers of the pool and
+ * they're released when the send queue reports the message with {@link #onMessageSent(DataChannel.Buffer)}.
+ *
+ * Frame is big endian:
+ * <pre>
+ *  0: int  magic "AMDZ"
+ *  4: byte type, 0 is hello, 1 is a compressed message
+ *  5: byte flags, bit 0 is set if the message is binary
+ *  6: byte version of the dictionary
+ *  7: byte reserved
+ *  8: int  length of the message, 0 for hello
+ * 12: deflated message
+ * </pre>
+ * Hello frames are always consumed. Peers that don't enable compression never send hello, so they never receive
+ * compressed messages. Peers that don't know the frame receive the hello as a binary message, so it should only be
+ * enabled when the remote peers use this SDK.
+ */
+public class DataChannelCompressor {
+
+    public static final int MAGIC = 0x414D445A;
+    public static final int HEADER_SIZE = 12;
+    public static final byte TYPE_HELLO = 0;
+    public static final byte TYPE_MESSAGE = 1;
+    private static final byte FLAG_BINARY = 1;
+
+    public static final int DEFAULT_THRESHOLD = 256;
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+    //compression is paused for PAUSE_MESSAGE_COUNT messages after MAX_FAILED_COUNT messages that don't pay off
+    public static final int MAX_FAILED_COUNT = 4;
+    public static final int PAUSE_MESSAGE_COUNT = 64;
+
+    public static final byte DICTIONARY_VERSION = 1;
+    /**
+     * Strings of the event messages of Ant Media Server. Deflate encodes the nearer matches with fewer bits,
+     * so the most common strings are at the end.
+     */
+    private static final byte[] DICTIONARY = (
+            "\"subscriberId\":\"\"subscriberName\":\"\"roomName\":\"\"mainTrackId\":\"\"metaData\":\"{\\\"isMicMuted\\\":"
+                    + "false,\\\"isCameraOff\\\":true,\\\"isScreenShared\\\":false}\",\"status\":\"broadcasting\",\"name\":\""
+                    + "\"broadcastObject\":{\"streamId\":\"\"subtrackList\":[]\"command\":\"notification\",\"definition\":\""
+                    + "play_started\"publish_started\"\"message\":\"\"senderId\":\"\"date\":\"\"messageId\":\"\"text\":\""
+                    + "{\"eventType\":\"MIC_MUTED\",\"streamId\":\"{\"eventType\":\"MIC_UNMUTED\",\"streamId\":\""
+                    + "{\"eventType\":\"CAM_TURNED_OFF\",\"streamId\":\"{\"eventType\":\"CAM_TURNED_ON\",\"streamId\":\""
+                    + "{\"eventType\":\"TRACK_LIST_UPDATED\",\"streamId\":\"{\"eventType\":\"UPDATE_STATUS\",\"streamId\":\""
+                    + "{\"eventType\":\"PIN_USER\",\"streamId\":\"{\"eventType\":\"VIDEO_TRACK_ASSIGNMENT_LIST\","
+                    + "\"streamId\":\"\",\"payload\":[{\"videoLabel\":\"videoTrack0\",\"trackId\":\"ARDAMSv\"},"
+                    + "{\"videoLabel\":\"videoTrack1\",\"trackId\":\"ARDAMSv\"}],\"payload\":[{\"videoLabel\":\"videoTrack"
+                    + "\",\"trackId\":\"ARDAMSx\"}]true,false,null,\"time\":\"timestamp\":"
+                    + "{\"eventType\":\"UPDATE_AUDIO_LEVEL\",\"streamId\":\"\",\"audioLevel\":0."
+    ).getBytes(StandardCharsets.UTF_8);
+
+    public interface MessageHandler {
+        /**
+         * Called with the decompressed message. Buffer is valid until the method returns.
+         */
+        void onMessage(DataChannel.Buffer buffer);
+    }
+
+    /**
+     * Compressed message in a buffer of the pool. It keeps the original message to report it when it's sent.
+     */
+    static class CompressedBuffer extends DataChannel.Buffer {
+        final DataChannel.Buffer original;
+        private final DataChannelBufferPool pool;
+        private DataChannelBufferPool.PooledBuffer pooledBuffer;
+
+        CompressedBuffer(DataChannelBufferPool.PooledBuffer pooledBuffer, DataChannelBufferPool pool, DataChannel.Buffer original) {
+            super(pooledBuffer.data, true);
+            this.pooledBuffer = pooledBuffer;
+            this.pool = pool;
+            this.original = original;
+        }
+
+        synchronized void release() {
+            pool.release(pooledBuffer);
+            pooledBuffer = null;
+        }
+    }
+
+    private final DataChannelBufferPool pool;
+    private final int threshold;
+    private final int maxMessageSize;
+
+    private final Object compressLock = new Object();
+    private Deflater deflater;
+    private byte[] compressInput = new byte[0];
+    private byte[] compressOutput = new byte[0];
+    private int failedCount;
+    private int pausedMessageCount;
+    private long compressedMessageCount;
+    private long skippedMessageCount;
+    private long originalBytes;
+    private long compressedBytes;
+
+    private final Object decompressLock = new Object();
+    private Inflater inflater;
+    private byte[] decompressInput = new byte[0];
+    private byte[] decompressOutput = new byte[0];
+    private ByteBuffer decompressOutputBuffer;
+    private long decompressedMessageCount;
+
+    private volatile boolean remoteEnabled;
+    private boolean helloSent;
+    private volatile boolean closed;
+
+    /**
+     * @param threshold messages smaller than the threshold are sent as they are
+     * @param maxMessageSize larger messages are not compressed and larger compressed messages are not accepted
+     */
+    public DataChannelCompressor(DataChannelBufferPool pool, int threshold, int maxMessageSize) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold should not be negative");
+        }
+        if (maxMessageSize <= 0) {
+            throw new IllegalArgumentException("Max message size should be positive");
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * @return true if the message is a frame of the compressor, either a hello or a compressed message
+     */
+    public static boolean isCompressionFrame(DataChannel.Buffer buffer) {
+        ByteBuffer data = buffer.data;
+        return buffer.binary && data.remaining() >= HEADER_SIZE && data.getInt(data.position()) == MAGIC;
+    }
+
+    /**
+     * @return true if the message is a hello frame
+     */
+    public static boolean isHelloFrame(DataChannel.Buffer buffer) {
+        return isCompressionFrame(buffer) && buffer.data.get(buffer.data.position() + 4) == TYPE_HELLO;
+    }
+
+    /**
+     * @return a new hello frame that announces that this peer accepts compressed messages
+     */
+    public static DataChannel.Buffer createHelloFrame() {
+        ByteBuffer data = ByteBuffer.allocateDirect(HEADER_SIZE);
+        data.putInt(MAGIC);
+        data.put(TYPE_HELLO);
+        data.put((byte) 0);
+        data.put(DICTIONARY_VERSION);
+        data.put((byte) 0);
+        data.putInt(0);
+        data.flip();
+        return new DataChannel.Buffer(data, true);
+    }
+
+    /**
+     * Should be called with the hello frames of the remote peer. Remote peer accepts compressed messages if it uses
+     * the same dictionary.
+     */
+    public void onHello(DataChannel.Buffer buffer) {
+        if (isHelloFrame(buffer)) {
+            remoteEnabled = buffer.data.get(buffer.data.position() + 6) == DICTIONARY_VERSION;
+        }
+    }
+
+    /**
+     * Should be called when the channel is opened. Compressor belongs to a single channel, so hello is sent once.
+     * @return true if the hello frame should be sent
+     */
+    public synchronized boolean onOpen() {
+        if (helloSent || closed) {
+            return false;
+        }
+        helloSent = true;
+        return true;
+    }
+
+    public boolean isRemoteEnabled() {
+        return remoteEnabled;
+    }
+
+    /**
+     * Compresses the remaining bytes of the message. Position of the message is not changed.
+     * @return the compressed message, or the message itself if it's not compressed. Result should be passed to
+     * {@link #onMessageSent(DataChannel.Buffer)} after it's sent
+     */
+    public DataChannel.Buffer compress(DataChannel.Buffer buffer) {
+        ByteBuffer data = buffer.data;
+        int length = data.remaining();
+        if (!remoteEnabled || closed || length < threshold || length > maxMessageSize) {
+            return buffer;
+        }
+        synchronized (compressLock) {
+            if (closed) {
+                return buffer;
+            }
+            if (pausedMessageCount > 0) {
+                pausedMessageCount--;
+                skippedMessageCount++;
+                return buffer;
+            }
+            //compressed message should save at least 1/8 of the message including the header
+            int maxCompressedLength = length - (length >> 3) - HEADER_SIZE;
+            if (maxCompressedLength <= 0) {
+                skippedMessageCount++;
+                return buffer;
+            }
+            if (compressInput.length < length) {
+                compressInput = new byte[length];
+                compressOutput = new byte[length];
+            }
+            int position = data.position();
+            data.get(compressInput, 0, length);
+            data.position(position);
+
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            } else {
+                deflater.reset();
+            }
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(compressInput, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < maxCompressedLength) {
+                compressedLength += deflater.deflate(compressOutput, compressedLength, maxCompressedLength - compressedLength);
+            }
+            if (!deflater.finished()) {
+                skippedMessageCount++;
+                failedCount++;
+                if (failedCount >= MAX_FAILED_COUNT) {
+                    failedCount = 0;
+                    pausedMessageCount = PAUSE_MESSAGE_COUNT;
+                }
+                return buffer;
+            }
+            failedCount = 0;
+            compressedMessageCount++;
+            originalBytes += length;
+            compressedBytes += HEADER_SIZE + compressedLength;
+
+            DataChannelBufferPool.PooledBuffer pooledBuffer = pool.acquire(HEADER_SIZE + compressedLength);
+            ByteBuffer frame = pooledBuffer.data;
+            frame.putInt(MAGIC);
+            frame.put(TYPE_MESSAGE);
+            frame.put(buffer.binary ? FLAG_BINARY : 0);
+            frame.put(DICTIONARY_VERSION);
+            frame.put((byte) 0);
+            frame.putInt(length);
+            frame.put(compressOutput, 0, compressedLength);
+            frame.flip();
+            return new CompressedBuffer(pooledBuffer, pool, buffer);
+        }
+    }
+
+    /**
+     * Releases the compressed message.
+     * @return the original message of the compressed message, or the message itself if it's not compressed
+     */
+    public static DataChannel.Buffer onMessageSent(DataChannel.Buffer buffer) {
+        if (!(buffer instanceof CompressedBuffer)) {
+            return buffer;
+        }
+        CompressedBuffer compressedBuffer = (CompressedBuffer) buffer;
+        compressedBuffer.release();
+        return compressedBuffer.original;
+    }
+
+    /**
+     * Passes the decompressed message to the handler. Position of the frame is not changed.
+     * @return false if the frame is not a compressed message or it's malformed
+     */
+    public boolean decompress(DataChannel.Buffer frame, MessageHandler handler) {
+        if (!isCompressionFrame(frame)) {
+            return false;
+        }
+        ByteBuffer data = frame.data;
+        int position = data.position();
+        if (data.get(position + 4) != TYPE_MESSAGE || data.get(position + 6) != DICTIONARY_VERSION) {
+            return false;
+        }
+        boolean binary = (data.get(position + 5) & FLAG_BINARY) != 0;
+        int length = data.getInt(position + 8);
+        if (length <= 0 || length > maxMessageSize) {
+            return false;
+        }
+        synchronized (decompressLock) {
+            if (closed) {
+                return false;
+            }
+            int compressedLength = data.remaining() - HEADER_SIZE;
+            if (decompressInput.length < compressedLength) {
+                decompressInput = new byte[compressedLength];
+            }
+            if (decompressOutput.length < length) {
+                decompressOutput = new byte[length];
+                decompressOutputBuffer = ByteBuffer.wrap(decompressOutput);
+            }
+            data.position(position + HEADER_SIZE);
+            data.get(decompressInput, 0, compressedLength);
+            data.position(position);
+
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            } else {
+                inflater.reset();
+            }
+            //raw deflate streams don't ask for the dictionary, it's set before inflating
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(decompressInput, 0, compressedLength);
+            int decompressedLength = 0;
+            try {
+                while (!inflater.finished() && decompressedLength < length) {
+                    int count = inflater.inflate(decompressOutput, decompressedLength, length - decompressedLength);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    decompressedLength += count;
+                }
+            } catch (DataFormatException e) {
+                return false;
+            }
+            if (decompressedLength != length) {
+                return false;
+            }
+            decompressedMessageCount++;
+            decompressOutputBuffer.clear();
+            decompressOutputBuffer.limit(length);
+            handler.onMessage(new DataChannel.Buffer(decompressOutputBuffer.slice(), binary));
+        }
+        return true;
+    }
+
+    /**
+     * Releases the deflater and the inflater
+     */
+    public void close() {
+        closed = true;
+        synchronized (compressLock) {
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+        synchronized (decompressLock) {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return number of the messages that are sent compressed
+     */
+    public long getCompressedMessageCount() {
+        synchronized (compressLock) {
+            return compressedMessageCount;
+        }
+    }
+
+    /**
+     * @return number of the messages that are sent as they are because compression didn't pay off
+     */
+    public long getSkippedMessageCount() {
+        synchronized (compressLock) {
+            return skippedMessageCount;
+        }
+    }
+
+    /**
+     * @return size of the compressed messages divided by their original size, 1 if no message is compressed
+     */
+    public double getCompressionRatio() {
+        synchronized (compressLock) {
+            return originalBytes > 0 ? (double) compressedBytes / originalBytes : 1;
+        }
+    }
+
+    public long getDecompressedMessageCount() {
+        synchronized (decompressLock) {
+            return decompressedMessageCount;
+        }
+    }
+}
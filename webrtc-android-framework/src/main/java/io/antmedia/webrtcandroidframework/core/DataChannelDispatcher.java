@@ -0,0 +1,195 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+
+import io.antmedia.webrtcandroidframework.api.IDataChannelObserver;
+
+/**
+ * Delivers the data channel events to the observer on a dedicated thread instead of the main thread.
+ *
+ * Received messages are copied into pooled direct buffers and the buffers are returned to the pool after
+ * {@link IDataChannelObserver#onMessage(DataChannel.Buffer, String)} returns, so the observer should copy
+ * the data if it keeps it. Events are kept in a ring of reusable records and delivering a message doesn't allocate
+ * unless the ring is full.
+ *
+ * Other events, e.g. state changes, are posted as runnables to the same thread to keep their order with the messages.
+ */
+public class DataChannelDispatcher {
+
+    private static final String TAG = DataChannelDispatcher.class.getSimpleName();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static class Event {
+        IDataChannelObserver observer;
+        String label;
+        DataChannelBufferPool.PooledBuffer pooledBuffer;
+        boolean binary;
+        Runnable runnable;
+
+        void clear() {
+            observer = null;
+            label = null;
+            pooledBuffer = null;
+            runnable = null;
+        }
+    }
+
+    private final DataChannelBufferPool bufferPool;
+    private final Thread thread;
+    private Event[] events = new Event[INITIAL_CAPACITY];
+    private int head;
+    private int count;
+    private boolean stopped;
+    private long deliveredMessageCount;
+
+    public DataChannelDispatcher(DataChannelBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event();
+        }
+        thread = new Thread(this::run, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Copies the message into a pooled buffer and delivers it on the dispatcher thread.
+     * The buffer of the message isn't modified.
+     */
+    public void dispatchMessage(IDataChannelObserver observer, String label, DataChannel.Buffer buffer) {
+        int position = buffer.data.position();
+        DataChannelBufferPool.PooledBuffer pooledBuffer = bufferPool.acquire(buffer.data.remaining());
+        pooledBuffer.data.put(buffer.data);
+        pooledBuffer.data.flip();
+        buffer.data.position(position);
+
+        synchronized (this) {
+            if (stopped) {
+                bufferPool.release(pooledBuffer);
+                return;
+            }
+            Event event = nextEvent();
+            event.observer = observer;
+            event.label = label;
+            event.pooledBuffer = pooledBuffer;
+            event.binary = buffer.binary;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Runs the runnable on the dispatcher thread after the events that are dispatched before
+     */
+    public synchronized void post(Runnable runnable) {
+        if (stopped) {
+            return;
+        }
+        nextEvent().runnable = runnable;
+        notifyAll();
+    }
+
+    /**
+     * Stops the dispatcher thread. Events that are not delivered yet are dropped.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isShutdown() {
+        return stopped;
+    }
+
+    public synchronized long getDeliveredMessageCount() {
+        return deliveredMessageCount;
+    }
+
+    public DataChannelBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    private Event nextEvent() {
+        if (count == events.length) {
+            //ring is full, it's doubled and its events are moved to the beginning
+            Event[] newEvents = new Event[events.length * 2];
+            for (int i = 0; i < count; i++) {
+                newEvents[i] = events[(head + i) % events.length];
+            }
+            for (int i = count; i < newEvents.length; i++) {
+                newEvents[i] = new Event();
+            }
+            events = newEvents;
+            head = 0;
+        }
+        Event event = events[(head + count) % events.length];
+        count++;
+        return event;
+    }
+
+    private void run() {
+        IDataChannelObserver observer;
+        String label;
+        DataChannelBufferPool.PooledBuffer pooledBuffer;
+        boolean binary;
+        Runnable runnable;
+        while (true) {
+            synchronized (this) {
+                while (count == 0 && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        stopped = true;
+                    }
+                }
+                if (stopped) {
+                    releasePendingEvents();
+                    return;
+                }
+                Event event = events[head];
+                observer = event.observer;
+                label = event.label;
+                pooledBuffer = event.pooledBuffer;
+                binary = event.binary;
+                runnable = event.runnable;
+                event.clear();
+                head = (head + 1) % events.length;
+                count--;
+            }
+
+            try {
+                if (runnable != null) {
+                    runnable.run();
+                } else {
+                    observer.onMessage(pooledBuffer.getBuffer(binary), label);
+                }
+            } catch (RuntimeException e) {
+                //dispatcher thread should survive the errors of the observer
+                Log.e(TAG, "Data channel related error:" + e.getMessage());
+            } finally {
+                if (pooledBuffer != null) {
+                    bufferPool.release(pooledBuffer);
+                    synchronized (this) {
+                        deliveredMessageCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void releasePendingEvents() {
+        while (count > 0) {
+            Event event = events[head];
+            bufferPool.release(event.pooledBuffer);
+            event.clear();
+            head = (head + 1) % events.length;
+            count--;
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.antmedia.webrtcandroidframework.api.DefaultDataChannelObserver;
+import io.antmedia.webrtcandroidframework.api.IDataChannelObserver;
+
+/**
+ * Topics and request/response over the data channels of the streams.
+ *
+ * It's installed as the data channel observer and it receives the messages synchronously. Messages are copied
+ * to pooled buffers and decoded once on the thread of the {@link DataChannelDispatcher}, then the decoded
+ * {@link Message} is passed to all subscribers of its topic on the same thread. Messages that are not routed
+ * and other data channel events are passed to the fallback observer on the dispatcher thread.
+ *
+ * JSON envelopes are text messages:
+ * <pre>
+ * publish  {"topic": "chat", "data": ...}
+ * request  {"method": "getState", "requestId": 7, "data": ...}
+ * response {"responseTo": 7, "data": ...} or {"responseTo": 7, "error": "..."}
+ * </pre>
+ * Events of the server such as {"eventType": "UPDATE_AUDIO_LEVEL", ...} are published to the topic of their event type.
+ *
+ * Binary envelopes are big endian:
+ * <pre>
+ *  0: int   magic "AMRP"
+ *  4: byte  type, publish, request, response or error
+ *  5: byte  reserved
+ *  6: short length of the topic or the method name
+ *  8: long  request id, 0 for the published messages
+ * 16: topic or method name in UTF-8
+ *     payload, it's the UTF-8 error message for errors
+ * </pre>
+ * Published messages and requests are sent via the default data channel of the stream and the responses are sent
+ * via the data channel that the request is received from.
+ *
+ * Labels of the named data channels are not unique among the streams, so the client passes the stream id of
+ * the messages with {@link #onMessage(String, DataChannel.Buffer, String)}.
+ * {@link #onMessage(DataChannel.Buffer, String)} is for the default data channels whose label is the stream id.
+ */
+public class DataChannelMessenger implements IDataChannelObserver {
+
+    private static final String TAG = DataChannelMessenger.class.getSimpleName();
+
+    public static final int BINARY_MAGIC = 0x414D5250;
+    public static final int BINARY_HEADER_SIZE = 16;
+    public static final byte TYPE_PUBLISH = 0;
+    public static final byte TYPE_REQUEST = 1;
+    public static final byte TYPE_RESPONSE = 2;
+    public static final byte TYPE_ERROR = 3;
+
+    public static final String TOPIC = "topic";
+    public static final String EVENT_TYPE = "eventType";
+    public static final String METHOD = "method";
+    public static final String REQUEST_ID = "requestId";
+    public static final String RESPONSE_TO = "responseTo";
+    public static final String DATA = "data";
+    public static final String ERROR = "error";
+
+    public static final String ERROR_TIMEOUT = "timeout";
+    public static final String ERROR_CLOSED = "closed";
+    public static final String ERROR_NO_HANDLER = "no handler";
+
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+
+    public interface Sender {
+        void send(String streamId, DataChannel.Buffer buffer);
+
+        /**
+         * @param channelName label of the data channel, null or the stream id for the default data channel
+         */
+        default void send(String streamId, String channelName, DataChannel.Buffer buffer) {
+            send(streamId, buffer);
+        }
+    }
+
+    public interface Subscriber {
+        /**
+         * Called on the dispatcher thread for every message of the subscribed topic
+         */
+        void onMessage(Message message);
+    }
+
+    public interface RequestHandler {
+        /**
+         * Called on the dispatcher thread. The request should be answered with
+         * {@link #respond(Message, JSONObject)}, {@link #respond(Message, ByteBuffer)} or {@link #respondError(Message, String)},
+         * it may be answered after the method returns.
+         */
+        void onRequest(Message request);
+    }
+
+    public interface ResponseCallback {
+        void onResponse(Message response);
+
+        /**
+         * @param error {@link #ERROR_TIMEOUT}, {@link #ERROR_CLOSED} or the error sent by the remote peer
+         */
+        void onError(long requestId, String error);
+    }
+
+    /**
+     * Decoded message that is shared by all subscribers
+     */
+    public static class Message {
+        private final String streamId;
+        private final String dataChannelLabel;
+        private final byte type;
+        private final String topic;
+        private final long requestId;
+        private final JSONObject json;
+        private final ByteBuffer payload;
+        private final String error;
+
+        Message(String streamId, String dataChannelLabel, byte type, String topic, long requestId, JSONObject json,
+                ByteBuffer payload, String error) {
+            this.streamId = streamId;
+            this.dataChannelLabel = dataChannelLabel;
+            this.type = type;
+            this.topic = topic;
+            this.requestId = requestId;
+            this.json = json;
+            this.payload = payload;
+            this.error = error;
+        }
+
+        public String getStreamId() {
+            return streamId;
+        }
+
+        /**
+         * @return label of the data channel that the message is received from, it's the stream id for the default data channel
+         */
+        public String getDataChannelLabel() {
+            return dataChannelLabel;
+        }
+
+        /**
+         * @return {@link #TYPE_PUBLISH}, {@link #TYPE_REQUEST}, {@link #TYPE_RESPONSE} or {@link #TYPE_ERROR}
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * @return topic of the published message or method of the request
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public boolean isBinary() {
+            return json == null;
+        }
+
+        /**
+         * @return decoded JSON envelope, null for binary messages
+         */
+        public JSONObject getJson() {
+            return json;
+        }
+
+        /**
+         * @return data field of the JSON envelope, the envelope itself for the events of the server
+         */
+        public Object getData() {
+            if (json == null) {
+                return null;
+            }
+            boolean envelope = json.has(TOPIC) || json.has(METHOD) || json.has(RESPONSE_TO);
+            return envelope ? json.opt(DATA) : json;
+        }
+
+        /**
+         * @return payload of the binary message. It's read-only and valid until the callback returns.
+         */
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static class PendingRequest {
+        final ResponseCallback callback;
+        ScheduledFuture<?> timeout;
+
+        PendingRequest(ResponseCallback callback) {
+            this.callback = callback;
+        }
+    }
+
+    private final Sender sender;
+    private final DataChannelDispatcher dispatcher;
+    private final IDataChannelObserver fallbackObserver;
+    private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, RequestHandler> requestHandlers = new ConcurrentHashMap<>();
+    private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    //receive the messages of the streams copied by the dispatcher
+    private final Map<String, IDataChannelObserver> decoders = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    /**
+     * @param fallbackObserver observer of the messages that are not routed and other data channel events, it may be null
+     */
+    public DataChannelMessenger(Sender sender, DataChannelDispatcher dispatcher, IDataChannelObserver fallbackObserver) {
+        this.sender = sender;
+        this.dispatcher = dispatcher;
+        this.fallbackObserver = fallbackObserver;
+    }
+
+    public synchronized void subscribe(String topic, Subscriber subscriber) {
+        List<Subscriber> topicSubscribers = subscribers.get(topic);
+        if (topicSubscribers == null) {
+            topicSubscribers = new CopyOnWriteArrayList<>();
+            subscribers.put(topic, topicSubscribers);
+        }
+        topicSubscribers.add(subscriber);
+    }
+
+    public synchronized void unsubscribe(String topic, Subscriber subscriber) {
+        List<Subscriber> topicSubscribers = subscribers.get(topic);
+        if (topicSubscribers != null) {
+            topicSubscribers.remove(subscriber);
+            if (topicSubscribers.isEmpty()) {
+                subscribers.remove(topic);
+            }
+        }
+    }
+
+    public void registerRequestHandler(String method, RequestHandler handler) {
+        requestHandlers.put(method, handler);
+    }
+
+    public void unregisterRequestHandler(String method) {
+        requestHandlers.remove(method);
+    }
+
+    public void publish(String streamId, String topic, JSONObject data) {
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put(TOPIC, topic);
+            envelope.put(DATA, data);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        sendJson(streamId, envelope);
+    }
+
+    public void publish(String streamId, String topic, ByteBuffer data) {
+        sender.send(streamId, encodeBinary(TYPE_PUBLISH, topic, 0, data));
+    }
+
+    /**
+     * Sends the request and calls the callback on the dispatcher thread when the response is received
+     * or the request times out
+     * @return id of the request
+     */
+    public long request(String streamId, String method, JSONObject data, long timeoutMs, ResponseCallback callback) {
+        long requestId = addPendingRequest(timeoutMs, callback);
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put(METHOD, method);
+            envelope.put(REQUEST_ID, requestId);
+            envelope.put(DATA, data);
+        } catch (JSONException e) {
+            pendingRequests.remove(requestId);
+            throw new IllegalArgumentException(e);
+        }
+        sendJson(streamId, envelope);
+        return requestId;
+    }
+
+    public long request(String streamId, String method, ByteBuffer data, long timeoutMs, ResponseCallback callback) {
+        long requestId = addPendingRequest(timeoutMs, callback);
+        sender.send(streamId, encodeBinary(TYPE_REQUEST, method, requestId, data));
+        return requestId;
+    }
+
+    /**
+     * Sends the response in the envelope format of the request
+     */
+    public void respond(Message request, JSONObject data) {
+        if (request.isBinary()) {
+            byte[] bytes = data != null ? data.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            respond(request, ByteBuffer.wrap(bytes));
+            return;
+        }
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put(RESPONSE_TO, request.getRequestId());
+            envelope.put(DATA, data);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        sendJson(request.getStreamId(), request.getDataChannelLabel(), envelope);
+    }
+
+    public void respond(Message request, ByteBuffer data) {
+        sender.send(request.getStreamId(), request.getDataChannelLabel(),
+                encodeBinary(TYPE_RESPONSE, null, request.getRequestId(), data));
+    }
+
+    public void respondError(Message request, String error) {
+        if (request.isBinary()) {
+            ByteBuffer data = ByteBuffer.wrap(error.getBytes(StandardCharsets.UTF_8));
+            sender.send(request.getStreamId(), request.getDataChannelLabel(),
+                    encodeBinary(TYPE_ERROR, null, request.getRequestId(), data));
+            return;
+        }
+        JSONObject envelope = new JSONObject();
+        try {
+            envelope.put(RESPONSE_TO, request.getRequestId());
+            envelope.put(ERROR, error);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        sendJson(request.getStreamId(), request.getDataChannelLabel(), envelope);
+    }
+
+    private long addPendingRequest(long timeoutMs, ResponseCallback callback) {
+        long requestId = nextRequestId.getAndIncrement();
+        PendingRequest pendingRequest = new PendingRequest(callback);
+        pendingRequests.put(requestId, pendingRequest);
+        if (closed) {
+            failRequest(requestId, ERROR_CLOSED);
+            return requestId;
+        }
+        try {
+            pendingRequest.timeout = getScheduler().schedule(() -> failRequest(requestId, ERROR_TIMEOUT),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            failRequest(requestId, ERROR_CLOSED);
+        }
+        return requestId;
+    }
+
+    private void failRequest(long requestId, String error) {
+        PendingRequest pendingRequest = pendingRequests.remove(requestId);
+        if (pendingRequest != null) {
+            dispatcher.post(() -> pendingRequest.callback.onError(requestId, error));
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    private void sendJson(String streamId, JSONObject envelope) {
+        byte[] bytes = envelope.toString().getBytes(StandardCharsets.UTF_8);
+        sender.send(streamId, new DataChannel.Buffer(ByteBuffer.wrap(bytes), false));
+    }
+
+    private void sendJson(String streamId, String channelName, JSONObject envelope) {
+        byte[] bytes = envelope.toString().getBytes(StandardCharsets.UTF_8);
+        sender.send(streamId, channelName, new DataChannel.Buffer(ByteBuffer.wrap(bytes), false));
+    }
+
+    private static DataChannel.Buffer encodeBinary(byte type, String name, long requestId, ByteBuffer data) {
+        byte[] nameBytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (nameBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Topic or method name is too long");
+        }
+        int payloadLength = data != null ? data.remaining() : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_HEADER_SIZE + nameBytes.length + payloadLength);
+        buffer.putInt(BINARY_MAGIC);
+        buffer.put(type);
+        buffer.put((byte) 0);
+        buffer.putShort((short) nameBytes.length);
+        buffer.putLong(requestId);
+        buffer.put(nameBytes);
+        if (data != null) {
+            buffer.put(data.duplicate());
+        }
+        buffer.flip();
+        return new DataChannel.Buffer(buffer, true);
+    }
+
+    /**
+     * Fails the pending requests. Messenger doesn't send or receive messages after it's closed.
+     */
+    public void close() {
+        closed = true;
+        for (Long requestId : pendingRequests.keySet()) {
+            failRequest(requestId, ERROR_CLOSED);
+        }
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return true;
+    }
+
+    /**
+     * Receives a message of the default data channel of the stream, its label is the stream id
+     */
+    @Override
+    public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+        onMessage(dataChannelLabel, buffer, dataChannelLabel);
+    }
+
+    public void onMessage(String streamId, DataChannel.Buffer buffer, String dataChannelLabel) {
+        if (!closed) {
+            //buffer is copied to a pooled buffer and decoded on the dispatcher thread
+            dispatcher.dispatchMessage(getDecoder(streamId), dataChannelLabel, buffer);
+        }
+    }
+
+    private IDataChannelObserver getDecoder(String streamId) {
+        IDataChannelObserver decoder = decoders.get(streamId);
+        if (decoder == null) {
+            decoder = new DefaultDataChannelObserver() {
+                @Override
+                public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                    onDispatchedMessage(buffer, streamId, dataChannelLabel);
+                }
+            };
+            IDataChannelObserver previousDecoder = decoders.putIfAbsent(streamId, decoder);
+            if (previousDecoder != null) {
+                decoder = previousDecoder;
+            }
+        }
+        return decoder;
+    }
+
+    @Override
+    public void onBufferedAmountChange(long previousAmount, String dataChannelLabel) {
+        if (fallbackObserver != null) {
+            dispatcher.post(() -> fallbackObserver.onBufferedAmountChange(previousAmount, dataChannelLabel));
+        }
+    }
+
+    @Override
+    public void onStateChange(DataChannel.State state, String dataChannelLabel) {
+        if (fallbackObserver != null) {
+            dispatcher.post(() -> fallbackObserver.onStateChange(state, dataChannelLabel));
+        }
+    }
+
+    @Override
+    public void onMessageSent(DataChannel.Buffer buffer, boolean successful) {
+        if (fallbackObserver != null) {
+            dispatcher.post(() -> fallbackObserver.onMessageSent(buffer, successful));
+        }
+    }
+
+    @Override
+    public void onWritabilityChanged(boolean writable, String dataChannelLabel) {
+        if (fallbackObserver != null) {
+            dispatcher.post(() -> fallbackObserver.onWritabilityChanged(writable, dataChannelLabel));
+        }
+    }
+
+    /**
+     * Decodes the message and routes it. It's called on the dispatcher thread.
+     */
+    void onDispatchedMessage(DataChannel.Buffer buffer, String streamId, String label) {
+        Message message = buffer.binary ? decodeBinary(buffer.data, streamId, label) : decodeJson(buffer.data, streamId, label);
+        if (message == null || !route(message)) {
+            if (fallbackObserver != null) {
+                fallbackObserver.onMessage(buffer, label);
+            }
+        }
+    }
+
+    private static Message decodeBinary(ByteBuffer data, String streamId, String label) {
+        int position = data.position();
+        if (data.remaining() < BINARY_HEADER_SIZE || data.getInt(position) != BINARY_MAGIC) {
+            return null;
+        }
+        byte type = data.get(position + 4);
+        int nameLength = data.getShort(position + 6);
+        long requestId = data.getLong(position + 8);
+        int nameStart = position + BINARY_HEADER_SIZE;
+        if (nameLength < 0 || nameLength > data.limit() - nameStart) {
+            return null;
+        }
+        String name = null;
+        if (nameLength > 0) {
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = data.duplicate();
+            nameBuffer.position(nameStart);
+            nameBuffer.get(nameBytes);
+            name = new String(nameBytes, StandardCharsets.UTF_8);
+        }
+        ByteBuffer payload = data.duplicate();
+        payload.position(nameStart + nameLength);
+        payload = payload.slice().asReadOnlyBuffer();
+
+        String error = null;
+        if (type == TYPE_ERROR) {
+            byte[] errorBytes = new byte[payload.remaining()];
+            payload.duplicate().get(errorBytes);
+            error = new String(errorBytes, StandardCharsets.UTF_8);
+        }
+        return new Message(streamId, label, type, name, requestId, null, payload, error);
+    }
+
+    private static Message decodeJson(ByteBuffer data, String streamId, String label) {
+        int position = data.position();
+        //only JSON objects are routed, other text messages are passed to the fallback observer without decoding
+        while (position < data.limit() && Character.isWhitespace(data.get(position))) {
+            position++;
+        }
+        if (position == data.limit() || data.get(position) != '{') {
+            return null;
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        JSONObject json;
+        try {
+            json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return null;
+        }
+
+        if (json.has(RESPONSE_TO)) {
+            String error = json.has(ERROR) ? json.optString(ERROR) : null;
+            byte type = error != null ? TYPE_ERROR : TYPE_RESPONSE;
+            return new Message(streamId, label, type, null, json.optLong(RESPONSE_TO, -1), json, null, error);
+        }
+        if (json.has(METHOD) && json.has(REQUEST_ID)) {
+            return new Message(streamId, label, TYPE_REQUEST, json.optString(METHOD), json.optLong(REQUEST_ID, -1), json, null, null);
+        }
+        String topic = json.has(TOPIC) ? json.optString(TOPIC) : json.optString(EVENT_TYPE, null);
+        if (topic == null) {
+            return null;
+        }
+        return new Message(streamId, label, TYPE_PUBLISH, topic, 0, json, null, null);
+    }
+
+    /**
+     * @return false if there isn't any subscriber, handler or pending request for the message
+     */
+    private boolean route(Message message) {
+        switch (message.getType()) {
+            case TYPE_RESPONSE:
+            case TYPE_ERROR:
+                PendingRequest pendingRequest = pendingRequests.remove(message.getRequestId());
+                if (pendingRequest == null) {
+                    Log.w(TAG, "Response of an unknown or timed out request " + message.getRequestId());
+                    return true;
+                }
+                if (pendingRequest.timeout != null) {
+                    pendingRequest.timeout.cancel(false);
+                }
+                if (message.getType() == TYPE_ERROR) {
+                    pendingRequest.callback.onError(message.getRequestId(), message.getError());
+                } else {
+                    pendingRequest.callback.onResponse(message);
+                }
+                return true;
+            case TYPE_REQUEST:
+                RequestHandler handler = requestHandlers.get(message.getTopic());
+                if (handler == null) {
+                    respondError(message, ERROR_NO_HANDLER);
+                    return true;
+                }
+                try {
+                    handler.onRequest(message);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Request handler of " + message.getTopic() + " failed", e);
+                    respondError(message, String.valueOf(e.getMessage()));
+                }
+                return true;
+            default:
+                List<Subscriber> topicSubscribers = subscribers.get(message.getTopic());
+                if (topicSubscribers == null || topicSubscribers.isEmpty()) {
+                    return false;
+                }
+                for (Subscriber subscriber : topicSubscribers) {
+                    try {
+                        subscriber.onMessage(message);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Subscriber of " + message.getTopic() + " failed", e);
+                    }
+                }
+                return true;
+        }
+    }
+}
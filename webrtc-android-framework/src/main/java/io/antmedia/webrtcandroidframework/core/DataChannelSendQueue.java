@@ -0,0 +1,196 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import org.webrtc.DataChannel;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Send queue of a data channel that keeps the SCTP buffer of the channel between the watermarks.
+ *
+ * Messages are sent on the executor while bufferedAmount of the channel is below the high watermark.
+ * When it reaches the high watermark, sending is paused until the channel reports that bufferedAmount
+ * dropped to the low watermark. Messages that are not sent yet are kept in the queue.
+ *
+ * The channel is writable while the queued bytes and bufferedAmount are below the high watermark. It becomes
+ * writable again when they drop to the low watermark, so bulk senders can wait for
+ * {@link Listener#onWritabilityChanged(boolean)} instead of polling.
+ */
+public class DataChannelSendQueue {
+
+    public static final long DEFAULT_HIGH_WATERMARK = 1024 * 1024;
+    public static final long DEFAULT_LOW_WATERMARK = 256 * 1024;
+
+    public interface Listener {
+        /**
+         * Called on the executor after the message is passed to the channel or it failed
+         * @param error exception thrown by the channel, null if the channel just rejected the message
+         */
+        void onMessageSent(DataChannel.Buffer buffer, boolean successful, Exception error);
+
+        /**
+         * Called when the channel becomes writable or not writable
+         */
+        void onWritabilityChanged(boolean writable);
+    }
+
+    private final DataChannel dataChannel;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final Executor executor;
+    private final Listener listener;
+    private final ArrayDeque<DataChannel.Buffer> queue = new ArrayDeque<>();
+    private final Runnable drainRunnable = this::drain;
+    private long queuedBytes;
+    private boolean draining;
+    private boolean paused;
+    private boolean writable = true;
+    private boolean closed;
+
+    public DataChannelSendQueue(DataChannel dataChannel, long highWatermark, long lowWatermark,
+                                Executor executor, Listener listener) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Low watermark should not be greater than the high watermark");
+        }
+        this.dataChannel = dataChannel;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Queues the message. It's sent on the executor and the result is reported with
+     * {@link Listener#onMessageSent(DataChannel.Buffer, boolean, Exception)}.
+     * @return false if the queue is closed
+     */
+    public boolean send(DataChannel.Buffer buffer) {
+        boolean notifyNotWritable = false;
+        boolean scheduleDrain = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            queue.add(buffer);
+            queuedBytes += buffer.data.remaining();
+            if (writable && queuedBytes + dataChannel.bufferedAmount() >= highWatermark) {
+                writable = false;
+                notifyNotWritable = true;
+            }
+            if (!draining && !paused) {
+                draining = true;
+                scheduleDrain = true;
+            }
+        }
+        if (notifyNotWritable) {
+            listener.onWritabilityChanged(false);
+        }
+        if (scheduleDrain) {
+            executor.execute(drainRunnable);
+        }
+        return true;
+    }
+
+    /**
+     * Should be called when bufferedAmount of the channel changes. Sending is resumed if bufferedAmount
+     * dropped to the low watermark.
+     */
+    public void onBufferedAmountChange() {
+        synchronized (this) {
+            if (closed || draining || (!paused && writable)) {
+                return;
+            }
+            if (dataChannel.bufferedAmount() > lowWatermark) {
+                return;
+            }
+            paused = false;
+            draining = true;
+        }
+        executor.execute(drainRunnable);
+    }
+
+    private void drain() {
+        while (true) {
+            DataChannel.Buffer buffer;
+            boolean notifyWritable = false;
+            synchronized (this) {
+                if (closed) {
+                    draining = false;
+                    return;
+                }
+                long bufferedAmount = dataChannel.bufferedAmount();
+                buffer = queue.isEmpty() || bufferedAmount >= highWatermark ? null : queue.poll();
+                if (buffer == null) {
+                    paused = !queue.isEmpty();
+                    draining = false;
+                    if (!writable && queuedBytes + bufferedAmount <= lowWatermark) {
+                        writable = true;
+                        notifyWritable = true;
+                    }
+                } else {
+                    queuedBytes -= buffer.data.remaining();
+                }
+            }
+            if (buffer == null) {
+                if (notifyWritable) {
+                    listener.onWritabilityChanged(true);
+                }
+                return;
+            }
+
+            boolean success;
+            Exception error = null;
+            try {
+                success = dataChannel.send(buffer);
+            } catch (Exception e) {
+                success = false;
+                error = e;
+            }
+            buffer.data.rewind();
+            listener.onMessageSent(buffer, success, error);
+        }
+    }
+
+    /**
+     * Closes the queue. Queued messages are reported as failed.
+     */
+    public void close() {
+        ArrayDeque<DataChannel.Buffer> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending = new ArrayDeque<>(queue);
+            queue.clear();
+            queuedBytes = 0;
+        }
+        for (DataChannel.Buffer buffer : pending) {
+            listener.onMessageSent(buffer, false, null);
+        }
+    }
+
+    public synchronized boolean isWritable() {
+        return writable;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    public DataChannel getDataChannel() {
+        return dataChannel;
+    }
+}
@@ -0,0 +1,583 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.antmedia.webrtcandroidframework.api.IDataChannelTransferListener;
+
+/**
+ * Transfers payloads that are larger than the SCTP message size over a data channel.
+ *
+ * Payloads are split into chunks with a frame header and the chunks of the concurrent transfers are
+ * sent in turns, so a large transfer doesn't block a small one. Chunks are produced while the send queue
+ * of the channel is writable, so the channel stays full without overflowing its buffers. The receiver
+ * reassembles the chunks into pooled buffers. Total length in the header is controlled by the remote peer,
+ * so a reassembly buffer grows with the received bytes instead of being allocated for the total length,
+ * buffers of all incoming transfers together don't exceed the max transfer size and an incoming transfer
+ * that receives no chunk for {@link #DEFAULT_INCOMING_TRANSFER_TIMEOUT_MS} fails.
+ *
+ * Frame header is big endian:
+ * <pre>
+ *  0: int  magic "AMTX"
+ *  4: byte type, data or cancel
+ *  5: byte flags, bit 0 is set if the payload is binary
+ *  6: short reserved
+ *  8: long transfer id
+ * 16: int  total length of the payload
+ * 20: int  offset of the chunk in the payload
+ * 24: chunk
+ * </pre>
+ * Binary messages that start with the magic are consumed as transfer frames.
+ */
+public class DataChannelTransferManager {
+
+    private static final String TAG = DataChannelTransferManager.class.getSimpleName();
+
+    public static final int MAGIC = 0x414D5458;
+    public static final int HEADER_SIZE = 24;
+    public static final byte TYPE_DATA = 0;
+    public static final byte TYPE_CANCEL = 1;
+    private static final byte FLAG_BINARY = 1;
+
+    //16 KiB messages are delivered by all browsers
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
+    public static final int MAX_INCOMING_TRANSFERS = 16;
+    public static final int DEFAULT_INCOMING_TRANSFER_TIMEOUT_MS = 30000;
+    //reassembly buffer of a transfer starts with this size and it's doubled as the chunks arrive
+    static final int INITIAL_INCOMING_BUFFER_SIZE = DataChannelBufferPool.MAX_BUFFER_SIZE;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Chunk that is queued to the send queue. Its pooled buffer is released after it's sent.
+     */
+    static class ChunkBuffer extends DataChannel.Buffer {
+        final DataChannelBufferPool.PooledBuffer pooledBuffer;
+        final long transferId;
+        final int payloadLength;
+
+        ChunkBuffer(DataChannelBufferPool.PooledBuffer pooledBuffer, long transferId, int payloadLength) {
+            super(pooledBuffer.data, true);
+            this.pooledBuffer = pooledBuffer;
+            this.transferId = transferId;
+            this.payloadLength = payloadLength;
+        }
+    }
+
+    private static class OutgoingTransfer {
+        final long id;
+        final ByteBuffer data;
+        final boolean binary;
+        final int totalLength;
+        int nextOffset;
+        boolean produced;
+        long sentBytes;
+
+        OutgoingTransfer(long id, ByteBuffer data, boolean binary) {
+            this.id = id;
+            this.data = data;
+            this.binary = binary;
+            this.totalLength = data.remaining();
+        }
+    }
+
+    private static class IncomingTransfer {
+        final long id;
+        final boolean binary;
+        final int totalLength;
+        DataChannelBufferPool.PooledBuffer pooledBuffer;
+        //usable size of the buffer, it's counted in the reserved bytes of the incoming transfers
+        int capacity;
+        //end of the last byte written to the buffer
+        int writtenLength;
+        long receivedBytes;
+        long lastChunkTimeNs;
+
+        IncomingTransfer(long id, DataChannelBufferPool.PooledBuffer pooledBuffer, int capacity, boolean binary, int totalLength) {
+            this.id = id;
+            this.pooledBuffer = pooledBuffer;
+            this.capacity = capacity;
+            this.binary = binary;
+            this.totalLength = totalLength;
+        }
+    }
+
+    private final String streamId;
+    private final DataChannelSendQueue sendQueue;
+    private final DataChannelBufferPool bufferPool;
+    private final int chunkSize;
+    private final int maxTransferSize;
+    private final Executor callbackExecutor;
+    private final IDataChannelTransferListener listener;
+    private final ScheduledExecutorService timeoutScheduler;
+    private int incomingTransferTimeoutMs = DEFAULT_INCOMING_TRANSFER_TIMEOUT_MS;
+
+    //transfers whose chunks are being produced, they're served in turns
+    private final List<OutgoingTransfer> producingTransfers = new ArrayList<>();
+    //transfers that have chunks waiting to be sent
+    private final List<OutgoingTransfer> outgoingTransfers = new ArrayList<>();
+    private final List<IncomingTransfer> incomingTransfers = new ArrayList<>();
+    private int nextProducer;
+    private long nextTransferId = RANDOM.nextLong() & Long.MAX_VALUE;
+    //sum of the capacities of the incoming transfer buffers
+    private long reservedIncomingBytes;
+    private ScheduledFuture<?> timeoutCheck;
+    private boolean closed;
+
+    public DataChannelTransferManager(String streamId, DataChannelSendQueue sendQueue, DataChannelBufferPool bufferPool,
+                                      int chunkSize, int maxTransferSize, Executor callbackExecutor,
+                                      IDataChannelTransferListener listener) {
+        this(streamId, sendQueue, bufferPool, chunkSize, maxTransferSize, callbackExecutor, listener, null);
+    }
+
+    /**
+     * @param chunkSize maximum size of a frame including its header
+     * @param callbackExecutor executor that listener callbacks are run on
+     * @param listener listener of the transfers, it may be null
+     * @param timeoutScheduler scheduler that checks the timeouts of incoming transfers. If it's null, they're only
+     *                         checked when a frame is received or {@link #expireStalledTransfers()} is called
+     */
+    public DataChannelTransferManager(String streamId, DataChannelSendQueue sendQueue, DataChannelBufferPool bufferPool,
+                                      int chunkSize, int maxTransferSize, Executor callbackExecutor,
+                                      IDataChannelTransferListener listener, ScheduledExecutorService timeoutScheduler) {
+        if (chunkSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Chunk size should be greater than " + HEADER_SIZE);
+        }
+        this.streamId = streamId;
+        this.sendQueue = sendQueue;
+        this.bufferPool = bufferPool;
+        this.chunkSize = chunkSize;
+        this.maxTransferSize = maxTransferSize;
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+        this.timeoutScheduler = timeoutScheduler;
+    }
+
+    /**
+     * Sets the time after which an incoming transfer that receives no chunk fails
+     */
+    public synchronized void setIncomingTransferTimeoutMs(int incomingTransferTimeoutMs) {
+        this.incomingTransferTimeoutMs = incomingTransferTimeoutMs;
+    }
+
+    /**
+     * @return true if the message is a transfer frame
+     */
+    public static boolean isTransferFrame(DataChannel.Buffer buffer) {
+        ByteBuffer data = buffer.data;
+        return buffer.binary && data.remaining() >= HEADER_SIZE && data.getInt(data.position()) == MAGIC;
+    }
+
+    /**
+     * Starts sending the payload. Remaining bytes of the buffer are sent and the buffer shouldn't be modified
+     * until {@link IDataChannelTransferListener#onTransferSent(String, long)} is called.
+     * @return id of the transfer, -1 if the manager is closed or the payload is too large
+     */
+    public synchronized long startTransfer(DataChannel.Buffer buffer) {
+        if (closed) {
+            return -1;
+        }
+        if (buffer.data.remaining() > maxTransferSize) {
+            Log.w(TAG, "Transfer size " + buffer.data.remaining() + " exceeds the limit " + maxTransferSize);
+            return -1;
+        }
+        long id = nextTransferId;
+        nextTransferId = (nextTransferId + 1) & Long.MAX_VALUE;
+        OutgoingTransfer transfer = new OutgoingTransfer(id, buffer.data.slice(), buffer.binary);
+        producingTransfers.add(transfer);
+        outgoingTransfers.add(transfer);
+        produceChunks();
+        return id;
+    }
+
+    /**
+     * Cancels the outgoing or incoming transfer and notifies the remote peer.
+     * @return false if there is no such transfer
+     */
+    public synchronized boolean cancelTransfer(long transferId) {
+        boolean cancelled = cancelOutgoing(transferId) | cancelIncoming(transferId);
+        if (cancelled) {
+            sendFrame(TYPE_CANCEL, (byte) 0, transferId, 0, 0, null, 0);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Should be called when the writability of the send queue changes
+     */
+    public synchronized void onWritabilityChanged(boolean writable) {
+        if (writable) {
+            produceChunks();
+        }
+    }
+
+    /**
+     * Should be called when a message of the send queue is sent
+     * @return true if the message is a chunk of this manager
+     */
+    public boolean onMessageSent(DataChannel.Buffer buffer, boolean successful) {
+        if (!(buffer instanceof ChunkBuffer)) {
+            return false;
+        }
+        ChunkBuffer chunk = (ChunkBuffer) buffer;
+        bufferPool.release(chunk.pooledBuffer);
+        synchronized (this) {
+            OutgoingTransfer transfer = findOutgoing(chunk.transferId);
+            if (transfer == null || chunk.payloadLength < 0) {
+                //transfer is cancelled or it's a cancel frame
+                return true;
+            }
+            if (!successful) {
+                removeOutgoing(transfer);
+                notifyFailed(transfer.id, false);
+                return true;
+            }
+            transfer.sentBytes += chunk.payloadLength;
+            notifyProgress(transfer.id, false, transfer.sentBytes, transfer.totalLength);
+            if (transfer.produced && transfer.sentBytes == transfer.totalLength) {
+                outgoingTransfers.remove(transfer);
+                long id = transfer.id;
+                if (listener != null) {
+                    callbackExecutor.execute(() -> listener.onTransferSent(streamId, id));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles a received transfer frame
+     * @return false if the message is not a transfer frame
+     */
+    public boolean onMessage(DataChannel.Buffer buffer) {
+        if (!isTransferFrame(buffer)) {
+            return false;
+        }
+        ByteBuffer data = buffer.data;
+        int position = data.position();
+        byte type = data.get(position + 4);
+        byte flags = data.get(position + 5);
+        long transferId = data.getLong(position + 8);
+        int totalLength = data.getInt(position + 16);
+        int offset = data.getInt(position + 20);
+        int payloadLength = data.remaining() - HEADER_SIZE;
+
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            long now = System.nanoTime();
+            expireStalledTransfers(now);
+            if (type == TYPE_CANCEL) {
+                if (cancelOutgoing(transferId) | cancelIncoming(transferId)) {
+                    Log.i(TAG, "Transfer " + transferId + " is cancelled by the remote peer");
+                }
+                return true;
+            }
+            if (type != TYPE_DATA || totalLength < 0 || offset < 0 || offset > totalLength - payloadLength) {
+                Log.w(TAG, "Invalid transfer frame is dropped for transfer " + transferId);
+                return true;
+            }
+
+            IncomingTransfer transfer = findIncoming(transferId);
+            if (transfer == null) {
+                if (offset != 0) {
+                    //rest of a cancelled or rejected transfer
+                    return true;
+                }
+                int capacity = Math.min(totalLength, INITIAL_INCOMING_BUFFER_SIZE);
+                if (totalLength > maxTransferSize || incomingTransfers.size() >= MAX_INCOMING_TRANSFERS
+                        || reservedIncomingBytes + capacity > maxTransferSize) {
+                    Log.w(TAG, "Transfer " + transferId + " of " + totalLength + " bytes is rejected");
+                    return true;
+                }
+                DataChannelBufferPool.PooledBuffer pooledBuffer = bufferPool.acquire(capacity);
+                transfer = new IncomingTransfer(transferId, pooledBuffer, capacity, (flags & FLAG_BINARY) != 0, totalLength);
+                reservedIncomingBytes += capacity;
+                incomingTransfers.add(transfer);
+                scheduleTimeoutCheck();
+            }
+
+            int end = offset + payloadLength;
+            if (end > transfer.capacity && !grow(transfer, end, payloadLength)) {
+                Log.w(TAG, "Transfer " + transferId + " is failed, chunk at " + offset + " can't be buffered");
+                removeIncoming(transfer);
+                notifyFailed(transferId, true);
+                //remote peer stops sending the rest
+                sendFrame(TYPE_CANCEL, (byte) 0, transferId, 0, 0, null, 0);
+                return true;
+            }
+
+            ByteBuffer chunk = data.duplicate();
+            chunk.position(position + HEADER_SIZE);
+            ByteBuffer target = transfer.pooledBuffer.data.duplicate();
+            target.clear();
+            target.position(offset);
+            target.put(chunk);
+            transfer.writtenLength = Math.max(transfer.writtenLength, end);
+            transfer.receivedBytes += payloadLength;
+            transfer.lastChunkTimeNs = now;
+            notifyProgress(transferId, true, transfer.receivedBytes, transfer.totalLength);
+
+            //repeated chunks are counted in the received bytes, so the end of the payload should be written as well
+            if (transfer.receivedBytes >= transfer.totalLength && transfer.writtenLength == transfer.totalLength) {
+                incomingTransfers.remove(transfer);
+                reservedIncomingBytes -= transfer.capacity;
+                deliver(transfer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fails the incoming transfers that have received no chunk within the timeout and notifies the remote peer.
+     * It's called periodically if the manager has a timeout scheduler.
+     */
+    public synchronized void expireStalledTransfers() {
+        expireStalledTransfers(System.nanoTime());
+    }
+
+    private void expireStalledTransfers(long now) {
+        long timeoutNs = TimeUnit.MILLISECONDS.toNanos(incomingTransferTimeoutMs);
+        for (int i = incomingTransfers.size() - 1; i >= 0; i--) {
+            IncomingTransfer transfer = incomingTransfers.get(i);
+            if (now - transfer.lastChunkTimeNs > timeoutNs) {
+                Log.w(TAG, "Transfer " + transfer.id + " is failed, no chunk is received in " + incomingTransferTimeoutMs + " ms");
+                removeIncoming(transfer);
+                notifyFailed(transfer.id, true);
+                sendFrame(TYPE_CANCEL, (byte) 0, transfer.id, 0, 0, null, 0);
+            }
+        }
+    }
+
+    private void scheduleTimeoutCheck() {
+        if (timeoutScheduler == null || timeoutCheck != null || closed || incomingTransfers.isEmpty()) {
+            return;
+        }
+        try {
+            timeoutCheck = timeoutScheduler.schedule(this::onTimeoutCheck, incomingTransferTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //scheduler is shut down, timeouts are checked when frames are received
+        }
+    }
+
+    private synchronized void onTimeoutCheck() {
+        timeoutCheck = null;
+        if (!closed) {
+            expireStalledTransfers(System.nanoTime());
+            scheduleTimeoutCheck();
+        }
+    }
+
+    /**
+     * Doubles the buffer of the transfer until it fits the chunk. Buffer can only grow up to twice the received
+     * bytes, so a peer can't make the receiver allocate the whole payload with a few small chunks.
+     * @return false if the chunk is too far ahead of the received bytes or the buffers exceed the max transfer size
+     */
+    private boolean grow(IncomingTransfer transfer, int end, int payloadLength) {
+        if (end > Math.max(INITIAL_INCOMING_BUFFER_SIZE, 2 * (transfer.receivedBytes + payloadLength))) {
+            return false;
+        }
+        int capacity = (int) Math.min(transfer.totalLength, Math.max(end, 2L * transfer.capacity));
+        if (reservedIncomingBytes + capacity - transfer.capacity > maxTransferSize) {
+            return false;
+        }
+        DataChannelBufferPool.PooledBuffer grownBuffer = bufferPool.acquire(capacity);
+        ByteBuffer written = transfer.pooledBuffer.data.duplicate();
+        written.clear();
+        written.limit(transfer.writtenLength);
+        grownBuffer.data.put(written);
+        bufferPool.release(transfer.pooledBuffer);
+        reservedIncomingBytes += capacity - transfer.capacity;
+        transfer.pooledBuffer = grownBuffer;
+        transfer.capacity = capacity;
+        return true;
+    }
+
+    /**
+     * Fails the transfers and releases their buffers. Chunks that are queued are released when the send queue is closed.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (timeoutCheck != null) {
+            timeoutCheck.cancel(false);
+            timeoutCheck = null;
+        }
+        for (OutgoingTransfer transfer : outgoingTransfers) {
+            notifyFailed(transfer.id, false);
+        }
+        for (IncomingTransfer transfer : incomingTransfers) {
+            bufferPool.release(transfer.pooledBuffer);
+            notifyFailed(transfer.id, true);
+        }
+        producingTransfers.clear();
+        outgoingTransfers.clear();
+        incomingTransfers.clear();
+        reservedIncomingBytes = 0;
+    }
+
+    public synchronized int getOutgoingTransferCount() {
+        return outgoingTransfers.size();
+    }
+
+    public synchronized int getIncomingTransferCount() {
+        return incomingTransfers.size();
+    }
+
+    /**
+     * @return total size of the reassembly buffers of the incoming transfers
+     */
+    public synchronized long getReservedIncomingBytes() {
+        return reservedIncomingBytes;
+    }
+
+    private void produceChunks() {
+        int payloadCapacity = chunkSize - HEADER_SIZE;
+        while (!closed && !producingTransfers.isEmpty() && sendQueue.isWritable()) {
+            if (nextProducer >= producingTransfers.size()) {
+                nextProducer = 0;
+            }
+            OutgoingTransfer transfer = producingTransfers.get(nextProducer);
+            int offset = transfer.nextOffset;
+            int payloadLength = Math.min(payloadCapacity, transfer.totalLength - offset);
+            transfer.nextOffset += payloadLength;
+            if (transfer.nextOffset == transfer.totalLength) {
+                transfer.produced = true;
+                producingTransfers.remove(nextProducer);
+            } else {
+                nextProducer++;
+            }
+            byte flags = transfer.binary ? FLAG_BINARY : 0;
+            sendFrame(TYPE_DATA, flags, transfer.id, transfer.totalLength, offset, transfer.data, payloadLength);
+        }
+    }
+
+    private void sendFrame(byte type, byte flags, long transferId, int totalLength, int offset, ByteBuffer payload, int payloadLength) {
+        DataChannelBufferPool.PooledBuffer pooledBuffer = bufferPool.acquire(HEADER_SIZE + payloadLength);
+        ByteBuffer frame = pooledBuffer.data;
+        frame.putInt(MAGIC);
+        frame.put(type);
+        frame.put(flags);
+        frame.putShort((short) 0);
+        frame.putLong(transferId);
+        frame.putInt(totalLength);
+        frame.putInt(offset);
+        if (payload != null) {
+            ByteBuffer chunk = payload.duplicate();
+            chunk.position(offset);
+            chunk.limit(offset + payloadLength);
+            frame.put(chunk);
+        }
+        frame.flip();
+        //cancel frames are not counted in the progress
+        ChunkBuffer chunkBuffer = new ChunkBuffer(pooledBuffer, transferId, type == TYPE_DATA ? payloadLength : -1);
+        if (!sendQueue.send(chunkBuffer)) {
+            bufferPool.release(pooledBuffer);
+        }
+    }
+
+    private void deliver(IncomingTransfer transfer) {
+        DataChannelBufferPool.PooledBuffer pooledBuffer = transfer.pooledBuffer;
+        pooledBuffer.data.position(0);
+        pooledBuffer.data.limit(transfer.totalLength);
+        if (listener == null) {
+            bufferPool.release(pooledBuffer);
+            return;
+        }
+        long id = transfer.id;
+        boolean binary = transfer.binary;
+        callbackExecutor.execute(() -> {
+            try {
+                listener.onTransferReceived(streamId, id, pooledBuffer.getBuffer(binary));
+            } finally {
+                bufferPool.release(pooledBuffer);
+            }
+        });
+    }
+
+    private boolean cancelOutgoing(long transferId) {
+        OutgoingTransfer transfer = findOutgoing(transferId);
+        if (transfer == null) {
+            return false;
+        }
+        removeOutgoing(transfer);
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onTransferCancelled(streamId, transferId, false));
+        }
+        return true;
+    }
+
+    private boolean cancelIncoming(long transferId) {
+        IncomingTransfer transfer = findIncoming(transferId);
+        if (transfer == null) {
+            return false;
+        }
+        removeIncoming(transfer);
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onTransferCancelled(streamId, transferId, true));
+        }
+        return true;
+    }
+
+    private void removeIncoming(IncomingTransfer transfer) {
+        incomingTransfers.remove(transfer);
+        reservedIncomingBytes -= transfer.capacity;
+        bufferPool.release(transfer.pooledBuffer);
+    }
+
+    private void removeOutgoing(OutgoingTransfer transfer) {
+        outgoingTransfers.remove(transfer);
+        int index = producingTransfers.indexOf(transfer);
+        if (index >= 0) {
+            producingTransfers.remove(index);
+            if (index < nextProducer) {
+                nextProducer--;
+            }
+        }
+    }
+
+    private OutgoingTransfer findOutgoing(long transferId) {
+        for (int i = 0; i < outgoingTransfers.size(); i++) {
+            if (outgoingTransfers.get(i).id == transferId) {
+                return outgoingTransfers.get(i);
+            }
+        }
+        return null;
+    }
+
+    private IncomingTransfer findIncoming(long transferId) {
+        for (int i = 0; i < incomingTransfers.size(); i++) {
+            if (incomingTransfers.get(i).id == transferId) {
+                return incomingTransfers.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void notifyProgress(long transferId, boolean incoming, long transferredBytes, long totalBytes) {
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onTransferProgress(streamId, transferId, incoming, transferredBytes, totalBytes));
+        }
+    }
+
+    private void notifyFailed(long transferId, boolean incoming) {
+        if (listener != null) {
+            callbackExecutor.execute(() -> listener.onTransferFailed(streamId, transferId, incoming));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.antmedia.webrtcandroidframework.core;
+
+/**
+ * Maps presentation timestamps of a media file to the monotonic clock. Clock is anchored with the first timestamp
+ * that is asked, so the first frame is due right away and the following frames are due after their distance to it.
+ * Sleeps and decode time don't accumulate as drift because every frame is scheduled against the same anchor.
+ */
+public class MediaClock {
+
+    private boolean anchored;
+    private long anchorNs;
+    private long anchorPtsUs;
+
+    /**
+     * @return time in microseconds until the frame is due, negative if it's late. Clock is anchored with the
+     * timestamp if it's not anchored yet
+     */
+    public synchronized long getDelayUs(long presentationTimeUs) {
+        if (!anchored) {
+            anchorLocked(presentationTimeUs);
+        }
+        long dueTimeNs = anchorNs + (presentationTimeUs - anchorPtsUs) * 1000;
+        return (dueTimeNs - nanoTime()) / 1000;
+    }
+
+    /**
+     * Anchors the clock so that the frame with the timestamp is due now
+     */
+    public synchronized void anchor(long presentationTimeUs) {
+        anchorLocked(presentationTimeUs);
+    }
+
+    private void anchorLocked(long presentationTimeUs) {
+        anchorNs = nanoTime();
+        anchorPtsUs = presentationTimeUs;
+        anchored = true;
+    }
+
+    /**
+     * Clears the anchor, the clock is anchored again with the next timestamp
+     */
+    public synchronized void reset() {
+        anchored = false;
+    }
+
+    public synchronized boolean isAnchored() {
+        return anchored;
+    }
+
+    /**
+     * @return presentation timestamp that is due now, or -1 if the clock is not anchored
+     */
+    public synchronized long getMediaTimeUs() {
+        return anchored ? anchorPtsUs + (nanoTime() - anchorNs) / 1000 : -1;
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -9,14 +9,18 @@ import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.os.Build;
 import android.util.Log;
+import android.view.Surface;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import org.webrtc.SurfaceTextureHelper;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
@@ -27,6 +31,31 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class MediaFileReader {
     private static final int DESIRED_SAMPLE_RATE = 48000;
+    private static final int DESIRED_CHANNEL_COUNT = 1;
+    //10 ms of 16 bit PCM at the desired rate
+    private static final int AUDIO_CHUNK_LENGTH = DESIRED_SAMPLE_RATE / BUFFERS_PER_SECOND * DESIRED_CHANNEL_COUNT * AudioResampler.BYTES_PER_SAMPLE;
+
+    public static final int DEFAULT_MAX_FRAMES_AHEAD = 4;
+    public static final int DEFAULT_LATE_FRAME_THRESHOLD_MS = 50;
+    //clock is anchored again if output falls behind more than this, e.g. after the device is suspended
+    private static final long RESYNC_THRESHOLD_US = 1000000;
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+    //decoders are polled at this interval while both tracks are waiting for their decoders
+    private static final long MULTI_TRACK_WAIT_US = 2000;
+    //length of the last sample of an item if the track has a single sample
+    private static final long DEFAULT_SAMPLE_DURATION_US = 33333;
+    //demuxed samples of a track that wait for its decoder. Muxers interleave the tracks in chunks of up to
+    //a second, so the queue holds more than a chunk of the other track.
+    private static final int MAX_QUEUED_SAMPLES = 256;
+    private static final long MAX_QUEUED_DURATION_US = 2000000;
+    //samples are read to this buffer before they're copied to the sample queue, it grows for larger samples
+    private static final int DEFAULT_SAMPLE_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_SAMPLE_BUFFER_SIZE = 16 * 1024 * 1024;
+    private static final String[] CODEC_CONFIG_KEYS = {"csd-0", "csd-1", "csd-2"};
+    private static final String KEY_CROP_LEFT = "crop-left";
+    private static final String KEY_CROP_RIGHT = "crop-right";
+    private static final String KEY_CROP_TOP = "crop-top";
+    private static final String KEY_CROP_BOTTOM = "crop-bottom";
 
 
     private AtomicBoolean stopRequested = new AtomicBoolean(false);
@@ -37,12 +66,131 @@ public class MediaFileReader {
     }
 
     public interface AudioFrameListener {
+        /**
+         * @param resampledData 10 ms of 16 bit mono PCM at 48 kHz. Array is reused for the next chunk, so it
+         *                      should be consumed or copied before returning.
+         */
         void onAudioData(byte[] resampledData);
     }
 
     public enum FrameType {
         video,
-        audio
+        audio,
+        //video and audio tracks of the same file on a shared clock
+        both
+    }
+
+    /**
+     * Selected track with its decoder and the decoded frames that wait for their presentation time
+     */
+    private class Track {
+        //index and format of the track in the current item
+        int trackIndex;
+        MediaFormat format;
+        final FrameType frameType;
+        //decoder of the output, it's followed by the input decoder after it drains if an item needs another decoder
+        MediaCodec decoder;
+        MediaCodec inputDecoder;
+        //previous input decoder that waits for a free input buffer to queue its end of stream
+        MediaCodec endingDecoder;
+        //input decoder waits for the surface until the previous decoder is released
+        boolean inputDecoderPending;
+        //codec config of the item that is queued to the input decoder before its first sample
+        ByteBuffer[] pendingConfig;
+        //input buffer that is dequeued at the end of an item, it's used for the next item
+        int heldInputIndex = -1;
+        //samples that are copied out of the extractor while the decoder has no free input buffer, so the
+        //samples of the other track behind them can be read. They're reused ring buffers.
+        final ByteBuffer[] queuedSamples = new ByteBuffer[MAX_QUEUED_SAMPLES];
+        final long[] queuedPtsUs = new long[MAX_QUEUED_SAMPLES];
+        int queuedHead;
+        int queuedCount;
+        final int[] pendingIndexes = new int[maxFramesAhead];
+        final long[] pendingPtsUs = new long[maxFramesAhead];
+        final MediaCodec[] pendingDecoders = new MediaCodec[maxFramesAhead];
+        int pendingHead;
+        int pendingCount;
+        boolean inputEOS;
+        boolean outputEOS;
+        AudioResampler resampler;
+        ByteBuffer resampledAudioBuffer;
+        byte[] audioChunk;
+        //lateness of the last rendered frame
+        long latenessUs = -1;
+        //timestamp of the last queued sample and the interval to the previous one on the output timeline
+        long lastPtsUs = -1;
+        long ptsIntervalUs;
+
+        Track(int trackIndex, MediaFormat format, FrameType frameType) {
+            this.trackIndex = trackIndex;
+            this.format = format;
+            this.frameType = frameType;
+            if (frameType == FrameType.audio) {
+                resampledAudioBuffer = ByteBuffer.allocate(AUDIO_CHUNK_LENGTH * 4);
+                audioChunk = new byte[AUDIO_CHUNK_LENGTH];
+                setAudioFormat(format);
+            }
+        }
+
+        /**
+         * Resampler is created again only if the decoded audio has a different rate or channel count
+         */
+        void setAudioFormat(MediaFormat audioFormat) {
+            int sampleRate = audioFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = audioFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (resampler == null || resampler.getInputSampleRate() != sampleRate || resampler.getInputChannels() != channelCount) {
+                resampler = new AudioResampler(sampleRate, channelCount, DESIRED_SAMPLE_RATE, DESIRED_CHANNEL_COUNT);
+            }
+        }
+
+        void onSampleQueued(long ptsUs) {
+            if (lastPtsUs >= 0 && ptsUs > lastPtsUs) {
+                ptsIntervalUs = ptsUs - lastPtsUs;
+            }
+            lastPtsUs = Math.max(lastPtsUs, ptsUs);
+        }
+
+        boolean isFinished() {
+            return outputEOS && pendingCount == 0;
+        }
+
+        boolean canQueueSample() {
+            if (queuedCount == 0) {
+                return true;
+            }
+            long lastPtsUs = queuedPtsUs[(queuedHead + queuedCount - 1) % MAX_QUEUED_SAMPLES];
+            return queuedCount < MAX_QUEUED_SAMPLES && lastPtsUs - queuedPtsUs[queuedHead] < MAX_QUEUED_DURATION_US;
+        }
+    }
+
+    /**
+     * Media of a playlist item, it's set to a new extractor each time the item is opened
+     */
+    private interface Source {
+        void setTo(MediaExtractor extractor) throws IOException;
+    }
+
+    /**
+     * Next item that is opened before the current one ends, so the transition doesn't wait for the extractor
+     * and for the decoders that the item needs
+     */
+    private static class PlaylistItem {
+        final int index;
+        final MediaExtractor extractor;
+        //track of the item for each selected track, -1 if the item doesn't have it
+        final int[] trackIndexes;
+        final MediaFormat[] formats;
+        //decoders of the tracks that the current decoders can't decode, they're started unless they render
+        //to the output surface
+        final MediaCodec[] decoders;
+
+        PlaylistItem(int index, MediaExtractor extractor, int trackCount) {
+            this.index = index;
+            this.extractor = extractor;
+            trackIndexes = new int[trackCount];
+            formats = new MediaFormat[trackCount];
+            decoders = new MediaCodec[trackCount];
+        }
     }
     private VideoFrameListener videoFrameListener;
 
@@ -52,6 +200,44 @@ public class MediaFileReader {
     private MediaExtractor extractor;
     private String TAG = MediaFileReader.class.getSimpleName();
 
+    private final MediaClock mediaClock = new MediaClock();
+    private int maxFramesAhead = DEFAULT_MAX_FRAMES_AHEAD;
+    private long lateFrameThresholdUs = DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000L;
+    private volatile long renderedFrameCount;
+    private volatile long droppedFrameCount;
+    private volatile long lipSyncErrorUs;
+    private volatile long maxLipSyncErrorUs;
+
+    private Track[] tracks;
+    private Track videoTrack;
+    private Track audioTrack;
+    //end of the samples of the extractor
+    private boolean inputEOS;
+    @Nullable
+    private ByteBuffer sampleBuffer;
+
+    private final List<Source> sources = new ArrayList<>();
+    private boolean looping;
+    private volatile int itemIndex;
+    //timestamps of the current item are moved from its first sample to the end of the previous item
+    private long itemStartUs;
+    private long itemOffsetUs;
+    //extractor reached the end of the current item
+    private boolean itemEnded;
+    private int itemSampleCount;
+    //consecutive items without samples, reading ends if every item is empty
+    private int emptyItemCount;
+    @Nullable
+    private PlaylistItem nextItem;
+    private boolean nextItemLoaded;
+    private volatile long presentationTimeUs;
+
+    //decoded video is rendered to the surface texture of the capturer instead of passed to the listener
+    @Nullable
+    private CustomVideoCapturer videoCapturer;
+    @Nullable
+    private Surface outputSurface;
+
     private MediaFileReader(MediaExtractor extractor) {
         this.extractor = extractor;
     }
@@ -65,7 +251,9 @@ public class MediaFileReader {
             e.printStackTrace();
         }
 
-        return new MediaFileReader(extractor);
+        MediaFileReader mediaFileReader = new MediaFileReader(extractor);
+        mediaFileReader.sources.add(mediaExtractor -> mediaExtractor.setDataSource(resources.openRawResourceFd(resourceId)));
+        return mediaFileReader;
     }
 
     public static MediaFileReader fromPath(String filePath) {
@@ -76,7 +264,34 @@ public class MediaFileReader {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return new MediaFileReader(extractor);
+        MediaFileReader mediaFileReader = new MediaFileReader(extractor);
+        mediaFileReader.sources.add(mediaExtractor -> {
+            try (FileInputStream inputStream = new FileInputStream(filePath)) {
+                mediaExtractor.setDataSource(inputStream.getFD());
+            }
+        });
+        return mediaFileReader;
+    }
+
+    /**
+     * Reads the files one after another as a single stream. Decoders continue with the next file if they can
+     * decode it, otherwise its decoders are started before the current file ends. Timestamps continue from
+     * the end of the previous file.
+     */
+    public static MediaFileReader fromPaths(String... filePaths) {
+        if (filePaths.length == 0) {
+            throw new IllegalArgumentException("At least one file should be given");
+        }
+        MediaFileReader mediaFileReader = fromPath(filePaths[0]);
+        for (int i = 1; i < filePaths.length; i++) {
+            String filePath = filePaths[i];
+            mediaFileReader.sources.add(mediaExtractor -> {
+                try (FileInputStream inputStream = new FileInputStream(filePath)) {
+                    mediaExtractor.setDataSource(inputStream.getFD());
+                }
+            });
+        }
+        return mediaFileReader;
     }
 
     public MediaFileReader withFrameType(FrameType frameType) {
@@ -94,8 +309,54 @@ public class MediaFileReader {
         return this;
     }
 
+    /**
+     * Video is decoded to the surface texture of the capturer and rendered at its presentation time. Frames
+     * reach the encoder as OES textures without being copied to the memory, so the video frame listener isn't
+     * called. Capturer should be initialized before the reader starts.
+     */
+    public MediaFileReader withVideoCapturer(CustomVideoCapturer videoCapturer) {
+        this.videoCapturer = videoCapturer;
+        return this;
+    }
+
+    /**
+     * Starts again from the first item after the last one ends, until it's stopped. A single file is seeked
+     * to its beginning without releasing its extractor and decoders.
+     */
+    public MediaFileReader withLooping(boolean looping) {
+        this.looping = looping;
+        return this;
+    }
+
+    /**
+     * Decoded frames that are held until their presentation time. Decoder runs ahead by this many frames,
+     * so a slow frame doesn't delay the following ones.
+     */
+    public MediaFileReader withMaxFramesAhead(int maxFramesAhead) {
+        if (maxFramesAhead < 1) {
+            throw new IllegalArgumentException("At least one frame should be held");
+        }
+        this.maxFramesAhead = maxFramesAhead;
+        return this;
+    }
+
+    /**
+     * Video frames that are later than the threshold are dropped. Audio is never dropped.
+     */
+    public MediaFileReader withLateFrameThresholdMs(int lateFrameThresholdMs) {
+        this.lateFrameThresholdUs = lateFrameThresholdMs * 1000L;
+        return this;
+    }
+
     public void start() {
         format = getMediaFormat();
+        if (videoCapturer != null && videoTrack != null) {
+            SurfaceTextureHelper surfaceTextureHelper = videoCapturer.getSurfaceTextureHelper();
+            if (surfaceTextureHelper == null) {
+                throw new IllegalStateException("Video capturer should be initialized before the reader starts");
+            }
+            outputSurface = new Surface(surfaceTextureHelper.getSurfaceTexture());
+        }
         Thread t = new Thread() {
             @RequiresApi(api = Build.VERSION_CODES.N)
             @Override
@@ -110,162 +371,855 @@ public class MediaFileReader {
     private MediaFormat getMediaFormat() {
         MediaFormat format = null;
         int trackCount = extractor.getTrackCount();
+        videoTrack = null;
+        audioTrack = null;
+        if (frameType == FrameType.both) {
+            //first video and first audio tracks are demuxed together
+            for (int i = 0; i < trackCount; i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && videoTrack == null && mime.startsWith(FrameType.video + "/")) {
+                    videoTrack = new Track(i, trackFormat, FrameType.video);
+                    extractor.selectTrack(i);
+                } else if (mime != null && audioTrack == null && mime.startsWith(FrameType.audio + "/")) {
+                    audioTrack = new Track(i, trackFormat, FrameType.audio);
+                    extractor.selectTrack(i);
+                }
+            }
+            if (videoTrack != null && audioTrack != null) {
+                tracks = new Track[]{videoTrack, audioTrack};
+            } else {
+                Track track = videoTrack != null ? videoTrack : audioTrack;
+                tracks = track != null ? new Track[]{track} : new Track[0];
+            }
+            return tracks.length > 0 ? tracks[0].format : null;
+        }
+
+        int selectedTrackIndex = -1;
         for (int i = 0; i < trackCount; i++) {
             format = extractor.getTrackFormat(i);
             String mime = format.getString(MediaFormat.KEY_MIME);
             if (mime != null && mime.startsWith(frameType.toString()+"/")) {
                 extractor.selectTrack(i);
+                selectedTrackIndex = i;
                 break;
             }
         }
+        Track track = new Track(selectedTrackIndex, format, frameType);
+        if (frameType == FrameType.video) {
+            videoTrack = track;
+        } else {
+            audioTrack = track;
+        }
+        tracks = new Track[]{track};
 
         return format;
     }
 
 
+    /**
+     * Demuxes the samples of the selected tracks to their decoders and releases the decoded frames at their
+     * presentation timestamps on a clock that is shared by the tracks. Output buffers of a decoder are held
+     * in a ring of at most maxFramesAhead frames while the decoder keeps decoding ahead. Samples of a decoder
+     * that doesn't take input wait in the sample queue of its track, see {@link #queueInput()}.
+     */
     private void decodeFrames() {
         try {
-            MediaCodec decoder = getMediaCodec();
-            decoder.configure(format, null, null, 0);
-            decoder.start();
+            for (Track track : tracks) {
+                track.decoder = frameType == FrameType.both ? getMediaCodec(track.format) : getMediaCodec();
+                configureDecoder(track.decoder, track.frameType, track.format);
+                track.decoder.start();
+                track.inputDecoder = track.decoder;
+            }
 
             MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-            boolean isEOS = false;
+            inputEOS = false;
+            mediaClock.reset();
+            //interleaved samples start with the earliest timestamp of the tracks
+            long startPtsUs = extractor.getSampleTime();
+            itemStartUs = Math.max(startPtsUs, 0);
+            itemOffsetUs = itemStartUs;
 
-            ByteBuffer rawAudioBuffer = ByteBuffer.allocate(get10MsBufferLength() *20);
+            while (!Thread.interrupted() && !isFinished() && !stopRequested.get()) {
+                boolean progressed = queueInput();
 
-
-            while (!Thread.interrupted() && !isEOS && !stopRequested.get()) {
-                int inputIndex = decoder.dequeueInputBuffer(10000);
-                System.out.println("inputIndex: " + inputIndex);
-                if (inputIndex >= 0) {
-                    ByteBuffer inputBuffer = decoder.getInputBuffer(inputIndex);
-                    int sampleSize = extractor.readSampleData(inputBuffer, 0);
-                    if (sampleSize < 0) {
-                        isEOS = true;
-                        decoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                    } else {
-                        decoder.queueInputBuffer(inputIndex, 0, sampleSize, extractor.getSampleTime(), 0);
-                        extractor.advance();
+                long nextDelayUs = DEQUEUE_TIMEOUT_US;
+                Track waitingTrack = null;
+                for (Track track : tracks) {
+                    if (!track.outputEOS && track.pendingCount < maxFramesAhead && isDecoderStarted(track)) {
+                        int outputIndex = track.decoder.dequeueOutputBuffer(bufferInfo, 0);
+                        if (outputIndex >= 0) {
+                            onOutputBuffer(track, outputIndex, bufferInfo, startPtsUs);
+                            progressed = true;
+                        } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                            onOutputFormatChanged(track);
+                            progressed = true;
+                        } else if (waitingTrack == null) {
+                            waitingTrack = track;
+                        }
+                    }
+                    progressed |= renderDueFrames(track);
+                    if (track.pendingCount > 0) {
+                        nextDelayUs = Math.min(nextDelayUs, mediaClock.getDelayUs(track.pendingPtsUs[track.pendingHead]));
                     }
                 }
 
-                int outputIndex = decoder.dequeueOutputBuffer(bufferInfo, 10000);
-                System.out.println("outputIndex: " + outputIndex);
+                if (!progressed && !nextItemLoaded && sources.size() > 1) {
+                    //next item is opened while the decoders are ahead, so the transition doesn't stall the output
+                    loadNextItem();
+                    continue;
+                }
 
-                if (outputIndex >= 0) {
-                    if(frameType == FrameType.video) {
-                        Image yuvImage = decoder.getOutputImage(outputIndex);
-                        videoFrameListener.onYuvImage(yuvImage);
-                        yuvImage.close();
-                    }
-                    else if(frameType == FrameType.audio){
-                        ByteBuffer outputBuffer = decoder.getOutputBuffer(outputIndex);
-                        rawAudioBuffer.put(outputBuffer);
-                        processAudio(rawAudioBuffer);
+                if (!progressed && nextDelayUs > 0) {
+                    //wait for a decoded frame or for the presentation time of the next frame, whichever comes first
+                    long waitUs = tracks.length > 1 ? Math.min(nextDelayUs, MULTI_TRACK_WAIT_US) : nextDelayUs;
+                    if (waitingTrack != null) {
+                        int outputIndex = waitingTrack.decoder.dequeueOutputBuffer(bufferInfo, waitUs);
+                        if (outputIndex >= 0) {
+                            onOutputBuffer(waitingTrack, outputIndex, bufferInfo, startPtsUs);
+                        } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                            onOutputFormatChanged(waitingTrack);
+                        }
+                    } else {
+                        //decoders are far enough ahead
+                        Thread.sleep(waitUs / 1000, (int) (waitUs % 1000) * 1000);
                     }
-                    decoder.releaseOutputBuffer(outputIndex, false);
-                } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                    // Handle format change if needed
                 }
-
-                Thread.sleep(sleepTime(frameType));
             }
 
-            decoder.stop();
-            decoder.release();
+            List<MediaCodec> decoders = new ArrayList<>();
+            List<MediaCodec> unstartedDecoders = new ArrayList<>();
+            for (Track track : tracks) {
+                for (int i = 0; i < track.pendingCount; i++) {
+                    int slot = (track.pendingHead + i) % maxFramesAhead;
+                    track.pendingDecoders[slot].releaseOutputBuffer(track.pendingIndexes[slot], false);
+                    addDistinct(decoders, track.pendingDecoders[slot]);
+                }
+                track.pendingCount = 0;
+                addDistinct(decoders, track.decoder);
+                addDistinct(track.inputDecoderPending ? unstartedDecoders : decoders, track.inputDecoder);
+            }
+            if (nextItem != null) {
+                for (int i = 0; i < tracks.length; i++) {
+                    addDistinct(rendersToSurface(tracks[i].frameType) ? unstartedDecoders : decoders, nextItem.decoders[i]);
+                }
+                nextItem.extractor.release();
+                nextItem = null;
+            }
+            decoders.removeAll(unstartedDecoders);
+            for (MediaCodec decoder : decoders) {
+                releaseDecoder(decoder);
+            }
+            for (MediaCodec decoder : unstartedDecoders) {
+                decoder.release();
+            }
             extractor.release();
+            if (outputSurface != null) {
+                outputSurface.release();
+                outputSurface = null;
+            }
             stopRequested.set(false);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public MediaCodec getMediaCodec() throws IOException {
-        MediaCodec decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
-        return decoder;
+    private boolean isFinished() {
+        for (Track track : tracks) {
+            if (!track.isFinished()) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void processAudio(ByteBuffer rawAudioBuffer) {
+    private static void addDistinct(List<MediaCodec> decoders, @Nullable MediaCodec decoder) {
+        if (decoder != null && !decoders.contains(decoder)) {
+            decoders.add(decoder);
+        }
+    }
 
-        int bufferLength = get10MsBufferLength();
+    private static void releaseDecoder(MediaCodec decoder) {
+        decoder.stop();
+        decoder.release();
+    }
 
+    private boolean rendersToSurface(FrameType trackFrameType) {
+        return trackFrameType == FrameType.video && outputSurface != null;
+    }
 
-        int length = rawAudioBuffer.position();
+    private static boolean isDecoderStarted(Track track) {
+        return !track.inputDecoderPending || track.decoder != track.inputDecoder;
+    }
 
-        rawAudioBuffer.position(0);
-        int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
-        int readBufferLength = bufferLength * format.getInteger(MediaFormat.KEY_SAMPLE_RATE) / DESIRED_SAMPLE_RATE*channelCount;
-        Log.d(TAG, "pushAudio: length: " + length + " bufferLength: " + bufferLength);
-        while(length - rawAudioBuffer.position() >= readBufferLength) {
-            byte[] pcmData = new byte[readBufferLength];
-            rawAudioBuffer.get(pcmData);
-            byte[] resampledData = modifySampleRate(pcmData, format.getInteger(MediaFormat.KEY_SAMPLE_RATE), DESIRED_SAMPLE_RATE, channelCount);
+    /**
+     * Video decoder renders to the output surface if there is one. Rotation of the video is passed with the
+     * frames instead of rotating the pixels.
+     */
+    private void configureDecoder(MediaCodec decoder, FrameType trackFrameType, MediaFormat trackFormat) {
+        Surface surface = rendersToSurface(trackFrameType) ? outputSurface : null;
+        if (surface != null) {
+            int rotation = getInteger(trackFormat, MediaFormat.KEY_ROTATION);
+            if (rotation > 0) {
+                trackFormat.setInteger(MediaFormat.KEY_ROTATION, 0);
+            }
+            videoCapturer.getSurfaceTextureHelper().setFrameRotation(Math.max(rotation, 0));
+            setTextureSize(getInteger(trackFormat, MediaFormat.KEY_WIDTH), getInteger(trackFormat, MediaFormat.KEY_HEIGHT));
+        }
+        decoder.configure(trackFormat, surface, null, 0);
+    }
 
-            Log.d(TAG, "length: " + length+ " position: " + rawAudioBuffer.position());
+    private void setTextureSize(int width, int height) {
+        if (width > 0 && height > 0) {
+            videoCapturer.setTextureSize(width, height);
+        }
+    }
 
-            audioFrameListener.onAudioData(resampledData);
+    /**
+     * Queues the next sample of the extractor to the decoder of its track. Tracks share the extractor, so if
+     * the decoder has no free input buffer, the sample is copied to the sample queue of its track and the
+     * samples of the other track behind it can be read. Reading waits only if the queue of the track is full.
+     * @return true if a sample or the end of stream is queued
+     */
+    private boolean queueInput() throws IOException {
+        boolean queued = queueEndOfStreamToPreviousDecoders();
+        for (Track track : tracks) {
+            queued |= queueSamplesOfQueue(track);
+        }
+        if (inputEOS) {
+            for (Track track : tracks) {
+                if (!track.inputEOS && track.queuedCount == 0) {
+                    int inputIndex = dequeueInputBuffer(track);
+                    if (inputIndex >= 0) {
+                        track.inputDecoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        track.inputEOS = true;
+                        queued = true;
+                    }
+                }
+            }
+            return queued;
+        }
 
-            //Log.i("Audio", "push audio: " + pcmData[0] + " : " + pcmData[1] + " : " + pcmData[2] + " : " + pcmData[3] + " : ");
-            //emulate real time streaming by waiting 10ms because we're reading from the file directly
-            //When you decode the audio from incoming RTSP stream, you don't need to sleep, just send it immediately when you get
+        if (itemEnded) {
+            for (Track track : tracks) {
+                if (track.queuedCount > 0) {
+                    //next item starts after the samples of this item
+                    return queued;
+                }
+            }
+            return startNextItem() || queued;
         }
 
-        byte[] moreData = new byte[length - rawAudioBuffer.position()];
-        rawAudioBuffer.get(moreData);
-        rawAudioBuffer.clear();
-        rawAudioBuffer.put(moreData);
+        //samples of multiple tracks are queued until the next one can't be, so a decoder gets the samples
+        //that are behind the samples of the other track without waiting for the next call
+        int sampleLimit = tracks.length == 1 ? 1 : MAX_QUEUED_SAMPLES;
+        for (int i = 0; i < sampleLimit; i++) {
+            Track track = tracks.length == 1 ? tracks[0] : getTrack(extractor.getSampleTrackIndex());
+            if (track == null) {
+                itemEnded = true;
+                return true;
+            }
+            //surface is connected to a single decoder, samples wait until the previous decoder is released
+            int inputIndex = track.inputDecoderPending || track.queuedCount > 0 ? -1 : dequeueInputBuffer(track);
+            if (inputIndex < 0) {
+                if (tracks.length == 1 || !queueSample(track)) {
+                    return queued;
+                }
+            } else {
+                ByteBuffer inputBuffer = track.inputDecoder.getInputBuffer(inputIndex);
+                if (track.pendingConfig != null) {
+                    queueCodecConfig(track, inputIndex, inputBuffer);
+                    return true;
+                }
+                int sampleSize = extractor.readSampleData(inputBuffer, 0);
+                if (sampleSize < 0) {
+                    //buffer is kept for the next item or for the end of stream
+                    track.heldInputIndex = inputIndex;
+                    itemEnded = true;
+                } else {
+                    long ptsUs = extractor.getSampleTime() - itemStartUs + itemOffsetUs;
+                    track.inputDecoder.queueInputBuffer(inputIndex, 0, sampleSize, ptsUs, 0);
+                    track.onSampleQueued(ptsUs);
+                    itemSampleCount++;
+                    extractor.advance();
+                }
+            }
+            queued = true;
+            if (itemEnded) {
+                return true;
+            }
+        }
+        return queued;
     }
 
-    private int get10MsBufferLength() {
-        int channels = 1;
-        int bytesPerSample = 2; //WebRtcAudioRecord.getBytesPerSample(WebRtcAudioRecord.DEFAULT_AUDIO_FORMAT)
+    /**
+     * Copies the sample at the head of the extractor to the sample queue of its track
+     * @return false if the queue of the track is full
+     */
+    private boolean queueSample(Track track) {
+        if (!track.canQueueSample()) {
+            return false;
+        }
+        int sampleSize = readSampleData();
+        if (sampleSize < 0) {
+            itemEnded = true;
+            return true;
+        }
+        int tail = (track.queuedHead + track.queuedCount) % MAX_QUEUED_SAMPLES;
+        ByteBuffer sample = track.queuedSamples[tail];
+        if (sample == null || sample.capacity() < sampleSize) {
+            sample = ByteBuffer.allocate(sampleSize);
+            track.queuedSamples[tail] = sample;
+        }
+        sample.clear();
+        sampleBuffer.position(0).limit(sampleSize);
+        sample.put(sampleBuffer);
+        sample.flip();
 
-        int bytesPerFrame = channels * bytesPerSample;
-        int framesPerBuffer = 44100 / BUFFERS_PER_SECOND;
-        int bufferLength = bytesPerFrame * framesPerBuffer;
-        return bufferLength;
+        long ptsUs = extractor.getSampleTime() - itemStartUs + itemOffsetUs;
+        track.queuedPtsUs[tail] = ptsUs;
+        track.queuedCount++;
+        track.onSampleQueued(ptsUs);
+        itemSampleCount++;
+        extractor.advance();
+        return true;
     }
 
-    private byte[] modifySampleRate(byte[] pcmData, int inputSampleRate, int outputSampleRate, int channelCount) {
-        int inputLength = pcmData.length / 2; // Dividing by 2 assuming 16-bit PCM data
-        int outputLength = (int) ((inputLength / (float) inputSampleRate) * outputSampleRate)/channelCount;
-        short[] inputSamples = new short[inputLength];
-        short[] outputSamples = new short[outputLength];
+    /**
+     * Reads the sample at the head of the extractor to the sample buffer. The buffer grows if it's too small
+     * for the sample.
+     */
+    private int readSampleData() {
+        if (sampleBuffer == null) {
+            int size = DEFAULT_SAMPLE_BUFFER_SIZE;
+            for (Track track : tracks) {
+                size = Math.max(size, getInteger(track.format, MediaFormat.KEY_MAX_INPUT_SIZE));
+            }
+            sampleBuffer = ByteBuffer.allocate(size);
+        }
+        while (true) {
+            sampleBuffer.clear();
+            try {
+                return extractor.readSampleData(sampleBuffer, 0);
+            } catch (IllegalArgumentException e) {
+                if (sampleBuffer.capacity() >= MAX_SAMPLE_BUFFER_SIZE) {
+                    throw e;
+                }
+                sampleBuffer = ByteBuffer.allocate(sampleBuffer.capacity() * 2);
+            }
+        }
+    }
 
-        // Convert byte array to short array
-        ByteBuffer.wrap(pcmData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(inputSamples);
+    /**
+     * Queues the samples in the sample queue of the track to its decoder while it has free input buffers
+     */
+    private boolean queueSamplesOfQueue(Track track) {
+        boolean queued = false;
+        while (track.queuedCount > 0 && !track.inputDecoderPending) {
+            int inputIndex = dequeueInputBuffer(track);
+            if (inputIndex < 0) {
+                break;
+            }
+            ByteBuffer inputBuffer = track.inputDecoder.getInputBuffer(inputIndex);
+            queued = true;
+            if (track.pendingConfig != null) {
+                queueCodecConfig(track, inputIndex, inputBuffer);
+                continue;
+            }
+            ByteBuffer sample = track.queuedSamples[track.queuedHead];
+            int sampleSize = sample.remaining();
+            inputBuffer.clear();
+            inputBuffer.put(sample);
+            track.inputDecoder.queueInputBuffer(inputIndex, 0, sampleSize, track.queuedPtsUs[track.queuedHead], 0);
+            track.queuedHead = (track.queuedHead + 1) % MAX_QUEUED_SAMPLES;
+            track.queuedCount--;
+        }
+        return queued;
+    }
 
-        // Perform linear interpolation and stereo to mono conversion
-        float ratio = (float) inputSampleRate / outputSampleRate;
-        for (int i = 0; i < outputLength; i++) {
-            float index = i * ratio;
-            int leftSampleIndex = (int) index;
-            int rightSampleIndex = Math.min(leftSampleIndex + 1, inputLength - channelCount);
-            float fraction = index - leftSampleIndex;
+    private int dequeueInputBuffer(Track track) {
+        int inputIndex = track.heldInputIndex;
+        if (inputIndex >= 0) {
+            track.heldInputIndex = -1;
+            return inputIndex;
+        }
+        return track.inputDecoder.dequeueInputBuffer(0);
+    }
 
-            short leftSample = inputSamples[leftSampleIndex * channelCount];
-            short rightSample = inputSamples[Math.min(rightSampleIndex * channelCount, inputLength - 1)];
+    /**
+     * Ends the input of the decoders that are replaced by the decoders of the next item. They're drained
+     * before the output continues from the next decoders.
+     */
+    private boolean queueEndOfStreamToPreviousDecoders() {
+        boolean queued = false;
+        for (Track track : tracks) {
+            if (track.endingDecoder != null) {
+                int inputIndex = track.endingDecoder.dequeueInputBuffer(0);
+                if (inputIndex >= 0) {
+                    track.endingDecoder.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    track.endingDecoder = null;
+                    queued = true;
+                }
+            }
+        }
+        return queued;
+    }
+
+    private void queueCodecConfig(Track track, int inputIndex, ByteBuffer inputBuffer) {
+        int size = 0;
+        inputBuffer.clear();
+        for (ByteBuffer config : track.pendingConfig) {
+            size += config.remaining();
+            inputBuffer.put(config.duplicate());
+        }
+        track.pendingConfig = null;
+        track.inputDecoder.queueInputBuffer(inputIndex, 0, size, 0, MediaCodec.BUFFER_FLAG_CODEC_CONFIG);
+    }
+
+    /**
+     * Continues with the next item at the end of the current one. A single item is seeked to its beginning,
+     * otherwise the next item replaces the extractor and its tracks switch to their preloaded decoders.
+     * Timestamps of the next item start where the current item ends.
+     * @return false if the transition waits for the previous decoder of a track to drain
+     */
+    private boolean startNextItem() {
+        for (Track track : tracks) {
+            if (track.decoder != track.inputDecoder || track.inputDecoderPending) {
+                return false;
+            }
+        }
+        itemEnded = false;
+        emptyItemCount = itemSampleCount > 0 ? 0 : emptyItemCount + 1;
+        if (!(looping || itemIndex + 1 < sources.size()) || emptyItemCount >= sources.size()) {
+            inputEOS = true;
+            return true;
+        }
+
+        long itemEndUs = itemOffsetUs;
+        for (Track track : tracks) {
+            if (track.lastPtsUs >= 0) {
+                long durationUs = track.ptsIntervalUs > 0 ? track.ptsIntervalUs : DEFAULT_SAMPLE_DURATION_US;
+                itemEndUs = Math.max(itemEndUs, track.lastPtsUs + durationUs);
+            }
+        }
+
+        if (sources.size() == 1) {
+            extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        } else {
+            if (!nextItemLoaded) {
+                loadNextItem();
+            }
+            PlaylistItem item = nextItem;
+            nextItem = null;
+            nextItemLoaded = false;
+            if (item == null) {
+                Log.w(TAG, "No item can be opened after item " + itemIndex);
+                inputEOS = true;
+                return true;
+            }
+            switchToItem(item);
+        }
+        itemStartUs = Math.max(extractor.getSampleTime(), 0);
+        itemOffsetUs = itemEndUs;
+        itemSampleCount = 0;
+        Log.i(TAG, "Item " + itemIndex + " starts at " + itemEndUs + " us");
+        return true;
+    }
+
+    private void switchToItem(PlaylistItem item) {
+        extractor.release();
+        extractor = item.extractor;
+        itemIndex = item.index;
+        for (int i = 0; i < tracks.length; i++) {
+            Track track = tracks[i];
+            track.trackIndex = item.trackIndexes[i];
+            if (item.formats[i] == null) {
+                //item doesn't have this track
+                continue;
+            }
+            MediaFormat previousFormat = track.format;
+            track.format = item.formats[i];
+            MediaCodec decoder = item.decoders[i];
+            if (decoder == null) {
+                //decoder continues, it only needs the codec config if it's different
+                track.pendingConfig = hasSameCodecConfig(previousFormat, track.format) ? null : getCodecConfig(track.format);
+            } else {
+                MediaCodec previousDecoder = track.inputDecoder;
+                track.inputDecoder = decoder;
+                track.inputDecoderPending = rendersToSurface(track.frameType);
+                track.pendingConfig = null;
+                if (track.heldInputIndex >= 0) {
+                    previousDecoder.queueInputBuffer(track.heldInputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    track.heldInputIndex = -1;
+                } else {
+                    track.endingDecoder = previousDecoder;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the item after the current one and starts the decoders of its tracks that the current decoders
+     * can't decode. Items that can't be opened are skipped.
+     */
+    private void loadNextItem() {
+        nextItemLoaded = true;
+        int count = sources.size();
+        for (int i = 1; i <= count && (looping || itemIndex + i < count); i++) {
+            int index = (itemIndex + i) % count;
+            PlaylistItem item = null;
+            try {
+                item = new PlaylistItem(index, createMediaExtractor(index), tracks.length);
+                selectTracks(item);
+                nextItem = item;
+                return;
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Item " + index + " can't be opened, it's skipped", e);
+                if (item != null) {
+                    for (MediaCodec decoder : item.decoders) {
+                        if (decoder != null) {
+                            decoder.release();
+                        }
+                    }
+                    item.extractor.release();
+                }
+            }
+        }
+    }
 
-            // Linear interpolation and stereo to mono conversion
-            outputSamples[i] = (short) (((1 - fraction) * leftSample + fraction * rightSample) / 2);
+    private void selectTracks(PlaylistItem item) throws IOException {
+        int trackCount = item.extractor.getTrackCount();
+        boolean selected = false;
+        for (int i = 0; i < tracks.length; i++) {
+            Track track = tracks[i];
+            item.trackIndexes[i] = -1;
+            for (int j = 0; j < trackCount; j++) {
+                MediaFormat trackFormat = item.extractor.getTrackFormat(j);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith(track.frameType + "/")) {
+                    item.extractor.selectTrack(j);
+                    item.trackIndexes[i] = j;
+                    item.formats[i] = trackFormat;
+                    if (!canContinue(track.frameType, track.format, trackFormat)) {
+                        MediaCodec decoder = getMediaCodec(trackFormat);
+                        item.decoders[i] = decoder;
+                        if (!rendersToSurface(track.frameType)) {
+                            configureDecoder(decoder, track.frameType, trackFormat);
+                            decoder.start();
+                        }
+                    }
+                    selected = true;
+                    break;
+                }
+            }
+        }
+        if (!selected) {
+            throw new IOException("Item " + item.index + " doesn't have a track to read");
         }
+    }
+
+    /**
+     * Video decoder continues with the same codec and resolution, codec config is queued in band if it changes.
+     * Audio decoder continues if the codec, the format and the codec config are the same.
+     */
+    private static boolean canContinue(FrameType frameType, MediaFormat format, MediaFormat nextFormat) {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (mime == null || !mime.equals(nextFormat.getString(MediaFormat.KEY_MIME))) {
+            return false;
+        }
+        if (frameType == FrameType.video) {
+            return getInteger(format, MediaFormat.KEY_WIDTH) == getInteger(nextFormat, MediaFormat.KEY_WIDTH)
+                    && getInteger(format, MediaFormat.KEY_HEIGHT) == getInteger(nextFormat, MediaFormat.KEY_HEIGHT);
+        }
+        return getInteger(format, MediaFormat.KEY_SAMPLE_RATE) == getInteger(nextFormat, MediaFormat.KEY_SAMPLE_RATE)
+                && getInteger(format, MediaFormat.KEY_CHANNEL_COUNT) == getInteger(nextFormat, MediaFormat.KEY_CHANNEL_COUNT)
+                && hasSameCodecConfig(format, nextFormat);
+    }
+
+    private static int getInteger(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getInteger(key) : -1;
+    }
+
+    @Nullable
+    private static ByteBuffer getCodecConfig(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getByteBuffer(key) : null;
+    }
 
-        // Convert short array to byte array
-        byte[] outputData = new byte[outputLength * 2]; // Multiplying by 2 assuming 16-bit PCM data
-        ByteBuffer.wrap(outputData).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(outputSamples);
+    private static boolean hasSameCodecConfig(MediaFormat format, MediaFormat nextFormat) {
+        for (String key : CODEC_CONFIG_KEYS) {
+            ByteBuffer config = getCodecConfig(format, key);
+            ByteBuffer nextConfig = getCodecConfig(nextFormat, key);
+            if (config == null ? nextConfig != null : !config.equals(nextConfig)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return outputData;
+    @Nullable
+    private static ByteBuffer[] getCodecConfig(MediaFormat format) {
+        List<ByteBuffer> configs = new ArrayList<>();
+        for (String key : CODEC_CONFIG_KEYS) {
+            ByteBuffer config = getCodecConfig(format, key);
+            if (config != null) {
+                configs.add(config.duplicate());
+            }
+        }
+        return configs.isEmpty() ? null : configs.toArray(new ByteBuffer[0]);
     }
 
-    private long sleepTime(FrameType frameType) {
-        return frameType == FrameType.video ? 50 : 10;
+    @Nullable
+    private Track getTrack(int trackIndex) {
+        for (Track track : tracks) {
+            if (track.trackIndex == trackIndex) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    private void onOutputBuffer(Track track, int outputIndex, MediaCodec.BufferInfo bufferInfo, long startPtsUs) {
+        MediaCodec decoder = track.decoder;
+        boolean endOfStream = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+        //end of a replaced decoder is the end of its item, output continues from the next decoder
+        boolean switchingDecoder = endOfStream && decoder != track.inputDecoder;
+        track.outputEOS = endOfStream && !switchingDecoder;
+        if (endOfStream && bufferInfo.size == 0) {
+            decoder.releaseOutputBuffer(outputIndex, false);
+        } else {
+            if (!mediaClock.isAnchored()) {
+                //clock starts with the earliest sample, so the tracks keep their offset to each other
+                mediaClock.anchor(startPtsUs >= 0 ? Math.min(startPtsUs, bufferInfo.presentationTimeUs) : bufferInfo.presentationTimeUs);
+            }
+            int tail = (track.pendingHead + track.pendingCount) % maxFramesAhead;
+            track.pendingIndexes[tail] = outputIndex;
+            track.pendingPtsUs[tail] = bufferInfo.presentationTimeUs;
+            track.pendingDecoders[tail] = decoder;
+            track.pendingCount++;
+        }
+        if (switchingDecoder) {
+            track.decoder = track.inputDecoder;
+            if (track.frameType == FrameType.audio) {
+                track.setAudioFormat(track.format);
+            }
+            releaseIfUnused(track, decoder);
+        }
+    }
+
+    /**
+     * Replaced decoder is released after its last held frame is rendered
+     */
+    private void releaseIfUnused(Track track, MediaCodec decoder) {
+        if (decoder == track.decoder || decoder == track.inputDecoder) {
+            return;
+        }
+        for (int i = 0; i < track.pendingCount; i++) {
+            if (track.pendingDecoders[(track.pendingHead + i) % maxFramesAhead] == decoder) {
+                return;
+            }
+        }
+        releaseDecoder(decoder);
+        if (track.inputDecoderPending) {
+            //surface is free for the decoder of the next item
+            configureDecoder(track.inputDecoder, track.frameType, track.format);
+            track.inputDecoder.start();
+            track.inputDecoderPending = false;
+        }
+    }
+
+    /**
+     * Renders the frames of the track whose presentation time has come. Late video frames are dropped.
+     * @return true if a frame is released
+     */
+    private boolean renderDueFrames(Track track) {
+        boolean released = false;
+        while (track.pendingCount > 0) {
+            long delayUs = mediaClock.getDelayUs(track.pendingPtsUs[track.pendingHead]);
+            if (delayUs > 0) {
+                break;
+            }
+            long latenessUs = -delayUs;
+            if (latenessUs > RESYNC_THRESHOLD_US) {
+                Log.w(TAG, "Output is " + (latenessUs / 1000) + " ms late, clock is anchored again");
+                mediaClock.anchor(track.pendingPtsUs[track.pendingHead]);
+                latenessUs = 0;
+            }
+            int outputIndex = track.pendingIndexes[track.pendingHead];
+            MediaCodec decoder = track.pendingDecoders[track.pendingHead];
+            boolean toSurface = false;
+            if (track.frameType == FrameType.video && latenessUs > lateFrameThresholdUs) {
+                droppedFrameCount++;
+            } else {
+                presentationTimeUs = track.pendingPtsUs[track.pendingHead];
+                toSurface = renderOutput(track, decoder, outputIndex);
+                renderedFrameCount++;
+                onFrameRendered(track, latenessUs);
+            }
+            if (toSurface) {
+                //time of the surface frame is its capture time on the texture
+                decoder.releaseOutputBuffer(outputIndex, System.nanoTime());
+            } else {
+                decoder.releaseOutputBuffer(outputIndex, false);
+            }
+            track.pendingDecoders[track.pendingHead] = null;
+            track.pendingHead = (track.pendingHead + 1) % maxFramesAhead;
+            track.pendingCount--;
+            if (decoder != track.decoder) {
+                releaseIfUnused(track, decoder);
+            }
+            released = true;
+        }
+        return released;
+    }
+
+    /**
+     * Lip sync error is the lateness of the video frame relative to the lateness of the last audio frame.
+     * It's positive if video is behind audio.
+     */
+    private void onFrameRendered(Track track, long latenessUs) {
+        track.latenessUs = latenessUs;
+        if (track == videoTrack && audioTrack != null && audioTrack.latenessUs >= 0) {
+            long errorUs = latenessUs - audioTrack.latenessUs;
+            lipSyncErrorUs = errorUs;
+            maxLipSyncErrorUs = Math.max(maxLipSyncErrorUs, Math.abs(errorUs));
+            SdkMetrics.REGISTRY.observe(SdkMetrics.FILE_LIP_SYNC_ERROR_SECONDS, Math.abs(errorUs) / 1e6);
+        }
+    }
+
+    /**
+     * @return true if the output buffer should be rendered to the output surface
+     */
+    private boolean renderOutput(Track track, MediaCodec decoder, int outputIndex) {
+        if (rendersToSurface(track.frameType)) {
+            return true;
+        }
+        if(track.frameType == FrameType.video) {
+            if (videoFrameListener == null) {
+                return false;
+            }
+            Image yuvImage = decoder.getOutputImage(outputIndex);
+            videoFrameListener.onYuvImage(yuvImage);
+            yuvImage.close();
+        }
+        else if(track.frameType == FrameType.audio){
+            if (audioFrameListener == null) {
+                return false;
+            }
+            processAudio(track, decoder.getOutputBuffer(outputIndex));
+        }
+        return false;
+    }
+
+    private void onOutputFormatChanged(Track track) {
+        MediaFormat outputFormat = track.decoder.getOutputFormat();
+        //e.g. HE-AAC is decoded at twice the rate in the container
+        if (track.frameType == FrameType.audio && outputFormat != null) {
+            track.setAudioFormat(outputFormat);
+        } else if (rendersToSurface(track.frameType) && outputFormat != null) {
+            //frame is the crop rectangle of the decoded buffer, e.g. 1080 lines of 1088
+            int width = getInteger(outputFormat, MediaFormat.KEY_WIDTH);
+            int height = getInteger(outputFormat, MediaFormat.KEY_HEIGHT);
+            if (outputFormat.containsKey(KEY_CROP_RIGHT) && outputFormat.containsKey(KEY_CROP_BOTTOM)) {
+                width = outputFormat.getInteger(KEY_CROP_RIGHT) - Math.max(getInteger(outputFormat, KEY_CROP_LEFT), 0) + 1;
+                height = outputFormat.getInteger(KEY_CROP_BOTTOM) - Math.max(getInteger(outputFormat, KEY_CROP_TOP), 0) + 1;
+            }
+            setTextureSize(width, height);
+        }
+    }
+
+    /**
+     * @return extractor of the playlist item, it's public to be mocked in the tests
+     */
+    public MediaExtractor createMediaExtractor(int itemIndex) throws IOException {
+        MediaExtractor mediaExtractor = new MediaExtractor();
+        try {
+            sources.get(itemIndex).setTo(mediaExtractor);
+        } catch (IOException | RuntimeException e) {
+            mediaExtractor.release();
+            throw e;
+        }
+        return mediaExtractor;
+    }
+
+    public MediaCodec getMediaCodec() throws IOException {
+        return getMediaCodec(format);
+    }
+
+    public MediaCodec getMediaCodec(MediaFormat format) throws IOException {
+        MediaCodec decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        return decoder;
+    }
+
+    /**
+     * Resamples the decoded audio and passes it to the listener in 10 ms chunks. Samples of a partial chunk
+     * wait for the next output buffer.
+     */
+    private void processAudio(Track track, ByteBuffer decodedBuffer) {
+        ByteBuffer resampledAudioBuffer = track.resampledAudioBuffer;
+        while (true) {
+            track.resampler.process(decodedBuffer, resampledAudioBuffer);
+            boolean full = !resampledAudioBuffer.hasRemaining();
+            resampledAudioBuffer.flip();
+            while (resampledAudioBuffer.remaining() >= AUDIO_CHUNK_LENGTH) {
+                resampledAudioBuffer.get(track.audioChunk);
+                audioFrameListener.onAudioData(track.audioChunk);
+            }
+            resampledAudioBuffer.compact();
+            if (!full) {
+                //decoded buffer is consumed
+                break;
+            }
+        }
     }
 
     public void stop() {
         stopRequested.set(true);
     }
 
+    /**
+     * @return number of the frames passed to the listeners
+     */
+    public long getRenderedFrameCount() {
+        return renderedFrameCount;
+    }
+
+    /**
+     * @return number of the video frames dropped because they were late
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return lip sync error of the last video frame in microseconds, positive if video is behind audio.
+     * It's 0 if the video and the audio tracks are not read together
+     */
+    public long getLipSyncErrorUs() {
+        return lipSyncErrorUs;
+    }
+
+    /**
+     * @return maximum absolute lip sync error in microseconds
+     */
+    public long getMaxLipSyncErrorUs() {
+        return maxLipSyncErrorUs;
+    }
+
+    /**
+     * @return timestamp of the frame that is passed to the listener on the timeline of the playlist, it's
+     * increasing across the items and the loops
+     */
+    public long getPresentationTimeUs() {
+        return presentationTimeUs;
+    }
+
+    /**
+     * @return index of the playlist item that is being read
+     */
+    public int getCurrentItemIndex() {
+        return itemIndex;
+    }
+
     public void setMediaExtractorForTest(MediaExtractor extractor) {
         this.extractor = extractor;
     }
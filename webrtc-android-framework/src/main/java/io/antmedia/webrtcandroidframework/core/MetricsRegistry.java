@@ -0,0 +1,322 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Registry of counters, gauges and histograms that can be exported in OpenMetrics text format.
+ *
+ * A metric is registered once and its id is kept by the caller. Values are held in primitive arrays indexed by
+ * the id, so updating a metric doesn't allocate. Scraping copies the arrays under the lock and formats the copy,
+ * so a slow scrape doesn't block the updates.
+ *
+ * A metric may have a label set, e.g. stream_id="stream1". Metrics with the same name and different labels are
+ * exported as the same family.
+ */
+public class MetricsRegistry {
+
+    public static final int TYPE_COUNTER = 0;
+    public static final int TYPE_GAUGE = 1;
+    public static final int TYPE_HISTOGRAM = 2;
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /**
+     * Buckets in seconds for the latencies in the SDK, e.g. parsing a stats report or the interval of rendered frames
+     */
+    public static final double[] DEFAULT_LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1};
+
+    private static final int INITIAL_CAPACITY = 32;
+    private static final String[] TYPE_NAMES = {"counter", "gauge", "histogram"};
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] helps = new String[INITIAL_CAPACITY];
+    private String[] labels = new String[INITIAL_CAPACITY];
+    private int[] types = new int[INITIAL_CAPACITY];
+    private boolean[] active = new boolean[INITIAL_CAPACITY];
+    //value of a counter or gauge, sum of a histogram
+    private double[] values = new double[INITIAL_CAPACITY];
+    //histogram observations count
+    private long[] counts = new long[INITIAL_CAPACITY];
+    //histogram buckets are kept in flat arrays, bucketOffsets[id] is the index of the first bucket of the histogram
+    private int[] bucketOffsets = new int[INITIAL_CAPACITY];
+    private int[] bucketLengths = new int[INITIAL_CAPACITY];
+    private double[] bucketBounds = new double[INITIAL_CAPACITY];
+    private long[] bucketCounts = new long[INITIAL_CAPACITY];
+    private int size;
+    private int bucketSize;
+
+    public int counter(String name, String help) {
+        return counter(name, help, null);
+    }
+
+    /**
+     * @param name name of the counter without the _total suffix
+     * @param labels label set without the braces, e.g. stream_id="stream1". See {@link #labels(String...)}
+     * @return id of the counter
+     */
+    public int counter(String name, String help, String labels) {
+        return register(name, TYPE_COUNTER, help, labels, null);
+    }
+
+    public int gauge(String name, String help) {
+        return gauge(name, help, null);
+    }
+
+    public int gauge(String name, String help, String labels) {
+        return register(name, TYPE_GAUGE, help, labels, null);
+    }
+
+    public int histogram(String name, String help, double[] buckets) {
+        return histogram(name, help, null, buckets);
+    }
+
+    /**
+     * @param buckets upper bounds of the buckets in increasing order. +Inf bucket is added implicitly
+     */
+    public int histogram(String name, String help, String labels, double[] buckets) {
+        return register(name, TYPE_HISTOGRAM, help, labels, buckets);
+    }
+
+    /**
+     * Registers a metric. Registering an existing name and label set returns the existing id.
+     */
+    private synchronized int register(String name, int type, String help, String labelSet, double[] buckets) {
+        for (int i = 0; i < size; i++) {
+            if (active[i] && names[i].equals(name) && equalLabels(labels[i], labelSet)) {
+                if (types[i] != type) {
+                    throw new IllegalArgumentException(name + " is already registered as a " + TYPE_NAMES[types[i]]);
+                }
+                return i;
+            }
+        }
+        int id = findFreeId();
+        names[id] = name;
+        helps[id] = help;
+        labels[id] = labelSet;
+        types[id] = type;
+        active[id] = true;
+        values[id] = 0;
+        counts[id] = 0;
+        bucketLengths[id] = 0;
+        if (type == TYPE_HISTOGRAM) {
+            addBuckets(id, buckets);
+        }
+        return id;
+    }
+
+    private static boolean equalLabels(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private int findFreeId() {
+        for (int i = 0; i < size; i++) {
+            if (!active[i]) {
+                return i;
+            }
+        }
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            helps = Arrays.copyOf(helps, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            types = Arrays.copyOf(types, capacity);
+            active = Arrays.copyOf(active, capacity);
+            values = Arrays.copyOf(values, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            bucketOffsets = Arrays.copyOf(bucketOffsets, capacity);
+            bucketLengths = Arrays.copyOf(bucketLengths, capacity);
+        }
+        return size++;
+    }
+
+    private void addBuckets(int id, double[] buckets) {
+        //buckets of a removed histogram are not reused, histograms are rarely removed
+        if (bucketSize + buckets.length > bucketBounds.length) {
+            int capacity = Math.max(bucketBounds.length * 2, bucketSize + buckets.length);
+            bucketBounds = Arrays.copyOf(bucketBounds, capacity);
+            bucketCounts = Arrays.copyOf(bucketCounts, capacity);
+        }
+        bucketOffsets[id] = bucketSize;
+        bucketLengths[id] = buckets.length;
+        for (int i = 0; i < buckets.length; i++) {
+            if (i > 0 && buckets[i] <= buckets[i - 1]) {
+                throw new IllegalArgumentException("Buckets should be increasing");
+            }
+            bucketBounds[bucketSize] = buckets[i];
+            bucketCounts[bucketSize] = 0;
+            bucketSize++;
+        }
+    }
+
+    /**
+     * Removes the metric, e.g. the metrics of a finished stream. Its id may be reused by another metric.
+     */
+    public synchronized void remove(int id) {
+        if (id >= 0 && id < size) {
+            active[id] = false;
+        }
+    }
+
+    public synchronized void increment(int id) {
+        values[id]++;
+    }
+
+    public synchronized void add(int id, double delta) {
+        values[id] += delta;
+    }
+
+    public synchronized void set(int id, double value) {
+        values[id] = value;
+    }
+
+    public synchronized void observe(int id, double value) {
+        values[id] += value;
+        counts[id]++;
+        int offset = bucketOffsets[id];
+        int end = offset + bucketLengths[id];
+        for (int i = offset; i < end; i++) {
+            if (value <= bucketBounds[i]) {
+                bucketCounts[i]++;
+                return;
+            }
+        }
+    }
+
+    public synchronized double getValue(int id) {
+        return values[id];
+    }
+
+    public synchronized long getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * @return metrics in OpenMetrics text format
+     */
+    public String toOpenMetrics() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeOpenMetrics(builder);
+        } catch (IOException e) {
+            //StringBuilder doesn't throw
+        }
+        return builder.toString();
+    }
+
+    public void writeOpenMetrics(Appendable out) throws IOException {
+        String[] names;
+        String[] helps;
+        String[] labels;
+        int[] types;
+        boolean[] active;
+        double[] values;
+        long[] counts;
+        int[] bucketOffsets;
+        int[] bucketLengths;
+        double[] bucketBounds;
+        long[] bucketCounts;
+        int size;
+        synchronized (this) {
+            size = this.size;
+            names = Arrays.copyOf(this.names, size);
+            helps = Arrays.copyOf(this.helps, size);
+            labels = Arrays.copyOf(this.labels, size);
+            types = Arrays.copyOf(this.types, size);
+            active = Arrays.copyOf(this.active, size);
+            values = Arrays.copyOf(this.values, size);
+            counts = Arrays.copyOf(this.counts, size);
+            bucketOffsets = Arrays.copyOf(this.bucketOffsets, size);
+            bucketLengths = Arrays.copyOf(this.bucketLengths, size);
+            bucketBounds = Arrays.copyOf(this.bucketBounds, bucketSize);
+            bucketCounts = Arrays.copyOf(this.bucketCounts, bucketSize);
+        }
+
+        //metrics of a family are written together, the family of the first metric is written first
+        boolean[] written = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if (!active[i] || written[i]) {
+                continue;
+            }
+            out.append("# TYPE ").append(names[i]).append(' ').append(TYPE_NAMES[types[i]]).append('\n');
+            if (helps[i] != null) {
+                out.append("# HELP ").append(names[i]).append(' ').append(escapeHelp(helps[i])).append('\n');
+            }
+            for (int j = i; j < size; j++) {
+                if (!active[j] || written[j] || !names[j].equals(names[i])) {
+                    continue;
+                }
+                written[j] = true;
+                if (types[j] == TYPE_COUNTER) {
+                    writeSample(out, names[j], "_total", labels[j], null, formatValue(values[j]));
+                } else if (types[j] == TYPE_GAUGE) {
+                    writeSample(out, names[j], "", labels[j], null, formatValue(values[j]));
+                } else {
+                    long cumulativeCount = 0;
+                    int offset = bucketOffsets[j];
+                    for (int k = offset; k < offset + bucketLengths[j]; k++) {
+                        cumulativeCount += bucketCounts[k];
+                        writeSample(out, names[j], "_bucket", labels[j], formatValue(bucketBounds[k]), Long.toString(cumulativeCount));
+                    }
+                    writeSample(out, names[j], "_bucket", labels[j], "+Inf", Long.toString(counts[j]));
+                    writeSample(out, names[j], "_count", labels[j], null, Long.toString(counts[j]));
+                    writeSample(out, names[j], "_sum", labels[j], null, formatValue(values[j]));
+                }
+            }
+        }
+        out.append("# EOF\n");
+    }
+
+    private static void writeSample(Appendable out, String name, String suffix, String labels, String le, String value) throws IOException {
+        out.append(name).append(suffix);
+        if (labels != null || le != null) {
+            out.append('{');
+            if (labels != null) {
+                out.append(labels);
+            }
+            if (le != null) {
+                if (labels != null) {
+                    out.append(',');
+                }
+                out.append("le=\"").append(le).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    /**
+     * Builds a label set from the name value pairs, e.g. labels("stream_id", "stream1") returns stream_id="stream1".
+     * Values are escaped as required by OpenMetrics.
+     */
+    public static String labels(String... nameValues) {
+        if (nameValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels should be name value pairs");
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            String value = nameValues[i + 1] == null ? "" : nameValues[i + 1];
+            builder.append(nameValues[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Minimal HTTP endpoint that serves the metrics in OpenMetrics text format on the loopback interface,
+ * e.g. for scraping over adb forward tcp:9464 tcp:9464. It answers every request with the metrics,
+ * so it's only meant for debug builds.
+ */
+public class MetricsServer {
+
+    private static final String TAG = MetricsServer.class.getSimpleName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int READ_TIMEOUT_MS = 2000;
+
+    private final MetricsRegistry registry;
+    private final int port;
+    private ServerSocket serverSocket;
+    private Thread thread;
+
+    /**
+     * @param port port to listen, 0 picks a free port. See {@link #getPort()}
+     */
+    public MetricsServer(MetricsRegistry registry, int port) {
+        this.registry = registry;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        ServerSocket socket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
+        serverSocket = socket;
+        thread = new Thread(() -> serve(socket), TAG);
+        thread.setDaemon(true);
+        thread.start();
+        Log.i(TAG, "Metrics are served on port " + socket.getLocalPort());
+    }
+
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Metrics server cannot be closed", e);
+        }
+        serverSocket = null;
+        thread = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return serverSocket != null;
+    }
+
+    /**
+     * @return port the server listens, -1 if it's not started
+     */
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    private void serve(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try (Socket client = socket.accept()) {
+                client.setSoTimeout(READ_TIMEOUT_MS);
+                handle(client);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    Log.w(TAG, "Metrics request failed", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), UTF_8));
+        String requestLine = reader.readLine();
+        //headers are skipped
+        String line = requestLine;
+        while (line != null && !line.isEmpty()) {
+            line = reader.readLine();
+        }
+
+        String status;
+        byte[] body;
+        if (requestLine != null && requestLine.startsWith("GET ")) {
+            status = "200 OK";
+            body = registry.toOpenMetrics().getBytes(UTF_8);
+        } else {
+            status = "405 Method Not Allowed";
+            body = new byte[0];
+        }
+        OutputStream outputStream = client.getOutputStream();
+        String header = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + MetricsRegistry.CONTENT_TYPE + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        outputStream.write(header.getBytes(UTF_8));
+        outputStream.write(body);
+        outputStream.flush();
+    }
+}
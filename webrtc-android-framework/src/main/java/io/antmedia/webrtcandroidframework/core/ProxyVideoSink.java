@@ -7,15 +7,24 @@ import org.webrtc.VideoSink;
 public class ProxyVideoSink implements VideoSink {
     private VideoSink target;
     private String TAG = "ProxyVideoSink";
+    private long lastFrameTimeNs;
 
     @Override
     synchronized public void onFrame(VideoFrame frame) {
       if (target == null) {
         Logging.d(TAG, "Dropping frame in proxy because target is null.");
+        SdkMetrics.REGISTRY.increment(SdkMetrics.FRAMES_DROPPED);
         return;
       }
 
       target.onFrame(frame);
+
+      long now = System.nanoTime();
+      if (lastFrameTimeNs != 0) {
+        SdkMetrics.REGISTRY.observe(SdkMetrics.FRAME_INTERVAL_SECONDS, (now - lastFrameTimeNs) / 1e9);
+      }
+      lastFrameTimeNs = now;
+      SdkMetrics.REGISTRY.increment(SdkMetrics.FRAMES_RENDERED);
     }
 
     synchronized public void setTarget(VideoSink target) {
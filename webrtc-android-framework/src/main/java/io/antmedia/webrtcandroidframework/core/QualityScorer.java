@@ -0,0 +1,95 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+/**
+ * Computes quality scores of the tracks from their stats.
+ *
+ * Audio is scored with the simplified E-model (ITU-T G.107) that is common in WebRTC monitoring:
+ * effective latency = rtt / 2 + 2 * jitter + 10ms, R = 93.2 - latency impairment - 2.5 * loss percentage,
+ * MOS = 1 + 0.035R + 7e-6 * R(R - 60)(100 - R).
+ *
+ * Video has no standard equivalent. It starts from 5 and is impaired by loss, round trip time,
+ * the ratio of the time spent in freezes and low frame rates.
+ *
+ * Scores only depend on the latest values of the tracks, so computing them costs a few arithmetic operations per track.
+ */
+public class QualityScorer {
+
+    public static final double MIN_SCORE = 1;
+    public static final double MAX_SCORE = 5;
+    public static final double MAX_MOS = 4.5;
+
+    //Frame rate below which video is considered choppy
+    public static final double SMOOTH_FRAMES_PER_SECOND = 15;
+
+    private QualityScorer() {
+    }
+
+    /**
+     * @param lossPercentage lost packets percentage
+     * @param jitterMs jitter in milliseconds
+     * @param roundTripTimeMs round trip time in milliseconds
+     * @return mean opinion score in 1-4.5
+     */
+    public static double computeAudioMos(double lossPercentage, double jitterMs, double roundTripTimeMs) {
+        double effectiveLatency = roundTripTimeMs / 2 + 2 * jitterMs + 10;
+        double r = effectiveLatency < 160 ? 93.2 - effectiveLatency / 40 : 93.2 - (effectiveLatency - 120) / 10;
+        r -= 2.5 * lossPercentage;
+        if (r <= 0) {
+            return MIN_SCORE;
+        }
+        r = Math.min(r, 100);
+        double mos = 1 + 0.035 * r + 0.000007 * r * (r - 60) * (100 - r);
+        return Math.max(MIN_SCORE, Math.min(MAX_MOS, mos));
+    }
+
+    /**
+     * @param lossPercentage lost packets percentage
+     * @param roundTripTimeMs round trip time in milliseconds
+     * @param framesPerSecond frame rate, 0 if it's unknown
+     * @param freezeRatio ratio of the time spent in freezes in 0-1
+     * @return score in 1-5
+     */
+    public static double computeVideoScore(double lossPercentage, double roundTripTimeMs, double framesPerSecond, double freezeRatio) {
+        double score = MAX_SCORE;
+        //NACK and FEC hide small losses, larger losses cause artifacts and lower bitrate
+        score -= Math.min(2.5, lossPercentage * 0.25);
+        if (roundTripTimeMs > 150) {
+            score -= Math.min(1.5, (roundTripTimeMs - 150) / 300);
+        }
+        score -= Math.min(3, freezeRatio * 8);
+        if (framesPerSecond > 0 && framesPerSecond < SMOOTH_FRAMES_PER_SECOND) {
+            score -= (SMOOTH_FRAMES_PER_SECOND - framesPerSecond) / SMOOTH_FRAMES_PER_SECOND * 1.5;
+        }
+        return Math.max(MIN_SCORE, score);
+    }
+
+    /**
+     * Scores a track and keeps the score in {@link TrackStats#getQualityScore()}.
+     *
+     * @param fallbackRoundTripTime round trip time in seconds used if the track doesn't have its own, e.g. played tracks
+     * @return score of the track, 0 if the track doesn't have enough samples or no packets flowed since the last report
+     */
+    public static double score(TrackStats trackStats, boolean video, boolean publish, double fallbackRoundTripTime) {
+        if (trackStats.getPacketsLostRate().size() < 2) {
+            return 0;
+        }
+        long packetsDelta = publish ? trackStats.getPacketsSentRate().getDelta() : trackStats.getPacketsReceivedRate().getDelta();
+        if (packetsDelta <= 0 && trackStats.getPacketsLostRate().getDelta() <= 0) {
+            //track is muted or inactive
+            return 0;
+        }
+        double roundTripTime = trackStats.getRoundTripTime() > 0 ? trackStats.getRoundTripTime() : fallbackRoundTripTime;
+        double lossPercentage = trackStats.getEwmaPacketLostRatio();
+        double score;
+        if (video) {
+            double framesPerSecond = trackStats.getFramesPerSecond();
+            score = computeVideoScore(lossPercentage, roundTripTime * 1000, framesPerSecond, trackStats.getFreezeRatio());
+        } else {
+            score = computeAudioMos(lossPercentage, trackStats.getJitter() * 1000, roundTripTime * 1000);
+        }
+        trackStats.setQualityScore(score);
+        return score;
+    }
+}
@@ -0,0 +1,325 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the WebRTC event log of the peer connections always armed in a rotating set of size-bounded segment files,
+ * and persists the segments around an anomaly, e.g. RTT spike, loss burst, ICE disconnection or encoder fallback.
+ *
+ * Each armed stream writes to {@link #SEGMENT_COUNT} segments of at most maxBytes / SEGMENT_COUNT bytes, so the disk
+ * usage of a stream is bounded by maxBytes. A segment is rotated every segment duration and the oldest one is deleted.
+ * When an anomaly is reported, logging continues for the post anomaly window and then the retained segments
+ * are moved to a capture directory under {@link #getCaptureDirectory()}. At most {@link #MAX_CAPTURES} captures are kept.
+ *
+ * Event log calls of the peer connection are run on the given executor, which should be the executor
+ * that disposes the peer connections. {@link #disarm(String)} should be called before a peer connection is disposed.
+ */
+public class RtcEventLogRecorder {
+
+    public interface EventLog {
+        /**
+         * Starts writing the event log to the file. The file is closed when it reaches maxSizeBytes or the log is stopped.
+         * @return false if the log cannot be started
+         */
+        boolean start(File outputFile, int maxSizeBytes);
+
+        void stop();
+    }
+
+    private static final String TAG = RtcEventLogRecorder.class.getSimpleName();
+
+    public static final String REASON_RTT_SPIKE = "rtt_spike";
+    public static final String REASON_LOSS_BURST = "loss_burst";
+    public static final String REASON_ICE_DISCONNECTED = "ice_disconnected";
+    public static final String REASON_ENCODER_FALLBACK = "encoder_fallback";
+
+    public static final int DEFAULT_MAX_BYTES = 4_000_000;
+    public static final int SEGMENT_COUNT = 4;
+    public static final long DEFAULT_SEGMENT_DURATION_MS = 30000;
+    public static final long DEFAULT_POST_ANOMALY_WINDOW_MS = 10000;
+    //Anomalies of a stream are ignored for this duration after one is captured
+    public static final long ANOMALY_COOLDOWN_MS = 60000;
+    public static final int MAX_CAPTURES = 5;
+
+    static final String SEGMENT_EXTENSION = ".rtclog";
+    private static final String CAPTURE_DIRECTORY = "captures";
+
+    private static class Session {
+        private final String streamId;
+        private final EventLog eventLog;
+        private final File directory;
+        //segments oldest first, the last one is being written
+        private final ArrayDeque<File> segments = new ArrayDeque<>();
+        private int segmentIndex;
+        private volatile long lastAnomalyTimeMs;
+        private String pendingReason;
+        private ScheduledFuture<?> rotation;
+        private ScheduledFuture<?> capture;
+
+        private Session(String streamId, EventLog eventLog, File directory) {
+            this.streamId = streamId;
+            this.eventLog = eventLog;
+            this.directory = directory;
+        }
+    }
+
+    private final File directory;
+    private final int segmentMaxBytes;
+    private final long segmentDurationMs;
+    private final long postAnomalyWindowMs;
+    private final Executor executor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public RtcEventLogRecorder(File directory, int maxBytes, Executor executor) {
+        this(directory, maxBytes, DEFAULT_SEGMENT_DURATION_MS, DEFAULT_POST_ANOMALY_WINDOW_MS, executor);
+    }
+
+    /**
+     * @param maxBytes maximum bytes of the rolling segments of a stream
+     * @param postAnomalyWindowMs duration the log is kept after an anomaly before the capture is persisted
+     */
+    public RtcEventLogRecorder(File directory, int maxBytes, long segmentDurationMs, long postAnomalyWindowMs, Executor executor) {
+        this.directory = directory;
+        this.segmentMaxBytes = Math.max(1, maxBytes / SEGMENT_COUNT);
+        this.segmentDurationMs = segmentDurationMs;
+        this.postAnomalyWindowMs = postAnomalyWindowMs;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts logging the events of the stream into the rolling segments. Arming again replaces the previous log.
+     */
+    public synchronized void arm(String streamId, EventLog eventLog) {
+        disarm(streamId);
+        File streamDirectory = new File(directory, toFileName(streamId));
+        if (!streamDirectory.isDirectory() && !streamDirectory.mkdirs()) {
+            Log.e(TAG, "Event log directory cannot be created: " + streamDirectory.getAbsolutePath());
+            return;
+        }
+        //segments of a previous session are not useful anymore
+        deleteFiles(streamDirectory.listFiles());
+        Session session = new Session(streamId, eventLog, streamDirectory);
+        if (!startSegment(session)) {
+            return;
+        }
+        sessions.put(streamId, session);
+        if (segmentDurationMs > 0) {
+            session.rotation = getScheduler().scheduleWithFixedDelay(
+                    () -> executor.execute(() -> rotate(streamId)), segmentDurationMs, segmentDurationMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops logging the events of the stream. Segments are deleted unless an anomaly is waiting to be captured.
+     */
+    public synchronized void disarm(String streamId) {
+        Session session = sessions.remove(streamId);
+        if (session == null) {
+            return;
+        }
+        cancel(session);
+        session.eventLog.stop();
+        if (session.pendingReason != null) {
+            persist(session, session.pendingReason);
+        }
+        deleteFiles(session.segments.toArray(new File[0]));
+        session.segments.clear();
+        if (sessions.isEmpty()) {
+            shutdownScheduler();
+        }
+    }
+
+    public synchronized void disarmAll() {
+        for (String streamId : new ArrayList<>(sessions.keySet())) {
+            disarm(streamId);
+        }
+    }
+
+    public boolean isArmed(String streamId) {
+        return sessions.containsKey(streamId);
+    }
+
+    /**
+     * Closes the current segment of the stream and starts the next one. The oldest segment is deleted if there are
+     * more than {@link #SEGMENT_COUNT} segments.
+     */
+    public synchronized void rotate(String streamId) {
+        Session session = sessions.get(streamId);
+        if (session == null) {
+            return;
+        }
+        session.eventLog.stop();
+        startSegment(session);
+        while (session.segments.size() > SEGMENT_COUNT) {
+            deleteFiles(session.segments.pollFirst());
+        }
+    }
+
+    /**
+     * Reports an anomaly of the stream. It's cheap and can be called from any thread, e.g. for every stats report.
+     * The retained segments and the post anomaly window are persisted unless another anomaly of the stream
+     * has been captured in {@link #ANOMALY_COOLDOWN_MS}.
+     */
+    public void onAnomaly(String streamId, String reason) {
+        Session session = sessions.get(streamId);
+        if (session == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (session.lastAnomalyTimeMs != 0 && now - session.lastAnomalyTimeMs < ANOMALY_COOLDOWN_MS) {
+            return;
+        }
+        session.lastAnomalyTimeMs = now;
+        executor.execute(() -> scheduleCapture(streamId, reason));
+    }
+
+    private synchronized void scheduleCapture(String streamId, String reason) {
+        Session session = sessions.get(streamId);
+        if (session == null || session.pendingReason != null) {
+            return;
+        }
+        Log.i(TAG, "Anomaly " + reason + " in " + streamId + ". Event log will be captured in " + postAnomalyWindowMs + "ms");
+        session.pendingReason = reason;
+        if (postAnomalyWindowMs > 0) {
+            session.capture = getScheduler().schedule(() -> executor.execute(() -> capture(streamId)),
+                    postAnomalyWindowMs, TimeUnit.MILLISECONDS);
+        } else {
+            capture(streamId);
+        }
+    }
+
+    private synchronized void capture(String streamId) {
+        Session session = sessions.get(streamId);
+        if (session == null || session.pendingReason == null) {
+            return;
+        }
+        //current segment is closed so that it's readable in the capture
+        session.eventLog.stop();
+        persist(session, session.pendingReason);
+        session.pendingReason = null;
+        session.capture = null;
+        startSegment(session);
+    }
+
+    private void persist(Session session, String reason) {
+        File captureDirectory = new File(getCaptureDirectory(),
+                toFileName(session.streamId) + "-" + System.currentTimeMillis() + "-" + toFileName(reason));
+        if (!captureDirectory.mkdirs()) {
+            Log.e(TAG, "Capture directory cannot be created: " + captureDirectory.getAbsolutePath());
+            return;
+        }
+        for (File segment : session.segments) {
+            if (!segment.renameTo(new File(captureDirectory, segment.getName()))) {
+                Log.w(TAG, "Segment cannot be moved to the capture: " + segment.getAbsolutePath());
+            }
+        }
+        session.segments.clear();
+        Log.i(TAG, "Event log of " + session.streamId + " is captured to " + captureDirectory.getAbsolutePath());
+        trimCaptures();
+    }
+
+    private boolean startSegment(Session session) {
+        File segment = new File(session.directory, String.format(Locale.US, "segment-%05d%s", session.segmentIndex++, SEGMENT_EXTENSION));
+        if (!session.eventLog.start(segment, segmentMaxBytes)) {
+            Log.e(TAG, "Event log cannot be started for " + session.streamId);
+            return false;
+        }
+        session.segments.addLast(segment);
+        return true;
+    }
+
+    private void trimCaptures() {
+        List<File> captures = getCaptures();
+        for (int i = 0; i < captures.size() - MAX_CAPTURES; i++) {
+            File capture = captures.get(i);
+            deleteFiles(capture.listFiles());
+            deleteFiles(capture);
+        }
+    }
+
+    public File getCaptureDirectory() {
+        return new File(directory, CAPTURE_DIRECTORY);
+    }
+
+    /**
+     * @return capture directories, oldest first. Each one contains the event log segments of a stream around an anomaly
+     */
+    public List<File> getCaptures() {
+        File[] files = getCaptureDirectory().listFiles(File::isDirectory);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+        return Arrays.asList(files);
+    }
+
+    /**
+     * @return segments of the stream that are currently retained, oldest first
+     */
+    public synchronized List<File> getSegments(String streamId) {
+        Session session = sessions.get(streamId);
+        return session != null ? new ArrayList<>(session.segments) : Collections.<File>emptyList();
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private static void deleteFiles(File... files) {
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file != null && file.exists() && !file.delete()) {
+                Log.w(TAG, "File cannot be deleted: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private void cancel(Session session) {
+        if (session.rotation != null) {
+            session.rotation.cancel(false);
+            session.rotation = null;
+        }
+        if (session.capture != null) {
+            session.capture.cancel(false);
+            session.capture = null;
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    private void shutdownScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
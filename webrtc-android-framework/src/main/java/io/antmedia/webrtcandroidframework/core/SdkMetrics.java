@@ -0,0 +1,82 @@
+package io.antmedia.webrtcandroidframework.core;
+
+/**
+ * Metrics of the SDK internals. They're updated by the stats, signaling, reconnection and render paths
+ * and can be scraped with {@link MetricsRegistry#toOpenMetrics()} or {@link MetricsServer}.
+ */
+public final class SdkMetrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    public static final int STATS_REPORTS = REGISTRY.counter("antmedia_stats_reports",
+            "Parsed stats reports");
+    public static final int STATS_PARSE_SECONDS = REGISTRY.histogram("antmedia_stats_parse_seconds",
+            "Time spent parsing a stats report", MetricsRegistry.DEFAULT_LATENCY_BUCKETS);
+
+    public static final int SIGNALING_CONNECTIONS = REGISTRY.counter("antmedia_signaling_connections",
+            "Opened websocket connections");
+    public static final int SIGNALING_DISCONNECTIONS = REGISTRY.counter("antmedia_signaling_disconnections",
+            "Closed websocket connections");
+    public static final int SIGNALING_MESSAGES_SENT = REGISTRY.counter("antmedia_signaling_messages_sent",
+            "Messages sent to the websocket");
+    public static final int SIGNALING_MESSAGES_RECEIVED = REGISTRY.counter("antmedia_signaling_messages_received",
+            "Messages received from the websocket");
+
+    public static final int ICE_DISCONNECTIONS = REGISTRY.counter("antmedia_ice_disconnections",
+            "ICE disconnections of the peer connections");
+    public static final int PEER_RECONNECTIONS = REGISTRY.counter("antmedia_peer_reconnections",
+            "Republish or replay attempts after a disconnection");
+
+    public static final int FRAMES_RENDERED = REGISTRY.counter("antmedia_frames_rendered",
+            "Frames passed to the renderers");
+    public static final int FRAMES_DROPPED = REGISTRY.counter("antmedia_frames_dropped",
+            "Frames dropped because the renderer isn't set");
+    public static final int FRAME_INTERVAL_SECONDS = REGISTRY.histogram("antmedia_frame_interval_seconds",
+            "Interval between the frames passed to a renderer", MetricsRegistry.DEFAULT_LATENCY_BUCKETS);
+    public static final int VIDEO_STALLS = REGISTRY.counter("antmedia_video_stalls",
+            "Stalls of the played video tracks");
+
+    public static final int FILE_LIP_SYNC_ERROR_SECONDS = REGISTRY.histogram("antmedia_file_lip_sync_error_seconds",
+            "Difference between the lateness of the video and the audio frames read from a media file",
+            MetricsRegistry.DEFAULT_LATENCY_BUCKETS);
+    public static final int CUSTOM_AUDIO_UNDERRUNS = REGISTRY.counter("antmedia_custom_audio_underruns",
+            "Times the custom audio input ran out and silence is recorded");
+    public static final int CUSTOM_AUDIO_OVERRUNS = REGISTRY.counter("antmedia_custom_audio_overruns",
+            "Writes to the custom audio input that didn't fit to its buffer");
+
+    /**
+     * Gauges of a stream. They're registered when the first report of the stream is parsed and removed with the stream.
+     */
+    public static class StreamMetrics {
+        public final int publishBitrate;
+        public final int receiveBitrate;
+        public final int roundTripTime;
+        public final int availableOutgoingBitrate;
+        public final int qualityScore;
+
+        public StreamMetrics(String streamId) {
+            String labels = MetricsRegistry.labels("stream_id", streamId);
+            publishBitrate = REGISTRY.gauge("antmedia_stream_publish_bitrate",
+                    "Bitrate of the published tracks in bits per second", labels);
+            receiveBitrate = REGISTRY.gauge("antmedia_stream_receive_bitrate",
+                    "Received bits per second on the transport", labels);
+            roundTripTime = REGISTRY.gauge("antmedia_stream_round_trip_time_seconds",
+                    "Round trip time of the selected candidate pair", labels);
+            availableOutgoingBitrate = REGISTRY.gauge("antmedia_stream_available_outgoing_bitrate",
+                    "Bandwidth estimation of the sender in bits per second", labels);
+            qualityScore = REGISTRY.gauge("antmedia_stream_quality_score",
+                    "Quality score of the stream in 1-5, 0 if it's unknown", labels);
+        }
+
+        public void remove() {
+            REGISTRY.remove(publishBitrate);
+            REGISTRY.remove(receiveBitrate);
+            REGISTRY.remove(roundTripTime);
+            REGISTRY.remove(availableOutgoingBitrate);
+            REGISTRY.remove(qualityScore);
+        }
+    }
+
+    private SdkMetrics() {
+    }
+}
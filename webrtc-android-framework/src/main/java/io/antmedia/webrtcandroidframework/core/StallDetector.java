@@ -0,0 +1,257 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+/**
+ * Detects stalls of the played tracks and notifies {@link IWebRTCListener}.
+ *
+ * Video tracks are monitored with a {@link VideoSink} that records the arrival time of the frames, so a stall is
+ * detected within {@link #CHECK_PERIOD_MS} of the freeze threshold regardless of the stats period.
+ * A track freezes if no frame arrives in max(3 * average frame interval, average frame interval + 150ms),
+ * as in the definition of freezes in webrtc-stats. Tracks that are not monitored with a sink fall back to
+ * the decoded frames in the stats reports.
+ *
+ * Audio tracks are checked at the stats cadence. A burst is reported when the concealment events between two
+ * reports reach {@link #AUDIO_CONCEALMENT_BURST_EVENTS}.
+ */
+public class StallDetector {
+
+    public interface StallRecovery {
+        /**
+         * It's called once when a stall of a video track lasts longer than the recovery threshold
+         */
+        void onLongStall(String streamId, String trackId, long stallDurationMs);
+    }
+
+    public static final long CHECK_PERIOD_MS = 100;
+    public static final long FREEZE_EXTRA_DELAY_MS = 150;
+    public static final int AUDIO_CONCEALMENT_BURST_EVENTS = 5;
+
+    //average frame interval is smoothed over the last frames
+    private static final double FRAME_INTERVAL_EWMA_ALPHA = 0.1;
+
+    public static class TrackMonitor implements VideoSink {
+        private final String streamId;
+        private final String trackId;
+
+        //written on the decoder thread, read on the checking thread
+        private volatile long lastFrameTimeMs;
+        private volatile double averageFrameIntervalMs;
+
+        //frame arrivals are monitored with the sink, otherwise the stats reports are used
+        private boolean sinkAttached;
+        private boolean stalled;
+        private long stallStartMs;
+        private boolean recoveryRequested;
+        private long lastConcealmentEvents = -1;
+
+        TrackMonitor(String streamId, String trackId) {
+            this.streamId = streamId;
+            this.trackId = trackId;
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            onFrame(now());
+        }
+
+        public void onFrame(long timeMs) {
+            long lastTimeMs = lastFrameTimeMs;
+            if (lastTimeMs != 0) {
+                long intervalMs = timeMs - lastTimeMs;
+                double average = averageFrameIntervalMs;
+                averageFrameIntervalMs = average == 0 ? intervalMs
+                        : FRAME_INTERVAL_EWMA_ALPHA * intervalMs + (1 - FRAME_INTERVAL_EWMA_ALPHA) * average;
+            }
+            lastFrameTimeMs = timeMs;
+        }
+
+        public long getFreezeThresholdMs() {
+            double average = averageFrameIntervalMs;
+            return (long) Math.max(3 * average, average + FREEZE_EXTRA_DELAY_MS);
+        }
+
+        public boolean isStalled() {
+            return stalled;
+        }
+
+        public String getStreamId() {
+            return streamId;
+        }
+
+        public String getTrackId() {
+            return trackId;
+        }
+    }
+
+    //streamId -> trackId -> monitor
+    private final ConcurrentHashMap<String, Map<String, TrackMonitor>> monitors = new ConcurrentHashMap<>();
+
+    private IWebRTCListener webRTCListener;
+    private StallRecovery stallRecovery;
+    private long recoveryThresholdMs;
+
+    public static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public void setWebRTCListener(IWebRTCListener webRTCListener) {
+        this.webRTCListener = webRTCListener;
+    }
+
+    /**
+     * @param recoveryThresholdMs stall duration to call the recovery, 0 disables it
+     */
+    public void setStallRecovery(StallRecovery stallRecovery, long recoveryThresholdMs) {
+        this.stallRecovery = stallRecovery;
+        this.recoveryThresholdMs = recoveryThresholdMs;
+    }
+
+    /**
+     * @return sink to be added to the video track to detect stalls from the frame arrivals
+     */
+    public TrackMonitor monitor(String streamId, String trackId) {
+        TrackMonitor monitor = getOrCreateMonitor(streamId, trackId);
+        monitor.sinkAttached = true;
+        return monitor;
+    }
+
+    public TrackMonitor getMonitor(String streamId, String trackId) {
+        Map<String, TrackMonitor> trackMonitors = monitors.get(streamId);
+        return trackMonitors != null ? trackMonitors.get(trackId) : null;
+    }
+
+    public TrackMonitor remove(String streamId, String trackId) {
+        Map<String, TrackMonitor> trackMonitors = monitors.get(streamId);
+        return trackMonitors != null ? trackMonitors.remove(trackId) : null;
+    }
+
+    public void remove(String streamId) {
+        monitors.remove(streamId);
+    }
+
+    public void clear() {
+        monitors.clear();
+    }
+
+    public boolean hasMonitors() {
+        return !monitors.isEmpty();
+    }
+
+    private TrackMonitor getOrCreateMonitor(String streamId, String trackId) {
+        Map<String, TrackMonitor> trackMonitors = monitors.get(streamId);
+        if (trackMonitors == null) {
+            trackMonitors = new ConcurrentHashMap<>();
+            Map<String, TrackMonitor> existing = monitors.putIfAbsent(streamId, trackMonitors);
+            if (existing != null) {
+                trackMonitors = existing;
+            }
+        }
+        TrackMonitor monitor = trackMonitors.get(trackId);
+        if (monitor == null) {
+            monitor = new TrackMonitor(streamId, trackId);
+            trackMonitors.put(trackId, monitor);
+        }
+        return monitor;
+    }
+
+    public void check() {
+        check(now());
+    }
+
+    /**
+     * Checks the frame arrivals of the monitored video tracks. It should be called every {@link #CHECK_PERIOD_MS}.
+     */
+    public void check(long nowMs) {
+        for (Map<String, TrackMonitor> trackMonitors : monitors.values()) {
+            for (TrackMonitor monitor : trackMonitors.values()) {
+                long lastFrameTimeMs = monitor.lastFrameTimeMs;
+                if (lastFrameTimeMs == 0) {
+                    //no frame yet or the track is not monitored with a sink
+                    continue;
+                }
+                if (!monitor.stalled) {
+                    if (nowMs - lastFrameTimeMs > monitor.getFreezeThresholdMs()) {
+                        onStalled(monitor, lastFrameTimeMs);
+                    }
+                } else if (lastFrameTimeMs > monitor.stallStartMs) {
+                    onResumed(monitor, lastFrameTimeMs - monitor.stallStartMs);
+                } else {
+                    checkRecovery(monitor, nowMs - monitor.stallStartMs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the decoded frames of a video track that is not monitored with a sink. It's called for each stats report.
+     */
+    public void onVideoStats(String streamId, TrackStats trackStats, long timeMs) {
+        TrackMonitor monitor = getOrCreateMonitor(streamId, trackStats.getTrackId());
+        if (monitor.sinkAttached || trackStats.getFramesDecodedRate().size() < 2) {
+            return;
+        }
+        boolean decoding = trackStats.getFramesDecodedRate().getDelta() > 0;
+        if (!monitor.stalled && !decoding) {
+            onStalled(monitor, timeMs);
+        } else if (monitor.stalled && decoding) {
+            onResumed(monitor, timeMs - monitor.stallStartMs);
+        } else if (monitor.stalled) {
+            checkRecovery(monitor, timeMs - monitor.stallStartMs);
+        }
+    }
+
+    /**
+     * Checks the concealment events of an audio track. It's called for each stats report.
+     */
+    public void onAudioStats(String streamId, TrackStats trackStats) {
+        TrackMonitor monitor = getOrCreateMonitor(streamId, trackStats.getTrackId());
+        long concealmentEvents = trackStats.getConcealmentEventsLong();
+        long lastConcealmentEvents = monitor.lastConcealmentEvents;
+        monitor.lastConcealmentEvents = concealmentEvents;
+        if (lastConcealmentEvents < 0) {
+            return;
+        }
+        long burstEvents = concealmentEvents - lastConcealmentEvents;
+        if (burstEvents >= AUDIO_CONCEALMENT_BURST_EVENTS) {
+            IWebRTCListener listener = webRTCListener;
+            if (listener != null) {
+                listener.onAudioConcealmentBurst(streamId, monitor.trackId, burstEvents);
+            }
+        }
+    }
+
+    private void onStalled(TrackMonitor monitor, long stallStartMs) {
+        monitor.stalled = true;
+        SdkMetrics.REGISTRY.increment(SdkMetrics.VIDEO_STALLS);
+        monitor.stallStartMs = stallStartMs;
+        monitor.recoveryRequested = false;
+        IWebRTCListener listener = webRTCListener;
+        if (listener != null) {
+            listener.onVideoStalled(monitor.streamId, monitor.trackId);
+        }
+    }
+
+    private void onResumed(TrackMonitor monitor, long stallDurationMs) {
+        monitor.stalled = false;
+        IWebRTCListener listener = webRTCListener;
+        if (listener != null) {
+            listener.onVideoResumed(monitor.streamId, monitor.trackId, stallDurationMs);
+        }
+    }
+
+    private void checkRecovery(TrackMonitor monitor, long stallDurationMs) {
+        if (stallRecovery != null && recoveryThresholdMs > 0 && !monitor.recoveryRequested
+                && stallDurationMs >= recoveryThresholdMs) {
+            monitor.recoveryRequested = true;
+            stallRecovery.onLongStall(monitor.streamId, monitor.trackId, stallDurationMs);
+        }
+    }
+}
@@ -3,12 +3,17 @@ package io.antmedia.webrtcandroidframework.core;
 import org.webrtc.RTCStats;
 import org.webrtc.RTCStatsReport;
 
-import java.math.BigInteger;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
+import io.antmedia.webrtcandroidframework.core.model.DataChannelStats;
+import io.antmedia.webrtcandroidframework.core.model.PeerStats;
 import io.antmedia.webrtcandroidframework.core.model.PlayStats;
 import io.antmedia.webrtcandroidframework.core.model.PublishStats;
+import io.antmedia.webrtcandroidframework.core.model.QualityScore;
 import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+import io.antmedia.webrtcandroidframework.core.model.TransportStats;
 
 /**
  * Mostly used to retrieve localAudioLevel or
@@ -69,301 +74,637 @@ public class StatsCollector {
 
     public static final String AUDIO_LEVEL = "audioLevel";
 
-    private double lastKnownStatsTimeStampMs;
+    public static final String QUALITY_LIMITATION_REASON = "qualityLimitationReason";
+    public static final String QUALITY_LIMITATION_DURATIONS = "qualityLimitationDurations";
+    public static final String TOTAL_ENCODE_TIME = "totalEncodeTime";
+    public static final String ENCODER_IMPLEMENTATION = "encoderImplementation";
+    public static final String POWER_EFFICIENT_ENCODER = "powerEfficientEncoder";
+    public static final String TOTAL_DECODE_TIME = "totalDecodeTime";
+    public static final String DECODER_IMPLEMENTATION = "decoderImplementation";
+    public static final String POWER_EFFICIENT_DECODER = "powerEfficientDecoder";
+    public static final String JITTER_BUFFER_DELAY = "jitterBufferDelay";
+    public static final String JITTER_BUFFER_EMITTED_COUNT = "jitterBufferEmittedCount";
+    public static final String TOTAL_PROCESSING_DELAY = "totalProcessingDelay";
+    public static final String FRAME_WIDTH = "frameWidth";
+    public static final String FRAME_HEIGHT = "frameHeight";
+    public static final String FRAMES_PER_SECOND = "framesPerSecond";
+
+    public static final String TRANSPORT = "transport";
+    public static final String CANDIDATE_PAIR = "candidate-pair";
+    public static final String SELECTED_CANDIDATE_PAIR_ID = "selectedCandidatePairId";
+    public static final String SELECTED_CANDIDATE_PAIR_CHANGES = "selectedCandidatePairChanges";
+    public static final String DTLS_STATE = "dtlsState";
+    public static final String NOMINATED = "nominated";
+    public static final String STATE = "state";
+    public static final String SUCCEEDED = "succeeded";
+    public static final String LOCAL_CANDIDATE_ID = "localCandidateId";
+    public static final String REMOTE_CANDIDATE_ID = "remoteCandidateId";
+    public static final String AVAILABLE_OUTGOING_BITRATE = "availableOutgoingBitrate";
+    public static final String AVAILABLE_INCOMING_BITRATE = "availableIncomingBitrate";
+    public static final String CURRENT_ROUND_TRIP_TIME = "currentRoundTripTime";
+    public static final String TOTAL_ROUND_TRIP_TIME = "totalRoundTripTime";
+    public static final String RESPONSES_RECEIVED = "responsesReceived";
+    public static final String CANDIDATE_TYPE = "candidateType";
+    public static final String ADDRESS = "address";
+    public static final String IP = "ip";
+    public static final String PORT = "port";
+    public static final String PROTOCOL = "protocol";
+    public static final String RELAY_PROTOCOL = "relayProtocol";
+    public static final String NETWORK_TYPE = "networkType";
+
+    public static final String DATA_CHANNEL = "data-channel";
+    public static final String LABEL = "label";
+    public static final String DATA_CHANNEL_IDENTIFIER = "dataChannelIdentifier";
+    public static final String MESSAGES_SENT = "messagesSent";
+    public static final String MESSAGES_RECEIVED = "messagesReceived";
+
+    /**
+     * Key used for the reports that are not bound to a stream id. See {@link #onStatsReport(RTCStatsReport)}
+     */
+    public static final String DEFAULT_STREAM_ID = "";
+
+    /**
+     * A stream is healthy if the smoothed packet loss percentage of all its tracks is below this value
+     */
+    public static final double HEALTHY_PACKET_LOST_RATIO = 1;
+
+    /**
+     * Anomalies reported to the event log recorder. A loss burst is at least this percentage of packets lost
+     * between two reports with at least LOSS_BURST_MIN_PACKETS lost packets.
+     */
+    public static final double LOSS_BURST_PACKET_LOST_RATIO = 10;
+    public static final int LOSS_BURST_MIN_PACKETS = 10;
+
+    /**
+     * A round trip time spike is RTT_SPIKE_FACTOR times the average RTT and at least RTT_SPIKE_MIN_INCREASE seconds above it
+     */
+    public static final double RTT_SPIKE_FACTOR = 3;
+    public static final double RTT_SPIKE_MIN_INCREASE = 0.1;
+    private static final int RTT_SPIKE_MIN_RESPONSES = 5;
+
+    private static final int PUBLISHED_AUDIO = 1;
+    private static final int PUBLISHED_VIDEO = 2;
 
     private double localAudioLevel;
 
-    private PublishStats publishStats = new PublishStats();
-    private PlayStats playStats = new PlayStats();
+    //streamId -> stats of the peer. Every peer keeps its own rolling state.
+    private final Map<String, PeerStats> peerStatsMap = new ConcurrentHashMap<>();
+    private final Map<String, SdkMetrics.StreamMetrics> streamMetricsMap = new ConcurrentHashMap<>();
 
+    //Aggregated views. primaryPublishStats points to the stats of the primary publisher, i.e. the first peer
+    //that publishes local tracks, until it's removed. playStats holds the track stats of all playing peers.
+    private PublishStats primaryPublishStats = new PublishStats();
+    private String primaryPublisherId;
+    private final PlayStats playStats = new PlayStats();
 
+    //raw track identifier -> track id without prefix
+    private final Map<String, String> trackIdCache = new ConcurrentHashMap<>();
+
+    //Optional history of the track stats. It's null unless recording is enabled.
+    private volatile StatsRecorder statsRecorder;
+    private volatile StallDetector stallDetector;
+    private volatile RtcEventLogRecorder rtcEventLogRecorder;
+
+    //Notified about the changes found in the reports. Reports are parsed on the main thread so it's called on the main thread.
+    private IWebRTCListener webRTCListener;
+
+
+    /**
+     * Parses a report that is not bound to a stream. Prefer {@link #onStatsReport(String, RTCStatsReport)}
+     * when more than one peer reports statistics.
+     */
     public void onStatsReport(RTCStatsReport report) {
-        parseStats(report);
+        onStatsReport(DEFAULT_STREAM_ID, report);
     }
 
-    private void parseStats(RTCStatsReport report) {
-        Map<String, RTCStats> statsMap = report.getStatsMap();
-        double timeMs = 0;
-        for (Map.Entry<String, RTCStats> entry : statsMap.entrySet()) {
-            RTCStats value = entry.getValue();
-            timeMs = value.getTimestampUs()/1000;
+    public void onStatsReport(String streamId, RTCStatsReport report) {
+        PeerStats peerStats = getOrCreatePeerStats(streamId);
+        parseStats(peerStats, report, peerStats.getQualityScore());
+    }
 
-            if (OUTBOUND_RTP.equals(value.getType())) { //Exiting data from local client.(Part of publish statistics)
-                long timeDiffSeconds = (long) ((timeMs - lastKnownStatsTimeStampMs) / 1000); // convert it to seconds
-                timeDiffSeconds = timeDiffSeconds == 0 ? 1 : timeDiffSeconds; // avoid division by zero
+    /**
+     * Parses a report of a single sender or receiver, e.g. a report of
+     * {@link org.webrtc.PeerConnection#getStats(org.webrtc.RtpReceiver, org.webrtc.RTCStatsCollectorCallback)}.
+     * Only the stats of its tracks and the transport are updated. Quality score and the metrics of the stream
+     * are not updated and onNetworkQuality is not called, since they would be computed from a single track.
+     */
+    public void onScopedStatsReport(String streamId, RTCStatsReport report) {
+        parseStats(getOrCreatePeerStats(streamId), report, null);
+    }
 
-                if (AUDIO.equals(value.getMembers().get(KIND))) {
-                    if(value.getMembers().containsKey(SSRC)) {
-                        TrackStats audioTrackStats = publishStats.getAudioTrackStats();
+    private PeerStats getOrCreatePeerStats(String streamId) {
+        if (streamId == null) {
+            streamId = DEFAULT_STREAM_ID;
+        }
+        PeerStats peerStats = peerStatsMap.get(streamId);
+        if (peerStats == null) {
+            peerStats = new PeerStats(streamId);
+            PeerStats existingPeerStats = peerStatsMap.putIfAbsent(streamId, peerStats);
+            if (existingPeerStats != null) {
+                peerStats = existingPeerStats;
+            } else {
+                streamMetricsMap.put(streamId, new SdkMetrics.StreamMetrics(streamId));
+            }
+        }
+        return peerStats;
+    }
 
-                        long packetsSent = ((BigInteger) value.getMembers().get(PACKETS_SENT)).longValue();
-                        audioTrackStats.setPacketsSent(packetsSent);
+    /**
+     * @param qualityScore score of the peer that is computed from the tracks in the report, null if the report
+     *                     doesn't have all tracks of the peer
+     */
+    private void parseStats(PeerStats peerStats, RTCStatsReport report, QualityScore qualityScore) {
+        long parseStartNs = System.nanoTime();
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        double timeMs = 0;
+        double publishTimeMs = 0;
+        int publishedKinds = 0;
+        RTCStats transport = null;
+        RTCStats nominatedCandidatePair = null;
+        if (qualityScore != null) {
+            qualityScore.begin();
+        }
+        for (RTCStats value : statsMap.values()) {
+            timeMs = value.getTimestampUs()/1000;
+            String type = value.getType();
+            Map<String, Object> members = value.getMembers();
+
+            if (OUTBOUND_RTP.equals(type)) { //Exiting data from local client.(Part of publish statistics)
+                int kind = parseOutboundRtp(peerStats, members, timeMs);
+                if (kind != 0) {
+                    publishedKinds |= kind;
+                    publishTimeMs = timeMs;
+                }
+            } else if (REMOTE_INBOUND_RTP.equals(type)) { //Exiting data from local client, received by remote peer statistics.(Part of publish)
+                parseRemoteInboundRtp(peerStats, members);
+            } else if (INBOUND_RTP.equals(type)) { //Incoming data from peers.(Play statistics)
+                parseInboundRtp(peerStats, statsMap, members, timeMs, qualityScore);
+            } else if (MEDIA_SOURCE.equals(type)) {
+                parseMediaSource(peerStats, members);
+            } else if (TRANSPORT.equals(type)) {
+                if (transport == null || members.get(SELECTED_CANDIDATE_PAIR_ID) != null) {
+                    transport = value;
+                }
+            } else if (CANDIDATE_PAIR.equals(type)) {
+                if (Boolean.TRUE.equals(members.get(NOMINATED)) && SUCCEEDED.equals(members.get(STATE))) {
+                    nominatedCandidatePair = value;
+                }
+            } else if (DATA_CHANNEL.equals(type)) {
+                parseDataChannel(peerStats, members, timeMs);
+            }
+        }
 
-                        BigInteger bytesSent = ((BigInteger) value.getMembers().get(BYTES_SENT));
-                        audioTrackStats.setBytesSent(bytesSent);
-                        audioTrackStats.setTimeMs((long)timeMs);
+        // Selected candidate pair is referenced by the transport stats, so it's parsed after the whole report is iterated
+        if (transport != null || nominatedCandidatePair != null) {
+            parseTransport(peerStats, statsMap, transport, nominatedCandidatePair, timeMs);
+            checkRoundTripTimeSpike(peerStats);
+        }
 
+        // Publish rates are updated after the whole report is parsed because lost packets of
+        // the published tracks come from remote-inbound-rtp stats.
+        if (publishedKinds != 0) {
+            updatePublishRates(peerStats, publishedKinds, publishTimeMs, qualityScore);
+        }
+        peerStats.setLastKnownStatsTimeStampMs(timeMs);
 
-                        if (value.getMembers().containsKey(TARGET_BITRATE)) {
-                            double targetBitrate = (double) value.getMembers().get(TARGET_BITRATE);
-                            audioTrackStats.setTargetBitrate(targetBitrate);
-                        }
+        IWebRTCListener listener = webRTCListener;
+        if (qualityScore != null && qualityScore.end((long) timeMs) && listener != null) {
+            listener.onNetworkQuality(peerStats.getStreamId(), qualityScore);
+        }
 
-                        if (value.getMembers().containsKey(TOTAL_PACKET_SEND_DELAY)) {
-                            double totalPacketSendDelay = (double) value.getMembers().get(TOTAL_PACKET_SEND_DELAY);
-                            audioTrackStats.setTotalPacketSendDelay(totalPacketSendDelay);
-                        }
+        updateMetrics(peerStats, parseStartNs, qualityScore != null);
+    }
 
+    private void updateMetrics(PeerStats peerStats, long parseStartNs, boolean updateStreamMetrics) {
+        MetricsRegistry registry = SdkMetrics.REGISTRY;
+        SdkMetrics.StreamMetrics streamMetrics = updateStreamMetrics ? streamMetricsMap.get(peerStats.getStreamId()) : null;
+        if (streamMetrics != null) {
+            PublishStats peerPublishStats = peerStats.getPublishStats();
+            TransportStats transportStats = peerStats.getTransportStats();
+            registry.set(streamMetrics.publishBitrate, peerPublishStats.getVideoBitrate() + peerPublishStats.getAudioBitrate());
+            registry.set(streamMetrics.receiveBitrate, transportStats.getReceiveBitrate());
+            registry.set(streamMetrics.roundTripTime, transportStats.getCurrentRoundTripTime());
+            registry.set(streamMetrics.availableOutgoingBitrate, transportStats.getAvailableOutgoingBitrate());
+            registry.set(streamMetrics.qualityScore, peerStats.getQualityScore().getScore());
+        }
+        registry.increment(SdkMetrics.STATS_REPORTS);
+        registry.observe(SdkMetrics.STATS_PARSE_SECONDS, (System.nanoTime() - parseStartNs) / 1e9);
+    }
 
-                        publishStats.setLastKnownAudioBytesSent(bytesSent.longValue());
-                        publishStats.setAudioBitrate((bytesSent.longValue() - publishStats.getLastKnownAudioBytesSent()) / timeDiffSeconds * 8);
+    private void updatePublishRates(PeerStats peerStats, int publishedKinds, double timeMs, QualityScore qualityScore) {
+        PublishStats publishStats = peerStats.getPublishStats();
+        StatsRecorder recorder = statsRecorder;
+        if ((publishedKinds & PUBLISHED_AUDIO) != 0) {
+            TrackStats audioTrackStats = publishStats.getAudioTrackStats();
+            audioTrackStats.updateRates(timeMs);
+            publishStats.setAudioBitrate(audioTrackStats.getBitrate());
+            publishStats.setLastKnownAudioBytesSent(audioTrackStats.getBytesSentLong());
+            if (qualityScore != null) {
+                qualityScore.addAudioMos(QualityScorer.score(audioTrackStats, false, true, 0));
+            }
+            checkLossBurst(peerStats, audioTrackStats);
+            if (recorder != null) {
+                recorder.record(peerStats.getStreamId(), audioTrackStats, false, StatsRecorder.DIRECTION_PUBLISH, (long) timeMs);
+            }
+        }
+        if ((publishedKinds & PUBLISHED_VIDEO) != 0) {
+            TrackStats videoTrackStats = publishStats.getVideoTrackStats();
+            videoTrackStats.updateRates(timeMs);
+            publishStats.setVideoBitrate(videoTrackStats.getBitrate());
+            publishStats.setLastKnownVideoBytesSent(videoTrackStats.getBytesSentLong());
+            if (qualityScore != null) {
+                qualityScore.addVideoScore(QualityScorer.score(videoTrackStats, true, true, 0));
+            }
+            checkLossBurst(peerStats, videoTrackStats);
+            if (recorder != null) {
+                recorder.record(peerStats.getStreamId(), videoTrackStats, true, StatsRecorder.DIRECTION_PUBLISH, (long) timeMs);
+            }
+        }
+    }
 
+    /**
+     * @return {@link #PUBLISHED_AUDIO} or {@link #PUBLISHED_VIDEO} for the parsed track, 0 if nothing is parsed
+     */
+    @SuppressWarnings("unchecked")
+    private int parseOutboundRtp(PeerStats peerStats, Map<String, Object> members, double timeMs) {
+        if (members.get(SSRC) == null) {
+            return 0;
+        }
+        PublishStats publishStats = peerStats.getPublishStats();
+        claimPrimaryPublisher(peerStats);
+
+        Object kind = members.get(KIND);
+        if (AUDIO.equals(kind)) {
+            TrackStats audioTrackStats = publishStats.getAudioTrackStats();
+
+            audioTrackStats.setPacketsSent(getLong(members, PACKETS_SENT, audioTrackStats.getPacketsSent()));
+            audioTrackStats.setBytesSent(getLong(members, BYTES_SENT, audioTrackStats.getBytesSentLong()));
+            audioTrackStats.setTargetBitrate(getDouble(members, TARGET_BITRATE, audioTrackStats.getTargetBitrate()));
+            audioTrackStats.setTotalPacketSendDelay(getDouble(members, TOTAL_PACKET_SEND_DELAY, audioTrackStats.getTotalPacketSendDelay()));
+            audioTrackStats.setTimeMs((long) timeMs);
+            return PUBLISHED_AUDIO;
+        } else if (VIDEO.equals(kind)) {
+            TrackStats videoTrackStats = publishStats.getVideoTrackStats();
+
+            videoTrackStats.setFirCount(getLong(members, FIR_COUNT, videoTrackStats.getFirCount()));
+            videoTrackStats.setPliCount(getLong(members, PLI_COUNT, videoTrackStats.getPliCount()));
+            videoTrackStats.setNackCount(getLong(members, NACK_COUNT, videoTrackStats.getNackCount()));
+            videoTrackStats.setPacketsSent(getLong(members, PACKETS_SENT, videoTrackStats.getPacketsSent()));
+            videoTrackStats.setBytesSent(getLong(members, BYTES_SENT, videoTrackStats.getBytesSentLong()));
+
+            videoTrackStats.setFramesEncoded(getLong(members, FRAMES_ENCODED, videoTrackStats.getFramesEncoded()));
+            videoTrackStats.setFramesSent(getLong(members, FRAMES_SENT, videoTrackStats.getFramesSent()));
+            videoTrackStats.setTargetBitrate(getDouble(members, TARGET_BITRATE, videoTrackStats.getTargetBitrate()));
+            videoTrackStats.setTotalPacketSendDelay(getDouble(members, TOTAL_PACKET_SEND_DELAY, videoTrackStats.getTotalPacketSendDelay()));
+
+            videoTrackStats.setQualityLimitationReason(getString(members, QUALITY_LIMITATION_REASON, videoTrackStats.getQualityLimitationReason()));
+            Object qualityLimitationDurations = members.get(QUALITY_LIMITATION_DURATIONS);
+            if (qualityLimitationDurations instanceof Map) {
+                videoTrackStats.setQualityLimitationDurations((Map<String, Double>) qualityLimitationDurations);
+            }
+            videoTrackStats.setTotalEncodeTime(getDouble(members, TOTAL_ENCODE_TIME, videoTrackStats.getTotalEncodeTime()));
+            videoTrackStats.setPowerEfficientEncoder(getBoolean(members, POWER_EFFICIENT_ENCODER, videoTrackStats.isPowerEfficientEncoder()));
+            videoTrackStats.setFrameWidth(getLong(members, FRAME_WIDTH, videoTrackStats.getFrameWidth()));
+            videoTrackStats.setFrameHeight(getLong(members, FRAME_HEIGHT, videoTrackStats.getFrameHeight()));
+            videoTrackStats.setFramesPerSecond(getDouble(members, FRAMES_PER_SECOND, videoTrackStats.getFramesPerSecond()));
+            String encoderImplementation = getString(members, ENCODER_IMPLEMENTATION, null);
+            if (encoderImplementation != null) {
+                onCodecImplementation(peerStats, VIDEO, true, videoTrackStats.getEncoderImplementation(), encoderImplementation);
+                videoTrackStats.setEncoderImplementation(encoderImplementation);
+            }
+            videoTrackStats.setTimeMs((long) timeMs);
+            return PUBLISHED_VIDEO;
+        }
+        return 0;
+    }
 
-                    }
+    private void parseRemoteInboundRtp(PeerStats peerStats, Map<String, Object> members) {
+        if (members.get(SSRC) == null) {
+            return;
+        }
+        Object kind = members.get(KIND);
+        TrackStats trackStats;
+        if (VIDEO.equals(kind)) {
+            trackStats = peerStats.getPublishStats().getVideoTrackStats();
+        } else if (AUDIO.equals(kind)) {
+            trackStats = peerStats.getPublishStats().getAudioTrackStats();
+        } else {
+            return;
+        }
 
-                } else if (VIDEO.equals(value.getMembers().get(KIND))) {
-                    if(value.getMembers().containsKey(SSRC)){
-                        TrackStats videoTrackStats = publishStats.getVideoTrackStats();
+        Object packetsLost = members.get(PACKETS_LOST);
+        if (packetsLost != null) {
+            trackStats.setPacketsLost(((Number) packetsLost).intValue());
+        }
+        trackStats.setJitter(getDouble(members, JITTER, trackStats.getJitter()));
+        trackStats.setRoundTripTime(getDouble(members, ROUND_TRIP_TIME, trackStats.getRoundTripTime()));
+    }
 
-                        if (value.getMembers().containsKey(FIR_COUNT)) {
-                            long firCount = (long) value.getMembers().get(FIR_COUNT);
-                            videoTrackStats.setFirCount(firCount);
-                        }
+    private void parseInboundRtp(PeerStats peerStats, Map<String, RTCStats> statsMap, Map<String, Object> members, double timeMs,
+                                 QualityScore qualityScore) {
+        if (members.get(SSRC) == null) {
+            return;
+        }
+        Object kind = members.get(KIND);
+        boolean isVideo = VIDEO.equals(kind);
+        if (!isVideo && !AUDIO.equals(kind)) {
+            return;
+        }
 
-                        if (value.getMembers().containsKey(PLI_COUNT)) {
-                            long pliCount = (long) value.getMembers().get(PLI_COUNT);
-                            videoTrackStats.setPliCount(pliCount);
-                        }
+        String trackIdentifier = (String) members.get(TRACK_IDENTIFIER);
+        if (trackIdentifier == null) {
+            String trackId = (String) members.get(TRACK_ID);
+            RTCStats track = trackId != null ? statsMap.get(trackId) : null;
+            if (track == null) {
+                return; // must have track identifier.
+            }
+            trackIdentifier = (String) track.getMembers().get(TRACK_IDENTIFIER);
+            if (trackIdentifier == null) {
+                return;
+            }
+        }
+        String trackId = toTrackId(trackIdentifier, isVideo ? VIDEO_TRACK_ID : AUDIO_TRACK_ID);
+
+        // Track records are reused between reports so that deltas are computed in place and
+        // no object is allocated per track on every report.
+        PlayStats peerPlayStats = peerStats.getPlayStats();
+        Map<String, TrackStats> trackStatsMap = isVideo ? peerPlayStats.getVideoTrackStatsMap() : peerPlayStats.getAudioTrackStatsMap();
+        TrackStats trackStats = trackStatsMap.get(trackId);
+        if (trackStats == null) {
+            trackStats = new TrackStats();
+            trackStats.setTrackId(trackId);
+            trackStats.setVideoTrackStats(isVideo);
+            trackStats.setAudioTrackStats(!isVideo);
+            trackStatsMap.put(trackId, trackStats);
+            (isVideo ? playStats.getVideoTrackStatsMap() : playStats.getAudioTrackStatsMap()).put(trackId, trackStats);
+        }
 
-                        if (value.getMembers().containsKey(NACK_COUNT)) {
-                            long nackCount = (long) value.getMembers().get(NACK_COUNT);
-                            videoTrackStats.setNackCount(nackCount);
-                        }
+        Object packetsLost = members.get(PACKETS_LOST);
+        if (packetsLost != null) {
+            trackStats.setPacketsLost(((Number) packetsLost).intValue());
+        }
+        trackStats.setJitter(getDouble(members, JITTER, trackStats.getJitter()));
+
+        if (isVideo) {
+            trackStats.setFirCount(getLong(members, FIR_COUNT, trackStats.getFirCount()));
+            trackStats.setPliCount(getLong(members, PLI_COUNT, trackStats.getPliCount()));
+            trackStats.setNackCount(getLong(members, NACK_COUNT, trackStats.getNackCount()));
+            trackStats.setPacketsReceived(getLong(members, PACKETS_RECEIVED, trackStats.getPacketsReceived()));
+            trackStats.setBytesReceived(getLong(members, BYTES_RECEIVED, trackStats.getBytesReceivedLong()));
+            trackStats.setFramesEncoded(getLong(members, FRAMES_ENCODED, trackStats.getFramesEncoded()));
+            trackStats.setFramesDecoded(getLong(members, FRAMES_DECODED, trackStats.getFramesDecoded()));
+            trackStats.setFramesReceived(getLong(members, FRAMES_RECEIVED, trackStats.getFramesReceived()));
+            trackStats.setFramesDropped(getLong(members, FRAMES_DROPPED, trackStats.getFramesDropped()));
+            trackStats.setTotalFreezesDuration(getDouble(members, TOTAL_FREEZES_DURATION, trackStats.getTotalFreezesDuration()));
+            trackStats.setTotalDecodeTime(getDouble(members, TOTAL_DECODE_TIME, trackStats.getTotalDecodeTime()));
+            trackStats.setPowerEfficientDecoder(getBoolean(members, POWER_EFFICIENT_DECODER, trackStats.isPowerEfficientDecoder()));
+            trackStats.setFrameWidth(getLong(members, FRAME_WIDTH, trackStats.getFrameWidth()));
+            trackStats.setFrameHeight(getLong(members, FRAME_HEIGHT, trackStats.getFrameHeight()));
+            trackStats.setFramesPerSecond(getDouble(members, FRAMES_PER_SECOND, trackStats.getFramesPerSecond()));
+            String decoderImplementation = getString(members, DECODER_IMPLEMENTATION, null);
+            if (decoderImplementation != null) {
+                onCodecImplementation(peerStats, trackId, false, trackStats.getDecoderImplementation(), decoderImplementation);
+                trackStats.setDecoderImplementation(decoderImplementation);
+            }
+        } else {
+            trackStats.setRoundTripTime(getDouble(members, ROUND_TRIP_TIME, trackStats.getRoundTripTime()));
+            trackStats.setConcealmentEvents(getLong(members, CONCEALMENT_EVENTS, trackStats.getConcealmentEventsLong()));
+            trackStats.setPacketsReceived(getLong(members, PACKETS_RECEIVED, trackStats.getPacketsReceived()));
+            trackStats.setBytesReceived(getLong(members, BYTES_RECEIVED, trackStats.getBytesReceivedLong()));
+        }
+        trackStats.setJitterBufferDelay(getDouble(members, JITTER_BUFFER_DELAY, trackStats.getJitterBufferDelay()));
+        trackStats.setJitterBufferEmittedCount(getLong(members, JITTER_BUFFER_EMITTED_COUNT, trackStats.getJitterBufferEmittedCount()));
+        trackStats.setTotalProcessingDelay(getDouble(members, TOTAL_PROCESSING_DELAY, trackStats.getTotalProcessingDelay()));
+        trackStats.setTimeMs((long) timeMs);
+        trackStats.updateRates(timeMs);
+
+        if (qualityScore != null) {
+            // inbound-rtp doesn't have round trip time, it's taken from the transport of the previous report
+            double score = QualityScorer.score(trackStats, isVideo, false, peerStats.getTransportStats().getCurrentRoundTripTime());
+            if (isVideo) {
+                qualityScore.addVideoScore(score);
+            } else {
+                qualityScore.addAudioMos(score);
+            }
+        }
 
-                        if (value.getMembers().containsKey(PACKETS_SENT)) {
-                            long packetsSent = ((BigInteger) value.getMembers().get(PACKETS_SENT)).longValue();
-                            videoTrackStats.setPacketsSent(packetsSent);
-                        }
+        StatsRecorder recorder = statsRecorder;
+        if (recorder != null) {
+            recorder.record(peerStats.getStreamId(), trackStats, isVideo, StatsRecorder.DIRECTION_PLAY, (long) timeMs);
+        }
+        checkLossBurst(peerStats, trackStats);
+        StallDetector detector = stallDetector;
+        if (detector != null) {
+            if (isVideo) {
+                detector.onVideoStats(peerStats.getStreamId(), trackStats, (long) timeMs);
+            } else {
+                detector.onAudioStats(peerStats.getStreamId(), trackStats);
+            }
+        }
+    }
 
-                        if (value.getMembers().containsKey(BYTES_SENT)) {
-                            BigInteger bytesSent = (BigInteger) value.getMembers().get(BYTES_SENT);
-                            videoTrackStats.setBytesSent(bytesSent);
-                            publishStats.setLastKnownVideoBytesSent(bytesSent.longValue());
-                            publishStats.setVideoBitrate((bytesSent.longValue() - publishStats.getLastKnownVideoBytesSent()) / timeDiffSeconds * 8);
-                        }
+    /**
+     * Notifies the listener if the codec implementation of a track changes, e.g. hardware encoder falls back to software
+     */
+    private void onCodecImplementation(PeerStats peerStats, String trackId, boolean encoder, String previousImplementation, String implementation) {
+        if (previousImplementation != null && !previousImplementation.equals(implementation)) {
+            IWebRTCListener listener = webRTCListener;
+            if (listener != null) {
+                listener.onCodecImplementationChanged(peerStats.getStreamId(), trackId, encoder, previousImplementation, implementation);
+            }
+            RtcEventLogRecorder recorder = rtcEventLogRecorder;
+            if (encoder && recorder != null) {
+                recorder.onAnomaly(peerStats.getStreamId(), RtcEventLogRecorder.REASON_ENCODER_FALLBACK);
+            }
+        }
+    }
 
-                        if (value.getMembers().containsKey(FRAMES_ENCODED)) {
-                            long framesEncoded = (long) value.getMembers().get(FRAMES_ENCODED);
-                            videoTrackStats.setFramesEncoded(framesEncoded);
-                        }
+    private void checkLossBurst(PeerStats peerStats, TrackStats trackStats) {
+        RtcEventLogRecorder recorder = rtcEventLogRecorder;
+        if (recorder != null && trackStats.getPacketsLostRate().getDelta() >= LOSS_BURST_MIN_PACKETS
+                && trackStats.getPacketLostRatio() >= LOSS_BURST_PACKET_LOST_RATIO) {
+            recorder.onAnomaly(peerStats.getStreamId(), RtcEventLogRecorder.REASON_LOSS_BURST);
+        }
+    }
 
-                        if (value.getMembers().containsKey(FRAMES_SENT)) {
-                            long framesSent = (long) value.getMembers().get(FRAMES_SENT);
-                            videoTrackStats.setFramesSent(framesSent);
-                        }
+    private void checkRoundTripTimeSpike(PeerStats peerStats) {
+        RtcEventLogRecorder recorder = rtcEventLogRecorder;
+        TransportStats transportStats = peerStats.getTransportStats();
+        double averageRoundTripTime = transportStats.getAverageRoundTripTime();
+        double roundTripTime = transportStats.getCurrentRoundTripTime();
+        if (recorder != null && transportStats.getResponsesReceived() >= RTT_SPIKE_MIN_RESPONSES
+                && roundTripTime >= RTT_SPIKE_FACTOR * averageRoundTripTime
+                && roundTripTime - averageRoundTripTime >= RTT_SPIKE_MIN_INCREASE) {
+            recorder.onAnomaly(peerStats.getStreamId(), RtcEventLogRecorder.REASON_RTT_SPIKE);
+        }
+    }
 
-                        if (value.getMembers().containsKey(TARGET_BITRATE)) {
-                            double targetBitrate = (double) value.getMembers().get(TARGET_BITRATE);
-                            videoTrackStats.setTargetBitrate(targetBitrate);
-                        }
+    private void parseTransport(PeerStats peerStats, Map<String, RTCStats> statsMap, RTCStats transport,
+                                RTCStats nominatedCandidatePair, double timeMs) {
+        TransportStats transportStats = peerStats.getTransportStats();
+        String previousCandidatePairId = transportStats.getSelectedCandidatePairId();
+
+        RTCStats candidatePair = null;
+        if (transport != null) {
+            Map<String, Object> members = transport.getMembers();
+            Object selectedCandidatePairId = members.get(SELECTED_CANDIDATE_PAIR_ID);
+            if (selectedCandidatePairId != null) {
+                candidatePair = statsMap.get(selectedCandidatePairId);
+            }
+            Object dtlsState = members.get(DTLS_STATE);
+            if (dtlsState != null) {
+                transportStats.setDtlsState(dtlsState.toString());
+            }
+            transportStats.setSelectedCandidatePairChanges(getLong(members, SELECTED_CANDIDATE_PAIR_CHANGES, transportStats.getSelectedCandidatePairChanges()));
+            transportStats.setBytesSent(getLong(members, BYTES_SENT, transportStats.getBytesSent()));
+            transportStats.setBytesReceived(getLong(members, BYTES_RECEIVED, transportStats.getBytesReceived()));
+            transportStats.setPacketsSent(getLong(members, PACKETS_SENT, transportStats.getPacketsSent()));
+            transportStats.setPacketsReceived(getLong(members, PACKETS_RECEIVED, transportStats.getPacketsReceived()));
+        }
+        if (candidatePair == null) {
+            candidatePair = nominatedCandidatePair;
+        }
 
-                        if (value.getMembers().containsKey(TOTAL_PACKET_SEND_DELAY)) {
-                            double totalPacketSendDelay = (double) value.getMembers().get(TOTAL_PACKET_SEND_DELAY);
-                            videoTrackStats.setTotalPacketSendDelay(totalPacketSendDelay);
-                        }
+        if (candidatePair != null) {
+            Map<String, Object> members = candidatePair.getMembers();
+            transportStats.setSelectedCandidatePairId(candidatePair.getId());
+            transportStats.setAvailableOutgoingBitrate(getDouble(members, AVAILABLE_OUTGOING_BITRATE, transportStats.getAvailableOutgoingBitrate()));
+            transportStats.setAvailableIncomingBitrate(getDouble(members, AVAILABLE_INCOMING_BITRATE, transportStats.getAvailableIncomingBitrate()));
+            transportStats.setCurrentRoundTripTime(getDouble(members, CURRENT_ROUND_TRIP_TIME, transportStats.getCurrentRoundTripTime()));
+            transportStats.setTotalRoundTripTime(getDouble(members, TOTAL_ROUND_TRIP_TIME, transportStats.getTotalRoundTripTime()));
+            transportStats.setResponsesReceived(getLong(members, RESPONSES_RECEIVED, transportStats.getResponsesReceived()));
+            if (transport == null) {
+                //bytes of the transport include all candidate pairs, use the pair's own if there is no transport stats
+                transportStats.setBytesSent(getLong(members, BYTES_SENT, transportStats.getBytesSent()));
+                transportStats.setBytesReceived(getLong(members, BYTES_RECEIVED, transportStats.getBytesReceived()));
+                transportStats.setPacketsSent(getLong(members, PACKETS_SENT, transportStats.getPacketsSent()));
+                transportStats.setPacketsReceived(getLong(members, PACKETS_RECEIVED, transportStats.getPacketsReceived()));
+            }
 
-                        videoTrackStats.setTimeMs((long)timeMs);
+            RTCStats localCandidate = getReferencedStats(statsMap, members, LOCAL_CANDIDATE_ID);
+            if (localCandidate != null) {
+                Map<String, Object> candidateMembers = localCandidate.getMembers();
+                transportStats.setLocalCandidateType(getString(candidateMembers, CANDIDATE_TYPE));
+                transportStats.setLocalAddress(getAddress(candidateMembers));
+                transportStats.setLocalPort((int) getLong(candidateMembers, PORT, 0));
+                transportStats.setProtocol(getString(candidateMembers, PROTOCOL));
+                transportStats.setRelayProtocol(getString(candidateMembers, RELAY_PROTOCOL));
+                transportStats.setNetworkType(getString(candidateMembers, NETWORK_TYPE));
+            }
+            RTCStats remoteCandidate = getReferencedStats(statsMap, members, REMOTE_CANDIDATE_ID);
+            if (remoteCandidate != null) {
+                Map<String, Object> candidateMembers = remoteCandidate.getMembers();
+                transportStats.setRemoteCandidateType(getString(candidateMembers, CANDIDATE_TYPE));
+                transportStats.setRemoteAddress(getAddress(candidateMembers));
+                transportStats.setRemotePort((int) getLong(candidateMembers, PORT, 0));
+            }
+        }
 
-                    }
+        transportStats.setTimeMs((long) timeMs);
+        transportStats.updateRates(timeMs);
 
-                }
+        String selectedCandidatePairId = transportStats.getSelectedCandidatePairId();
+        if (selectedCandidatePairId != null && !selectedCandidatePairId.equals(previousCandidatePairId)) {
+            IWebRTCListener listener = webRTCListener;
+            if (listener != null) {
+                listener.onSelectedCandidatePairChanged(peerStats.getStreamId(), transportStats);
+            }
+        }
+    }
 
-            } else if (REMOTE_INBOUND_RTP.equals(value.getType()) ) { //Exiting data from local client, received by remote peer statistics.(Part of publish)
-                if (VIDEO.equals(value.getMembers().get(KIND))) {
+    private static void parseDataChannel(PeerStats peerStats, Map<String, Object> members, double timeMs) {
+        String label = getString(members, LABEL);
+        if (label == null) {
+            return;
+        }
+        Map<String, DataChannelStats> dataChannelStatsMap = peerStats.getDataChannelStats();
+        DataChannelStats dataChannelStats = dataChannelStatsMap.get(label);
+        if (dataChannelStats == null) {
+            dataChannelStats = new DataChannelStats(label);
+            dataChannelStatsMap.put(label, dataChannelStats);
+        }
+        dataChannelStats.setProtocol(getString(members, PROTOCOL, dataChannelStats.getProtocol()));
+        dataChannelStats.setDataChannelIdentifier(getLong(members, DATA_CHANNEL_IDENTIFIER, dataChannelStats.getDataChannelIdentifier()));
+        dataChannelStats.setState(getString(members, STATE, dataChannelStats.getState()));
+        dataChannelStats.setMessagesSent(getLong(members, MESSAGES_SENT, dataChannelStats.getMessagesSent()));
+        dataChannelStats.setBytesSent(getLong(members, BYTES_SENT, dataChannelStats.getBytesSent()));
+        dataChannelStats.setMessagesReceived(getLong(members, MESSAGES_RECEIVED, dataChannelStats.getMessagesReceived()));
+        dataChannelStats.setBytesReceived(getLong(members, BYTES_RECEIVED, dataChannelStats.getBytesReceived()));
+        dataChannelStats.updateRates(timeMs);
+    }
 
-                    if(value.getMembers().containsKey(SSRC)) {
-                        TrackStats videoTrackStats = getPublishStats().getVideoTrackStats();
+    private static RTCStats getReferencedStats(Map<String, RTCStats> statsMap, Map<String, Object> members, String key) {
+        Object id = members.get(key);
+        return id != null ? statsMap.get(id) : null;
+    }
 
-                        if(value.getMembers().containsKey(PACKETS_LOST)){
-                            int packetsLost = (int)value.getMembers().get(PACKETS_LOST);
-                            videoTrackStats.setPacketsLost(packetsLost);
-                        }
+    private static String getString(Map<String, Object> members, String key) {
+        return getString(members, key, null);
+    }
 
-                        if(value.getMembers().containsKey(JITTER)) {
-                            double jitter = (double)value.getMembers().get(JITTER);
-                            videoTrackStats.setJitter(jitter);
+    private static String getString(Map<String, Object> members, String key, String defaultValue) {
+        Object value = members.get(key);
+        return value != null ? value.toString() : defaultValue;
+    }
 
-                        }
+    private static boolean getBoolean(Map<String, Object> members, String key, boolean defaultValue) {
+        Object value = members.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
 
-                        if(value.getMembers().containsKey(ROUND_TRIP_TIME)) {
-                            double roundTripTime = (double)value.getMembers().get(ROUND_TRIP_TIME);
-                            videoTrackStats.setRoundTripTime(roundTripTime);
-                        }
-                    }
-                } else if (AUDIO.equals(value.getMembers().get(KIND))) {
-                    if(value.getMembers().containsKey(SSRC)){
-                        TrackStats audioTrackStats = publishStats.getAudioTrackStats();
+    private static String getAddress(Map<String, Object> members) {
+        //address replaced ip in the spec, older versions report only ip
+        String address = getString(members, ADDRESS);
+        return address != null ? address : getString(members, IP);
+    }
 
-                        if(value.getMembers().containsKey(PACKETS_LOST)){
-                            int packetsLost = (int)value.getMembers().get(PACKETS_LOST);
-                            audioTrackStats.setPacketsLost(packetsLost);
-                        }
+    private void parseMediaSource(PeerStats peerStats, Map<String, Object> members) {
+        Object audioLevel = members.get(AUDIO_LEVEL);
+        if (audioLevel != null) {
+            //backwards comp
+            localAudioLevel = ((Number) audioLevel).doubleValue();
 
-                        if(value.getMembers().containsKey(JITTER)) {
-                            double jitter = (double)value.getMembers().get(JITTER);
-                            audioTrackStats.setJitter(jitter);
+            peerStats.getPublishStats().setLocalAudioLevel(localAudioLevel);
+            claimPrimaryPublisher(peerStats);
+        }
+    }
 
-                        }
+    /**
+     * Makes the peer the primary publisher if there is none. Reports are parsed on the main thread
+     * so the primary publisher doesn't need synchronization.
+     */
+    private void claimPrimaryPublisher(PeerStats peerStats) {
+        if (primaryPublisherId == null) {
+            primaryPublisherId = peerStats.getStreamId();
+            primaryPublishStats = peerStats.getPublishStats();
+        }
+    }
 
-                        if(value.getMembers().containsKey(ROUND_TRIP_TIME)) {
-                            double roundTripTime = (double)value.getMembers().get(ROUND_TRIP_TIME);
-                            audioTrackStats.setRoundTripTime(roundTripTime);
-                        }
-                    }
-                }
-            }else if(INBOUND_RTP.equals(value.getType())){ //Incoming data from peers.(Play statistics)
-
-                if (VIDEO.equals(value.getMembers().get(KIND))) {
-
-                    if(value.getMembers().containsKey(SSRC)) {
-
-                        TrackStats videoTrackStats = new TrackStats();
-                        videoTrackStats.setVideoTrackStats(true);
-
-                        if (value.getMembers().containsKey(FIR_COUNT)) {
-                            long firCount = (long) value.getMembers().get(FIR_COUNT);
-                            videoTrackStats.setFirCount(firCount);
-                        }
-
-                        if (value.getMembers().containsKey(PLI_COUNT)) {
-                            long pliCount = (long) value.getMembers().get(PLI_COUNT);
-                            videoTrackStats.setPliCount(pliCount);
-                        }
-
-                        if (value.getMembers().containsKey(NACK_COUNT)) {
-                            long nackCount = (long) value.getMembers().get(NACK_COUNT);
-                            videoTrackStats.setNackCount(nackCount);
-                        }
-
-                        if (value.getMembers().containsKey(JITTER)) {
-                            double jitter = (double) value.getMembers().get(JITTER);
-                            videoTrackStats.setJitter(jitter);
-                        }
-
-                        if (value.getMembers().containsKey(PACKETS_LOST)) {
-                            int packetsLost = (int) value.getMembers().get(PACKETS_LOST);
-                            videoTrackStats.setPacketsLost(packetsLost);
-                        }
-
-                        if (value.getMembers().containsKey(PACKETS_RECEIVED)) {
-                            long packetsReceived = (long) value.getMembers().get(PACKETS_RECEIVED);
-                            videoTrackStats.setPacketsReceived(packetsReceived);
-                        }
-
-                        if (value.getMembers().containsKey(BYTES_RECEIVED)) {
-                            BigInteger bytesReceived = (BigInteger) value.getMembers().get(BYTES_RECEIVED);
-                            videoTrackStats.setBytesReceived(bytesReceived);
-
-                        }
-
-                        if (value.getMembers().containsKey(FRAMES_ENCODED)) {
-                            long framesEncoded = (long) value.getMembers().get(FRAMES_ENCODED);
-                            videoTrackStats.setFramesEncoded(framesEncoded);
-                        }
-
-                        if (value.getMembers().containsKey(FRAMES_DECODED)) {
-                            long framesDecoded = (long) value.getMembers().get(FRAMES_DECODED);
-                            videoTrackStats.setFramesDecoded(framesDecoded);
-                        }
-
-                        if (value.getMembers().containsKey(FRAMES_RECEIVED)) {
-                            Number framesReceivedNumber = (Number) value.getMembers().get(FRAMES_RECEIVED);
-                            long framesReceived = framesReceivedNumber.longValue();
-
-                            videoTrackStats.setFramesReceived(framesReceived);
-                        }
-
-                        if (value.getMembers().containsKey(FRAMES_DROPPED)) {
-                            Number framesDroppedNumber = (Number) value.getMembers().get(FRAMES_DROPPED);
-                            long framesDropped = framesDroppedNumber.longValue();
-
-                            videoTrackStats.setFramesDropped(framesDropped);
-                        }
-
-                        if (value.getMembers().containsKey(TOTAL_FREEZES_DURATION)) {
-                            double totalFreezesDuration = (double) value.getMembers().get(TOTAL_FREEZES_DURATION);
-                            videoTrackStats.setTotalFreezesDuration(totalFreezesDuration);
-                        }
-
-                        videoTrackStats.setTimeMs((long)timeMs);
-
-                        if (value.getMembers().containsKey(TRACK_IDENTIFIER)) { // must have track identifier.
-                            String trackIdentifier = (String) value.getMembers().get(TRACK_IDENTIFIER);
-                            trackIdentifier = trackIdentifier.substring(VIDEO_TRACK_ID.length());
-                            videoTrackStats.setTrackId(trackIdentifier);
-                            playStats.getVideoTrackStatsMap().put(trackIdentifier, videoTrackStats);
-                        } else if (value.getMembers().containsKey(TRACK_ID)) {
-                            String trackId = (String) value.getMembers().get(TRACK_ID);
-                            RTCStats track = report.getStatsMap().get(trackId);
-                            String trackIdentifier = (String) track.getMembers().get(TRACK_IDENTIFIER);
-                            trackIdentifier = trackIdentifier.substring(VIDEO_TRACK_ID.length());
-                            videoTrackStats.setTrackId(trackIdentifier);
-                            playStats.getVideoTrackStatsMap().put(trackIdentifier, videoTrackStats);
-                        }
-                    }
-                } else if (AUDIO.equals(value.getMembers().get(KIND))) {
-                    if(value.getMembers().containsKey(SSRC)){
-                        TrackStats audioTrackStat = new TrackStats();
-                        audioTrackStat.setAudioTrackStats(true);
-
-                        if(value.getMembers().containsKey(PACKETS_LOST)){
-                            int packetsLost = (int)value.getMembers().get(PACKETS_LOST);
-                            audioTrackStat.setPacketsLost(packetsLost);
-                        }
-
-                        if(value.getMembers().containsKey(JITTER)) {
-                            double jitter = (double)value.getMembers().get(JITTER);
-                            audioTrackStat.setJitter(jitter);
-                        }
-
-                        if(value.getMembers().containsKey(ROUND_TRIP_TIME)) {
-                            double roundTripTime = (double)value.getMembers().get(ROUND_TRIP_TIME);
-                            audioTrackStat.setRoundTripTime(roundTripTime);
-                        }
-
-                        if(value.getMembers().containsKey(CONCEALMENT_EVENTS)) {
-                            BigInteger concealmentEvents = ((BigInteger) value.getMembers().get(CONCEALMENT_EVENTS));
-                            audioTrackStat.setConcealmentEvents(concealmentEvents);
-                        }
-
-                        if (value.getMembers().containsKey(TRACK_IDENTIFIER)) { // must have track identifier.
-                            String trackIdentifier = (String) value.getMembers().get(TRACK_IDENTIFIER);
-                            trackIdentifier = trackIdentifier.substring(AUDIO_TRACK_ID.length());
-                            audioTrackStat.setTrackId(trackIdentifier);
-                            playStats.getAudioTrackStatsMap().put(trackIdentifier, audioTrackStat);
-                        }
-                        else if (value.getMembers().containsKey(TRACK_ID)) {
-                            String trackId = (String) value.getMembers().get(TRACK_ID);
-                            RTCStats track = report.getStatsMap().get(trackId);
-                            String trackIdentifier = (String) track.getMembers().get(TRACK_IDENTIFIER);
-                            trackIdentifier = trackIdentifier.substring(AUDIO_TRACK_ID.length());
-                            audioTrackStat.setTrackId(trackIdentifier);
-                            playStats.getAudioTrackStatsMap().put(trackIdentifier, audioTrackStat);
-                        }
-                    }
-                }
+    /**
+     * Strips the track id prefix from the track identifier. Results are cached because identifiers
+     * of a track don't change between reports and substring allocates on every call.
+     */
+    private String toTrackId(String trackIdentifier, String prefix) {
+        String trackId = trackIdCache.get(trackIdentifier);
+        if (trackId == null) {
+            trackId = trackIdentifier.startsWith(prefix) ? trackIdentifier.substring(prefix.length()) : trackIdentifier;
+            trackIdCache.put(trackIdentifier, trackId);
+        }
+        return trackId;
+    }
 
-            }else if(MEDIA_SOURCE.equals(value.getType())){
-                Map<String,Object> members =  value.getMembers();
-                if(members.containsKey(AUDIO_LEVEL)){
-                    //backwards comp
-                    localAudioLevel = (double) members.get(AUDIO_LEVEL);
+    /**
+     * Integer members may arrive as Integer, Long or BigInteger depending on their type in the spec.
+     * Reading them as Number avoids both the double lookup of containsKey/get and BigInteger arithmetic.
+     */
+    private static long getLong(Map<String, Object> members, String key, long defaultValue) {
+        Object value = members.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
 
-                    publishStats.setLocalAudioLevel((double) members.get(AUDIO_LEVEL));
-                }
-            }
-        }
-        lastKnownStatsTimeStampMs = timeMs;
+    private static double getDouble(Map<String, Object> members, String key, double defaultValue) {
+        Object value = members.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
     }
 
 
@@ -371,12 +712,159 @@ public class StatsCollector {
         return localAudioLevel;
     }
 
+    /**
+     * Aggregated view of play statistics. It holds the track stats of all playing peers.
+     */
     public PlayStats getPlayStats() {
         return playStats;
     }
 
+    /**
+     * Publish statistics of the primary publisher, i.e. the first peer that sends local tracks. It's kept
+     * until that peer is removed so the view doesn't switch between peers when more than one stream is published.
+     * Use {@link #getPublishStats(String)} for the stats of a specific stream.
+     */
     public PublishStats getPublishStats() {
-        return publishStats;
+        return primaryPublishStats;
+    }
+
+    /**
+     * @return the stream id of the primary publisher or null if no peer publishes yet
+     */
+    public String getPrimaryPublisherId() {
+        return primaryPublisherId;
+    }
+
+    public PlayStats getPlayStats(String streamId) {
+        PeerStats peerStats = peerStatsMap.get(streamId);
+        return peerStats != null ? peerStats.getPlayStats() : null;
+    }
+
+    public PublishStats getPublishStats(String streamId) {
+        PeerStats peerStats = peerStatsMap.get(streamId);
+        return peerStats != null ? peerStats.getPublishStats() : null;
+    }
+
+    public TransportStats getTransportStats(String streamId) {
+        PeerStats peerStats = peerStatsMap.get(streamId);
+        return peerStats != null ? peerStats.getTransportStats() : null;
+    }
+
+    public PeerStats getPeerStats(String streamId) {
+        return peerStatsMap.get(streamId);
+    }
+
+    public Map<String, PeerStats> getPeerStatsMap() {
+        return peerStatsMap;
+    }
+
+    /**
+     * @return true if the stream has stats and the smoothed packet loss of all its tracks is below {@link #HEALTHY_PACKET_LOST_RATIO}
+     */
+    public boolean isHealthy(String streamId) {
+        PeerStats peerStats = peerStatsMap.get(streamId);
+        if (peerStats == null) {
+            return false;
+        }
+        PublishStats peerPublishStats = peerStats.getPublishStats();
+        if (!isHealthy(peerPublishStats.getAudioTrackStats()) || !isHealthy(peerPublishStats.getVideoTrackStats())) {
+            return false;
+        }
+        for (TrackStats trackStats : peerStats.getPlayStats().getVideoTrackStatsMap().values()) {
+            if (!isHealthy(trackStats)) {
+                return false;
+            }
+        }
+        for (TrackStats trackStats : peerStats.getPlayStats().getAudioTrackStatsMap().values()) {
+            if (!isHealthy(trackStats)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHealthy(TrackStats trackStats) {
+        return trackStats.getEwmaPacketLostRatio() < HEALTHY_PACKET_LOST_RATIO;
+    }
+
+    /**
+     * Removes the stats of a peer, e.g. when its peer connection is closed.
+     * Its tracks are removed from the aggregated views as well.
+     */
+    public void removePeerStats(String streamId) {
+        SdkMetrics.StreamMetrics streamMetrics = streamMetricsMap.remove(streamId);
+        if (streamMetrics != null) {
+            streamMetrics.remove();
+        }
+        PeerStats peerStats = peerStatsMap.remove(streamId);
+        if (peerStats == null) {
+            return;
+        }
+        for (Map.Entry<String, TrackStats> entry : peerStats.getPlayStats().getVideoTrackStatsMap().entrySet()) {
+            if (playStats.getVideoTrackStatsMap().get(entry.getKey()) == entry.getValue()) {
+                playStats.getVideoTrackStatsMap().remove(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, TrackStats> entry : peerStats.getPlayStats().getAudioTrackStatsMap().entrySet()) {
+            if (playStats.getAudioTrackStatsMap().get(entry.getKey()) == entry.getValue()) {
+                playStats.getAudioTrackStatsMap().remove(entry.getKey());
+            }
+        }
+        if (streamId.equals(primaryPublisherId)) {
+            primaryPublisherId = null;
+            primaryPublishStats = new PublishStats();
+        }
+    }
+
+    /**
+     * Enables recording the history of track stats. Pass null to disable it.
+     * The recorder isn't cleared by {@link #reset()} so that the history before a disconnection can be exported.
+     */
+    public void setStatsRecorder(StatsRecorder statsRecorder) {
+        this.statsRecorder = statsRecorder;
+    }
+
+    public StatsRecorder getStatsRecorder() {
+        return statsRecorder;
+    }
+
+    /**
+     * Enables detecting the stalls of the played tracks from the reports. Pass null to disable it.
+     */
+    public void setStallDetector(StallDetector stallDetector) {
+        this.stallDetector = stallDetector;
+    }
+
+    public StallDetector getStallDetector() {
+        return stallDetector;
+    }
+
+    /**
+     * Enables reporting the anomalies in the reports, i.e. loss bursts, RTT spikes and encoder fallbacks,
+     * to the event log recorder. Pass null to disable it.
+     */
+    public void setRtcEventLogRecorder(RtcEventLogRecorder rtcEventLogRecorder) {
+        this.rtcEventLogRecorder = rtcEventLogRecorder;
+    }
+
+    public RtcEventLogRecorder getRtcEventLogRecorder() {
+        return rtcEventLogRecorder;
+    }
+
+    public void setWebRTCListener(IWebRTCListener webRTCListener) {
+        this.webRTCListener = webRTCListener;
+    }
+
+    public void reset() {
+        for (SdkMetrics.StreamMetrics streamMetrics : streamMetricsMap.values()) {
+            streamMetrics.remove();
+        }
+        streamMetricsMap.clear();
+        peerStatsMap.clear();
+        trackIdCache.clear();
+        primaryPublisherId = null;
+        primaryPublishStats.reset();
+        playStats.reset();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the stats history of a {@link StatsRecorder} to files, e.g. when an error occurs.
+ *
+ * Errors may repeat, e.g. while a play request is retried, so a reason is exported again only after the history
+ * duration of the recorder has passed, when the file doesn't repeat the same history. At most {@link #MAX_EXPORTS}
+ * files are kept in the directory, the oldest ones are deleted. Files are written on the given executor, which
+ * shouldn't be the executor of the peer connections.
+ */
+public class StatsRecordExporter {
+
+    private static final String TAG = StatsRecordExporter.class.getSimpleName();
+
+    public static final int MAX_EXPORTS = 5;
+    //reasons are exported again after this duration if the recorder doesn't have a duration
+    public static final long DEFAULT_REPEAT_INTERVAL_MS = 60000;
+
+    static final String FILE_PREFIX = "stats-";
+    static final String FILE_EXTENSION = ".amsr";
+
+    private final StatsRecorder recorder;
+    private final File directory;
+    private final Executor executor;
+    private final long repeatIntervalMs;
+    //last export time of the reasons in nanoseconds
+    private final Map<String, Long> exportTimes = new HashMap<>();
+
+    public StatsRecordExporter(StatsRecorder recorder, File directory, Executor executor) {
+        this.recorder = recorder;
+        this.directory = directory;
+        this.executor = executor;
+        this.repeatIntervalMs = recorder.getDurationMs() > 0 ? recorder.getDurationMs() : DEFAULT_REPEAT_INTERVAL_MS;
+    }
+
+    /**
+     * Exports the history in background
+     *
+     * @param reason added to the file name, e.g. the error that triggers the export
+     * @return false if the reason is exported within the history duration and it's skipped
+     */
+    public boolean export(String reason) {
+        String suffix = reason != null ? "-" + reason.replaceAll("[^A-Za-z0-9_-]", "_") : "";
+        long nowNs = System.nanoTime();
+        synchronized (exportTimes) {
+            Long lastExportNs = exportTimes.get(suffix);
+            if (lastExportNs != null && TimeUnit.NANOSECONDS.toMillis(nowNs - lastExportNs) < repeatIntervalMs) {
+                return false;
+            }
+            exportTimes.put(suffix, nowNs);
+        }
+        executor.execute(() -> {
+            File file = new File(directory, FILE_PREFIX + System.currentTimeMillis() + suffix + FILE_EXTENSION);
+            try {
+                recorder.exportBinary(file);
+                Log.i(TAG, "Stats history is exported to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                Log.e(TAG, "Stats history cannot be exported to " + file.getAbsolutePath(), e);
+            }
+            trimExports();
+        });
+        return true;
+    }
+
+    private void trimExports() {
+        List<File> exports = getExports();
+        for (int i = 0; i < exports.size() - MAX_EXPORTS; i++) {
+            File export = exports.get(i);
+            if (!export.delete()) {
+                Log.w(TAG, "File cannot be deleted: " + export.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * @return exported files in the directory, oldest first
+     */
+    public List<File> getExports() {
+        File[] files = directory.listFiles(file -> file.isFile() && file.getName().startsWith(FILE_PREFIX)
+                && file.getName().endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        //file names start with the export time in milliseconds
+        Arrays.sort(files, (first, second) -> first.getName().compareTo(second.getName()));
+        return Arrays.asList(files);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
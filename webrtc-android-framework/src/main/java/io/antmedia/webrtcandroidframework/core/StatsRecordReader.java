@@ -0,0 +1,95 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.core.StatsRecorder.TrackSeries;
+
+/**
+ * Decodes the files exported by {@link StatsRecorder#exportBinary}. It has no Android dependency,
+ * so it can be used on a desktop JVM for offline analysis:
+ *
+ * java -cp webrtc-android-framework.jar io.antmedia.webrtcandroidframework.core.StatsRecordReader stats.amsr [stats.csv]
+ *
+ * Format, all numbers are big endian:
+ * int magic("AMSR"), short version, short columnCount, columnCount x UTF column name, int trackCount,
+ * then for each track: UTF streamId, UTF trackId, boolean video, byte direction, int sampleCount and
+ * sampleCount x (long timeMs, columnCount x float value)
+ */
+public class StatsRecordReader {
+
+    private StatsRecordReader() {
+    }
+
+    public static List<TrackSeries> read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic = in.readInt();
+        if (magic != StatsRecorder.MAGIC) {
+            throw new IOException("Not a stats record file. Magic is 0x" + Integer.toHexString(magic));
+        }
+        int version = in.readShort();
+        if (version > StatsRecorder.VERSION) {
+            throw new IOException("Unsupported stats record version " + version);
+        }
+
+        //Columns are matched by name so that files with more or less columns can still be read
+        int columnCount = in.readShort();
+        int[] columnIndexes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnIndexes[i] = Arrays.asList(StatsRecorder.COLUMNS).indexOf(in.readUTF());
+        }
+
+        int trackCount = in.readInt();
+        List<TrackSeries> seriesList = new ArrayList<>(trackCount);
+        float[] sample = new float[StatsRecorder.COLUMNS.length];
+        for (int track = 0; track < trackCount; track++) {
+            String streamId = in.readUTF();
+            String trackId = in.readUTF();
+            boolean video = in.readBoolean();
+            byte direction = in.readByte();
+            int sampleCount = in.readInt();
+
+            TrackSeries series = new TrackSeries(streamId, trackId, video, direction, Math.max(sampleCount, 1));
+            for (int i = 0; i < sampleCount; i++) {
+                long timeMs = in.readLong();
+                Arrays.fill(sample, 0);
+                for (int column = 0; column < columnCount; column++) {
+                    float value = in.readFloat();
+                    if (columnIndexes[column] >= 0) {
+                        sample[columnIndexes[column]] = value;
+                    }
+                }
+                series.set(i, timeMs, sample);
+            }
+            seriesList.add(series);
+        }
+        return seriesList;
+    }
+
+    /**
+     * Converts a binary stats record to CSV. Output is written to the standard output if no output file is given.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StatsRecordReader <stats record file> [csv output file]");
+            System.exit(1);
+        }
+        List<TrackSeries> seriesList;
+        try (InputStream inputStream = new FileInputStream(args[0])) {
+            seriesList = read(inputStream);
+        }
+        try (Writer writer = new BufferedWriter(args.length > 1 ? new FileWriter(args[1]) : new OutputStreamWriter(System.out))) {
+            StatsRecorder.writeCsv(seriesList, writer);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+/**
+ * Keeps the recent history of track statistics in memory so that quality problems can be analyzed after the fact.
+ * Every track has a ring of samples held in primitive arrays, so recording a sample doesn't allocate.
+ *
+ * A recorder created with {@link #StatsRecorder(int)} has fixed capacity rings and overwrites the oldest samples
+ * when a ring is full. A recorder created with {@link #StatsRecorder(long, int, int)} covers a duration instead:
+ * samples older than the duration are evicted by their timestamps and a ring grows when the stats are polled
+ * more often than expected, so the covered duration doesn't depend on the polling period of the stream.
+ *
+ * The history can be exported as a compact binary file, see {@link StatsRecordReader} for the format and for
+ * converting it to CSV, or directly as CSV.
+ */
+public class StatsRecorder {
+
+    //"AMSR"
+    public static final int MAGIC = 0x414D5352;
+    public static final int VERSION = 1;
+
+    public static final byte DIRECTION_PUBLISH = 0;
+    public static final byte DIRECTION_PLAY = 1;
+
+    public static final int COLUMN_BITRATE = 0;
+    public static final int COLUMN_PACKET_LOST_RATIO = 1;
+    public static final int COLUMN_PACKETS_PER_SECOND = 2;
+    public static final int COLUMN_JITTER = 3;
+    public static final int COLUMN_ROUND_TRIP_TIME = 4;
+    public static final int COLUMN_FRAMES_PER_SECOND = 5;
+    public static final int COLUMN_FRAMES_DROPPED = 6;
+    public static final int COLUMN_NACK_COUNT = 7;
+    public static final int COLUMN_PLI_COUNT = 8;
+    public static final int COLUMN_TOTAL_FREEZES_DURATION = 9;
+    public static final int COLUMN_CONCEALMENT_EVENTS = 10;
+
+    public static final String[] COLUMNS = {
+            "bitrate",
+            "packetLostRatio",
+            "packetsPerSecond",
+            "jitter",
+            "roundTripTime",
+            "framesPerSecond",
+            "framesDropped",
+            "nackCount",
+            "pliCount",
+            "totalFreezesDuration",
+            "concealmentEvents"
+    };
+
+    /**
+     * Maximum number of tracks kept in the recorder. When it's exceeded, the track that is not updated
+     * for the longest time is dropped.
+     */
+    public static final int MAX_TRACK_COUNT = 64;
+
+    /**
+     * Shortest stats period that a recorder created for a duration keeps the whole duration for. Rings don't
+     * grow beyond duration / this period.
+     */
+    public static final int MIN_SAMPLE_PERIOD_MS = 100;
+
+    private final int capacity;
+    private final int maxCapacity;
+    //0 if samples are evicted only when the ring is full
+    private final long durationMs;
+
+    //Track records are reused by StatsCollector, so the record itself identifies the track without building a key
+    private final Map<TrackStats, TrackSeries> seriesMap = new IdentityHashMap<>();
+
+    /**
+     * @param capacity number of samples kept for each track
+     */
+    public StatsRecorder(int capacity) {
+        this(0, capacity, capacity);
+    }
+
+    /**
+     * @param durationMs samples older than this relative to the latest sample of a track are evicted
+     * @param capacity initial number of samples kept for each track, i.e. duration / expected stats period
+     * @param maxCapacity rings don't grow beyond this, so it bounds the memory if the stats are polled too often
+     */
+    public StatsRecorder(long durationMs, int capacity, int maxCapacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be at least 1 but it's " + capacity);
+        }
+        if (maxCapacity < capacity) {
+            throw new IllegalArgumentException("Max capacity " + maxCapacity + " is less than capacity " + capacity);
+        }
+        this.durationMs = durationMs;
+        this.capacity = capacity;
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Records the current values of a track. It's called after the rates of the track are updated.
+     */
+    public synchronized void record(String streamId, TrackStats trackStats, boolean video, byte direction, long timeMs) {
+        TrackSeries series = seriesMap.get(trackStats);
+        if (series == null) {
+            if (seriesMap.size() >= MAX_TRACK_COUNT) {
+                removeLeastRecentlyUpdated();
+            }
+            String trackId = trackStats.getTrackId() != null ? trackStats.getTrackId() : (video ? StatsCollector.VIDEO : StatsCollector.AUDIO);
+            series = new TrackSeries(streamId, trackId, video, direction, capacity, maxCapacity, durationMs);
+            seriesMap.put(trackStats, series);
+        }
+
+        float[] row = series.add(timeMs);
+        if (row == null) {
+            return;
+        }
+        boolean publish = direction == DIRECTION_PUBLISH;
+        row[COLUMN_BITRATE] = (float) trackStats.getBitrate();
+        row[COLUMN_PACKET_LOST_RATIO] = trackStats.getPacketLostRatio();
+        row[COLUMN_PACKETS_PER_SECOND] = (float) (publish ? trackStats.getPacketsSentRate().getRate() : trackStats.getPacketsReceivedRate().getRate());
+        row[COLUMN_JITTER] = (float) trackStats.getJitter();
+        row[COLUMN_ROUND_TRIP_TIME] = (float) trackStats.getRoundTripTime();
+        row[COLUMN_FRAMES_PER_SECOND] = (float) (publish ? trackStats.getFramesEncodedRate().getRate() : trackStats.getFramesDecodedRate().getRate());
+        row[COLUMN_FRAMES_DROPPED] = trackStats.getFramesDropped();
+        row[COLUMN_NACK_COUNT] = trackStats.getNackCount();
+        row[COLUMN_PLI_COUNT] = trackStats.getPliCount();
+        row[COLUMN_TOTAL_FREEZES_DURATION] = (float) trackStats.getTotalFreezesDuration();
+        row[COLUMN_CONCEALMENT_EVENTS] = trackStats.getConcealmentEventsLong();
+        series.commit();
+    }
+
+    private void removeLeastRecentlyUpdated() {
+        TrackStats oldestKey = null;
+        long oldestTimeMs = Long.MAX_VALUE;
+        for (Map.Entry<TrackStats, TrackSeries> entry : seriesMap.entrySet()) {
+            long lastTimeMs = entry.getValue().getLastTimeMs();
+            if (lastTimeMs < oldestTimeMs) {
+                oldestTimeMs = lastTimeMs;
+                oldestKey = entry.getKey();
+            }
+        }
+        seriesMap.remove(oldestKey);
+    }
+
+    /**
+     * Removes the series of the stream, e.g. to stop keeping history of a stream that won't be analyzed.
+     */
+    public synchronized void removeStream(String streamId) {
+        Iterator<TrackSeries> iterator = seriesMap.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().streamId.equals(streamId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        seriesMap.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * @return copies of the recorded series with samples in chronological order. It's safe to use them
+     * while recording continues.
+     */
+    public synchronized List<TrackSeries> snapshot() {
+        List<TrackSeries> snapshot = new ArrayList<>(seriesMap.size());
+        for (TrackSeries series : seriesMap.values()) {
+            snapshot.add(series.copy());
+        }
+        return snapshot;
+    }
+
+    public void exportBinary(File file) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            exportBinary(outputStream);
+        }
+    }
+
+    /**
+     * Writes the recorded series in the format described in {@link StatsRecordReader}.
+     * Recording is only blocked while the series are copied, not while they're written.
+     */
+    public void exportBinary(OutputStream outputStream) throws IOException {
+        writeBinary(snapshot(), outputStream);
+    }
+
+    public void exportCsv(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            exportCsv(writer);
+        }
+    }
+
+    public void exportCsv(Writer writer) throws IOException {
+        writeCsv(snapshot(), writer);
+    }
+
+    public static void writeBinary(List<TrackSeries> seriesList, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(COLUMNS.length);
+        for (String column : COLUMNS) {
+            out.writeUTF(column);
+        }
+        out.writeInt(seriesList.size());
+        for (TrackSeries series : seriesList) {
+            out.writeUTF(series.streamId);
+            out.writeUTF(series.trackId);
+            out.writeBoolean(series.video);
+            out.writeByte(series.direction);
+            out.writeInt(series.size);
+            for (int i = 0; i < series.size; i++) {
+                out.writeLong(series.getTimeMs(i));
+                for (int column = 0; column < COLUMNS.length; column++) {
+                    out.writeFloat(series.getValue(i, column));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    public static void writeCsv(List<TrackSeries> seriesList, Writer writer) throws IOException {
+        writer.write("streamId,trackId,kind,direction,timeMs");
+        for (String column : COLUMNS) {
+            writer.write(',');
+            writer.write(column);
+        }
+        writer.write('\n');
+        for (TrackSeries series : seriesList) {
+            String prefix = series.streamId + ',' + series.trackId + ','
+                    + (series.video ? StatsCollector.VIDEO : StatsCollector.AUDIO) + ','
+                    + (series.direction == DIRECTION_PUBLISH ? "publish" : "play") + ',';
+            for (int i = 0; i < series.size; i++) {
+                writer.write(prefix);
+                writer.write(Long.toString(series.getTimeMs(i)));
+                for (int column = 0; column < COLUMNS.length; column++) {
+                    writer.write(',');
+                    writer.write(Float.toString(series.getValue(i, column)));
+                }
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Samples of a single track. Values are kept row by row in a single float array.
+     */
+    public static class TrackSeries {
+        private final String streamId;
+        private final String trackId;
+        private final boolean video;
+        private final byte direction;
+
+        private final int maxCapacity;
+        private final long durationMs;
+
+        private long[] timestampsMs;
+        private float[] values;
+        private final float[] row = new float[COLUMNS.length];
+
+        //index of the latest sample
+        private int head = -1;
+        private int size;
+
+        public TrackSeries(String streamId, String trackId, boolean video, byte direction, int capacity) {
+            this(streamId, trackId, video, direction, capacity, capacity, 0);
+        }
+
+        TrackSeries(String streamId, String trackId, boolean video, byte direction, int capacity, int maxCapacity, long durationMs) {
+            this.streamId = streamId;
+            this.trackId = trackId;
+            this.video = video;
+            this.direction = direction;
+            this.maxCapacity = maxCapacity;
+            this.durationMs = durationMs;
+            this.timestampsMs = new long[capacity];
+            this.values = new float[capacity * COLUMNS.length];
+        }
+
+        /**
+         * @return the row to fill for the sample or null if the sample is not newer than the latest one
+         */
+        float[] add(long timeMs) {
+            if (size > 0 && timeMs <= timestampsMs[head]) {
+                return null;
+            }
+            if (durationMs > 0) {
+                evictOlderThan(timeMs - durationMs);
+                if (size == timestampsMs.length && size < maxCapacity) {
+                    grow();
+                }
+            }
+            head = (head + 1) % timestampsMs.length;
+            timestampsMs[head] = timeMs;
+            return row;
+        }
+
+        void commit() {
+            System.arraycopy(row, 0, values, head * COLUMNS.length, COLUMNS.length);
+            if (size < timestampsMs.length) {
+                size++;
+            }
+        }
+
+        private void evictOlderThan(long minTimeMs) {
+            int oldest = (head - size + 1 + timestampsMs.length) % timestampsMs.length;
+            while (size > 0 && timestampsMs[oldest] < minTimeMs) {
+                oldest = (oldest + 1) % timestampsMs.length;
+                size--;
+            }
+        }
+
+        /**
+         * Doubles the ring and moves the samples to its beginning in chronological order. It only happens
+         * while the ring is filled up with the samples of the duration, so it doesn't allocate afterwards.
+         */
+        private void grow() {
+            int capacity = Math.min(maxCapacity, timestampsMs.length * 2);
+            long[] grownTimestampsMs = new long[capacity];
+            float[] grownValues = new float[capacity * COLUMNS.length];
+            int oldest = (head - size + 1 + timestampsMs.length) % timestampsMs.length;
+            for (int i = 0; i < size; i++) {
+                int index = (oldest + i) % timestampsMs.length;
+                grownTimestampsMs[i] = timestampsMs[index];
+                System.arraycopy(values, index * COLUMNS.length, grownValues, i * COLUMNS.length, COLUMNS.length);
+            }
+            timestampsMs = grownTimestampsMs;
+            values = grownValues;
+            head = size - 1;
+        }
+
+        TrackSeries copy() {
+            TrackSeries copy = new TrackSeries(streamId, trackId, video, direction, Math.max(size, 1));
+            int oldest = (head - size + 1 + timestampsMs.length) % timestampsMs.length;
+            for (int i = 0; i < size; i++) {
+                int index = (oldest + i) % timestampsMs.length;
+                copy.timestampsMs[i] = timestampsMs[index];
+                System.arraycopy(values, index * COLUMNS.length, copy.values, i * COLUMNS.length, COLUMNS.length);
+            }
+            copy.size = size;
+            copy.head = size - 1;
+            return copy;
+        }
+
+        /**
+         * Used by the reader to fill a series in chronological order
+         */
+        void set(int index, long timeMs, float[] sample) {
+            timestampsMs[index] = timeMs;
+            System.arraycopy(sample, 0, values, index * COLUMNS.length, COLUMNS.length);
+            head = index;
+            size = index + 1;
+        }
+
+        public String getStreamId() {
+            return streamId;
+        }
+
+        public String getTrackId() {
+            return trackId;
+        }
+
+        public boolean isVideo() {
+            return video;
+        }
+
+        public byte getDirection() {
+            return direction;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param index 0 is the oldest sample for the series returned by {@link #snapshot()} and the reader
+         */
+        public long getTimeMs(int index) {
+            return timestampsMs[index];
+        }
+
+        public float getValue(int index, int column) {
+            return values[index * COLUMNS.length + column];
+        }
+
+        public long getLastTimeMs() {
+            return size > 0 ? timestampsMs[head] : 0;
+        }
+    }
+}
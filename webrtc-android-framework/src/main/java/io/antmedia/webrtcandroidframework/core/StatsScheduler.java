@@ -0,0 +1,250 @@
+package io.antmedia.webrtcandroidframework.core;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the statistics of the streams on a single shared thread. Every stream subscribes with its own period.
+ *
+ * Polling period of a stream is backed off when the app is in background or when the stream has been healthy
+ * for {@link #HEALTHY_REPORTS_TO_BACK_OFF} successive reports. It returns to the subscribed period as soon as
+ * the app comes to foreground or an unhealthy report is received.
+ *
+ * A stream has at most one request in flight. If the previous request is not completed with
+ * {@link #onStatsRequestCompleted(String, long, boolean)} when the next tick comes, the tick is skipped,
+ * so a slow getStats never piles up queued requests. Every request has its own id, so a late completion of
+ * a request that timed out doesn't complete the request that replaced it.
+ */
+public class StatsScheduler {
+
+    public interface StatsRequester {
+        /**
+         * Requests the stats of the stream. {@link #onStatsRequestCompleted(String, long, boolean)} should be called
+         * with the request id when the report is handled.
+         */
+        void requestStats(String streamId, long requestId);
+    }
+
+    private static final String TAG = StatsScheduler.class.getSimpleName();
+
+    public static final int HEALTHY_REPORTS_TO_BACK_OFF = 5;
+    public static final int HEALTHY_PERIOD_MULTIPLIER = 2;
+    public static final int BACKGROUND_PERIOD_MULTIPLIER = 5;
+    public static final int MAX_BACKED_OFF_PERIOD_MS = 10000;
+    //id of the requests that are not made by the scheduler, their completions are ignored
+    public static final long NO_REQUEST = 0;
+
+    //A request that is not completed in this many periods is considered lost, e.g. peer connection is closed
+    private static final int REQUEST_TIMEOUT_PERIODS = 3;
+
+    private static class Subscription {
+        private final String streamId;
+        private final int periodMs;
+        private int healthyReports;
+        private boolean requestInFlight;
+        private long requestId;
+        private long requestTimeMs;
+        private long requestCount;
+        private long skippedCount;
+        private ScheduledFuture<?> future;
+
+        private Subscription(String streamId, int periodMs) {
+            this.streamId = streamId;
+            this.periodMs = periodMs;
+        }
+    }
+
+    private final StatsRequester statsRequester;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private boolean background;
+    //ids are unique across the subscriptions, so a request of a previous subscription never matches
+    private long lastRequestId = NO_REQUEST;
+
+    public StatsScheduler(StatsRequester statsRequester) {
+        this.statsRequester = statsRequester;
+    }
+
+    /**
+     * Starts polling the stats of the stream with the given period. Subscribing again changes the period.
+     */
+    public synchronized void subscribe(String streamId, int periodMs) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("Period should be positive but it's " + periodMs);
+        }
+        Subscription previous = subscriptions.get(streamId);
+        if (previous != null) {
+            cancel(previous);
+        }
+        Subscription subscription = new Subscription(streamId, periodMs);
+        subscriptions.put(streamId, subscription);
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        schedule(subscription, 0);
+    }
+
+    public synchronized void unsubscribe(String streamId) {
+        Subscription subscription = subscriptions.remove(streamId);
+        if (subscription != null) {
+            cancel(subscription);
+        }
+        if (subscriptions.isEmpty()) {
+            shutdownScheduler();
+        }
+    }
+
+    public synchronized void unsubscribeAll() {
+        for (Subscription subscription : subscriptions.values()) {
+            cancel(subscription);
+        }
+        subscriptions.clear();
+        shutdownScheduler();
+    }
+
+    public boolean isSubscribed(String streamId) {
+        return subscriptions.containsKey(streamId);
+    }
+
+    public boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Called when the stats of a stream are handled. Completions of the requests other than the one in flight,
+     * e.g. a request that timed out, are ignored.
+     *
+     * @param requestId id passed to {@link StatsRequester#requestStats(String, long)}
+     * @param healthy whether the report shows a healthy stream. Polling backs off after successive healthy reports
+     */
+    public synchronized void onStatsRequestCompleted(String streamId, long requestId, boolean healthy) {
+        Subscription subscription = subscriptions.get(streamId);
+        if (subscription == null || !subscription.requestInFlight || subscription.requestId != requestId) {
+            return;
+        }
+        subscription.requestInFlight = false;
+        if (healthy) {
+            subscription.healthyReports++;
+        } else {
+            boolean backedOff = subscription.healthyReports >= HEALTHY_REPORTS_TO_BACK_OFF;
+            subscription.healthyReports = 0;
+            if (backedOff) {
+                //don't wait for the backed off period to observe the problem
+                reschedule(subscription, subscription.periodMs);
+            }
+        }
+    }
+
+    /**
+     * Polling is backed off while the app is in background. Coming to foreground polls immediately.
+     */
+    public synchronized void setBackground(boolean background) {
+        if (this.background == background) {
+            return;
+        }
+        this.background = background;
+        if (!background) {
+            for (Subscription subscription : subscriptions.values()) {
+                reschedule(subscription, 0);
+            }
+        }
+    }
+
+    public synchronized boolean isBackground() {
+        return background;
+    }
+
+    /**
+     * @return current polling period of the stream after the backoff is applied, 0 if it's not subscribed
+     */
+    public synchronized int getEffectivePeriodMs(String streamId) {
+        Subscription subscription = subscriptions.get(streamId);
+        return subscription != null ? getEffectivePeriodMs(subscription) : 0;
+    }
+
+    /**
+     * @return number of the ticks skipped because the previous request of the stream was still in flight
+     */
+    public synchronized long getSkippedRequestCount(String streamId) {
+        Subscription subscription = subscriptions.get(streamId);
+        return subscription != null ? subscription.skippedCount : 0;
+    }
+
+    public synchronized long getRequestCount(String streamId) {
+        Subscription subscription = subscriptions.get(streamId);
+        return subscription != null ? subscription.requestCount : 0;
+    }
+
+    private int getEffectivePeriodMs(Subscription subscription) {
+        int periodMs = subscription.periodMs;
+        int multiplier = 1;
+        if (background) {
+            multiplier *= BACKGROUND_PERIOD_MULTIPLIER;
+        }
+        if (subscription.healthyReports >= HEALTHY_REPORTS_TO_BACK_OFF) {
+            multiplier *= HEALTHY_PERIOD_MULTIPLIER;
+        }
+        return multiplier == 1 ? periodMs : Math.max(periodMs, Math.min(periodMs * multiplier, MAX_BACKED_OFF_PERIOD_MS));
+    }
+
+    private synchronized void tick(Subscription subscription) {
+        if (subscriptions.get(subscription.streamId) != subscription) {
+            return;
+        }
+        //wall clock may jump, e.g. when it's synchronized, so the timeout is measured with the monotonic clock
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        if (subscription.requestInFlight
+                && now - subscription.requestTimeMs < (long) REQUEST_TIMEOUT_PERIODS * getEffectivePeriodMs(subscription)) {
+            subscription.skippedCount++;
+        } else {
+            subscription.requestInFlight = true;
+            subscription.requestId = ++lastRequestId;
+            subscription.requestTimeMs = now;
+            subscription.requestCount++;
+            try {
+                statsRequester.requestStats(subscription.streamId, subscription.requestId);
+            } catch (Exception e) {
+                subscription.requestInFlight = false;
+                Log.e(TAG, "Stats request failed for " + subscription.streamId, e);
+            }
+        }
+        schedule(subscription, getEffectivePeriodMs(subscription));
+    }
+
+    private void reschedule(Subscription subscription, long delayMs) {
+        cancel(subscription);
+        schedule(subscription, delayMs);
+    }
+
+    private void schedule(Subscription subscription, long delayMs) {
+        if (scheduler != null) {
+            subscription.future = scheduler.schedule(() -> tick(subscription), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancel(Subscription subscription) {
+        if (subscription.future != null) {
+            subscription.future.cancel(false);
+            subscription.future = null;
+        }
+    }
+
+    private void shutdownScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -11,8 +11,11 @@
 package io.antmedia.webrtcandroidframework.core;
 
 import android.app.Activity;
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Color;
 import android.media.projection.MediaProjection;
+import android.os.Bundle;
 import android.os.Handler;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -49,6 +52,8 @@ import org.webrtc.MediaStreamTrack;
 import org.webrtc.OverlayManager;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
 import org.webrtc.RTCStatsReport;
 import org.webrtc.RtpParameters;
 import org.webrtc.RtpReceiver;
@@ -70,28 +75,39 @@ import org.webrtc.audio.AudioDeviceModule;
 import org.webrtc.audio.CustomWebRtcAudioRecord;
 import org.webrtc.audio.JavaAudioDeviceModule;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
+import io.antmedia.webrtcandroidframework.api.DataChannelParams;
+import io.antmedia.webrtcandroidframework.api.IDataChannelObserver;
 import io.antmedia.webrtcandroidframework.api.IWebRTCClient;
 import io.antmedia.webrtcandroidframework.api.PlayParams;
 import io.antmedia.webrtcandroidframework.api.WebRTCClientConfig;
 import io.antmedia.webrtcandroidframework.apprtc.AppRTCAudioManager;
+import io.antmedia.webrtcandroidframework.apprtc.RtcEventLog;
+import io.antmedia.webrtcandroidframework.core.model.PlayStats;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
 import io.antmedia.webrtcandroidframework.websocket.AntMediaSignallingEvents;
 import io.antmedia.webrtcandroidframework.websocket.Broadcast;
 import io.antmedia.webrtcandroidframework.websocket.Subscriber;
@@ -160,7 +176,83 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
     // peer connection API calls to ensure new peer connection factory is
     // created on the same thread as previously destroyed factory.
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private Timer statsTimer;
+    //streamId -> ids of the tracks whose stats are polled. Streams without a selection are polled as a whole.
+    private final Map<String, Set<String>> statsTrackSelections = new ConcurrentHashMap<>();
+
+    private final StatsScheduler statsScheduler = new StatsScheduler((streamId, requestId) -> executor.execute(() -> requestStats(streamId, requestId)));
+
+    private StallDetector stallDetector;
+    private RtcEventLogRecorder rtcEventLogRecorder;
+    private StatsRecordExporter statsRecordExporter;
+    //stats history is written on its own thread, not to block the executor of the peer connections
+    private ExecutorService statsRecordExportExecutor;
+    private MetricsServer metricsServer;
+    //delivers the data channel events if the delivery mode is DATA_CHANNEL_THREAD, it's created on the first data channel
+    private DataChannelDispatcher dataChannelDispatcher;
+    //buffers of the received messages and transfers
+    private final DataChannelBufferPool dataChannelBufferPool = new DataChannelBufferPool();
+    //flushes the data channel batches and expires the stalled incoming transfers, it's created when it's first needed
+    private ScheduledExecutorService dataChannelScheduler;
+    private DataChannelMessenger dataChannelMessenger;
+    //streamId -> latest stream info list received from the server, used to downgrade the resolution on stalls
+    private final Map<String, List<StreamInfo>> streamInfoLists = new ConcurrentHashMap<>();
+    private boolean stallCheckScheduled = false;
+
+    private final Runnable stallCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            StallDetector detector = stallDetector;
+            if (detector == null || !detector.hasMonitors()) {
+                stallCheckScheduled = false;
+                return;
+            }
+            detector.check();
+            handler.postDelayed(this, StallDetector.CHECK_PERIOD_MS);
+        }
+    };
+
+    //Application that statsLifecycleCallbacks are registered to, null if they're not registered
+    private Application lifecycleCallbacksApplication;
+
+    //Stats polling is backed off while the activity is not visible
+    private final Application.ActivityLifecycleCallbacks statsLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            if (activity == config.activity) {
+                statsScheduler.setBackground(false);
+            }
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            if (activity == config.activity) {
+                statsScheduler.setBackground(true);
+            }
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+            if (activity == config.activity) {
+                unregisterLifecycleCallbacks();
+            }
+        }
+    };
 
     @androidx.annotation.Nullable
     private PeerConnectionFactory factory;
@@ -182,6 +274,18 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         public String id;
         public PeerConnection peerConnection;
         public DataChannel dataChannel;
+        //send queue of the data channel, it's created with the first message
+        public DataChannelSendQueue dataChannelSendQueue;
+        //transfers of large payloads over the send queue
+        public DataChannelTransferManager dataChannelTransferManager;
+        //batcher of the small messages, it's created with the send queue if batching is enabled
+        public DataChannelBatcher dataChannelBatcher;
+        //additional data channels and their send queues by channel names
+        public final ConcurrentHashMap<String, DataChannel> namedDataChannels = new ConcurrentHashMap<>();
+        public final ConcurrentHashMap<String, DataChannelSendQueue> namedDataChannelSendQueues = new ConcurrentHashMap<>();
+        public final ConcurrentHashMap<String, DataChannelBatcher> namedDataChannelBatchers = new ConcurrentHashMap<>();
+        //compressors of the data channels if compression is enabled, they're created when the channels are opened
+        public final ConcurrentHashMap<DataChannel, DataChannelCompressor> dataChannelCompressors = new ConcurrentHashMap<>();
         public Mode mode;
         public String token;
         public boolean videoCallEnabled;
@@ -407,6 +511,7 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
     public WebRTCClient(WebRTCClientConfig config) {
         this.config = config;
         config.webRTCListener.setWebRTCClient(this);
+        statsCollector.setWebRTCListener(config.webRTCListener);
         mainHandler = new Handler(config.activity.getMainLooper());
         iceServers.add(PeerConnection.IceServer.builder(config.stunServerUri)
                 .createIceServer());
@@ -420,6 +525,57 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
                     .createIceServer());
         }
 
+        // init may be called more than once, callbacks are registered once and unregistered on release
+        if (lifecycleCallbacksApplication == null && config.activity.getApplication() != null) {
+            lifecycleCallbacksApplication = config.activity.getApplication();
+            lifecycleCallbacksApplication.registerActivityLifecycleCallbacks(statsLifecycleCallbacks);
+        }
+
+        if (config.statsRecordDurationMs > 0) {
+            // Streams may be polled with their own periods and backed off, so samples are evicted by time
+            // and the rings grow if a stream is polled more often than the default period.
+            int durationMs = config.statsRecordDurationMs;
+            int capacity = Math.max(1, durationMs / STAT_CALLBACK_PERIOD);
+            int maxCapacity = Math.max(capacity, durationMs / StatsRecorder.MIN_SAMPLE_PERIOD_MS);
+            StatsRecorder statsRecorder = new StatsRecorder(durationMs, capacity, maxCapacity);
+            statsCollector.setStatsRecorder(statsRecorder);
+            if (statsRecordExportExecutor == null) {
+                statsRecordExportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "StatsRecordExporter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            File directory = config.statsRecordDirectory != null ? config.statsRecordDirectory : config.activity.getCacheDir();
+            statsRecordExporter = new StatsRecordExporter(statsRecorder, directory, statsRecordExportExecutor);
+        }
+
+        if (config.stallDetectionEnabled) {
+            stallDetector = new StallDetector();
+            stallDetector.setWebRTCListener(config.webRTCListener);
+            stallDetector.setStallRecovery(this::downgradeStalledTrack, config.stallDowngradeAfterMs);
+            statsCollector.setStallDetector(stallDetector);
+        }
+
+        if (config.rtcEventLogEnabled) {
+            File directory = config.rtcEventLogDirectory != null ? config.rtcEventLogDirectory
+                    : new File(config.activity.getCacheDir(), "rtc_event_logs");
+            rtcEventLogRecorder = new RtcEventLogRecorder(directory, config.rtcEventLogMaxBytes, executor);
+            statsCollector.setRtcEventLogRecorder(rtcEventLogRecorder);
+        }
+
+        if (config.metricsServerPort > 0 && (config.activity.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            MetricsServer server = new MetricsServer(SdkMetrics.REGISTRY, config.metricsServerPort);
+            metricsServer = server;
+            executor.execute(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    Log.e(TAG, "Metrics server cannot be started on port " + config.metricsServerPort, e);
+                }
+            });
+        }
+
         if (config.initiateBeforeStream) {
             init();
         }
@@ -562,7 +718,12 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
         @Override
         public void onSelectedCandidatePairChanged(CandidatePairChangeEvent event) {
-            Log.d(TAG, "Selected candidate pair changed because: " + event);
+            Log.d(TAG, "Selected candidate pair changed because: " + event.reason);
+            // Refresh the transport stats now rather than at the next stats period,
+            // onSelectedCandidatePairChanged of the listener is called when they're parsed
+            if (statsScheduler.isSubscribed(streamId)) {
+                collectStats(streamId, null, null);
+            }
         }
 
         @Override
@@ -581,10 +742,26 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
                 return;
 
             PeerInfo peerInfo = peers.get(streamId);
-            if (peerInfo != null && peerInfo.dataChannel == null) {
-                peerInfo.dataChannel = dc;
+            if (peerInfo != null) {
+                String label = dc.label();
+                if (peerInfo.dataChannel == null && !isAdditionalDataChannel(label)) {
+                    peerInfo.dataChannel = dc;
+                } else if (!label.equals(streamId)) {
+                    //channel created locally with the same name is kept as the default channel does
+                    peerInfo.namedDataChannels.putIfAbsent(label, dc);
+                }
+            }
+            DataChannelInternalObserver observer = new DataChannelInternalObserver(streamId, dc);
+            dc.registerObserver(observer);
+            if (dc.state() == DataChannel.State.OPEN) {
+                //channels of the remote peer may be open before the observer is registered
+                if (config.dataChannelCompressionEnabled) {
+                    observer.onCompressionStateChange(DataChannel.State.OPEN);
+                }
+                if (config.dataChannelBatchingEnabled) {
+                    observer.onBatchingOpen();
+                }
             }
-            dc.registerObserver(new DataChannelInternalObserver(dc));
         }
 
         @Override
@@ -612,6 +789,7 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
             if (addedTrack instanceof VideoTrack) {
                 VideoTrack videoTrack = (VideoTrack) addedTrack;
+                monitorStalls(streamId, videoTrack);
                 config.webRTCListener.onNewVideoTrack(videoTrack, videoTrackId);
             }
         }
@@ -624,6 +802,11 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
             }
             Log.d("antmedia", "on remove track " + removedTrack.kind() + " " + removedTrack.id() + " " + removedTrack.state());
             if (removedTrack instanceof VideoTrack) {
+                StallDetector detector = stallDetector;
+                String trackId = toStatsTrackId(removedTrack.id());
+                if (detector != null && trackId != null) {
+                    detector.remove(streamId, trackId);
+                }
                 config.webRTCListener.onVideoTrackEnded((VideoTrack) removedTrack);
             }
 
@@ -1015,6 +1198,9 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
                     Log.d(TAG, "Closing peer connections for " + peerInfo.id);
                     PeerConnection peerConnection = peerInfo.peerConnection;
                     if (peerConnection != null) {
+                        if (rtcEventLogRecorder != null) {
+                            rtcEventLogRecorder.disarm(streamId);
+                        }
                         peerConnection.dispose();
                         peerInfo.peerConnection = null;
                     }
@@ -1389,6 +1575,34 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         localAudioTrack = null;
 
         remoteVideoSinks.clear();
+        unregisterLifecycleCallbacks();
+
+        if (metricsServer != null) {
+            //it's started on the executor
+            executor.execute(metricsServer::stop);
+            metricsServer = null;
+        }
+
+        synchronized (this) {
+            if (dataChannelMessenger != null) {
+                //pending requests are failed before the dispatcher is shut down
+                dataChannelMessenger.close();
+            }
+            if (dataChannelDispatcher != null) {
+                dataChannelDispatcher.shutdown();
+                dataChannelDispatcher = null;
+            }
+            if (dataChannelScheduler != null) {
+                dataChannelScheduler.shutdown();
+                dataChannelScheduler = null;
+            }
+            if (statsRecordExportExecutor != null) {
+                //exports that are started are completed
+                statsRecordExportExecutor.shutdown();
+                statsRecordExportExecutor = null;
+                statsRecordExporter = null;
+            }
+        }
 
         mainHandler.post(() -> {
             //if closeInternal works before releasing renderer, app stucks
@@ -1420,6 +1634,13 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         });
     }
 
+    private void unregisterLifecycleCallbacks() {
+        if (lifecycleCallbacksApplication != null) {
+            lifecycleCallbacksApplication.unregisterActivityLifecycleCallbacks(statsLifecycleCallbacks);
+            lifecycleCallbacksApplication = null;
+        }
+    }
+
     private void releaseRemoteRenderers() {
         for (SurfaceViewRenderer remoteVideoRenderer : config.remoteVideoRenderers) {
             if (remoteVideoRenderer.getTag() != null) {
@@ -1557,6 +1778,7 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
             return;
         }
         reconnectionInProgress = true;
+        SdkMetrics.REGISTRY.increment(SdkMetrics.PEER_RECONNECTIONS);
 
         if(isConference()){
             Log.i(TAG, "Conference! Will try to republish in  " + PEER_RECONNECTION_DELAY_MS + " ms.");
@@ -1571,6 +1793,11 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
         this.handler.post(() -> {
             Log.d(TAG, "ICE disconnected");
+            SdkMetrics.REGISTRY.increment(SdkMetrics.ICE_DISCONNECTIONS);
+            exportStatsRecord("ice_disconnected");
+            if (rtcEventLogRecorder != null) {
+                rtcEventLogRecorder.onAnomaly(streamId, RtcEventLogRecorder.REASON_ICE_DISCONNECTED);
+            }
 
            if (config.webRTCListener != null) {
                 config.webRTCListener.onIceDisconnected(streamId);
@@ -1691,6 +1918,17 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         });
     }
 
+    public void onPeerConnectionStatsReady(String streamId, RTCStatsReport report) {
+        onPeerConnectionStatsReady(streamId, StatsScheduler.NO_REQUEST, report);
+    }
+
+    private void onPeerConnectionStatsReady(String streamId, long requestId, RTCStatsReport report) {
+        this.handler.post(() -> {
+            statsCollector.onStatsReport(streamId, report);
+            statsScheduler.onStatsRequestCompleted(streamId, requestId, statsCollector.isHealthy(streamId));
+        });
+    }
+
     public boolean isStreaming(String streamId) {
         PeerConnection pc = getPeerConnectionFor(streamId);
         return pc != null && pc.iceConnectionState().equals(PeerConnection.IceConnectionState.CONNECTED);
@@ -1720,6 +1958,9 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
     @Override
     public void onPublishFinished(String streamId) {
         this.handler.post(() -> {
+            statsScheduler.unsubscribe(streamId);
+            statsTrackSelections.remove(streamId);
+            statsCollector.removePeerStats(streamId);
             if (config.webRTCListener != null) {
                 config.webRTCListener.onPublishFinished(streamId);
             }
@@ -1731,6 +1972,13 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
     public void onPlayFinished(String streamId) {
         waitingForPlay = false;
         this.handler.post(() -> {
+            statsScheduler.unsubscribe(streamId);
+            statsTrackSelections.remove(streamId);
+            statsCollector.removePeerStats(streamId);
+            streamInfoLists.remove(streamId);
+            if (stallDetector != null) {
+                stallDetector.remove(streamId);
+            }
             if (config.webRTCListener != null) {
                 config.webRTCListener.onPlayFinished(streamId);
             }
@@ -1920,6 +2168,7 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
     @Override
     public void onStreamInfoList(String streamId, ArrayList<StreamInfo> streamInfoList) {
+        streamInfoLists.put(streamId, streamInfoList);
         this.handler.post(() -> {
             if (config.webRTCListener != null) {
                 config.webRTCListener.onStreamInfoList(streamId, streamInfoList);
@@ -1929,6 +2178,7 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
     @Override
     public void onError(String streamId, String definition) {
+        exportStatsRecord(definition);
         this.handler.post(() -> {
             if (config.webRTCListener != null) {
                 config.webRTCListener.onError(definition, streamId);
@@ -1953,23 +2203,185 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         wsHandler.forceStreamQuality(mainTrackStreamId, subTrackStreamId, height);
     }
 
+    /**
+     * Requests the next lower resolution of a track that has been stalled for {@link WebRTCClientConfig#stallDowngradeAfterMs}.
+     * Resolutions are taken from the last stream info list of the stream, so it's only applied to the streams with adaptive bitrate.
+     */
+    void downgradeStalledTrack(String streamId, String trackId, long stallDurationMs) {
+        List<StreamInfo> streamInfoList = streamInfoLists.get(streamId);
+        PlayStats playStats = statsCollector.getPlayStats(streamId);
+        TrackStats trackStats = playStats != null ? playStats.getVideoTrackStatsMap().get(trackId) : null;
+        if (streamInfoList == null || trackStats == null || trackStats.getFrameHeight() <= 0 || wsHandler == null) {
+            return;
+        }
+        long currentHeight = trackStats.getFrameHeight();
+        int lowerHeight = 0;
+        for (StreamInfo streamInfo : streamInfoList) {
+            if (streamInfo.getHeight() < currentHeight && streamInfo.getHeight() > lowerHeight) {
+                lowerHeight = streamInfo.getHeight();
+            }
+        }
+        if (lowerHeight > 0) {
+            Log.w(TAG, "Track " + trackId + " of " + streamId + " is stalled for " + stallDurationMs
+                    + "ms. Switching from " + currentHeight + "p to " + lowerHeight + "p");
+            String subTrackStreamId = streamId.equals(trackId) ? null : trackId;
+            forceStreamQuality(streamId, subTrackStreamId, lowerHeight);
+        }
+    }
+
+    public synchronized DataChannelDispatcher getDataChannelDispatcher() {
+        if (dataChannelDispatcher == null) {
+            dataChannelDispatcher = new DataChannelDispatcher(dataChannelBufferPool);
+        }
+        return dataChannelDispatcher;
+    }
+
+    @Override
+    public synchronized DataChannelMessenger getDataChannelMessenger() {
+        if (dataChannelMessenger == null) {
+            DataChannelMessenger.Sender sender = new DataChannelMessenger.Sender() {
+                @Override
+                public void send(String streamId, DataChannel.Buffer buffer) {
+                    sendMessageViaDataChannel(streamId, buffer);
+                }
+
+                @Override
+                public void send(String streamId, String channelName, DataChannel.Buffer buffer) {
+                    sendMessageViaDataChannel(streamId, channelName, buffer);
+                }
+            };
+            //messenger calls the previous observer on the dispatcher thread, it keeps receiving the events on the main thread
+            IDataChannelObserver fallbackObserver = config.dataChannelObserver;
+            if (fallbackObserver != null && !fallbackObserver.isSynchronous()
+                    && config.dataChannelDeliveryMode != IWebRTCClient.DataChannelDeliveryMode.DATA_CHANNEL_THREAD) {
+                fallbackObserver = new MainThreadDataChannelObserver(fallbackObserver);
+            }
+            dataChannelMessenger = new DataChannelMessenger(sender, getDataChannelDispatcher(), fallbackObserver);
+            config.dataChannelObserver = dataChannelMessenger;
+        }
+        return dataChannelMessenger;
+    }
+
+    /**
+     * Passes the events to the observer on the main thread with a heap copy of the received messages
+     */
+    private class MainThreadDataChannelObserver implements IDataChannelObserver {
+
+        private final IDataChannelObserver observer;
+
+        MainThreadDataChannelObserver(IDataChannelObserver observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void onBufferedAmountChange(long previousAmount, String dataChannelLabel) {
+            handler.post(() -> observer.onBufferedAmountChange(previousAmount, dataChannelLabel));
+        }
+
+        @Override
+        public void onStateChange(DataChannel.State state, String dataChannelLabel) {
+            handler.post(() -> observer.onStateChange(state, dataChannelLabel));
+        }
+
+        @Override
+        public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+            DataChannel.Buffer bufferCopy = copyToHeap(buffer);
+            handler.post(() -> {
+                try {
+                    observer.onMessage(bufferCopy, dataChannelLabel);
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Data channel related error:" + e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public void onMessageSent(DataChannel.Buffer buffer, boolean successful) {
+            handler.post(() -> observer.onMessageSent(buffer, successful));
+        }
+
+        @Override
+        public void onWritabilityChanged(boolean writable, String dataChannelLabel) {
+            handler.post(() -> observer.onWritabilityChanged(writable, dataChannelLabel));
+        }
+    }
+
+    private static DataChannel.Buffer copyToHeap(DataChannel.Buffer buffer) {
+        //batched and decompressed messages are slices of larger buffers, only the remaining bytes are copied
+        ByteBuffer copyByteBuffer = ByteBuffer.allocate(buffer.data.remaining());
+        copyByteBuffer.put(buffer.data.duplicate());
+        copyByteBuffer.rewind();
+        return new DataChannel.Buffer(copyByteBuffer, buffer.binary);
+    }
+
+    private synchronized ScheduledExecutorService getDataChannelScheduler() {
+        if (dataChannelScheduler == null) {
+            dataChannelScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "DataChannelScheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dataChannelScheduler;
+    }
+
+    /**
+     * Runs the data channel callback on the thread of the delivery mode. Synchronous observers are called on the calling thread.
+     */
+    private void deliverDataChannelEvent(Runnable callback) {
+        IDataChannelObserver observer = config.dataChannelObserver;
+        if (observer != null) {
+            deliverDataChannelEvent(observer, callback);
+        } else {
+            handler.post(callback);
+        }
+    }
+
+    private void deliverDataChannelEvent(IDataChannelObserver observer, Runnable callback) {
+        if (observer.isSynchronous()) {
+            callback.run();
+        } else if (config.dataChannelDeliveryMode == IWebRTCClient.DataChannelDeliveryMode.DATA_CHANNEL_THREAD) {
+            getDataChannelDispatcher().post(callback);
+        } else {
+            handler.post(callback);
+        }
+    }
+
     class DataChannelInternalObserver implements DataChannel.Observer {
 
+        private final String streamId;
         private final DataChannel dataChannel;
+        //label is immutable, it's cached to not allocate it for every message
+        private final String label;
 
-        DataChannelInternalObserver(DataChannel dataChannel) {
+        DataChannelInternalObserver(String streamId, DataChannel dataChannel) {
+            this.streamId = streamId;
             this.dataChannel = dataChannel;
+            this.label = dataChannel != null ? dataChannel.label() : null;
         }
 
         @Override
         public void onBufferedAmountChange(long previousAmount) {
-            if (config.dataChannelObserver == null) return;
-            handler.post(() ->
+            PeerInfo peer = peers.get(streamId);
+            DataChannelSendQueue sendQueue = null;
+            if (peer != null) {
+                sendQueue = peer.dataChannelSendQueue;
+                if (sendQueue == null || sendQueue.getDataChannel() != dataChannel) {
+                    sendQueue = label != null ? peer.namedDataChannelSendQueues.get(label) : null;
+                }
+            }
+            if (sendQueue != null && sendQueue.getDataChannel() == dataChannel) {
+                sendQueue.onBufferedAmountChange();
+            }
+
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer == null) return;
+            deliverDataChannelEvent(observer, () ->
             {
                 if(dataChannel != null){
-                    Log.d(TAG, "Data channel buffered amount changed: " + dataChannel.label() + ": " + dataChannel.state());
+                    Log.d(TAG, "Data channel buffered amount changed: " + label + ": " + dataChannel.state());
                     try{
-                        config.dataChannelObserver.onBufferedAmountChange(previousAmount, dataChannel.label());
+                        observer.onBufferedAmountChange(previousAmount, label);
 
                     }catch (IllegalStateException e){
                         Log.e(TAG, "Data channel related error:" + e.getMessage());
@@ -1983,10 +2395,18 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
         @Override
         public void onStateChange() {
-            handler.post(() -> {
-                if (config.dataChannelObserver != null && dataChannel != null) {
+            if (config.dataChannelCompressionEnabled && dataChannel != null) {
+                onCompressionStateChange(dataChannel.state());
+            }
+            if (config.dataChannelBatchingEnabled && dataChannel != null && dataChannel.state() == DataChannel.State.OPEN) {
+                onBatchingOpen();
+            }
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer == null) return;
+            deliverDataChannelEvent(observer, () -> {
+                if (dataChannel != null) {
                     try{
-                        config.dataChannelObserver.onStateChange(dataChannel.state(), dataChannel.label());
+                        observer.onStateChange(dataChannel.state(), label);
                     }catch (IllegalStateException e){
                         Log.e(TAG, "Data channel related error:" + e.getMessage());
                     }
@@ -1996,16 +2416,148 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
         @Override
         public void onMessage(final DataChannel.Buffer buffer) {
-            ByteBuffer copyByteBuffer = ByteBuffer.allocate(buffer.data.capacity());
-            copyByteBuffer.put(buffer.data);
-            copyByteBuffer.rewind();
+            if (config.dataChannelTransferListener != null && DataChannelTransferManager.isTransferFrame(buffer)) {
+                PeerInfo peer = peers.get(streamId);
+                //transfers are only sent via the default channel
+                if (peer != null && peer.dataChannel != null && !peer.namedDataChannels.containsKey(label)) {
+                    getDataChannelSendQueue(streamId, peer);
+                    peer.dataChannelTransferManager.onMessage(buffer);
+                    return;
+                }
+            }
+
+            if (DataChannelBatcher.isHelloFrame(buffer)) {
+                //hello frames are not passed to the observer even if batching is disabled
+                DataChannelBatcher batcher = config.dataChannelBatchingEnabled ? getDataChannelBatcher() : null;
+                if (batcher != null) {
+                    batcher.onHello(buffer);
+                    Log.d(TAG, "Remote peer accepts batches via Data Channel " + label + ": " + batcher.isRemoteEnabled());
+                }
+                return;
+            }
+            if (config.dataChannelBatchingEnabled && DataChannelBatcher.isBatchFrame(buffer)) {
+                if (!DataChannelBatcher.unbatch(buffer, this::onUnbatchedMessage)) {
+                    Log.w(TAG, "Malformed batch is received via Data Channel " + label);
+                }
+                return;
+            }
+            onUnbatchedMessage(buffer);
+        }
+
+        private void onUnbatchedMessage(final DataChannel.Buffer buffer) {
+            if (DataChannelCompressor.isCompressionFrame(buffer)) {
+                onCompressionFrame(buffer);
+                return;
+            }
+            deliverMessage(buffer);
+        }
+
+        private void onCompressionFrame(final DataChannel.Buffer buffer) {
+            PeerInfo peer = peers.get(streamId);
+            DataChannelCompressor compressor = peer != null && dataChannel != null
+                    ? peer.dataChannelCompressors.get(dataChannel) : null;
+            if (DataChannelCompressor.isHelloFrame(buffer)) {
+                //hello frames are not passed to the observer even if compression is disabled
+                if (compressor != null) {
+                    compressor.onHello(buffer);
+                    Log.d(TAG, "Remote peer accepts compressed messages via Data Channel " + label + ": " + compressor.isRemoteEnabled());
+                }
+                return;
+            }
+            if (compressor == null || !compressor.decompress(buffer, this::deliverMessage)) {
+                Log.w(TAG, "Compressed message cannot be decompressed for Data Channel " + label);
+            }
+        }
+
+        private void onCompressionStateChange(DataChannel.State state) {
+            PeerInfo peer = peers.get(streamId);
+            if (peer == null) {
+                return;
+            }
+            if (state == DataChannel.State.OPEN) {
+                if (!getDataChannelCompressor(peer, dataChannel).onOpen()) {
+                    return;
+                }
+                DataChannel.Buffer hello = DataChannelCompressor.createHelloFrame();
+                //hello is sent before the messages queued after this point
+                executor.execute(() -> {
+                    try {
+                        dataChannel.send(hello);
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "Data channel related error:" + e.getMessage());
+                    }
+                });
+            } else if (state == DataChannel.State.CLOSED) {
+                DataChannelCompressor compressor = peer.dataChannelCompressors.remove(dataChannel);
+                if (compressor != null) {
+                    compressor.close();
+                }
+            }
+        }
+
+        /**
+         * @return batcher of the send queue of this channel, it's created if there isn't any
+         */
+        private DataChannelBatcher getDataChannelBatcher() {
+            PeerInfo peer = peers.get(streamId);
+            if (peer == null || dataChannel == null) {
+                return null;
+            }
+            if (peer.dataChannel == dataChannel) {
+                getDataChannelSendQueue(streamId, peer);
+                return peer.dataChannelBatcher;
+            }
+            if (label != null && peer.namedDataChannels.get(label) == dataChannel) {
+                getNamedDataChannelSendQueue(streamId, peer, label, dataChannel);
+                return peer.namedDataChannelBatchers.get(label);
+            }
+            return null;
+        }
+
+        private void onBatchingOpen() {
+            DataChannelBatcher batcher = getDataChannelBatcher();
+            if (batcher == null || !batcher.onOpen()) {
+                return;
+            }
+            DataChannel.Buffer hello = DataChannelBatcher.createHelloFrame();
+            //hello is not reported to the observer, so it's not sent via the send queue
+            executor.execute(() -> {
+                try {
+                    dataChannel.send(hello);
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Data channel related error:" + e.getMessage());
+                }
+            });
+        }
+
+        private void deliverMessage(final DataChannel.Buffer buffer) {
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer == null || dataChannel == null) return;
+
+            if (observer.isSynchronous()) {
+                //buffer is owned by WebRTC and it's valid until this method returns
+                try{
+                    if (observer instanceof DataChannelMessenger) {
+                        //labels of the named data channels are not unique, messenger needs the stream id
+                        ((DataChannelMessenger) observer).onMessage(streamId, buffer, label);
+                    } else {
+                        observer.onMessage(buffer, label);
+                    }
+                }catch (IllegalStateException e) {
+                    Log.e(TAG, "Data channel related error:" + e.getMessage());
+                }
+                return;
+            }
+
+            if (config.dataChannelDeliveryMode == IWebRTCClient.DataChannelDeliveryMode.DATA_CHANNEL_THREAD) {
+                getDataChannelDispatcher().dispatchMessage(observer, label, buffer);
+                return;
+            }
 
-            boolean binary = buffer.binary;
-            DataChannel.Buffer bufferCopy = new DataChannel.Buffer(copyByteBuffer, binary);
+            DataChannel.Buffer bufferCopy = copyToHeap(buffer);
             handler.post(() -> {
-                if (config.dataChannelObserver == null || dataChannel == null) return;
                 try{
-                    config.dataChannelObserver.onMessage(bufferCopy, dataChannel.label());
+                    observer.onMessage(bufferCopy, label);
                 }catch (IllegalStateException e) {
                     Log.e(TAG, "Data channel related error:" + e.getMessage());
                 }
@@ -2013,38 +2565,251 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
         }
     }
 
+    /**
+     * Queues the message to the send queue of the data channel. Queue keeps the buffered amount of the channel
+     * between the watermarks and the result is reported with {@link IDataChannelObserver#onMessageSent(DataChannel.Buffer, boolean)}.
+     * Senders of bulk data should wait for {@link IDataChannelObserver#onWritabilityChanged(boolean, String)}
+     * while the channel is not writable.
+     */
     public void sendMessageViaDataChannel(String streamId, DataChannel.Buffer buffer) {
         if (isDataChannelEnabled()) {
-            executor.execute(() -> {
-                try {
-                    PeerInfo peer = peers.get(streamId);
-                    if (peer == null || peer.dataChannel == null) {
-                        reportError(streamId, "Peer not found for sending message via Data Channel");
-                        return;
-                    }
-                    boolean success = peer.dataChannel.send(buffer);
-                    buffer.data.rewind();
-                    if (config.dataChannelObserver != null) {
-                        if (success) {
-                            handler.post(() -> config.dataChannelObserver.onMessageSent(buffer, true));
-                        } else {
-                            handler.post(() -> config.dataChannelObserver.onMessageSent(buffer, false));
-                            reportError(streamId, "Failed to send the message via Data Channel ");
-                        }
-                    }
-                } catch (Exception e) {
-                    reportError(streamId, "An error occurred when sending the message via Data Channel " + e.getMessage());
-                    if (config.dataChannelObserver != null) {
-                        buffer.data.rewind();
-                        handler.post(() -> config.dataChannelObserver.onMessageSent(buffer, false));
-                    }
-                }
-            });
+            PeerInfo peer = peers.get(streamId);
+            if (peer == null || peer.dataChannel == null) {
+                reportError(streamId, "Peer not found for sending message via Data Channel");
+                return;
+            }
+            DataChannelSendQueue sendQueue = getDataChannelSendQueue(streamId, peer);
+            queueDataChannelMessage(streamId, sendQueue, peer.dataChannelBatcher, buffer);
         } else {
             Log.w(TAG, "Data Channel is not ready for usage for ." + streamId);
         }
     }
 
+    @Override
+    public void sendMessageViaDataChannel(String streamId, String channelName, DataChannel.Buffer buffer) {
+        if (channelName == null || channelName.equals(streamId)) {
+            sendMessageViaDataChannel(streamId, buffer);
+            return;
+        }
+        if (isDataChannelEnabled()) {
+            PeerInfo peer = peers.get(streamId);
+            DataChannel dataChannel = peer != null ? peer.namedDataChannels.get(channelName) : null;
+            if (dataChannel == null) {
+                reportError(streamId, "Data Channel " + channelName + " not found for sending message");
+                return;
+            }
+            DataChannelSendQueue sendQueue = getNamedDataChannelSendQueue(streamId, peer, channelName, dataChannel);
+            queueDataChannelMessage(streamId, sendQueue, peer.namedDataChannelBatchers.get(channelName), buffer);
+        } else {
+            Log.w(TAG, "Data Channel is not ready for usage for ." + streamId);
+        }
+    }
+
+    private void queueDataChannelMessage(String streamId, DataChannelSendQueue sendQueue, DataChannelBatcher batcher, DataChannel.Buffer buffer) {
+        DataChannel.Buffer message = buffer;
+        if (config.dataChannelCompressionEnabled) {
+            PeerInfo peer = peers.get(streamId);
+            DataChannelCompressor compressor = peer != null ? peer.dataChannelCompressors.get(sendQueue.getDataChannel()) : null;
+            if (compressor != null) {
+                message = compressor.compress(buffer);
+            }
+        }
+        boolean queued = batcher != null && batcher.getSendQueue() == sendQueue ? batcher.send(message) : sendQueue.send(message);
+        if (!queued) {
+            DataChannelCompressor.onMessageSent(message);
+            reportError(streamId, "Data Channel is closed for " + streamId);
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer != null) {
+                deliverDataChannelEvent(observer, () -> observer.onMessageSent(buffer, false));
+            }
+        }
+    }
+
+    @Override
+    public long startDataChannelTransfer(String streamId, DataChannel.Buffer buffer) {
+        if (!isDataChannelEnabled()) {
+            Log.w(TAG, "Data Channel is not ready for usage for ." + streamId);
+            return -1;
+        }
+        PeerInfo peer = peers.get(streamId);
+        if (peer == null || peer.dataChannel == null) {
+            reportError(streamId, "Peer not found for sending message via Data Channel");
+            return -1;
+        }
+        getDataChannelSendQueue(streamId, peer);
+        return peer.dataChannelTransferManager.startTransfer(buffer);
+    }
+
+    @Override
+    public boolean cancelDataChannelTransfer(String streamId, long transferId) {
+        PeerInfo peer = peers.get(streamId);
+        DataChannelTransferManager transferManager = peer != null ? peer.dataChannelTransferManager : null;
+        return transferManager != null && transferManager.cancelTransfer(transferId);
+    }
+
+    @Override
+    public boolean isDataChannelWritable(String streamId) {
+        PeerInfo peer = peers.get(streamId);
+        if (peer == null || peer.dataChannel == null) {
+            return false;
+        }
+        DataChannelSendQueue sendQueue = peer.dataChannelSendQueue;
+        return sendQueue == null || sendQueue.getDataChannel() != peer.dataChannel || sendQueue.isWritable();
+    }
+
+    @Override
+    public boolean isDataChannelWritable(String streamId, String channelName) {
+        if (channelName == null || channelName.equals(streamId)) {
+            return isDataChannelWritable(streamId);
+        }
+        PeerInfo peer = peers.get(streamId);
+        DataChannel dataChannel = peer != null ? peer.namedDataChannels.get(channelName) : null;
+        if (dataChannel == null) {
+            return false;
+        }
+        DataChannelSendQueue sendQueue = peer.namedDataChannelSendQueues.get(channelName);
+        return sendQueue == null || sendQueue.getDataChannel() != dataChannel || sendQueue.isWritable();
+    }
+
+    private synchronized DataChannelSendQueue getNamedDataChannelSendQueue(String streamId, PeerInfo peer, String channelName, DataChannel dataChannel) {
+        DataChannelSendQueue sendQueue = peer.namedDataChannelSendQueues.get(channelName);
+        if (sendQueue == null || sendQueue.getDataChannel() != dataChannel) {
+            DataChannelBatcher batcher = peer.namedDataChannelBatchers.remove(channelName);
+            if (batcher != null) {
+                batcher.close();
+            }
+            if (sendQueue != null) {
+                sendQueue.close();
+            }
+            DataChannelSendListener sendListener = new DataChannelSendListener(streamId, channelName);
+            sendQueue = new DataChannelSendQueue(dataChannel, config.dataChannelHighWatermark, config.dataChannelLowWatermark,
+                    executor, sendListener);
+            batcher = createDataChannelBatcher(sendQueue, sendListener);
+            if (batcher != null) {
+                peer.namedDataChannelBatchers.put(channelName, batcher);
+            }
+            peer.namedDataChannelSendQueues.put(channelName, sendQueue);
+        }
+        return sendQueue;
+    }
+
+    private DataChannelBatcher createDataChannelBatcher(DataChannelSendQueue sendQueue, DataChannelSendListener sendListener) {
+        if (!config.dataChannelBatchingEnabled) {
+            return null;
+        }
+        sendListener.batcher = new DataChannelBatcher(sendQueue, getDataChannelScheduler(),
+                config.dataChannelBatchFlushWindowMs, config.dataChannelMaxBatchSize, sendListener);
+        return sendListener.batcher;
+    }
+
+    private DataChannelCompressor getDataChannelCompressor(PeerInfo peer, DataChannel dataChannel) {
+        DataChannelCompressor compressor = peer.dataChannelCompressors.get(dataChannel);
+        if (compressor == null) {
+            compressor = new DataChannelCompressor(dataChannelBufferPool, config.dataChannelCompressionThreshold,
+                    DataChannelCompressor.DEFAULT_MAX_MESSAGE_SIZE);
+            DataChannelCompressor existing = peer.dataChannelCompressors.putIfAbsent(dataChannel, compressor);
+            if (existing != null) {
+                compressor.close();
+                compressor = existing;
+            }
+        }
+        return compressor;
+    }
+
+    private boolean isAdditionalDataChannel(String label) {
+        for (DataChannelParams dataChannelParams : config.dataChannels) {
+            if (label.equals(dataChannelParams.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized DataChannelSendQueue getDataChannelSendQueue(String streamId, PeerInfo peer) {
+        DataChannel dataChannel = peer.dataChannel;
+        DataChannelSendQueue sendQueue = peer.dataChannelSendQueue;
+        if (sendQueue == null || sendQueue.getDataChannel() != dataChannel) {
+            if (peer.dataChannelTransferManager != null) {
+                peer.dataChannelTransferManager.close();
+            }
+            if (peer.dataChannelBatcher != null) {
+                peer.dataChannelBatcher.close();
+                peer.dataChannelBatcher = null;
+            }
+            if (sendQueue != null) {
+                sendQueue.close();
+            }
+            String label = dataChannel.label();
+            DataChannelSendListener sendListener = new DataChannelSendListener(streamId, label);
+            sendQueue = new DataChannelSendQueue(dataChannel, config.dataChannelHighWatermark, config.dataChannelLowWatermark,
+                    executor, sendListener);
+            //incoming transfers are only received if there is a transfer listener, so only they need the timeout scheduler
+            sendListener.transferManager = new DataChannelTransferManager(streamId, sendQueue, dataChannelBufferPool,
+                    config.dataChannelChunkSize, config.dataChannelMaxTransferSize, this::deliverDataChannelEvent,
+                    config.dataChannelTransferListener,
+                    config.dataChannelTransferListener != null ? getDataChannelScheduler() : null);
+            peer.dataChannelBatcher = createDataChannelBatcher(sendQueue, sendListener);
+            peer.dataChannelSendQueue = sendQueue;
+            peer.dataChannelTransferManager = sendListener.transferManager;
+        }
+        return sendQueue;
+    }
+
+    class DataChannelSendListener implements DataChannelSendQueue.Listener, DataChannelBatcher.Listener {
+
+        private final String streamId;
+        private final String label;
+        private DataChannelTransferManager transferManager;
+        private DataChannelBatcher batcher;
+
+        DataChannelSendListener(String streamId, String label) {
+            this.streamId = streamId;
+            this.label = label;
+        }
+
+        @Override
+        public void onMessageSent(DataChannel.Buffer buffer, boolean successful, Exception error) {
+            if (transferManager != null && transferManager.onMessageSent(buffer, successful)) {
+                //chunks are reported by the transfer listener
+                return;
+            }
+            if (!successful) {
+                if (error != null) {
+                    reportError(streamId, "An error occurred when sending the message via Data Channel " + error.getMessage());
+                } else {
+                    reportError(streamId, "Failed to send the message via Data Channel ");
+                }
+            }
+            if (batcher != null && batcher.onMessageSent(buffer, successful)) {
+                //messages of the batch are reported one by one
+                return;
+            }
+            onBatchedMessageSent(buffer, successful);
+        }
+
+        @Override
+        public void onBatchedMessageSent(DataChannel.Buffer buffer, boolean successful) {
+            //observer receives the message it has sent instead of the compressed one
+            DataChannel.Buffer message = DataChannelCompressor.onMessageSent(buffer);
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer != null) {
+                deliverDataChannelEvent(observer, () -> observer.onMessageSent(message, successful));
+            }
+        }
+
+        @Override
+        public void onWritabilityChanged(boolean writable) {
+            Log.d(TAG, "Data channel " + label + " is " + (writable ? "writable" : "not writable"));
+            if (transferManager != null) {
+                transferManager.onWritabilityChanged(writable);
+            }
+            IDataChannelObserver observer = config.dataChannelObserver;
+            if (observer != null) {
+                deliverDataChannelEvent(observer, () -> observer.onWritabilityChanged(writable, label));
+            }
+        }
+    }
+
     public void changeVideoCapturer(VideoCapturer newVideoCapturer) {
         try {
             if (videoCapturer != null) {
@@ -2262,6 +3027,10 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
                 Log.e(TAG, "Peer not found for streamId: " + streamId);
             }
 
+            if (rtcEventLogRecorder != null) {
+                rtcEventLogRecorder.arm(streamId, new RtcEventLog(peerConnection));
+            }
+
             isInitiator = false;
 
             setWebRTCLogLevel();
@@ -2316,15 +3085,36 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
             if (peer != null && peer.peerConnection != null) {
                 DataChannel dataChannel = peer.peerConnection.createDataChannel(streamId, init);
                 if (dataChannel != null) {
-                    dataChannel.registerObserver(new DataChannelInternalObserver(dataChannel));
+                    dataChannel.registerObserver(new DataChannelInternalObserver(streamId, dataChannel));
                     peer.dataChannel = dataChannel;
                 }
+                for (DataChannelParams dataChannelParams : config.dataChannels) {
+                    initNamedDataChannel(streamId, peer, dataChannelParams);
+                }
             } else {
                 Log.e(TAG, "Peer not found for streamId: " + streamId);
             }
         }
     }
 
+    private void initNamedDataChannel(String streamId, PeerInfo peer, DataChannelParams dataChannelParams) {
+        DataChannel.Init init;
+        try {
+            init = dataChannelParams.toInit();
+        } catch (IllegalArgumentException e) {
+            reportError(streamId, e.getMessage());
+            return;
+        }
+        String channelName = dataChannelParams.getName();
+        DataChannel dataChannel = peer.peerConnection.createDataChannel(channelName, init);
+        if (dataChannel != null) {
+            dataChannel.registerObserver(new DataChannelInternalObserver(streamId, dataChannel));
+            peer.namedDataChannels.put(channelName, dataChannel);
+        } else {
+            reportError(streamId, "Data Channel " + channelName + " cannot be created");
+        }
+    }
+
     public void setDegradationPreference(RtpParameters.DegradationPreference degradationPreference) {
         if (localVideoSender == null) {
             Log.w(TAG, "Sender is not ready.");
@@ -2341,8 +3131,14 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
 
     public void closeInternal() {
         Log.d(TAG, "Closing resources.");
-        if (statsTimer != null) {
-            statsTimer.cancel();
+        statsScheduler.unsubscribeAll();
+        streamInfoLists.clear();
+        if (stallDetector != null) {
+            stallDetector.clear();
+        }
+        if (rtcEventLogRecorder != null) {
+            //event logs are stopped before the peer connections are disposed
+            rtcEventLogRecorder.disarmAll();
         }
 
         for (Map.Entry<String, PeerInfo> entry : peers.entrySet()) {
@@ -2354,11 +3150,43 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
             }
 
             Log.d(TAG, "Closing data channels for " + entry.getValue().id);
+            DataChannelTransferManager transferManager = entry.getValue().dataChannelTransferManager;
+            if (transferManager != null) {
+                transferManager.close();
+                entry.getValue().dataChannelTransferManager = null;
+            }
+            DataChannelBatcher batcher = entry.getValue().dataChannelBatcher;
+            if (batcher != null) {
+                batcher.close();
+                entry.getValue().dataChannelBatcher = null;
+            }
+            DataChannelSendQueue sendQueue = entry.getValue().dataChannelSendQueue;
+            if (sendQueue != null) {
+                //messages that are not sent yet are reported as failed
+                sendQueue.close();
+                entry.getValue().dataChannelSendQueue = null;
+            }
             DataChannel dataChannel = entry.getValue().dataChannel;
             if (dataChannel != null) {
                 dataChannel.dispose();
                 entry.getValue().dataChannel = null;
             }
+            for (DataChannelBatcher namedBatcher : entry.getValue().namedDataChannelBatchers.values()) {
+                namedBatcher.close();
+            }
+            entry.getValue().namedDataChannelBatchers.clear();
+            for (DataChannelSendQueue namedSendQueue : entry.getValue().namedDataChannelSendQueues.values()) {
+                namedSendQueue.close();
+            }
+            entry.getValue().namedDataChannelSendQueues.clear();
+            for (DataChannel namedDataChannel : entry.getValue().namedDataChannels.values()) {
+                namedDataChannel.dispose();
+            }
+            entry.getValue().namedDataChannels.clear();
+            for (DataChannelCompressor compressor : entry.getValue().dataChannelCompressors.values()) {
+                compressor.close();
+            }
+            entry.getValue().dataChannelCompressors.clear();
         }
         if (streamStoppedByUser) {
             peers.clear();
@@ -2418,39 +3246,206 @@ public class WebRTCClient implements IWebRTCClient, AntMediaSignallingEvents {
     }
 
     private void clearStatsCollector(){
-        statsCollector.getPublishStats().reset();
-        statsCollector.getPlayStats().reset();
+        statsCollector.reset();
     }
 
     public void getStats(String streamId) {
+        requestStats(streamId, StatsScheduler.NO_REQUEST);
+    }
+
+    /**
+     * Polls the stats of the stream as {@link #getStats(String)} does and completes the request of the scheduler
+     * when the report is parsed.
+     */
+    private void requestStats(String streamId, long requestId) {
         PeerConnection pc = getPeerConnectionFor(streamId);
-        if (pc != null) {
-            pc.getStats(this::onPeerConnectionStatsReady);
+        if (pc == null) {
+            statsScheduler.onStatsRequestCompleted(streamId, requestId, false);
+            return;
         }
+        Set<String> trackIds = statsTrackSelections.get(streamId);
+        if (trackIds == null) {
+            pc.getStats(report -> onPeerConnectionStatsReady(streamId, requestId, report));
+        } else if (!getSelectedStats(pc, trackIds, report -> {
+            statsCollector.onStatsReport(streamId, report);
+            statsScheduler.onStatsRequestCompleted(streamId, requestId, statsCollector.isHealthy(streamId));
+        })) {
+            statsScheduler.onStatsRequestCompleted(streamId, requestId, statsCollector.isHealthy(streamId));
+        }
+    }
+
+    /**
+     * Requests the stats of the selected receivers only. Each receiver reports its own stats, which are merged
+     * as they arrive. Merged report is passed to the callback on the handler thread when the last one arrives
+     * so that the peer level results, i.e. transport stats, quality score and metrics, are updated once per poll
+     * like a whole report.
+     *
+     * @return false if none of the receivers is selected, callback is not called then
+     */
+    private boolean getSelectedStats(PeerConnection pc, Set<String> trackIds, RTCStatsCollectorCallback callback) {
+        List<RtpReceiver> selectedReceivers = new ArrayList<>(trackIds.size());
+        for (RtpReceiver receiver : pc.getReceivers()) {
+            if (isSelectedReceiver(receiver.id(), trackIds)) {
+                selectedReceivers.add(receiver);
+            }
+        }
+        if (selectedReceivers.isEmpty()) {
+            return false;
+        }
+        // reports are merged on the handler thread, so the map doesn't need synchronization
+        Map<String, RTCStats> mergedStats = new HashMap<>();
+        AtomicInteger remainingReports = new AtomicInteger(selectedReceivers.size());
+        for (RtpReceiver receiver : selectedReceivers) {
+            pc.getStats(receiver, report -> this.handler.post(() -> {
+                // stats shared by the receivers, e.g. transport and codecs, have the same ids in all reports
+                mergedStats.putAll(report.getStatsMap());
+                if (remainingReports.decrementAndGet() == 0) {
+                    callback.onStatsDelivered(new RTCStatsReport((long) report.getTimestampUs(), mergedStats));
+                }
+            }));
+        }
+        return true;
+    }
+
+    /**
+     * Adds a sink to the played video track to detect stalls from the frame arrivals,
+     * so that they're detected in {@link StallDetector#CHECK_PERIOD_MS} independent of the stats period.
+     */
+    private void monitorStalls(String streamId, VideoTrack videoTrack) {
+        StallDetector detector = stallDetector;
+        String trackId = toStatsTrackId(videoTrack.id());
+        if (detector == null || trackId == null) {
+            return;
+        }
+        videoTrack.addSink(detector.monitor(streamId, trackId));
+        handler.post(() -> {
+            if (!stallCheckScheduled) {
+                stallCheckScheduled = true;
+                handler.postDelayed(stallCheckRunnable, StallDetector.CHECK_PERIOD_MS);
+            }
+        });
+    }
+
+    // track ids in the stats have the same prefix, see StatsCollector#parseInboundRtp
+    private static String toStatsTrackId(String trackId) {
+        if (trackId == null) {
+            return null;
+        }
+        return trackId.startsWith(StatsCollector.VIDEO_TRACK_ID) ? trackId.substring(StatsCollector.VIDEO_TRACK_ID.length()) : trackId;
+    }
+
+    private static boolean isSelectedReceiver(String receiverId, Set<String> trackIds) {
+        // receiver ids are the track ids with a prefix, see onAddTrack
+        int prefixLength = DataChannelConstants.TRACK_ID_PREFIX.length();
+        for (String trackId : trackIds) {
+            if (receiverId.length() == prefixLength + trackId.length()
+                    && receiverId.regionMatches(prefixLength, trackId, 0, trackId.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Limits the stats polling of the stream to the given tracks, e.g. the tracks that are displayed on the screen.
+     * Only the stats of the receivers of these tracks are collected and parsed, so the cost of polling
+     * is proportional to the number of the selected tracks rather than all tracks in the stream.
+     * Stats of the tracks that are not selected are not updated anymore.
+     *
+     * @param trackIds ids of the tracks as in {@link io.antmedia.webrtcandroidframework.api.IWebRTCListener#onNewVideoTrack(VideoTrack, String)}.
+     *                 Pass null to poll the whole peer connection again.
+     */
+    public void setStatsTrackSelection(String streamId, Collection<String> trackIds) {
+        if (trackIds == null) {
+            statsTrackSelections.remove(streamId);
+        } else {
+            statsTrackSelections.put(streamId, Collections.unmodifiableSet(new HashSet<>(trackIds)));
+        }
+    }
+
+    public Set<String> getStatsTrackSelection(String streamId) {
+        return statsTrackSelections.get(streamId);
+    }
+
+    /**
+     * Collects the stats of a single sender, e.g. the local video sender of a publish stream.
+     * Only the stats of its track and the transport are updated, see {@link StatsCollector#onScopedStatsReport(String, RTCStatsReport)}.
+     */
+    public void getStats(String streamId, RtpSender sender) {
+        collectStats(streamId, sender, null);
+    }
+
+    /**
+     * Collects the stats of a single receiver, e.g. the receiver of a track that is displayed on the screen.
+     * Only the stats of its track and the transport are updated, see {@link StatsCollector#onScopedStatsReport(String, RTCStatsReport)}.
+     */
+    public void getStats(String streamId, RtpReceiver receiver) {
+        collectStats(streamId, null, receiver);
+    }
+
+    /**
+     * Collects stats out of the stats schedule. The peer connection is collected as it's polled if sender and
+     * receiver are null, i.e. only the selected receivers are collected if there is a track selection.
+     */
+    private void collectStats(String streamId, RtpSender sender, RtpReceiver receiver) {
+        executor.execute(() -> {
+            PeerConnection pc = getPeerConnectionFor(streamId);
+            if (pc == null) {
+                return;
+            }
+            RTCStatsCollectorCallback scopedCallback = report -> this.handler.post(() -> statsCollector.onScopedStatsReport(streamId, report));
+            Set<String> trackIds = statsTrackSelections.get(streamId);
+            if (sender != null) {
+                pc.getStats(sender, scopedCallback);
+            } else if (receiver != null) {
+                pc.getStats(receiver, scopedCallback);
+            } else if (trackIds != null) {
+                getSelectedStats(pc, trackIds, report -> statsCollector.onStatsReport(streamId, report));
+            } else {
+                pc.getStats(report -> this.handler.post(() -> statsCollector.onStatsReport(streamId, report)));
+            }
+        });
     }
 
     public StatsCollector getStatsCollector() {
         return statsCollector;
     }
 
+    /**
+     * Exports the stats history to {@link WebRTCClientConfig#statsRecordDirectory} in background.
+     * It does nothing if recording is not enabled with {@link WebRTCClientConfig#statsRecordDurationMs}.
+     * Repeats of a reason within the history duration are skipped and the last {@link StatsRecordExporter#MAX_EXPORTS}
+     * files are kept. Exported files can be converted to CSV with {@link StatsRecordReader}.
+     *
+     * @param reason added to the file name, e.g. the error that triggers the export
+     */
+    public void exportStatsRecord(String reason) {
+        StatsRecordExporter exporter = statsRecordExporter;
+        if (exporter != null) {
+            exporter.export(reason);
+        }
+    }
+
+    public StatsRecordExporter getStatsRecordExporter() {
+        return statsRecordExporter;
+    }
+
+    /**
+     * Starts or stops polling the stats of the stream. Streams are polled on a shared thread, each with its own period.
+     * Polling is backed off while the activity is in background or the stream is healthy, see {@link StatsScheduler}.
+     */
     public void enableStatsEvents(String streamId, boolean enable, int periodMs) {
         if (enable) {
-            try {
-                statsTimer = new Timer();
-                statsTimer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        executor.execute(() -> getStats(streamId));
-                    }
-                }, 0, periodMs);
-            } catch (Exception e) {
-                Log.e(TAG, "Can not schedule statistics timer", e);
-            }
+            statsScheduler.subscribe(streamId, periodMs);
         } else {
-            statsTimer.cancel();
+            statsScheduler.unsubscribe(streamId);
         }
     }
 
+    public StatsScheduler getStatsScheduler() {
+        return statsScheduler;
+    }
+
     public void setAudioEnabled(final boolean enable) {
         config.audioCallEnabled = enable;
 
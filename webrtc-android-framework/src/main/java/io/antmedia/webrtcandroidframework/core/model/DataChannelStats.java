@@ -0,0 +1,145 @@
+package io.antmedia.webrtcandroidframework.core.model;
+
+/**
+ * Statistics of a single data channel of a peer connection. They're parsed from data-channel stats.
+ * https://www.w3.org/TR/webrtc-stats/#dcstats-dict*
+ */
+public class DataChannelStats {
+
+    private final String label;
+    private String protocol;
+    private long dataChannelIdentifier = -1;
+    private String state;
+
+    private long messagesSent;
+    private long bytesSent;
+    private long messagesReceived;
+    private long bytesReceived;
+
+    private final RateCounter messagesSentRate = new RateCounter();
+    private final RateCounter messagesReceivedRate = new RateCounter();
+    private final RateCounter bytesSentRate = new RateCounter();
+    private final RateCounter bytesReceivedRate = new RateCounter();
+
+    public DataChannelStats(String label) {
+        this.label = label;
+    }
+
+    public void updateRates(double timeMs) {
+        messagesSentRate.add(timeMs, messagesSent);
+        messagesReceivedRate.add(timeMs, messagesReceived);
+        bytesSentRate.add(timeMs, bytesSent);
+        bytesReceivedRate.add(timeMs, bytesReceived);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public long getDataChannelIdentifier() {
+        return dataChannelIdentifier;
+    }
+
+    public void setDataChannelIdentifier(long dataChannelIdentifier) {
+        this.dataChannelIdentifier = dataChannelIdentifier;
+    }
+
+    /**
+     * @return connecting, open, closing or closed
+     */
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public void setMessagesSent(long messagesSent) {
+        this.messagesSent = messagesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    public void setMessagesReceived(long messagesReceived) {
+        this.messagesReceived = messagesReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public double getMessagesSentPerSecond() {
+        return messagesSentRate.getRate();
+    }
+
+    public double getMessagesReceivedPerSecond() {
+        return messagesReceivedRate.getRate();
+    }
+
+    /**
+     * @return payload bits sent per second
+     */
+    public double getSendBitrate() {
+        return bytesSentRate.getRate() * 8;
+    }
+
+    /**
+     * @return payload bits received per second
+     */
+    public double getReceiveBitrate() {
+        return bytesReceivedRate.getRate() * 8;
+    }
+
+    public void reset() {
+        protocol = null;
+        dataChannelIdentifier = -1;
+        state = null;
+        messagesSent = 0;
+        bytesSent = 0;
+        messagesReceived = 0;
+        bytesReceived = 0;
+        messagesSentRate.reset();
+        messagesReceivedRate.reset();
+        bytesSentRate.reset();
+        bytesReceivedRate.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "DataChannelStats {" +
+                "label='" + label + '\'' +
+                ", state='" + state + '\'' +
+                ", messagesSent=" + messagesSent +
+                ", bytesSent=" + bytesSent +
+                ", messagesReceived=" + messagesReceived +
+                ", bytesReceived=" + bytesReceived +
+                '}';
+    }
+}
@@ -0,0 +1,78 @@
+package io.antmedia.webrtcandroidframework.core.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PeerStats {
+
+    //Holds the statistics of a single peer connection. Each peer(publish, play or p2p) keeps its own
+    //publish/play stats and its own last report timestamp so that rate calculations of different peers don't mix.
+
+    private final String streamId;
+
+    private final PublishStats publishStats = new PublishStats();
+    private final PlayStats playStats = new PlayStats();
+    private final TransportStats transportStats = new TransportStats();
+    private final QualityScore qualityScore = new QualityScore();
+
+    //data channel stats by label
+    private final Map<String, DataChannelStats> dataChannelStats = new ConcurrentHashMap<>();
+
+    private double lastKnownStatsTimeStampMs;
+
+    public PeerStats(String streamId) {
+        this.streamId = streamId;
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public PublishStats getPublishStats() {
+        return publishStats;
+    }
+
+    public PlayStats getPlayStats() {
+        return playStats;
+    }
+
+    public TransportStats getTransportStats() {
+        return transportStats;
+    }
+
+    public QualityScore getQualityScore() {
+        return qualityScore;
+    }
+
+    /**
+     * @return statistics of the data channels of this peer by their labels
+     */
+    public Map<String, DataChannelStats> getDataChannelStats() {
+        return dataChannelStats;
+    }
+
+    public double getLastKnownStatsTimeStampMs() {
+        return lastKnownStatsTimeStampMs;
+    }
+
+    public void setLastKnownStatsTimeStampMs(double lastKnownStatsTimeStampMs) {
+        this.lastKnownStatsTimeStampMs = lastKnownStatsTimeStampMs;
+    }
+
+    public void reset() {
+        publishStats.reset();
+        playStats.reset();
+        transportStats.reset();
+        qualityScore.reset();
+        dataChannelStats.clear();
+        lastKnownStatsTimeStampMs = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PeerStats {" +
+                "streamId='" + streamId + '\'' +
+                ", lastKnownStatsTimeStampMs=" + lastKnownStatsTimeStampMs +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+package io.antmedia.webrtcandroidframework.core.model;
+
+/**
+ * Quality of a peer connection computed from the scores of its tracks at each stats report.
+ * The same instance is updated at every report, so copy the values if they're kept.
+ */
+public class QualityScore {
+
+    public static final int QUALITY_UNKNOWN = 0;
+    public static final int QUALITY_VERY_BAD = 1;
+    public static final int QUALITY_BAD = 2;
+    public static final int QUALITY_POOR = 3;
+    public static final int QUALITY_GOOD = 4;
+    public static final int QUALITY_EXCELLENT = 5;
+
+    /**
+     * Lowest mean opinion score of the audio tracks in 1-4.5, 0 if no audio track is scored
+     */
+    private double audioMos;
+
+    /**
+     * Lowest score of the video tracks in 1-5, 0 if no video track is scored
+     */
+    private double videoScore;
+
+    /**
+     * Combined score of the peer in 1-5. It's the score of the worst track, 0 if no track is scored
+     */
+    private double score;
+
+    /**
+     * One of the QUALITY_ constants derived from the score
+     */
+    private int networkQuality = QUALITY_UNKNOWN;
+
+    private long timeMs;
+
+    //scores of the tracks are accumulated while a report is parsed
+    private double pendingAudioMos;
+    private double pendingVideoScore;
+
+    public void begin() {
+        pendingAudioMos = 0;
+        pendingVideoScore = 0;
+    }
+
+    /**
+     * @param mos score of an audio track, 0 if the track isn't scored
+     */
+    public void addAudioMos(double mos) {
+        if (mos <= 0) {
+            return;
+        }
+        pendingAudioMos = pendingAudioMos == 0 ? mos : Math.min(pendingAudioMos, mos);
+    }
+
+    /**
+     * @param videoScore score of a video track, 0 if the track isn't scored
+     */
+    public void addVideoScore(double videoScore) {
+        if (videoScore <= 0) {
+            return;
+        }
+        pendingVideoScore = pendingVideoScore == 0 ? videoScore : Math.min(pendingVideoScore, videoScore);
+    }
+
+    /**
+     * @return true if any track is scored in the report
+     */
+    public boolean end(long timeMs) {
+        if (pendingAudioMos == 0 && pendingVideoScore == 0) {
+            return false;
+        }
+        audioMos = pendingAudioMos;
+        videoScore = pendingVideoScore;
+        double normalizedAudioScore = audioMos == 0 ? 0 : normalizeMos(audioMos);
+        score = normalizedAudioScore == 0 ? videoScore
+                : videoScore == 0 ? normalizedAudioScore : Math.min(normalizedAudioScore, videoScore);
+        networkQuality = toNetworkQuality(score);
+        this.timeMs = timeMs;
+        return true;
+    }
+
+    /**
+     * Maps an E-model MOS in 1-4.5 to the 1-5 range of the video scores
+     */
+    public static double normalizeMos(double mos) {
+        return 1 + (mos - 1) * 4 / 3.5;
+    }
+
+    public static int toNetworkQuality(double score) {
+        if (score <= 0) {
+            return QUALITY_UNKNOWN;
+        } else if (score >= 4.3) {
+            return QUALITY_EXCELLENT;
+        } else if (score >= 3.8) {
+            return QUALITY_GOOD;
+        } else if (score >= 3.2) {
+            return QUALITY_POOR;
+        } else if (score >= 2.5) {
+            return QUALITY_BAD;
+        }
+        return QUALITY_VERY_BAD;
+    }
+
+    public double getAudioMos() {
+        return audioMos;
+    }
+
+    public double getVideoScore() {
+        return videoScore;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public int getNetworkQuality() {
+        return networkQuality;
+    }
+
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    public void reset() {
+        audioMos = 0;
+        videoScore = 0;
+        score = 0;
+        networkQuality = QUALITY_UNKNOWN;
+        timeMs = 0;
+        begin();
+    }
+
+    @Override
+    public String toString() {
+        return "QualityScore {" +
+                "networkQuality=" + networkQuality +
+                ", score=" + score +
+                ", audioMos=" + audioMos +
+                ", videoScore=" + videoScore +
+                '}';
+    }
+}
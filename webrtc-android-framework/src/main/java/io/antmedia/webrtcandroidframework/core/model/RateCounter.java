@@ -0,0 +1,149 @@
+package io.antmedia.webrtcandroidframework.core.model;
+
+/**
+ * Computes rates of a cumulative counter such as bytesSent, packetsReceived or framesDecoded.
+ * Samples of (timestamp, value) are kept in a fixed size ring buffer so that adding a sample never allocates.
+ *
+ * Three rates are provided, all per second and with sub-second precision:
+ * instant rate between the last two samples, exponentially weighted moving average of the instant rates
+ * and the average rate over the samples kept in the ring buffer.
+ */
+public class RateCounter {
+
+    public static final int DEFAULT_CAPACITY = 10;
+
+    public static final double DEFAULT_EWMA_ALPHA = 0.3;
+
+    private final double[] timestampsMs;
+    private final long[] values;
+    private final double ewmaAlpha;
+
+    //index of the latest sample
+    private int head = -1;
+    private int size;
+
+    private double rate;
+    private double ewmaRate;
+
+    public RateCounter() {
+        this(DEFAULT_CAPACITY, DEFAULT_EWMA_ALPHA);
+    }
+
+    public RateCounter(int capacity, double ewmaAlpha) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity should be at least 2 but it's " + capacity);
+        }
+        this.timestampsMs = new double[capacity];
+        this.values = new long[capacity];
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    /**
+     * Adds a sample of the counter.
+     * A sample with a timestamp that is not newer than the latest one is ignored.
+     * If the counter goes backwards(e.g. stream restarted), the history is cleared and it starts again.
+     */
+    public void add(double timeMs, long value) {
+        if (size > 0) {
+            double lastTimeMs = timestampsMs[head];
+            long lastValue = values[head];
+            if (timeMs <= lastTimeMs) {
+                return;
+            }
+            if (value < lastValue) {
+                reset();
+            } else {
+                rate = (value - lastValue) * 1000.0 / (timeMs - lastTimeMs);
+                ewmaRate = size == 1 ? rate : ewmaAlpha * rate + (1 - ewmaAlpha) * ewmaRate;
+            }
+        }
+
+        head = (head + 1) % values.length;
+        timestampsMs[head] = timeMs;
+        values[head] = value;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    /**
+     * @return rate per second between the last two samples
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return exponentially weighted moving average of the rate per second
+     */
+    public double getEwmaRate() {
+        return ewmaRate;
+    }
+
+    /**
+     * @return average rate per second over the samples in the window
+     */
+    public double getWindowRate() {
+        double windowDurationMs = getWindowDurationMs();
+        return windowDurationMs > 0 ? getWindowDelta() * 1000.0 / windowDurationMs : 0;
+    }
+
+    /**
+     * @return difference between the last two samples
+     */
+    public long getDelta() {
+        return size > 1 ? values[head] - values[previous(head)] : 0;
+    }
+
+    /**
+     * @return difference between the last and the oldest sample in the window
+     */
+    public long getWindowDelta() {
+        return size > 1 ? values[head] - values[oldest()] : 0;
+    }
+
+    public double getWindowDurationMs() {
+        return size > 1 ? timestampsMs[head] - timestampsMs[oldest()] : 0;
+    }
+
+    public long getValue() {
+        return size > 0 ? values[head] : 0;
+    }
+
+    public double getTimeMs() {
+        return size > 0 ? timestampsMs[head] : 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public void reset() {
+        head = -1;
+        size = 0;
+        rate = 0;
+        ewmaRate = 0;
+    }
+
+    private int previous(int index) {
+        return (index - 1 + values.length) % values.length;
+    }
+
+    private int oldest() {
+        return (head - size + 1 + values.length) % values.length;
+    }
+
+    @Override
+    public String toString() {
+        return "RateCounter {" +
+                "value=" + getValue() +
+                ", rate=" + rate +
+                ", ewmaRate=" + ewmaRate +
+                ", windowRate=" + getWindowRate() +
+                '}';
+    }
+}
@@ -1,6 +1,7 @@
 package io.antmedia.webrtcandroidframework.core.model;
 
 import java.math.BigInteger;
+import java.util.Map;
 
 public class TrackStats {
 
@@ -52,19 +53,72 @@ public class TrackStats {
 
     private double totalPacketSendDelay;
 
-    private BigInteger bytesSent = BigInteger.ZERO;
-    private BigInteger bytesReceived = BigInteger.ZERO;
-    private BigInteger concealmentEvents = BigInteger.ZERO;
-    private long packetsSentPerSecond;
-    private BigInteger bytesSentPerSecond = BigInteger.ZERO;
-    private long framesEncodedPerSecond;
+    //Counters are held as primitives and deltas are computed in place, so that updating a record
+    //on every stats report doesn't allocate. BigInteger accessors are kept for compatibility.
+    private long bytesSent;
+    private long bytesReceived;
+    private long concealmentEvents;
     private long timeMs;
     private long packetsSentDifference;
-    private BigInteger bytesSentDiff = BigInteger.ZERO;
+    private long bytesSentDiff;
     private long framesEncodedDifference;
     private String trackId;
     private long timeDifference;
 
+    //Encoder health of a published video track. Times are in seconds as in the stats.
+    private String qualityLimitationReason;
+    private Map<String, Double> qualityLimitationDurations;
+    private double totalEncodeTime;
+    private String encoderImplementation;
+    private boolean powerEfficientEncoder;
+
+    //Decoder health of a played track
+    private double totalDecodeTime;
+    private String decoderImplementation;
+    private boolean powerEfficientDecoder;
+    private double jitterBufferDelay;
+    private long jitterBufferEmittedCount;
+    private double totalProcessingDelay;
+
+    private long frameWidth;
+    private long frameHeight;
+    private double framesPerSecond;
+
+    //Per frame averages between the last two reports, in seconds
+    private double encodeTimePerFrame;
+    private double decodeTimePerFrame;
+    private double jitterBufferDelayPerFrame;
+    private double processingDelayPerFrame;
+
+    private double lastTotalEncodeTime;
+    private double lastTotalDecodeTime;
+    private double lastJitterBufferDelay;
+    private long lastJitterBufferEmittedCount;
+    private double lastTotalProcessingDelay;
+
+    //Ratio of the time spent in freezes between the last two reports
+    private double freezeRatio;
+    private double lastTotalFreezesDuration;
+    private double lastRatesTimeMs;
+
+    //Quality score of the track in 1-5, 0 if it's not scored yet. See QualityScorer
+    private double qualityScore;
+
+    //Rates of the counters. They're updated once per stats report by updateRates.
+    private final RateCounter bytesSentRate = new RateCounter();
+    private final RateCounter bytesReceivedRate = new RateCounter();
+    private final RateCounter packetsSentRate = new RateCounter();
+    private final RateCounter packetsReceivedRate = new RateCounter();
+    private final RateCounter packetsLostRate = new RateCounter();
+    private final RateCounter framesEncodedRate = new RateCounter();
+    private final RateCounter framesDecodedRate = new RateCounter();
+    private final RateCounter framesSentRate = new RateCounter();
+    private final RateCounter framesReceivedRate = new RateCounter();
+    private final RateCounter nackCountRate = new RateCounter();
+    private final RateCounter pliCountRate = new RateCounter();
+
+    private double ewmaPacketLostRatio;
+
     public void setPacketsLost(int packetsLost) {
         packetsLostDifference = packetsLost - this.packetsLost;
         this.packetsLost = packetsLost;
@@ -101,31 +155,38 @@ public class TrackStats {
     }
 
     public void setBytesSent(BigInteger bytesSent) {
-        bytesSentDiff = bytesSent.subtract(this.bytesSent);
+        setBytesSent(bytesSent.longValue());
+    }
+
+    public void setBytesSent(long bytesSent) {
+        bytesSentDiff = bytesSent - this.bytesSent;
         this.bytesSent = bytesSent;
     }
 
     public BigInteger getBytesReceived() {
+        return BigInteger.valueOf(bytesReceived);
+    }
+
+    public long getBytesReceivedLong() {
         return bytesReceived;
     }
 
     public void setBytesReceived(BigInteger bytesReceived) {
+        setBytesReceived(bytesReceived.longValue());
+    }
+
+    public void setBytesReceived(long bytesReceived) {
         this.bytesReceived = bytesReceived;
     }
 
 
     public void setFramesEncoded(long framesEncoded) {
-        framesEncodedDifference = framesEncodedPerSecond - this.framesEncodedPerSecond;
+        framesEncodedDifference = framesEncoded - this.framesEncoded;
         this.framesEncoded = framesEncoded;
     }
 
     public void setTimeMs(long timeMs) {
         timeDifference = timeMs - this.timeMs;
-        if (timeDifference > 0) {
-            packetsSentPerSecond = packetsSentDifference * 1000 / timeDifference;
-            bytesSentPerSecond = bytesSentDiff.multiply(BigInteger.valueOf(1000)).divide(BigInteger.valueOf(timeDifference));
-            framesEncodedPerSecond = framesEncodedDifference * 1000 / timeDifference;
-        }
 
         if (timeDifference == 0) {
             //sync block may cause unexpected values
@@ -146,12 +207,149 @@ public class TrackStats {
         return roundTripTime;
     }
 
+    /**
+     * Feeds the current values of the counters to their rate counters.
+     * It should be called once after all counters of a stats report are set.
+     *
+     * @param timeMs timestamp of the stats report in milliseconds, sub-millisecond precision is kept
+     */
+    public void updateRates(double timeMs) {
+        bytesSentRate.add(timeMs, bytesSent);
+        bytesReceivedRate.add(timeMs, bytesReceived);
+        packetsSentRate.add(timeMs, packetsSent);
+        packetsReceivedRate.add(timeMs, packetsReceived);
+        packetsLostRate.add(timeMs, packetsLost);
+        framesEncodedRate.add(timeMs, framesEncoded);
+        framesDecodedRate.add(timeMs, framesDecoded);
+        framesSentRate.add(timeMs, framesSent);
+        framesReceivedRate.add(timeMs, framesReceived);
+        nackCountRate.add(timeMs, nackCount);
+        pliCountRate.add(timeMs, pliCount);
+
+        encodeTimePerFrame = perFrame(totalEncodeTime - lastTotalEncodeTime, framesEncodedRate.getDelta());
+        decodeTimePerFrame = perFrame(totalDecodeTime - lastTotalDecodeTime, framesDecodedRate.getDelta());
+        processingDelayPerFrame = perFrame(totalProcessingDelay - lastTotalProcessingDelay, framesDecodedRate.getDelta());
+        jitterBufferDelayPerFrame = perFrame(jitterBufferDelay - lastJitterBufferDelay, jitterBufferEmittedCount - lastJitterBufferEmittedCount);
+        lastTotalEncodeTime = totalEncodeTime;
+        lastTotalDecodeTime = totalDecodeTime;
+        lastTotalProcessingDelay = totalProcessingDelay;
+        lastJitterBufferDelay = jitterBufferDelay;
+        lastJitterBufferEmittedCount = jitterBufferEmittedCount;
+
+        double ratesTimeDelta = timeMs - lastRatesTimeMs;
+        freezeRatio = lastRatesTimeMs > 0 && ratesTimeDelta > 0
+                ? Math.min(1, Math.max(0, (totalFreezesDuration - lastTotalFreezesDuration) * 1000 / ratesTimeDelta)) : 0;
+        lastTotalFreezesDuration = totalFreezesDuration;
+        lastRatesTimeMs = timeMs;
+
+        if (packetsLostRate.size() > 1) {
+            float lostRatio = getPacketLostRatio();
+            ewmaPacketLostRatio = packetsLostRate.size() == 2 ? lostRatio
+                    : RateCounter.DEFAULT_EWMA_ALPHA * lostRatio + (1 - RateCounter.DEFAULT_EWMA_ALPHA) * ewmaPacketLostRatio;
+        }
+    }
+
+    /**
+     * @return lost packets percentage between the last two stats reports
+     */
     public float getPacketLostRatio() {
-        packetLostRatio = (float) 100 * packetsLostDifference / packetsSentDifference;
+        packetLostRatio = lostRatio(packetsLostRate.getDelta(), packetsSentRate.getDelta(), packetsReceivedRate.getDelta());
         return packetLostRatio;
     }
 
+    /**
+     * @return lost packets percentage over the rate window
+     */
+    public float getWindowPacketLostRatio() {
+        return lostRatio(packetsLostRate.getWindowDelta(), packetsSentRate.getWindowDelta(), packetsReceivedRate.getWindowDelta());
+    }
+
+    /**
+     * @return exponentially weighted moving average of the lost packets percentage
+     */
+    public double getEwmaPacketLostRatio() {
+        return ewmaPacketLostRatio;
+    }
+
+    private static double perFrame(double timeDelta, long frameDelta) {
+        return frameDelta > 0 && timeDelta > 0 ? timeDelta / frameDelta : 0;
+    }
+
+    private float lostRatio(long lostDelta, long sentDelta, long receivedDelta) {
+        //lost packets of a sent track are reported by the remote peer, so they're part of the sent packets.
+        //lost packets of a received track are not part of the received packets.
+        long expected = sentDelta > 0 ? sentDelta : receivedDelta + lostDelta;
+        if (expected <= 0 || lostDelta <= 0) {
+            return 0;
+        }
+        return (float) 100 * lostDelta / expected;
+    }
+
+    /**
+     * @return bits per second sent or received between the last two stats reports
+     */
+    public long getBitrate() {
+        double bytesPerSecond = bytesSent > 0 ? bytesSentRate.getRate() : bytesReceivedRate.getRate();
+        return (long) (bytesPerSecond * 8);
+    }
+
+    /**
+     * @return bits per second sent or received over the rate window
+     */
+    public long getWindowBitrate() {
+        double bytesPerSecond = bytesSent > 0 ? bytesSentRate.getWindowRate() : bytesReceivedRate.getWindowRate();
+        return (long) (bytesPerSecond * 8);
+    }
+
+    public RateCounter getBytesSentRate() {
+        return bytesSentRate;
+    }
+
+    public RateCounter getBytesReceivedRate() {
+        return bytesReceivedRate;
+    }
+
+    public RateCounter getPacketsSentRate() {
+        return packetsSentRate;
+    }
+
+    public RateCounter getPacketsReceivedRate() {
+        return packetsReceivedRate;
+    }
+
+    public RateCounter getPacketsLostRate() {
+        return packetsLostRate;
+    }
+
+    public RateCounter getFramesEncodedRate() {
+        return framesEncodedRate;
+    }
+
+    public RateCounter getFramesDecodedRate() {
+        return framesDecodedRate;
+    }
+
+    public RateCounter getFramesSentRate() {
+        return framesSentRate;
+    }
+
+    public RateCounter getFramesReceivedRate() {
+        return framesReceivedRate;
+    }
+
+    public RateCounter getNackCountRate() {
+        return nackCountRate;
+    }
+
+    public RateCounter getPliCountRate() {
+        return pliCountRate;
+    }
+
     public BigInteger getBytesSent() {
+        return BigInteger.valueOf(bytesSent);
+    }
+
+    public long getBytesSentLong() {
         return bytesSent;
     }
 
@@ -176,11 +374,15 @@ public class TrackStats {
     }
 
     public long getPacketsSentPerSecond() {
-        return packetsSentPerSecond;
+        return (long) packetsSentRate.getRate();
     }
 
     public BigInteger getBytesSentPerSecond() {
-        return bytesSentPerSecond;
+        return BigInteger.valueOf(getBytesSentPerSecondLong());
+    }
+
+    public long getBytesSentPerSecondLong() {
+        return (long) bytesSentRate.getRate();
     }
 
     public long getFramesEncoded() {
@@ -188,7 +390,7 @@ public class TrackStats {
     }
 
     public long getFramesEncodedPerSecond() {
-        return framesEncodedPerSecond;
+        return (long) framesEncodedRate.getRate();
     }
 
     public long getTimeMs() {
@@ -200,6 +402,10 @@ public class TrackStats {
     }
 
     public BigInteger getBytesSentDiff() {
+        return BigInteger.valueOf(bytesSentDiff);
+    }
+
+    public long getBytesSentDiffLong() {
         return bytesSentDiff;
     }
 
@@ -216,9 +422,18 @@ public class TrackStats {
     }
 
     public BigInteger getConcealmentEvents() {
+        return BigInteger.valueOf(concealmentEvents);
+    }
+
+    public long getConcealmentEventsLong() {
         return concealmentEvents;
     }
+
     public void setConcealmentEvents(BigInteger concealmentEvents) {
+        setConcealmentEvents(concealmentEvents.longValue());
+    }
+
+    public void setConcealmentEvents(long concealmentEvents) {
         this.concealmentEvents = concealmentEvents;
     }
 
@@ -286,6 +501,186 @@ public class TrackStats {
         this.framesSent = framesSent;
     }
 
+    public String getQualityLimitationReason() {
+        return qualityLimitationReason;
+    }
+
+    public void setQualityLimitationReason(String qualityLimitationReason) {
+        this.qualityLimitationReason = qualityLimitationReason;
+    }
+
+    /**
+     * @return total time in seconds spent in each quality limitation reason(none, cpu, bandwidth, other)
+     */
+    public Map<String, Double> getQualityLimitationDurations() {
+        return qualityLimitationDurations;
+    }
+
+    public void setQualityLimitationDurations(Map<String, Double> qualityLimitationDurations) {
+        this.qualityLimitationDurations = qualityLimitationDurations;
+    }
+
+    public double getQualityLimitationDuration(String reason) {
+        Double duration = qualityLimitationDurations != null ? qualityLimitationDurations.get(reason) : null;
+        return duration != null ? duration : 0;
+    }
+
+    public double getTotalEncodeTime() {
+        return totalEncodeTime;
+    }
+
+    public void setTotalEncodeTime(double totalEncodeTime) {
+        this.totalEncodeTime = totalEncodeTime;
+    }
+
+    public String getEncoderImplementation() {
+        return encoderImplementation;
+    }
+
+    public void setEncoderImplementation(String encoderImplementation) {
+        this.encoderImplementation = encoderImplementation;
+    }
+
+    public boolean isPowerEfficientEncoder() {
+        return powerEfficientEncoder;
+    }
+
+    public void setPowerEfficientEncoder(boolean powerEfficientEncoder) {
+        this.powerEfficientEncoder = powerEfficientEncoder;
+    }
+
+    public double getTotalDecodeTime() {
+        return totalDecodeTime;
+    }
+
+    public void setTotalDecodeTime(double totalDecodeTime) {
+        this.totalDecodeTime = totalDecodeTime;
+    }
+
+    public String getDecoderImplementation() {
+        return decoderImplementation;
+    }
+
+    public void setDecoderImplementation(String decoderImplementation) {
+        this.decoderImplementation = decoderImplementation;
+    }
+
+    public boolean isPowerEfficientDecoder() {
+        return powerEfficientDecoder;
+    }
+
+    public void setPowerEfficientDecoder(boolean powerEfficientDecoder) {
+        this.powerEfficientDecoder = powerEfficientDecoder;
+    }
+
+    public double getJitterBufferDelay() {
+        return jitterBufferDelay;
+    }
+
+    public void setJitterBufferDelay(double jitterBufferDelay) {
+        this.jitterBufferDelay = jitterBufferDelay;
+    }
+
+    public long getJitterBufferEmittedCount() {
+        return jitterBufferEmittedCount;
+    }
+
+    public void setJitterBufferEmittedCount(long jitterBufferEmittedCount) {
+        this.jitterBufferEmittedCount = jitterBufferEmittedCount;
+    }
+
+    public double getTotalProcessingDelay() {
+        return totalProcessingDelay;
+    }
+
+    public void setTotalProcessingDelay(double totalProcessingDelay) {
+        this.totalProcessingDelay = totalProcessingDelay;
+    }
+
+    public long getFrameWidth() {
+        return frameWidth;
+    }
+
+    public void setFrameWidth(long frameWidth) {
+        this.frameWidth = frameWidth;
+    }
+
+    public long getFrameHeight() {
+        return frameHeight;
+    }
+
+    public void setFrameHeight(long frameHeight) {
+        this.frameHeight = frameHeight;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public void setFramesPerSecond(double framesPerSecond) {
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /**
+     * @return average encode time of a frame in seconds between the last two stats reports
+     */
+    public double getEncodeTimePerFrame() {
+        return encodeTimePerFrame;
+    }
+
+    /**
+     * @return average decode time of a frame in seconds between the last two stats reports
+     */
+    public double getDecodeTimePerFrame() {
+        return decodeTimePerFrame;
+    }
+
+    /**
+     * @return average time in seconds a sample or frame waits in the jitter buffer between the last two stats reports
+     */
+    public double getJitterBufferDelayPerFrame() {
+        return jitterBufferDelayPerFrame;
+    }
+
+    /**
+     * @return average time in seconds from receiving the first packet of a frame to decoding it between the last two stats reports
+     */
+    public double getProcessingDelayPerFrame() {
+        return processingDelayPerFrame;
+    }
+
+    /**
+     * @return average encode time of a frame in seconds since the beginning
+     */
+    public double getAverageEncodeTimePerFrame() {
+        return framesEncoded > 0 ? totalEncodeTime / framesEncoded : 0;
+    }
+
+    /**
+     * @return average decode time of a frame in seconds since the beginning
+     */
+    public double getAverageDecodeTimePerFrame() {
+        return framesDecoded > 0 ? totalDecodeTime / framesDecoded : 0;
+    }
+
+    /**
+     * @return ratio of the time spent in freezes between the last two stats reports, in 0-1
+     */
+    public double getFreezeRatio() {
+        return freezeRatio;
+    }
+
+    /**
+     * @return quality score of the track in 1-5 computed at the last stats report, 0 if it's not scored yet
+     */
+    public double getQualityScore() {
+        return qualityScore;
+    }
+
+    public void setQualityScore(double qualityScore) {
+        this.qualityScore = qualityScore;
+    }
+
     public boolean isVideoTrackStats() {
         return isVideoTrackStats;
     }
@@ -318,9 +713,19 @@ public class TrackStats {
                 ", packetsSent=" + packetsSent +
                 ", framesEncoded=" + framesEncoded +
                 ", bytesSent=" + bytesSent +
-                ", packetsSentPerSecond=" + packetsSentPerSecond +
-                ", bytesSentPerSecond=" + bytesSentPerSecond +
-                ", framesEncodedPerSecond=" + framesEncodedPerSecond +
+                ", packetsSentPerSecond=" + getPacketsSentPerSecond() +
+                ", bytesSentPerSecond=" + getBytesSentPerSecondLong() +
+                ", framesEncodedPerSecond=" + getFramesEncodedPerSecond() +
+                ", bitrate=" + getBitrate() +
+                ", frame=" + frameWidth + "x" + frameHeight + "@" + framesPerSecond +
+                ", qualityLimitationReason=" + qualityLimitationReason +
+                ", encoderImplementation=" + encoderImplementation +
+                ", encodeTimePerFrame=" + encodeTimePerFrame +
+                ", decoderImplementation=" + decoderImplementation +
+                ", decodeTimePerFrame=" + decodeTimePerFrame +
+                ", jitterBufferDelayPerFrame=" + jitterBufferDelayPerFrame +
+                ", freezeRatio=" + freezeRatio +
+                ", qualityScore=" + qualityScore +
                 ", timeMs=" + timeMs +
                 ", packetsSentDifference=" + packetsSentDifference +
                 ", bytesSentDiff=" + bytesSentDiff +
@@ -0,0 +1,316 @@
+package io.antmedia.webrtcandroidframework.core.model;
+
+/**
+ * Statistics of the transport of a peer connection and its selected ICE candidate pair.
+ * They're parsed from transport, candidate-pair, local-candidate and remote-candidate stats.
+ * https://www.w3.org/TR/webrtc-stats/#transportstats-dict*
+ */
+public class TransportStats {
+
+    public static final String CANDIDATE_TYPE_HOST = "host";
+    public static final String CANDIDATE_TYPE_SRFLX = "srflx";
+    public static final String CANDIDATE_TYPE_PRFLX = "prflx";
+    public static final String CANDIDATE_TYPE_RELAY = "relay";
+
+    private String selectedCandidatePairId;
+    private String dtlsState;
+    private long selectedCandidatePairChanges;
+
+    /**
+     * Bandwidth estimation of the sender in bits per second
+     */
+    private double availableOutgoingBitrate;
+
+    /**
+     * Bandwidth estimation of the receiver in bits per second. It's only available if the remote peer sends REMB.
+     */
+    private double availableIncomingBitrate;
+
+    /**
+     * Latest round trip time of the STUN consent checks in seconds
+     */
+    private double currentRoundTripTime;
+    private double totalRoundTripTime;
+    private long responsesReceived;
+
+    private long bytesSent;
+    private long bytesReceived;
+    private long packetsSent;
+    private long packetsReceived;
+
+    private String localCandidateType;
+    private String localAddress;
+    private int localPort;
+    private String protocol;
+    private String relayProtocol;
+    private String networkType;
+
+    private String remoteCandidateType;
+    private String remoteAddress;
+    private int remotePort;
+
+    private long timeMs;
+
+    private final RateCounter bytesSentRate = new RateCounter();
+    private final RateCounter bytesReceivedRate = new RateCounter();
+
+    public void updateRates(double timeMs) {
+        bytesSentRate.add(timeMs, bytesSent);
+        bytesReceivedRate.add(timeMs, bytesReceived);
+    }
+
+    /**
+     * @return true if the media is relayed by a TURN server
+     */
+    public boolean isRelayed() {
+        return CANDIDATE_TYPE_RELAY.equals(localCandidateType) || CANDIDATE_TYPE_RELAY.equals(remoteCandidateType);
+    }
+
+    /**
+     * @return bits sent per second on the wire including headers and retransmissions
+     */
+    public double getSendBitrate() {
+        return bytesSentRate.getRate() * 8;
+    }
+
+    /**
+     * @return bits received per second on the wire including headers and retransmissions
+     */
+    public double getReceiveBitrate() {
+        return bytesReceivedRate.getRate() * 8;
+    }
+
+    /**
+     * @return average round trip time of the selected candidate pair in seconds
+     */
+    public double getAverageRoundTripTime() {
+        return responsesReceived > 0 ? totalRoundTripTime / responsesReceived : 0;
+    }
+
+    public String getSelectedCandidatePairId() {
+        return selectedCandidatePairId;
+    }
+
+    public void setSelectedCandidatePairId(String selectedCandidatePairId) {
+        this.selectedCandidatePairId = selectedCandidatePairId;
+    }
+
+    public String getDtlsState() {
+        return dtlsState;
+    }
+
+    public void setDtlsState(String dtlsState) {
+        this.dtlsState = dtlsState;
+    }
+
+    public long getSelectedCandidatePairChanges() {
+        return selectedCandidatePairChanges;
+    }
+
+    public void setSelectedCandidatePairChanges(long selectedCandidatePairChanges) {
+        this.selectedCandidatePairChanges = selectedCandidatePairChanges;
+    }
+
+    public double getAvailableOutgoingBitrate() {
+        return availableOutgoingBitrate;
+    }
+
+    public void setAvailableOutgoingBitrate(double availableOutgoingBitrate) {
+        this.availableOutgoingBitrate = availableOutgoingBitrate;
+    }
+
+    public double getAvailableIncomingBitrate() {
+        return availableIncomingBitrate;
+    }
+
+    public void setAvailableIncomingBitrate(double availableIncomingBitrate) {
+        this.availableIncomingBitrate = availableIncomingBitrate;
+    }
+
+    public double getCurrentRoundTripTime() {
+        return currentRoundTripTime;
+    }
+
+    public void setCurrentRoundTripTime(double currentRoundTripTime) {
+        this.currentRoundTripTime = currentRoundTripTime;
+    }
+
+    public double getTotalRoundTripTime() {
+        return totalRoundTripTime;
+    }
+
+    public void setTotalRoundTripTime(double totalRoundTripTime) {
+        this.totalRoundTripTime = totalRoundTripTime;
+    }
+
+    public long getResponsesReceived() {
+        return responsesReceived;
+    }
+
+    public void setResponsesReceived(long responsesReceived) {
+        this.responsesReceived = responsesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public void setPacketsSent(long packetsSent) {
+        this.packetsSent = packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public void setPacketsReceived(long packetsReceived) {
+        this.packetsReceived = packetsReceived;
+    }
+
+    public String getLocalCandidateType() {
+        return localCandidateType;
+    }
+
+    public void setLocalCandidateType(String localCandidateType) {
+        this.localCandidateType = localCandidateType;
+    }
+
+    public String getLocalAddress() {
+        return localAddress;
+    }
+
+    public void setLocalAddress(String localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    public void setLocalPort(int localPort) {
+        this.localPort = localPort;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public String getRelayProtocol() {
+        return relayProtocol;
+    }
+
+    public void setRelayProtocol(String relayProtocol) {
+        this.relayProtocol = relayProtocol;
+    }
+
+    public String getNetworkType() {
+        return networkType;
+    }
+
+    public void setNetworkType(String networkType) {
+        this.networkType = networkType;
+    }
+
+    public String getRemoteCandidateType() {
+        return remoteCandidateType;
+    }
+
+    public void setRemoteCandidateType(String remoteCandidateType) {
+        this.remoteCandidateType = remoteCandidateType;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public void setRemoteAddress(String remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    public void setRemotePort(int remotePort) {
+        this.remotePort = remotePort;
+    }
+
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    public void setTimeMs(long timeMs) {
+        this.timeMs = timeMs;
+    }
+
+    public RateCounter getBytesSentRate() {
+        return bytesSentRate;
+    }
+
+    public RateCounter getBytesReceivedRate() {
+        return bytesReceivedRate;
+    }
+
+    public void reset() {
+        selectedCandidatePairId = null;
+        dtlsState = null;
+        selectedCandidatePairChanges = 0;
+        availableOutgoingBitrate = 0;
+        availableIncomingBitrate = 0;
+        currentRoundTripTime = 0;
+        totalRoundTripTime = 0;
+        responsesReceived = 0;
+        bytesSent = 0;
+        bytesReceived = 0;
+        packetsSent = 0;
+        packetsReceived = 0;
+        localCandidateType = null;
+        localAddress = null;
+        localPort = 0;
+        protocol = null;
+        relayProtocol = null;
+        networkType = null;
+        remoteCandidateType = null;
+        remoteAddress = null;
+        remotePort = 0;
+        timeMs = 0;
+        bytesSentRate.reset();
+        bytesReceivedRate.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "TransportStats {" +
+                "selectedCandidatePairId='" + selectedCandidatePairId + '\'' +
+                ", local=" + localCandidateType + " " + localAddress + ":" + localPort + "/" + protocol +
+                ", remote=" + remoteCandidateType + " " + remoteAddress + ":" + remotePort +
+                ", relayProtocol=" + relayProtocol +
+                ", networkType=" + networkType +
+                ", availableOutgoingBitrate=" + availableOutgoingBitrate +
+                ", availableIncomingBitrate=" + availableIncomingBitrate +
+                ", currentRoundTripTime=" + currentRoundTripTime +
+                ", sendBitrate=" + getSendBitrate() +
+                ", receiveBitrate=" + getReceiveBitrate() +
+                '}';
+    }
+}
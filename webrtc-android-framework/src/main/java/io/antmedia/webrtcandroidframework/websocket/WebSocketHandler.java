@@ -20,6 +20,7 @@ import java.util.concurrent.TimeUnit;
 import de.tavendo.autobahn.WebSocket;
 import de.tavendo.autobahn.WebSocketConnection;
 import de.tavendo.autobahn.WebSocketException;
+import io.antmedia.webrtcandroidframework.core.SdkMetrics;
 import io.antmedia.webrtcandroidframework.core.StreamInfo;
 
 import static io.antmedia.webrtcandroidframework.websocket.WebSocketConstants.DEFINITION;
@@ -99,6 +100,7 @@ public class WebSocketHandler implements WebSocket.WebSocketConnectionObserver {
     public void sendTextMessage(String message) {
         if (ws.isConnected()) {
             ws.sendTextMessage(message);
+            SdkMetrics.REGISTRY.increment(SdkMetrics.SIGNALING_MESSAGES_SENT);
             Log.e(TAG, "sent websocket message:" + message);
         } else {
             Log.d(TAG, "Web Socket is not connected");
@@ -136,12 +138,14 @@ public class WebSocketHandler implements WebSocket.WebSocketConnectionObserver {
     @Override
     public void onOpen() {
         Log.d(TAG, "WebSocket connection opened.");
+        SdkMetrics.REGISTRY.increment(SdkMetrics.SIGNALING_CONNECTIONS);
         signallingListener.onWebSocketConnected();
     }
 
     @Override
     public void onClose(WebSocketCloseNotification webSocketCloseNotification, String s) {
         Log.d(TAG, "WebSocket connection closed.");
+        SdkMetrics.REGISTRY.increment(SdkMetrics.SIGNALING_DISCONNECTIONS);
         signallingListener.onWebSocketDisconnected();
         synchronized (closeEventLock) {
             closeEvent = true;
@@ -153,6 +157,7 @@ public class WebSocketHandler implements WebSocket.WebSocketConnectionObserver {
     @Override
     public void onTextMessage(String msg) {
         Log.e(TAG, "onTextMessage: "+msg);
+        SdkMetrics.REGISTRY.increment(SdkMetrics.SIGNALING_MESSAGES_RECEIVED);
         if (!isConnected()) {
             Log.e(TAG, "Got WebSocket message in non registered state.");
             return;
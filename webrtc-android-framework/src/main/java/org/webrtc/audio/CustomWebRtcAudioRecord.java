@@ -21,12 +21,14 @@ import android.media.AudioTimestamp;
 import android.media.MediaRecorder.AudioSource;
 import android.media.projection.MediaProjection;
 import android.os.Build;
+import android.os.Process;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import org.webrtc.CalledByNative;
 import org.webrtc.Logging;
+import org.webrtc.ThreadUtils;
 import org.webrtc.audio.JavaAudioDeviceModule.AudioRecordErrorCallback;
 import org.webrtc.audio.JavaAudioDeviceModule.AudioRecordStartErrorCode;
 import org.webrtc.audio.JavaAudioDeviceModule.AudioRecordStateCallback;
@@ -44,13 +46,67 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import io.antmedia.webrtcandroidframework.core.AudioInputBuffer;
+
 public class CustomWebRtcAudioRecord extends WebRtcAudioRecord{
 
   private static final String TAG = "CustomWebRtcAudioRecordExternal";
   private int sampleRate = 0;
   private int channelCount = 0;
   private int bufferByteLength;
-  private boolean started;
+  private volatile boolean started;
+  private volatile @Nullable AudioInputBuffer inputBuffer;
+  private volatile @Nullable AudioFeedThread feedThread;
+
+  /**
+   * Records a 10 ms buffer of the input buffer at each 10 ms of the monotonic clock
+   */
+  private class AudioFeedThread extends Thread {
+    private volatile boolean keepAlive = true;
+
+    AudioFeedThread(String name) {
+      super(name);
+    }
+
+    @Override
+    public void run() {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+      Logging.d(TAG, "AudioFeedThread" + WebRtcAudioUtils.getThreadInfo());
+      AudioInputBuffer buffer = inputBuffer;
+      long intervalNs = TimeUnit.SECONDS.toNanos(1) / BUFFERS_PER_SECOND;
+      long nextTimeNs = System.nanoTime();
+      while (keepAlive && buffer != null) {
+        byteBuffer.clear();
+        buffer.read(byteBuffer);
+        if (microphoneMute) {
+          byteBuffer.clear();
+          byteBuffer.put(emptyBytes);
+        }
+        if (keepAlive) {
+          nativeDataIsRecorded(nativeAudioRecord, buffer.getBufferLength(), 0);
+        }
+
+        //buffers are scheduled against the start time, so the time spent here doesn't accumulate
+        nextTimeNs += intervalNs;
+        long sleepNs = nextTimeNs - System.nanoTime();
+        if (sleepNs > 0) {
+          try {
+            Thread.sleep(sleepNs / 1000000, (int) (sleepNs % 1000000));
+          } catch (InterruptedException e) {
+            return;
+          }
+        } else if (sleepNs < -intervalNs * BUFFERS_PER_SECOND) {
+          //thread was suspended for more than a second, don't record the missed buffers in a burst
+          nextTimeNs = System.nanoTime();
+        }
+      }
+    }
+
+    void stopThread() {
+      keepAlive = false;
+      interrupt();
+    }
+  }
 
 
   public void pushAudio(byte[] audio, int length) {
@@ -69,6 +125,62 @@ public class CustomWebRtcAudioRecord extends WebRtcAudioRecord{
     }
   }
 
+  /**
+   * Queues 16 bit interleaved PCM of any length, sample rate and channel count. Audio is resampled to the
+   * recording format and recorded in 10 ms buffers at real time pace, so callers don't need to chunk or pace it.
+   * Missing audio is recorded as silence. It should be called from a single thread and it shouldn't be mixed
+   * with {@link #pushAudio(byte[], int)}.
+   */
+  public void writeAudio(byte[] audio, int offset, int length, int sampleRate, int channels) {
+    AudioInputBuffer buffer = inputBuffer;
+    if (started && buffer != null) {
+      buffer.write(audio, offset, length, sampleRate, channels);
+      if (feedThread == null) {
+        startFeedThread();
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #writeAudio(byte[], int, int, int, int)} for the audio from the position to the limit of
+   * the buffer, e.g. an output buffer of a decoder
+   */
+  public void writeAudio(ByteBuffer audio, int sampleRate, int channels) {
+    AudioInputBuffer buffer = inputBuffer;
+    if (started && buffer != null) {
+      buffer.write(audio, sampleRate, channels);
+      if (feedThread == null) {
+        startFeedThread();
+      }
+    }
+  }
+
+  private synchronized void startFeedThread() {
+    if (feedThread == null && started) {
+      feedThread = new AudioFeedThread("AudioFeedThread");
+      feedThread.start();
+    }
+  }
+
+  private void stopFeedThread() {
+    if (feedThread != null) {
+      feedThread.stopThread();
+      if (!ThreadUtils.joinUninterruptibly(feedThread, AUDIO_RECORD_THREAD_JOIN_TIMEOUT_MS)) {
+        Logging.e(TAG, "Join of AudioFeedThread timed out");
+      }
+      feedThread = null;
+    }
+  }
+
+  /**
+   * @return buffer of the audio written with writeAudio, null before the recording is initialized.
+   * Its counters show the underruns, overruns and drift corrections.
+   */
+  @Nullable
+  public AudioInputBuffer getInputBuffer() {
+    return inputBuffer;
+  }
+
   @CalledByNative
   CustomWebRtcAudioRecord(Context context, AudioManager audioManager) {
     this(context, newDefaultScheduler() /* scheduler */, audioManager, DEFAULT_AUDIO_SOURCE,
@@ -179,6 +291,7 @@ public class CustomWebRtcAudioRecord extends WebRtcAudioRecord{
     this.sampleRate = sampleRate;
     this.channelCount = channels;
     this.bufferByteLength = emptyBytes.length;
+    this.inputBuffer = new AudioInputBuffer(sampleRate, channels);
     return framesPerBuffer;
   }
 
@@ -243,6 +356,7 @@ public class CustomWebRtcAudioRecord extends WebRtcAudioRecord{
   public synchronized boolean stopRecording() {
     Logging.d(TAG, "stopRecording");
     started = false;
+    stopFeedThread();
     //assertTrue(audioThread != null);
     if (future != null) {
       if (!future.isDone()) {
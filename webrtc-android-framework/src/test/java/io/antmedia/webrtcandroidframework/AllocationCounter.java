@@ -0,0 +1,77 @@
+package io.antmedia.webrtcandroidframework;
+
+import java.lang.reflect.Method;
+
+/**
+ * Counts the bytes allocated by the current thread for the tests that check a hot path doesn't allocate.
+ * com.sun.management.ThreadMXBean is accessed reflectively because it's not in the Android SDK that the
+ * tests are compiled against. Tests should skip the check if {@link #isSupported()} is false.
+ */
+public final class AllocationCounter {
+
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    private static final Object THREAD_MX_BEAN;
+    private static final Method GET_THREAD_ALLOCATED_BYTES;
+
+    static {
+        Object threadMXBean = null;
+        Method getThreadAllocatedBytes = null;
+        try {
+            threadMXBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Class<?> sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+            if (sunThreadMXBean.isInstance(threadMXBean)) {
+                getThreadAllocatedBytes = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            //allocation counters are not available on this JVM
+        }
+        THREAD_MX_BEAN = threadMXBean;
+        GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytes;
+    }
+
+    private AllocationCounter() {
+    }
+
+    public static boolean isSupported() {
+        return GET_THREAD_ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * @return total bytes allocated by the current thread or -1 if it's not supported
+     */
+    public static long getAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the work warmupRuns times, then measures measuredRuns runs and returns the fewest bytes allocated
+     * in a run. JIT compilation and class loading allocate on the test thread now and then, so a single
+     * measurement is flaky, but they don't happen in every run. Cost of reading the counter is excluded.
+     */
+    public static long measureMinAllocatedBytes(int warmupRuns, int measuredRuns, Work work) throws Exception {
+        for (int i = 0; i < warmupRuns; i++) {
+            work.run();
+        }
+        long overhead = Long.MAX_VALUE;
+        long minAllocatedBytes = Long.MAX_VALUE;
+        for (int i = 0; i < measuredRuns; i++) {
+            long start = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - start);
+
+            start = getAllocatedBytes();
+            work.run();
+            minAllocatedBytes = Math.min(minAllocatedBytes, getAllocatedBytes() - start);
+        }
+        return Math.max(0, minAllocatedBytes - overhead);
+    }
+}
@@ -0,0 +1,170 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import io.antmedia.webrtcandroidframework.core.AudioInputBuffer;
+
+public class AudioInputBufferTest {
+
+    private static final double AMPLITUDE = 10000;
+
+    private static byte[] stereoSine(int sampleRate, int frameCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(frameCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frameCount; i++) {
+            short value = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * 440 * i / sampleRate));
+            buffer.putShort(value);
+            buffer.putShort(value);
+        }
+        return buffer.array();
+    }
+
+    private static double rms(ByteBuffer buffer) {
+        double sum = 0;
+        int count = buffer.limit() / 2;
+        for (int i = 0; i < count; i++) {
+            double sample = buffer.order(ByteOrder.LITTLE_ENDIAN).getShort(i * 2);
+            sum += sample * sample;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    private static boolean isSilence(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testAudioIsResampledTo10MsBuffers() {
+        AudioInputBuffer inputBuffer = new AudioInputBuffer(48000, 1);
+        assertEquals(960, inputBuffer.getBufferLength());
+        ByteBuffer destination = ByteBuffer.allocate(inputBuffer.getBufferLength());
+
+        //nothing is read before the target delay is buffered
+        assertFalse(inputBuffer.read(destination));
+        assertEquals(960, destination.position());
+        destination.flip();
+        assertTrue(isSilence(destination, 0));
+
+        //200 ms of 44.1 kHz stereo in chunks of any number of frames
+        byte[] audio = stereoSine(44100, 8820);
+        Random random = new Random(1);
+        int offset = 0;
+        while (offset < audio.length) {
+            int length = Math.min(4 * (1 + random.nextInt(750)), audio.length - offset);
+            inputBuffer.write(audio, offset, length, 44100, 2);
+            offset += length;
+        }
+        assertTrue(inputBuffer.getBufferedMs() > 190);
+
+        for (int i = 0; i < 12; i++) {
+            destination.clear();
+            assertTrue(inputBuffer.read(destination));
+            assertEquals(960, destination.position());
+            destination.flip();
+            if (i > 0) {
+                //channels are averaged, amplitude is kept
+                assertEquals(AMPLITUDE / Math.sqrt(2), rms(destination), AMPLITUDE * 0.02);
+            }
+        }
+        assertEquals(0, inputBuffer.getUnderrunCount());
+        assertEquals(0, inputBuffer.getOverrunCount());
+    }
+
+    @Test
+    public void testUnderrunIsConcealedWithSilence() {
+        AudioInputBuffer inputBuffer = new AudioInputBuffer(48000, 1);
+        ByteBuffer destination = ByteBuffer.allocate(inputBuffer.getBufferLength());
+        byte[] audio = new byte[7200];
+        java.util.Arrays.fill(audio, (byte) 1);
+        inputBuffer.write(audio, 0, audio.length, 48000, 1);
+
+        for (int i = 0; i < 7; i++) {
+            destination.clear();
+            assertTrue(inputBuffer.read(destination));
+        }
+        //last 5 ms is followed by silence
+        destination.clear();
+        assertTrue(inputBuffer.read(destination));
+        assertEquals(1, destination.get(479));
+        destination.flip();
+        assertTrue(isSilence(destination, 480));
+        assertEquals(1, inputBuffer.getUnderrunCount());
+
+        //silence is recorded until the target delay is buffered again
+        inputBuffer.write(audio, 0, 4800, 48000, 1);
+        destination.clear();
+        assertFalse(inputBuffer.read(destination));
+        inputBuffer.write(audio, 0, 960, 48000, 1);
+        destination.clear();
+        assertTrue(inputBuffer.read(destination));
+        assertEquals(1, inputBuffer.getUnderrunCount());
+    }
+
+    @Test
+    public void testOverrunsAndBurstsAreDropped() {
+        AudioInputBuffer inputBuffer = new AudioInputBuffer(48000, 1);
+        byte[] audio = new byte[96000];
+        inputBuffer.write(audio, 0, audio.length, 48000, 1);
+        assertEquals(1, inputBuffer.getOverrunCount());
+        assertTrue(inputBuffer.getBufferedMs() >= AudioInputBuffer.DEFAULT_CAPACITY_MS);
+
+        //buffered audio goes back to the target delay at once
+        assertTrue(inputBuffer.read(ByteBuffer.allocate(inputBuffer.getBufferLength())));
+        assertEquals(AudioInputBuffer.DEFAULT_TARGET_DELAY_MS - 10, inputBuffer.getBufferedMs());
+        assertTrue(inputBuffer.getDroppedFrameCount() > 0);
+    }
+
+    /**
+     * Writes 10 ms buffers at a rate that is faster or slower than the reads by the ratio
+     */
+    private static int runWithDrift(AudioInputBuffer inputBuffer, double ratio) {
+        ByteBuffer destination = ByteBuffer.allocate(inputBuffer.getBufferLength());
+        byte[] audio = new byte[2000];
+        double pendingFrames = 0;
+        int maxDelayMs = 0;
+        int minDelayMs = Integer.MAX_VALUE;
+        for (int i = 0; i < 6000; i++) {
+            pendingFrames += 480 * ratio;
+            int frames = (int) pendingFrames;
+            pendingFrames -= frames;
+            inputBuffer.write(audio, 0, frames * 2, 48000, 1);
+            destination.clear();
+            inputBuffer.read(destination);
+            if (i > 100) {
+                maxDelayMs = Math.max(maxDelayMs, inputBuffer.getBufferedMs());
+                minDelayMs = Math.min(minDelayMs, inputBuffer.getBufferedMs());
+            }
+        }
+        return ratio > 1 ? maxDelayMs : minDelayMs;
+    }
+
+    @Test
+    public void testDriftIsCorrected() {
+        //without the correction, 60 s at 0.1% faster would add 60 ms
+        AudioInputBuffer inputBuffer = new AudioInputBuffer(48000, 1);
+        int maxDelayMs = runWithDrift(inputBuffer, 1.001);
+        assertTrue("Max delay: " + maxDelayMs, maxDelayMs < AudioInputBuffer.DEFAULT_TARGET_DELAY_MS + 30);
+        assertTrue(inputBuffer.getDroppedFrameCount() > 0);
+        assertEquals(0, inputBuffer.getRepeatedFrameCount());
+        assertEquals(0, inputBuffer.getUnderrunCount());
+
+        inputBuffer = new AudioInputBuffer(48000, 1);
+        int minDelayMs = runWithDrift(inputBuffer, 0.999);
+        assertTrue("Min delay: " + minDelayMs, minDelayMs > AudioInputBuffer.DEFAULT_TARGET_DELAY_MS - 40);
+        assertTrue(inputBuffer.getRepeatedFrameCount() > 0);
+        assertEquals(0, inputBuffer.getDroppedFrameCount());
+        assertEquals(0, inputBuffer.getUnderrunCount());
+    }
+}
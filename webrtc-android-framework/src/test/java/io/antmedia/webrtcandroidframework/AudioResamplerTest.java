@@ -0,0 +1,185 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import io.antmedia.webrtcandroidframework.core.AudioResampler;
+
+public class AudioResamplerTest {
+
+    private static final double AMPLITUDE = 10000;
+
+    /**
+     * @return interleaved PCM with a sine of the frequency in each channel, gains are applied per channel
+     */
+    private static ByteBuffer sine(int sampleRate, double frequency, int frameCount, double... channelGains) {
+        ByteBuffer buffer = ByteBuffer.allocate(frameCount * channelGains.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frameCount; i++) {
+            double value = AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / sampleRate);
+            for (double gain : channelGains) {
+                buffer.putShort((short) Math.round(value * gain));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Passes the input in chunks of random sizes and collects the output through a small buffer
+     */
+    private static short[] resample(AudioResampler resampler, ByteBuffer input, long seed) {
+        Random random = new Random(seed);
+        ByteBuffer result = ByteBuffer.allocate(input.remaining() * 8).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer output = ByteBuffer.allocate(resampler.getOutputFrameSize() * 37);
+        while (input.hasRemaining()) {
+            ByteBuffer chunk = input.duplicate();
+            chunk.limit(Math.min(input.limit(), input.position() + 1 + random.nextInt(4000)));
+            while (true) {
+                resampler.process(chunk, output);
+                boolean full = !output.hasRemaining();
+                output.flip();
+                result.put(output);
+                output.clear();
+                if (!full) {
+                    //rest of the chunk is a partial frame, it's passed with the next chunk
+                    break;
+                }
+            }
+            input.position(chunk.position());
+            if (input.remaining() < resampler.getInputFrameSize()) {
+                break;
+            }
+        }
+        result.flip();
+        short[] samples = new short[result.remaining() / 2];
+        result.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    /**
+     * @return ratio of the sine power to the power of the difference to the ideal sine in dB
+     */
+    private static double signalToNoise(short[] samples, int channels, int channel, int sampleRate, double frequency, double gain, int skipFrames) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = skipFrames; i < samples.length / channels - skipFrames; i++) {
+            double expected = AMPLITUDE * gain * Math.sin(2 * Math.PI * frequency * i / sampleRate);
+            double error = samples[i * channels + channel] - expected;
+            signal += expected * expected;
+            noise += error * error;
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    private static double rms(short[] samples, int skip) {
+        double sum = 0;
+        for (int i = skip; i < samples.length; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (samples.length - skip));
+    }
+
+    @Test
+    public void testSineIsResampledWithoutDistortion() {
+        int[][] ratePairs = {{44100, 48000}, {48000, 44100}, {16000, 48000}, {48000, 16000}, {22050, 48000}, {44100, 44101}};
+        for (int[] rates : ratePairs) {
+            int inputFrames = rates[0] * 2;
+            AudioResampler resampler = new AudioResampler(rates[0], 1, rates[1], 1);
+            short[] output = resample(resampler, sine(rates[0], 997, inputFrames, 1), rates[0] + rates[1]);
+
+            //frames that are waiting for the rest of the filter aren't written
+            long expectedFrames = (long) inputFrames * rates[1] / rates[0];
+            assertTrue(output.length <= expectedFrames);
+            assertTrue(output.length > expectedFrames - AudioResampler.DEFAULT_FILTER_LENGTH * 4);
+
+            double snr = signalToNoise(output, 1, 0, rates[1], 997, 1, 200);
+            assertTrue(rates[0] + " -> " + rates[1] + " SNR: " + snr, snr > 70);
+        }
+    }
+
+    @Test
+    public void testFrequenciesAboveOutputNyquistAreFiltered() {
+        AudioResampler resampler = new AudioResampler(48000, 1, 16000, 1);
+        short[] output = resample(resampler, sine(48000, 10007, 48000, 1), 1);
+        double attenuation = 20 * Math.log10(rms(output, 200) / (AMPLITUDE / Math.sqrt(2)));
+        assertTrue("Attenuation: " + attenuation + " dB", attenuation < -60);
+    }
+
+    @Test
+    public void testChannelsAreMapped() {
+        //stereo to mono averages the channels, it doesn't halve the amplitude
+        AudioResampler resampler = new AudioResampler(44100, 2, 48000, 1);
+        short[] output = resample(resampler, sine(44100, 440, 44100, 1, 1), 1);
+        assertTrue(signalToNoise(output, 1, 0, 48000, 440, 1, 200) > 70);
+
+        resampler = new AudioResampler(48000, 2, 48000, 1);
+        output = resample(resampler, sine(48000, 440, 4800, 1, -1), 2);
+        assertEquals(4800, output.length);
+        assertEquals(0, rms(output, 0), 1);
+
+        //right channel is read from its own index
+        output = resample(new AudioResampler(48000, 2, 48000, 1), sine(48000, 440, 4800, 0, 1), 3);
+        assertTrue(signalToNoise(output, 1, 0, 48000, 440, 0.5, 200) > 70);
+
+        //mono to stereo duplicates the channel
+        output = resample(new AudioResampler(44100, 1, 48000, 2), sine(44100, 440, 44100, 1), 4);
+        assertTrue(signalToNoise(output, 2, 0, 48000, 440, 1, 200) > 70);
+        assertTrue(signalToNoise(output, 2, 1, 48000, 440, 1, 200) > 70);
+
+        //center channel of 5.1 goes to both sides, LFE is dropped
+        output = resample(new AudioResampler(48000, 6, 48000, 2), sine(48000, 440, 4800, 0, 0, 1, 1, 0, 0), 5);
+        double centerGain = 0.7071 / (1 + 2 * 0.7071);
+        assertTrue(signalToNoise(output, 2, 0, 48000, 440, centerGain, 200) > 50);
+        assertTrue(signalToNoise(output, 2, 1, 48000, 440, centerGain, 200) > 50);
+    }
+
+    @Test
+    public void testOutputDoesNotDependOnChunkSizes() {
+        ByteBuffer input = sine(44100, 1000, 44100, 1, 0.5);
+        AudioResampler resampler = new AudioResampler(44100, 2, 48000, 1);
+        ByteBuffer output = ByteBuffer.allocate(input.remaining() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        resampler.process(input.duplicate(), output);
+        output.flip();
+        short[] expected = new short[output.remaining() / 2];
+        output.asShortBuffer().get(expected);
+
+        for (int seed = 0; seed < 4; seed++) {
+            resampler.reset();
+            assertArrayEquals(expected, resample(resampler, input.duplicate(), seed));
+        }
+    }
+
+    @Test
+    public void testThroughputWithoutAllocations() throws Exception {
+        int chunkFrames = 441;
+        int chunkCount = 6000;
+        AudioResampler resampler = new AudioResampler(44100, 2, 48000, 1);
+        ByteBuffer input = sine(44100, 1000, chunkFrames * 100, 1, 1);
+        ByteBuffer chunk = input.duplicate();
+        ByteBuffer output = ByteBuffer.allocate(resampler.getOutputFrameSize() * 1000);
+        long[] outputBytes = new long[1];
+
+        long allocatedBytes = AllocationCounter.measureMinAllocatedBytes(1, 3, () -> {
+            outputBytes[0] = 0;
+            for (int i = 0; i < chunkCount; i++) {
+                int position = (i % 100) * chunkFrames * 4;
+                chunk.limit(position + chunkFrames * 4).position(position);
+                resampler.process(chunk, output);
+                outputBytes[0] += output.position();
+                output.clear();
+            }
+        });
+
+        assertEquals(chunkCount * 480, outputBytes[0] / 2, 1);
+        if (AllocationCounter.isSupported()) {
+            assertTrue("Allocated bytes: " + allocatedBytes, allocatedBytes < chunkCount);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.antmedia.webrtcandroidframework.core.AudioRingBuffer;
+
+public class AudioRingBufferTest {
+
+    @Test
+    public void testWritesWrapAround() {
+        AudioRingBuffer ringBuffer = new AudioRingBuffer(10);
+        assertEquals(16, ringBuffer.getCapacity());
+
+        byte[] data = new byte[12];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        assertEquals(12, ringBuffer.write(data, 0, 12));
+        ByteBuffer destination = ByteBuffer.allocate(32);
+        assertEquals(10, ringBuffer.read(destination, 10));
+        assertEquals(2, ringBuffer.available());
+
+        //second write continues from the beginning of the array
+        assertEquals(12, ringBuffer.write(ByteBuffer.wrap(data)));
+        assertEquals(14, ringBuffer.available());
+        destination.clear();
+        assertEquals(14, ringBuffer.read(destination, 20));
+        assertEquals(10, destination.get(0));
+        assertEquals(11, destination.get(1));
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i, destination.get(2 + i));
+        }
+        assertEquals(0, ringBuffer.available());
+    }
+
+    @Test
+    public void testWritesAreLimitedToFreeSpace() {
+        AudioRingBuffer ringBuffer = new AudioRingBuffer(16);
+        ByteBuffer source = ByteBuffer.allocate(20);
+        assertEquals(16, ringBuffer.write(source));
+        assertEquals(4, source.remaining());
+        assertEquals(0, ringBuffer.free());
+        assertEquals(0, ringBuffer.write(new byte[4], 0, 4));
+
+        assertEquals(6, ringBuffer.skip(6));
+        assertEquals(6, ringBuffer.free());
+        ringBuffer.clear();
+        assertEquals(0, ringBuffer.available());
+        assertEquals(0, ringBuffer.skip(1));
+
+        //reads are limited to the room in the destination
+        ringBuffer.write(new byte[8], 0, 8);
+        assertEquals(4, ringBuffer.read(ByteBuffer.allocate(4), 8));
+        assertEquals(4, ringBuffer.available());
+    }
+
+    @Test
+    public void testProducerAndConsumerThreads() throws InterruptedException {
+        AudioRingBuffer ringBuffer = new AudioRingBuffer(256);
+        int total = 1000000;
+        AtomicBoolean failed = new AtomicBoolean();
+
+        Thread producer = new Thread(() -> {
+            Random random = new Random(1);
+            byte[] chunk = new byte[100];
+            int written = 0;
+            while (written < total) {
+                int length = Math.min(1 + random.nextInt(chunk.length), total - written);
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = (byte) (written + i);
+                }
+                int offset = 0;
+                while (offset < length) {
+                    int count = ringBuffer.write(chunk, offset, length - offset);
+                    if (count == 0) {
+                        Thread.yield();
+                    }
+                    offset += count;
+                }
+                written += length;
+            }
+        });
+
+        producer.start();
+        Random random = new Random(2);
+        ByteBuffer destination = ByteBuffer.allocate(100);
+        int read = 0;
+        while (read < total) {
+            destination.clear();
+            int length = ringBuffer.read(destination, 1 + random.nextInt(destination.capacity()));
+            for (int i = 0; i < length; i++) {
+                if (destination.get(i) != (byte) (read + i)) {
+                    failed.set(true);
+                }
+            }
+            read += length;
+            if (length == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertFalse(failed.get());
+        assertEquals(0, ringBuffer.available());
+    }
+}
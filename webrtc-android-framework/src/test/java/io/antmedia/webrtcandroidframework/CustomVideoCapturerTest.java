@@ -50,4 +50,17 @@ public class CustomVideoCapturerTest {
         boolean isScreencast = customVideoCapturer.isScreencast();
         assertFalse(isScreencast);
     }
+
+    @Test
+    public void testTextureSizeIsKeptWhenCaptureStarts() {
+        customVideoCapturer.initialize(surfaceTextureHelper, applicationContext, capturerObserver);
+        customVideoCapturer.startCapture(720, 1280, 30);
+        verify(surfaceTextureHelper).setTextureSize(1280, 720);
+
+        //size of the decoded video is kept if the capture starts again
+        customVideoCapturer.setTextureSize(1920, 1080);
+        verify(surfaceTextureHelper).setTextureSize(1920, 1080);
+        customVideoCapturer.startCapture(720, 1280, 30);
+        verify(surfaceTextureHelper, times(2)).setTextureSize(1920, 1080);
+    }
 }
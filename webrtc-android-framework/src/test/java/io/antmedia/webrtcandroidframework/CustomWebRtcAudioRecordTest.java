@@ -2,6 +2,7 @@ package io.antmedia.webrtcandroidframework;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -10,6 +11,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import android.content.Context;
@@ -29,6 +31,8 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ScheduledExecutorService;
 
+import io.antmedia.webrtcandroidframework.core.AudioInputBuffer;
+
 public class CustomWebRtcAudioRecordTest {
     @Mock
     private Context context;
@@ -129,5 +133,40 @@ public class CustomWebRtcAudioRecordTest {
         assertTrue(success);
     }
 
+    @Test
+    public void testWriteAudioIsRecordedIn10MsBuffers() throws InterruptedException {
+        doNothing().when(customWebRtcAudioRecord).nativeDataIsRecorded(anyLong(), anyInt(), anyLong());
+        doNothing().when(customWebRtcAudioRecord).allocateBuffer(anyInt(), anyInt());
+        doNothing().when(customWebRtcAudioRecord).nativeCacheDirectBufferAddress(anyLong(), any());
+        customWebRtcAudioRecord.byteBuffer = ByteBuffer.allocate(960);
+        customWebRtcAudioRecord.initRecording(48000, 1);
+
+        //audio isn't queued before the recording starts
+        byte[] audio = new byte[44100 * 7 / 1000 * 4];
+        customWebRtcAudioRecord.writeAudio(audio, 0, audio.length, 44100, 2);
+        AudioInputBuffer inputBuffer = customWebRtcAudioRecord.getInputBuffer();
+        assertNotNull(inputBuffer);
+        assertEquals(0, inputBuffer.getBufferedMs());
+
+        //about 100 ms of 44.1 kHz stereo in 7 ms chunks
+        customWebRtcAudioRecord.startRecording();
+        for (int i = 0; i < 15; i++) {
+            customWebRtcAudioRecord.writeAudio(audio, 0, audio.length, 44100, 2);
+        }
+        verify(customWebRtcAudioRecord, timeout(2000).atLeast(5)).nativeDataIsRecorded(
+                customWebRtcAudioRecord.nativeAudioRecord, 960, 0);
+
+        //silence is recorded after the written audio runs out
+        for (int i = 0; i < 200 && inputBuffer.getUnderrunCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, inputBuffer.getUnderrunCount());
+        assertEquals(0, inputBuffer.getOverrunCount());
+
+        customWebRtcAudioRecord.stopRecording();
+        customWebRtcAudioRecord.writeAudio(audio, 0, audio.length, 44100, 2);
+        assertEquals(0, inputBuffer.getBufferedMs());
+    }
+
     // Add additional test methods for other public methods in CustomWebRtcAudioRecord if needed
 }
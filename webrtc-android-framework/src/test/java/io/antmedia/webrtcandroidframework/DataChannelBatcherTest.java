@@ -0,0 +1,364 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.antmedia.webrtcandroidframework.core.DataChannelBatcher;
+import io.antmedia.webrtcandroidframework.core.DataChannelSendQueue;
+
+public class DataChannelBatcherTest {
+
+    //fixed cost of a native send in the throughput benchmark, i.e. JNI call, SCTP chunk and DTLS record
+    private static final long SEND_COST_NS = 2000;
+
+    /**
+     * Keeps copies of the sent frames as the native send does
+     */
+    private static class RecordingDataChannel extends DataChannel {
+        final List<DataChannel.Buffer> frames = Collections.synchronizedList(new ArrayList<>());
+        boolean keepFrames = true;
+        long sendCostNs;
+        final AtomicLong frameCount = new AtomicLong();
+        final byte[] scratch = new byte[64 * 1024];
+
+        RecordingDataChannel() {
+            super(0);
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return 0;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            int size = buffer.data.remaining();
+            if (keepFrames) {
+                ByteBuffer copy = ByteBuffer.allocate(size);
+                copy.put(buffer.data);
+                copy.flip();
+                frames.add(new DataChannel.Buffer(copy, buffer.binary));
+            } else {
+                buffer.data.get(scratch, 0, size);
+            }
+            long endNs = System.nanoTime() + sendCostNs;
+            while (sendCostNs > 0 && System.nanoTime() < endNs) {
+                //busy wait as the native call blocks the sending thread
+            }
+            frameCount.incrementAndGet();
+            return true;
+        }
+    }
+
+    private static class RecordingListener implements DataChannelSendQueue.Listener, DataChannelBatcher.Listener {
+        DataChannelBatcher batcher;
+        final List<DataChannel.Buffer> sentMessages = Collections.synchronizedList(new ArrayList<>());
+        final List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+        final AtomicLong sentCount = new AtomicLong();
+        boolean keepResults = true;
+
+        @Override
+        public void onMessageSent(DataChannel.Buffer buffer, boolean successful, Exception error) {
+            if (batcher != null && batcher.onMessageSent(buffer, successful)) {
+                return;
+            }
+            onBatchedMessageSent(buffer, successful);
+        }
+
+        @Override
+        public void onBatchedMessageSent(DataChannel.Buffer buffer, boolean successful) {
+            sentCount.incrementAndGet();
+            if (!keepResults) {
+                return;
+            }
+            sentMessages.add(buffer);
+            results.add(successful);
+        }
+
+        @Override
+        public void onWritabilityChanged(boolean writable) {
+        }
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private DataChannelBatcher createBatcher(DataChannel dataChannel, RecordingListener listener, int flushWindowMs, int maxBatchSize) {
+        DataChannelSendQueue sendQueue = new DataChannelSendQueue(dataChannel, DataChannelSendQueue.DEFAULT_HIGH_WATERMARK,
+                DataChannelSendQueue.DEFAULT_LOW_WATERMARK, Runnable::run, listener);
+        listener.batcher = new DataChannelBatcher(sendQueue, scheduler, flushWindowMs, maxBatchSize, listener);
+        listener.batcher.onHello(DataChannelBatcher.createHelloFrame());
+        return listener.batcher;
+    }
+
+    private static DataChannel.Buffer text(String message) {
+        return new DataChannel.Buffer(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    private static String toString(DataChannel.Buffer buffer) {
+        byte[] bytes = new byte[buffer.data.remaining()];
+        buffer.data.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> unbatchAll(List<DataChannel.Buffer> frames, List<Boolean> binaryFlags) {
+        List<String> messages = new ArrayList<>();
+        for (DataChannel.Buffer frame : frames) {
+            if (DataChannelBatcher.isBatchFrame(frame)) {
+                assertTrue(DataChannelBatcher.unbatch(frame, buffer -> {
+                    messages.add(DataChannelBatcherTest.toString(buffer));
+                    binaryFlags.add(buffer.binary);
+                }));
+                assertEquals(0, frame.data.position());
+            } else {
+                messages.add(toString(frame));
+                binaryFlags.add(frame.binary);
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    public void testMessagesAreBatchedAndUnbatched() {
+        RecordingDataChannel dataChannel = new RecordingDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelBatcher batcher = createBatcher(dataChannel, listener, 60000, DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("message" + i);
+            assertTrue(batcher.send(text("message" + i)));
+        }
+        DataChannel.Buffer binary = new DataChannel.Buffer(ByteBuffer.wrap(new byte[]{'b', 'i', 'n'}), true);
+        batcher.send(binary);
+        expected.add("bin");
+        DataChannel.Buffer empty = text("");
+        batcher.send(empty);
+        expected.add("");
+
+        //nothing is sent before the flush window expires
+        assertEquals(0, dataChannel.frames.size());
+        assertEquals(12, batcher.getPendingMessageCount());
+
+        batcher.flush();
+        assertEquals(1, dataChannel.frames.size());
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(12, batcher.getBatchedMessageCount());
+
+        List<Boolean> binaryFlags = new ArrayList<>();
+        assertEquals(expected, unbatchAll(dataChannel.frames, binaryFlags));
+        assertEquals(Boolean.TRUE, binaryFlags.get(10));
+        assertEquals(Boolean.FALSE, binaryFlags.get(11));
+
+        //every message is reported with its own buffer and the buffers are not consumed
+        assertEquals(12, listener.sentMessages.size());
+        assertFalse(listener.results.contains(false));
+        assertTrue(binary == listener.sentMessages.get(10));
+        assertEquals(3, binary.data.remaining());
+    }
+
+    @Test
+    public void testByteBudgetAndLargeMessagesKeepOrder() {
+        RecordingDataChannel dataChannel = new RecordingDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelBatcher batcher = createBatcher(dataChannel, listener, 60000, 64);
+
+        List<String> expected = new ArrayList<>();
+        //header is 4 bytes and every record is 5 + 20 bytes, so 2 messages fit into a batch
+        for (int i = 0; i < 5; i++) {
+            String message = String.format("message-%012d", i);
+            expected.add(message);
+            batcher.send(text(message));
+        }
+        assertEquals(2, dataChannel.frames.size());
+
+        //large message is sent after the pending batch
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append('x');
+        }
+        expected.add(large.toString());
+        batcher.send(text(large.toString()));
+        assertEquals(4, dataChannel.frames.size());
+        assertFalse(DataChannelBatcher.isBatchFrame(dataChannel.frames.get(3)));
+
+        List<Boolean> binaryFlags = new ArrayList<>();
+        assertEquals(expected, unbatchAll(dataChannel.frames, binaryFlags));
+        assertEquals(6, listener.sentMessages.size());
+    }
+
+    @Test
+    public void testBatchIsFlushedAfterTheFlushWindow() throws InterruptedException {
+        RecordingDataChannel dataChannel = new RecordingDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelBatcher batcher = createBatcher(dataChannel, listener, 20, DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE);
+
+        long startNs = System.nanoTime();
+        batcher.send(text("first"));
+        batcher.send(text("second"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dataChannel.frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+        assertEquals(1, dataChannel.frames.size());
+        assertTrue("Batch is flushed in " + elapsedMs + " ms", elapsedMs >= 19);
+
+        List<Boolean> binaryFlags = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        expected.add("first");
+        expected.add("second");
+        assertEquals(expected, unbatchAll(dataChannel.frames, binaryFlags));
+    }
+
+    @Test
+    public void testPendingMessagesFailOnClose() {
+        RecordingDataChannel dataChannel = new RecordingDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelBatcher batcher = createBatcher(dataChannel, listener, 60000, DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE);
+
+        batcher.send(text("first"));
+        batcher.send(text("second"));
+        batcher.close();
+        assertTrue(batcher.isClosed());
+        assertEquals(0, dataChannel.frames.size());
+        assertEquals(2, listener.results.size());
+        assertFalse(listener.results.contains(true));
+        assertFalse(batcher.send(text("third")));
+    }
+
+    @Test
+    public void testMessagesAreNotBatchedBeforeHello() {
+        RecordingDataChannel dataChannel = new RecordingDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelSendQueue sendQueue = new DataChannelSendQueue(dataChannel, DataChannelSendQueue.DEFAULT_HIGH_WATERMARK,
+                DataChannelSendQueue.DEFAULT_LOW_WATERMARK, Runnable::run, listener);
+        DataChannelBatcher batcher = new DataChannelBatcher(sendQueue, scheduler, 60000,
+                DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE, listener);
+        listener.batcher = batcher;
+        assertTrue(batcher.onOpen());
+        assertFalse(batcher.onOpen());
+
+        //remote peer may not know the batches, e.g. a web peer
+        batcher.send(text("first"));
+        batcher.send(text("second"));
+        assertEquals(2, dataChannel.frames.size());
+        assertFalse(DataChannelBatcher.isBatchFrame(dataChannel.frames.get(0)));
+        assertFalse(DataChannelBatcher.isBatchFrame(dataChannel.frames.get(1)));
+        assertEquals(0, batcher.getPendingMessageCount());
+
+        DataChannel.Buffer hello = DataChannelBatcher.createHelloFrame();
+        assertTrue(DataChannelBatcher.isHelloFrame(hello));
+        //hello is never unbatched as a batch
+        assertFalse(DataChannelBatcher.unbatch(hello, buffer -> { }));
+        batcher.onHello(hello);
+        assertTrue(batcher.isRemoteEnabled());
+        batcher.send(text("third"));
+        batcher.send(text("fourth"));
+        assertEquals(2, batcher.getPendingMessageCount());
+        batcher.flush();
+        assertEquals(3, dataChannel.frames.size());
+
+        List<String> expected = new ArrayList<>();
+        expected.add("first");
+        expected.add("second");
+        expected.add("third");
+        expected.add("fourth");
+        assertEquals(expected, unbatchAll(dataChannel.frames, new ArrayList<>()));
+        assertEquals(4, listener.sentMessages.size());
+    }
+
+    @Test
+    public void testMalformedBatch() {
+        ByteBuffer data = ByteBuffer.allocate(12);
+        data.putInt(DataChannelBatcher.MAGIC);
+        data.put((byte) 0);
+        //length is larger than the frame
+        data.putInt(100);
+        data.flip();
+        List<DataChannel.Buffer> messages = new ArrayList<>();
+        assertFalse(DataChannelBatcher.unbatch(new DataChannel.Buffer(data, true), messages::add));
+        assertEquals(0, messages.size());
+
+        //text messages are never batch frames
+        data.rewind();
+        assertFalse(DataChannelBatcher.isBatchFrame(new DataChannel.Buffer(data, false)));
+    }
+
+    @Test
+    public void testThroughputWithAndWithoutBatching() throws InterruptedException {
+        int messageCount = 200000;
+        double unbatchedRate = measureMessagesPerSecond(false, messageCount);
+        double batchedRate = measureMessagesPerSecond(true, messageCount);
+        assertTrue(String.format("%.0f msgs/s batched, %.0f msgs/s unbatched", batchedRate, unbatchedRate),
+                batchedRate > unbatchedRate);
+    }
+
+    private double measureMessagesPerSecond(boolean batching, int messageCount) throws InterruptedException {
+        //send queue drains on a single thread as it does in WebRTCClient
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecordingDataChannel dataChannel = new RecordingDataChannel();
+            dataChannel.keepFrames = false;
+            dataChannel.sendCostNs = SEND_COST_NS;
+            RecordingListener listener = new RecordingListener();
+            listener.keepResults = false;
+            DataChannelSendQueue sendQueue = new DataChannelSendQueue(dataChannel, Long.MAX_VALUE, Long.MAX_VALUE, executor, listener);
+            DataChannelBatcher batcher = null;
+            if (batching) {
+                batcher = new DataChannelBatcher(sendQueue, scheduler, DataChannelBatcher.DEFAULT_FLUSH_WINDOW_MS,
+                        DataChannelBatcher.DEFAULT_MAX_BATCH_SIZE, listener);
+                batcher.onHello(DataChannelBatcher.createHelloFrame());
+                listener.batcher = batcher;
+            }
+            DataChannel.Buffer message = new DataChannel.Buffer(ByteBuffer.allocate(32), true);
+
+            long startNs = System.nanoTime();
+            for (int i = 0; i < messageCount; i++) {
+                if (batcher != null) {
+                    batcher.send(message);
+                } else {
+                    sendQueue.send(message);
+                }
+            }
+            if (batcher != null) {
+                batcher.flush();
+            }
+            long deadline = System.currentTimeMillis() + 60000;
+            while (listener.sentCount.get() < messageCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            long elapsedNs = System.nanoTime() - startNs;
+            assertEquals(messageCount, listener.sentCount.get());
+            if (batching) {
+                //16 KiB batches carry 442 messages of 32 bytes
+                assertTrue(dataChannel.frameCount.get() <= messageCount / 400 + 1);
+            } else {
+                assertEquals(messageCount, dataChannel.frameCount.get());
+            }
+            return messageCount * 1e9 / elapsedNs;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
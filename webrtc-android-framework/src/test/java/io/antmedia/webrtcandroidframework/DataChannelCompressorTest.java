@@ -0,0 +1,199 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import io.antmedia.webrtcandroidframework.core.DataChannelBufferPool;
+import io.antmedia.webrtcandroidframework.core.DataChannelCompressor;
+
+public class DataChannelCompressorTest {
+
+    private static final String AUDIO_LEVEL_EVENT =
+            "{\"eventType\":\"UPDATE_AUDIO_LEVEL\",\"streamId\":\"participant-%d\",\"audioLevel\":0.%d}";
+
+    private DataChannelBufferPool pool;
+    private DataChannelCompressor local;
+    private DataChannelCompressor remote;
+
+    @Before
+    public void setUp() {
+        pool = new DataChannelBufferPool();
+        local = new DataChannelCompressor(pool, 64, DataChannelCompressor.DEFAULT_MAX_MESSAGE_SIZE);
+        remote = new DataChannelCompressor(pool, 64, DataChannelCompressor.DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        local.close();
+        remote.close();
+    }
+
+    private static DataChannel.Buffer text(String text) {
+        return new DataChannel.Buffer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), false);
+    }
+
+    private static String toText(DataChannel.Buffer buffer) {
+        byte[] bytes = new byte[buffer.data.remaining()];
+        buffer.data.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String videoTrackAssignments(int count) {
+        StringBuilder builder = new StringBuilder("{\"eventType\":\"VIDEO_TRACK_ASSIGNMENT_LIST\",\"streamId\":\"room1\",\"payload\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"videoLabel\":\"videoTrack").append(i).append("\",\"trackId\":\"ARDAMSxparticipant").append(i).append("\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private void negotiate() {
+        assertTrue(local.onOpen());
+        assertFalse(local.onOpen());
+        DataChannel.Buffer hello = DataChannelCompressor.createHelloFrame();
+        assertTrue(DataChannelCompressor.isHelloFrame(hello));
+        local.onHello(hello);
+        remote.onHello(hello);
+        assertTrue(local.isRemoteEnabled());
+    }
+
+    private String roundTrip(DataChannel.Buffer compressed) {
+        List<String> messages = new ArrayList<>();
+        assertTrue(remote.decompress(compressed, buffer -> {
+            assertFalse(buffer.binary);
+            messages.add(toText(buffer));
+        }));
+        assertEquals(1, messages.size());
+        return messages.get(0);
+    }
+
+    @Test
+    public void testMessagesAreCompressedAfterHello() {
+        String message = videoTrackAssignments(4);
+        DataChannel.Buffer buffer = text(message);
+        //remote peer didn't announce that it accepts compressed messages
+        assertSame(buffer, local.compress(buffer));
+
+        negotiate();
+        DataChannel.Buffer compressed = local.compress(buffer);
+        assertNotSame(buffer, compressed);
+        assertTrue(DataChannelCompressor.isCompressionFrame(compressed));
+        assertFalse(DataChannelCompressor.isHelloFrame(compressed));
+        assertTrue(compressed.data.remaining() < message.length() / 2);
+        assertEquals(message, roundTrip(compressed));
+        assertEquals(1, remote.getDecompressedMessageCount());
+
+        //original message is reported after it's sent and its position isn't changed
+        assertSame(buffer, DataChannelCompressor.onMessageSent(compressed));
+        assertEquals(0, buffer.data.position());
+        assertSame(buffer, DataChannelCompressor.onMessageSent(buffer));
+        assertEquals(1, local.getCompressedMessageCount());
+
+        //buffers of the pool are reused
+        int allocatedCount = pool.getAllocatedCount();
+        for (int i = 0; i < 100; i++) {
+            DataChannelCompressor.onMessageSent(local.compress(buffer));
+        }
+        assertEquals(allocatedCount, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testBinaryMessages() {
+        negotiate();
+        byte[] bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 16);
+        }
+        DataChannel.Buffer compressed = local.compress(new DataChannel.Buffer(ByteBuffer.wrap(bytes), true));
+        assertTrue(DataChannelCompressor.isCompressionFrame(compressed));
+        List<byte[]> messages = new ArrayList<>();
+        assertTrue(remote.decompress(compressed, buffer -> {
+            assertTrue(buffer.binary);
+            byte[] copy = new byte[buffer.data.remaining()];
+            buffer.data.get(copy);
+            messages.add(copy);
+        }));
+        assertEquals(1, messages.size());
+        assertTrue(java.util.Arrays.equals(bytes, messages.get(0)));
+
+        //malformed frames are rejected
+        ByteBuffer malformed = ByteBuffer.allocate(compressed.data.remaining());
+        malformed.put(compressed.data.duplicate());
+        malformed.putInt(8, 2048);
+        malformed.rewind();
+        assertFalse(remote.decompress(new DataChannel.Buffer(malformed, true), buffer -> {}));
+    }
+
+    @Test
+    public void testCompressionIsSkippedWhenItDoesNotPayOff() {
+        negotiate();
+        //small messages are sent as they are
+        DataChannel.Buffer small = text("{\"eventType\":\"PIN_USER\"}");
+        assertSame(small, local.compress(small));
+
+        //random payloads don't compress, compression is paused after consecutive failures
+        Random random = new Random(1);
+        byte[] bytes = new byte[512];
+        for (int i = 0; i < DataChannelCompressor.MAX_FAILED_COUNT; i++) {
+            random.nextBytes(bytes);
+            DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.wrap(bytes), true);
+            assertSame(buffer, local.compress(buffer));
+        }
+        DataChannel.Buffer message = text(videoTrackAssignments(4));
+        assertSame(message, local.compress(message));
+        assertEquals(DataChannelCompressor.MAX_FAILED_COUNT + 1, local.getSkippedMessageCount());
+        assertEquals(0, local.getCompressedMessageCount());
+    }
+
+    @Test
+    public void testDictionaryImprovesEventCompression() {
+        negotiate();
+        int plainDeflateBytes = 0;
+        int dictionaryBytes = 0;
+        int compressedCount = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] output = new byte[4096];
+        for (int i = 0; i < 100; i++) {
+            String message = i % 2 == 0 ? String.format(AUDIO_LEVEL_EVENT, i, 1000 + i * 37) + "          "
+                    + String.format(AUDIO_LEVEL_EVENT, i + 1, 1000 + i * 13) : videoTrackAssignments(2 + i % 4);
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            int plainLength = deflater.deflate(output);
+            plainDeflateBytes += Math.min(bytes.length, plainLength + DataChannelCompressor.HEADER_SIZE);
+
+            DataChannel.Buffer buffer = text(message);
+            DataChannel.Buffer compressed = local.compress(buffer);
+            dictionaryBytes += compressed.data.remaining();
+            if (compressed != buffer) {
+                compressedCount++;
+                assertEquals(message, roundTrip(compressed));
+                DataChannelCompressor.onMessageSent(compressed);
+            }
+        }
+        deflater.end();
+        assertEquals(100, compressedCount);
+        assertTrue("Deflate: " + plainDeflateBytes + " bytes, with dictionary: " + dictionaryBytes + " bytes",
+                dictionaryBytes < plainDeflateBytes);
+        assertTrue("Compression ratio: " + local.getCompressionRatio(), local.getCompressionRatio() < 0.5);
+    }
+}
@@ -0,0 +1,163 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.antmedia.webrtcandroidframework.api.DefaultDataChannelObserver;
+import io.antmedia.webrtcandroidframework.core.DataChannelBufferPool;
+import io.antmedia.webrtcandroidframework.core.DataChannelDispatcher;
+
+public class DataChannelDispatcherTest {
+
+    @Test
+    public void testBufferPool() {
+        DataChannelBufferPool bufferPool = new DataChannelBufferPool(2);
+
+        DataChannelBufferPool.PooledBuffer small = bufferPool.acquire(10);
+        assertEquals(DataChannelBufferPool.MIN_BUFFER_SIZE, small.data.capacity());
+        assertTrue(small.data.isDirect());
+        assertTrue(small.getBuffer(true).binary);
+        assertFalse(small.getBuffer(false).binary);
+        assertTrue(small.getBuffer(true).data == small.getBuffer(false).data);
+
+        assertEquals(2048, bufferPool.acquire(1025).data.capacity());
+        assertEquals(DataChannelBufferPool.MAX_BUFFER_SIZE, bufferPool.acquire(DataChannelBufferPool.MAX_BUFFER_SIZE).data.capacity());
+
+        //large buffers are not pooled
+        DataChannelBufferPool.PooledBuffer large = bufferPool.acquire(DataChannelBufferPool.MAX_BUFFER_SIZE + 1);
+        assertFalse(large.isPooled());
+        bufferPool.release(large);
+        assertEquals(0, bufferPool.getFreeCount());
+
+        //released buffers are reused after they're cleared
+        small.data.put((byte) 1);
+        bufferPool.release(small);
+        DataChannelBufferPool.PooledBuffer reused = bufferPool.acquire(100);
+        assertTrue(small == reused);
+        assertEquals(0, reused.data.position());
+        assertEquals(reused.data.capacity(), reused.data.limit());
+        assertEquals(4, bufferPool.getAllocatedCount());
+
+        //free buffers are limited for a size class
+        bufferPool.release(reused);
+        bufferPool.release(bufferPool.acquire(100));
+        DataChannelBufferPool.PooledBuffer first = bufferPool.acquire(100);
+        DataChannelBufferPool.PooledBuffer second = bufferPool.acquire(100);
+        DataChannelBufferPool.PooledBuffer third = bufferPool.acquire(100);
+        bufferPool.release(first);
+        bufferPool.release(second);
+        bufferPool.release(third);
+        assertEquals(2, bufferPool.getFreeCount());
+    }
+
+    @Test
+    public void testMessagesAndEventsAreDeliveredInOrder() throws InterruptedException {
+        DataChannelDispatcher dispatcher = new DataChannelDispatcher(new DataChannelBufferPool());
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        DefaultDataChannelObserver observer = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                threads.add(Thread.currentThread());
+                String message = toTextMessage(buffer);
+                if (message.equals("error")) {
+                    throw new IllegalStateException("observer error");
+                }
+                events.add(dataChannelLabel + ":" + message + ":" + buffer.binary);
+            }
+        };
+
+        //the ring grows beyond its initial capacity
+        dispatcher.post(() -> {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            ByteBuffer data = ByteBuffer.wrap(("message" + i).getBytes());
+            dispatcher.dispatchMessage(observer, "label", new DataChannel.Buffer(data, i % 2 == 0));
+            assertEquals(0, data.position());
+            if (i == 50) {
+                dispatcher.post(() -> events.add("event"));
+                dispatcher.dispatchMessage(observer, "label", new DataChannel.Buffer(ByteBuffer.wrap("error".getBytes()), false));
+            }
+        }
+        latch.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getDeliveredMessageCount() < 101 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(101, dispatcher.getDeliveredMessageCount());
+        assertEquals(101, events.size());
+        for (int i = 0; i < 100; i++) {
+            int index = i <= 50 ? i : i + 1;
+            assertEquals("label:message" + i + ":" + (i % 2 == 0), events.get(index));
+        }
+        assertEquals("event", events.get(51));
+        assertEquals(dispatcher.getThread(), threads.get(0));
+
+        //buffers are returned to the pool up to its limit
+        DataChannelBufferPool bufferPool = dispatcher.getBufferPool();
+        assertEquals(101, bufferPool.getAllocatedCount());
+        assertEquals(DataChannelBufferPool.DEFAULT_MAX_POOLED_PER_SIZE, bufferPool.getFreeCount());
+
+        dispatcher.shutdown();
+        dispatcher.getThread().join(1000);
+        assertFalse(dispatcher.getThread().isAlive());
+        assertTrue(dispatcher.isShutdown());
+    }
+
+    @Test
+    public void testDispatchDoesNotAllocate() throws Exception {
+        if (!AllocationCounter.isSupported()) {
+            return;
+        }
+
+        DataChannelDispatcher dispatcher = new DataChannelDispatcher(new DataChannelBufferPool());
+        DefaultDataChannelObserver observer = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                //nothing
+            }
+        };
+        DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.allocateDirect(512), true);
+
+        int messageCount = 20000;
+        for (int i = 0; i < messageCount; i++) {
+            dispatch(dispatcher, observer, buffer, i + 1);
+        }
+        long allocatedBefore = AllocationCounter.getAllocatedBytes();
+        for (int i = 0; i < messageCount; i++) {
+            dispatch(dispatcher, observer, buffer, messageCount + i + 1);
+        }
+        long allocatedAfter = AllocationCounter.getAllocatedBytes();
+        dispatcher.shutdown();
+
+        long bytesPerMessage = (allocatedAfter - allocatedBefore) / messageCount;
+        assertTrue("Allocated " + bytesPerMessage + " bytes per message", bytesPerMessage < 8);
+    }
+
+    private static void dispatch(DataChannelDispatcher dispatcher, DefaultDataChannelObserver observer,
+                                 DataChannel.Buffer buffer, long deliveredCount) throws InterruptedException {
+        dispatcher.dispatchMessage(observer, "label", buffer);
+        //wait the delivery to reuse the same pooled buffer
+        while (dispatcher.getDeliveredMessageCount() < deliveredCount) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.antmedia.webrtcandroidframework.api.DefaultDataChannelObserver;
+import io.antmedia.webrtcandroidframework.core.DataChannelBufferPool;
+import io.antmedia.webrtcandroidframework.core.DataChannelDispatcher;
+import io.antmedia.webrtcandroidframework.core.DataChannelMessenger;
+
+public class DataChannelMessengerTest {
+
+    private static final String STREAM_ID = "stream1";
+
+    private static class Response {
+        final DataChannelMessenger.Message message;
+        final String error;
+        final Object data;
+        final String payload;
+
+        Response(DataChannelMessenger.Message message, String error) {
+            this.message = message;
+            this.error = error;
+            this.data = message != null ? message.getData() : null;
+            this.payload = message != null && message.isBinary() ? text(message.getPayload()) : null;
+        }
+    }
+
+    private static class RecordingCallback implements DataChannelMessenger.ResponseCallback {
+        final BlockingQueue<Response> responses = new ArrayBlockingQueue<>(10);
+
+        @Override
+        public void onResponse(DataChannelMessenger.Message response) {
+            responses.add(new Response(response, null));
+        }
+
+        @Override
+        public void onError(long requestId, String error) {
+            responses.add(new Response(null, error));
+        }
+
+        Response poll() throws InterruptedException {
+            Response response = responses.poll(5, TimeUnit.SECONDS);
+            assertNotNull(response);
+            return response;
+        }
+    }
+
+    private final BlockingQueue<String> fallbackMessages = new ArrayBlockingQueue<>(10);
+    private DataChannelDispatcher localDispatcher;
+    private DataChannelDispatcher remoteDispatcher;
+    private DataChannelMessenger local;
+    private DataChannelMessenger remote;
+
+    @Before
+    public void setUp() {
+        localDispatcher = new DataChannelDispatcher(new DataChannelBufferPool());
+        remoteDispatcher = new DataChannelDispatcher(new DataChannelBufferPool());
+        //messages sent by one messenger are received by the other as the data channel of the stream does
+        local = new DataChannelMessenger((streamId, buffer) -> remote.onMessage(buffer, streamId), localDispatcher, null);
+        remote = new DataChannelMessenger((streamId, buffer) -> local.onMessage(buffer, streamId), remoteDispatcher,
+                new DefaultDataChannelObserver() {
+                    @Override
+                    public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                        fallbackMessages.add(toTextMessage(buffer));
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        local.close();
+        remote.close();
+        localDispatcher.shutdown();
+        remoteDispatcher.shutdown();
+    }
+
+    private static String text(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMessageIsDecodedOnceForAllSubscribers() throws Exception {
+        BlockingQueue<DataChannelMessenger.Message> first = new ArrayBlockingQueue<>(10);
+        BlockingQueue<DataChannelMessenger.Message> second = new ArrayBlockingQueue<>(10);
+        BlockingQueue<Thread> threads = new ArrayBlockingQueue<>(10);
+        remote.subscribe("chat", message -> {
+            first.add(message);
+            threads.add(Thread.currentThread());
+        });
+        remote.subscribe("chat", second::add);
+
+        local.publish(STREAM_ID, "chat", new JSONObject().put("text", "hello"));
+
+        DataChannelMessenger.Message message = first.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertSame(message, second.poll(5, TimeUnit.SECONDS));
+        assertEquals(remoteDispatcher.getThread(), threads.poll());
+        assertEquals(STREAM_ID, message.getStreamId());
+        assertEquals("chat", message.getTopic());
+        assertEquals(DataChannelMessenger.TYPE_PUBLISH, message.getType());
+        assertEquals("hello", ((JSONObject) message.getData()).optString("text"));
+
+        //messages that are not routed are passed to the fallback observer
+        local.publish(STREAM_ID, "unknown", new JSONObject().put("text", "hello"));
+        String fallbackMessage = fallbackMessages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(fallbackMessage);
+        assertTrue(fallbackMessage.contains("unknown"));
+        assertTrue(first.isEmpty());
+    }
+
+    @Test
+    public void testServerEventsArePublishedToTheirEventTypes() throws Exception {
+        BlockingQueue<DataChannelMessenger.Message> messages = new ArrayBlockingQueue<>(10);
+        DataChannelMessenger.Subscriber subscriber = messages::add;
+        remote.subscribe("UPDATE_AUDIO_LEVEL", subscriber);
+
+        String event = "{\"eventType\":\"UPDATE_AUDIO_LEVEL\",\"streamId\":\"participant1\",\"audioLevel\":0.5}";
+        remote.onMessage(new DataChannel.Buffer(bytes(event), false), STREAM_ID);
+        DataChannelMessenger.Message message = messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("participant1", ((JSONObject) message.getData()).optString("streamId"));
+
+        //plain text is not decoded
+        remote.onMessage(new DataChannel.Buffer(bytes("hello"), false), STREAM_ID);
+        assertEquals("hello", fallbackMessages.poll(5, TimeUnit.SECONDS));
+
+        remote.unsubscribe("UPDATE_AUDIO_LEVEL", subscriber);
+        remote.onMessage(new DataChannel.Buffer(bytes(event), false), STREAM_ID);
+        assertEquals(event, fallbackMessages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testJsonRequestAndResponse() throws Exception {
+        remote.registerRequestHandler("sum", request -> {
+            JSONObject data = (JSONObject) request.getData();
+            try {
+                remote.respond(request, new JSONObject().put("sum", data.optInt("a", 0) + data.optInt("b", 0)));
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        RecordingCallback callback = new RecordingCallback();
+        long requestId = local.request(STREAM_ID, "sum", new JSONObject().put("a", 2).put("b", 3), 5000, callback);
+        Response response = callback.poll();
+        assertNull(response.error);
+        assertEquals(requestId, response.message.getRequestId());
+        assertEquals(5, ((JSONObject) response.data).optInt("sum", 0));
+        assertEquals(0, local.getPendingRequestCount());
+
+        local.request(STREAM_ID, "multiply", new JSONObject(), 5000, callback);
+        assertEquals(DataChannelMessenger.ERROR_NO_HANDLER, callback.poll().error);
+    }
+
+    @Test
+    public void testBinaryEnvelopes() throws Exception {
+        BlockingQueue<String> payloads = new ArrayBlockingQueue<>(10);
+        remote.subscribe("telemetry", message -> payloads.add(message.getTopic() + ":" + text(message.getPayload())));
+        local.publish(STREAM_ID, "telemetry", bytes("42"));
+        assertEquals("telemetry:42", payloads.poll(5, TimeUnit.SECONDS));
+
+        remote.registerRequestHandler("echo", request -> remote.respond(request, request.getPayload()));
+        remote.registerRequestHandler("fail", request -> remote.respondError(request, "failed"));
+
+        RecordingCallback callback = new RecordingCallback();
+        local.request(STREAM_ID, "echo", bytes("ping"), 5000, callback);
+        Response response = callback.poll();
+        assertEquals(DataChannelMessenger.TYPE_RESPONSE, response.message.getType());
+        assertEquals("ping", response.payload);
+
+        local.request(STREAM_ID, "fail", bytes("ping"), 5000, callback);
+        assertEquals("failed", callback.poll().error);
+    }
+
+    @Test
+    public void testResponseIsSentViaDataChannelOfRequest() throws Exception {
+        BlockingQueue<String> sentTo = new ArrayBlockingQueue<>(10);
+        DataChannelMessenger responder = new DataChannelMessenger(new DataChannelMessenger.Sender() {
+            @Override
+            public void send(String streamId, DataChannel.Buffer buffer) {
+                sentTo.add(streamId);
+            }
+
+            @Override
+            public void send(String streamId, String channelName, DataChannel.Buffer buffer) {
+                sentTo.add(streamId + "/" + channelName);
+            }
+        }, remoteDispatcher, null);
+        BlockingQueue<DataChannelMessenger.Message> requests = new ArrayBlockingQueue<>(10);
+        responder.registerRequestHandler("echo", request -> {
+            requests.add(request);
+            responder.respond(request, request.getPayload());
+        });
+
+        //request of the named data channel "control" of the stream
+        ByteBuffer request = ByteBuffer.allocate(DataChannelMessenger.BINARY_HEADER_SIZE + 4);
+        request.putInt(DataChannelMessenger.BINARY_MAGIC).put(DataChannelMessenger.TYPE_REQUEST).put((byte) 0)
+                .putShort((short) 4).putLong(7).put("echo".getBytes(StandardCharsets.UTF_8)).flip();
+        responder.onMessage(STREAM_ID, new DataChannel.Buffer(request, true), "control");
+
+        DataChannelMessenger.Message message = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals(STREAM_ID, message.getStreamId());
+        assertEquals("control", message.getDataChannelLabel());
+        assertEquals(STREAM_ID + "/control", sentTo.poll(5, TimeUnit.SECONDS));
+
+        //errors are sent via the same data channel
+        responder.onMessage(STREAM_ID, new DataChannel.Buffer(bytes("{\"method\":\"sum\",\"requestId\":8}"), false), "control");
+        assertEquals(STREAM_ID + "/control", sentTo.poll(5, TimeUnit.SECONDS));
+        responder.close();
+    }
+
+    @Test
+    public void testRequestTimesOut() throws Exception {
+        remote.registerRequestHandler("ignore", request -> {});
+
+        RecordingCallback callback = new RecordingCallback();
+        long startNs = System.nanoTime();
+        local.request(STREAM_ID, "ignore", new JSONObject(), 50, callback);
+        assertEquals(DataChannelMessenger.ERROR_TIMEOUT, callback.poll().error);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs) >= 50);
+        assertEquals(0, local.getPendingRequestCount());
+
+        //pending requests fail on close
+        local.request(STREAM_ID, "ignore", new JSONObject(), 60000, callback);
+        assertEquals(1, local.getPendingRequestCount());
+        local.close();
+        assertEquals(DataChannelMessenger.ERROR_CLOSED, callback.poll().error);
+    }
+}
@@ -0,0 +1,173 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.core.DataChannelSendQueue;
+
+public class DataChannelSendQueueTest {
+
+    private static class FakeDataChannel extends DataChannel {
+        long bufferedAmount;
+        boolean accept = true;
+        RuntimeException exception;
+        final List<Integer> sentSizes = new ArrayList<>();
+
+        FakeDataChannel() {
+            super(0);
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return bufferedAmount;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            if (exception != null) {
+                throw exception;
+            }
+            if (!accept) {
+                return false;
+            }
+            int size = buffer.data.remaining();
+            //data is consumed as the native send does
+            buffer.data.position(buffer.data.limit());
+            bufferedAmount += size;
+            sentSizes.add(size);
+            return true;
+        }
+    }
+
+    private static class RecordingListener implements DataChannelSendQueue.Listener {
+        final List<Boolean> results = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+        final List<Boolean> writabilityChanges = new ArrayList<>();
+
+        @Override
+        public void onMessageSent(DataChannel.Buffer buffer, boolean successful, Exception error) {
+            assertEquals(0, buffer.data.position());
+            results.add(successful);
+            errors.add(error);
+        }
+
+        @Override
+        public void onWritabilityChanged(boolean writable) {
+            writabilityChanges.add(writable);
+        }
+    }
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+
+    private static DataChannel.Buffer message(int size) {
+        return new DataChannel.Buffer(ByteBuffer.allocate(size), true);
+    }
+
+    @Test
+    public void testSendingIsPausedBetweenWatermarks() {
+        FakeDataChannel dataChannel = new FakeDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelSendQueue sendQueue = new DataChannelSendQueue(dataChannel, 1000, 200, tasks::add, listener);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sendQueue.send(message(300)));
+        }
+        //channel isn't writable after the queued bytes reach the high watermark
+        assertFalse(sendQueue.isWritable());
+        assertEquals(1, listener.writabilityChanges.size());
+        assertFalse(listener.writabilityChanges.get(0));
+
+        //sending is paused when buffered amount reaches the high watermark
+        runTasks();
+        assertEquals(4, dataChannel.sentSizes.size());
+        assertEquals(1200, dataChannel.bufferedAmount);
+        assertTrue(sendQueue.isPaused());
+        assertEquals(6, sendQueue.getQueuedCount());
+        assertEquals(1800, sendQueue.getQueuedBytes());
+
+        //it's not resumed before the buffered amount drops to the low watermark
+        dataChannel.bufferedAmount = 500;
+        sendQueue.onBufferedAmountChange();
+        runTasks();
+        assertEquals(4, dataChannel.sentSizes.size());
+
+        dataChannel.bufferedAmount = 200;
+        sendQueue.onBufferedAmountChange();
+        runTasks();
+        assertEquals(7, dataChannel.sentSizes.size());
+        assertTrue(sendQueue.isPaused());
+
+        dataChannel.bufferedAmount = 0;
+        sendQueue.onBufferedAmountChange();
+        runTasks();
+        assertEquals(10, dataChannel.sentSizes.size());
+        assertFalse(sendQueue.isPaused());
+        assertEquals(0, sendQueue.getQueuedCount());
+        assertEquals(10, listener.results.size());
+        assertFalse(listener.results.contains(false));
+
+        //channel is writable after the buffered amount drops to the low watermark
+        assertFalse(sendQueue.isWritable());
+        dataChannel.bufferedAmount = 150;
+        sendQueue.onBufferedAmountChange();
+        runTasks();
+        assertTrue(sendQueue.isWritable());
+        assertEquals(2, listener.writabilityChanges.size());
+        assertTrue(listener.writabilityChanges.get(1));
+    }
+
+    @Test
+    public void testFailuresAreReported() {
+        FakeDataChannel dataChannel = new FakeDataChannel();
+        RecordingListener listener = new RecordingListener();
+        DataChannelSendQueue sendQueue = new DataChannelSendQueue(dataChannel, 1000, 200, tasks::add, listener);
+
+        dataChannel.accept = false;
+        sendQueue.send(message(10));
+        runTasks();
+        assertFalse(listener.results.get(0));
+        assertNull(listener.errors.get(0));
+
+        dataChannel.exception = new IllegalStateException("closed");
+        sendQueue.send(message(10));
+        runTasks();
+        assertFalse(listener.results.get(1));
+        assertEquals(dataChannel.exception, listener.errors.get(1));
+
+        //queued messages fail on close
+        dataChannel.exception = null;
+        dataChannel.accept = true;
+        dataChannel.bufferedAmount = 1000;
+        sendQueue.send(message(10));
+        sendQueue.send(message(10));
+        runTasks();
+        assertEquals(2, sendQueue.getQueuedCount());
+        sendQueue.close();
+        assertTrue(sendQueue.isClosed());
+        assertEquals(4, listener.results.size());
+        assertFalse(listener.results.get(3));
+        assertFalse(sendQueue.send(message(10)));
+        assertEquals(0, dataChannel.sentSizes.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWatermarks() {
+        new DataChannelSendQueue(new FakeDataChannel(), 100, 200, Runnable::run, new RecordingListener());
+    }
+}
@@ -0,0 +1,377 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.antmedia.webrtcandroidframework.api.IDataChannelTransferListener;
+import io.antmedia.webrtcandroidframework.core.DataChannelBufferPool;
+import io.antmedia.webrtcandroidframework.core.DataChannelSendQueue;
+import io.antmedia.webrtcandroidframework.core.DataChannelTransferManager;
+
+public class DataChannelTransferManagerTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Data channel that passes the sent messages to the remote manager
+     */
+    private static class LoopbackDataChannel extends DataChannel {
+        DataChannelTransferManager remote;
+        long bufferedAmount;
+        final List<Long> sentTransferIds = new ArrayList<>();
+
+        LoopbackDataChannel() {
+            super(0);
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return bufferedAmount;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.data.remaining());
+            copy.put(buffer.data);
+            copy.flip();
+            bufferedAmount += copy.remaining();
+            sentTransferIds.add(copy.getLong(8));
+            if (remote != null) {
+                assertTrue(remote.onMessage(new Buffer(copy, buffer.binary)));
+            }
+            return true;
+        }
+    }
+
+    private static class RecordingTransferListener implements IDataChannelTransferListener {
+        final List<byte[]> received = new ArrayList<>();
+        final List<Boolean> receivedBinary = new ArrayList<>();
+        final List<Long> sent = new ArrayList<>();
+        final List<Long> cancelled = new ArrayList<>();
+        final List<Long> failed = new ArrayList<>();
+        long lastProgress;
+        long lastTotal;
+
+        @Override
+        public void onTransferProgress(String streamId, long transferId, boolean incoming, long transferredBytes, long totalBytes) {
+            assertTrue(transferredBytes <= totalBytes);
+            lastProgress = transferredBytes;
+            lastTotal = totalBytes;
+        }
+
+        @Override
+        public void onTransferReceived(String streamId, long transferId, DataChannel.Buffer buffer) {
+            byte[] data = new byte[buffer.data.remaining()];
+            buffer.data.get(data);
+            received.add(data);
+            receivedBinary.add(buffer.binary);
+        }
+
+        @Override
+        public void onTransferSent(String streamId, long transferId) {
+            sent.add(transferId);
+        }
+
+        @Override
+        public void onTransferCancelled(String streamId, long transferId, boolean incoming) {
+            cancelled.add(transferId);
+        }
+
+        @Override
+        public void onTransferFailed(String streamId, long transferId, boolean incoming) {
+            failed.add(transferId);
+        }
+    }
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    //pool keeps all buffers to check that they're returned
+    private final DataChannelBufferPool bufferPool = new DataChannelBufferPool(1000);
+    private final LoopbackDataChannel senderChannel = new LoopbackDataChannel();
+    private final LoopbackDataChannel receiverChannel = new LoopbackDataChannel();
+    private final RecordingTransferListener senderListener = new RecordingTransferListener();
+    private final RecordingTransferListener receiverListener = new RecordingTransferListener();
+    private DataChannelSendQueue senderQueue;
+    private DataChannelTransferManager sender;
+    private DataChannelTransferManager receiver;
+
+    private void createManagers(long highWatermark, long lowWatermark) {
+        createManagers(highWatermark, lowWatermark, 64 * 1024);
+    }
+
+    private void createManagers(long highWatermark, long lowWatermark, int receiverMaxTransferSize) {
+        TransferSendListener senderSendListener = new TransferSendListener();
+        senderQueue = new DataChannelSendQueue(senderChannel, highWatermark, lowWatermark, tasks::add, senderSendListener);
+        sender = new DataChannelTransferManager("stream1", senderQueue, bufferPool, CHUNK_SIZE,
+                DataChannelTransferManager.DEFAULT_MAX_TRANSFER_SIZE, Runnable::run, senderListener);
+        senderSendListener.transferManager = sender;
+
+        TransferSendListener receiverSendListener = new TransferSendListener();
+        DataChannelSendQueue receiverQueue = new DataChannelSendQueue(receiverChannel, highWatermark, lowWatermark, tasks::add, receiverSendListener);
+        receiver = new DataChannelTransferManager("stream1", receiverQueue, bufferPool, CHUNK_SIZE,
+                receiverMaxTransferSize, Runnable::run, receiverListener);
+        receiverSendListener.transferManager = receiver;
+
+        senderChannel.remote = receiver;
+        receiverChannel.remote = sender;
+    }
+
+    private static class TransferSendListener implements DataChannelSendQueue.Listener {
+        DataChannelTransferManager transferManager;
+
+        @Override
+        public void onMessageSent(DataChannel.Buffer buffer, boolean successful, Exception error) {
+            assertTrue(transferManager.onMessageSent(buffer, successful));
+        }
+
+        @Override
+        public void onWritabilityChanged(boolean writable) {
+            transferManager.onWritabilityChanged(writable);
+        }
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+
+    /**
+     * Remote peer consumes the buffered data of the sender channel
+     */
+    private void consumeSenderChannel() {
+        senderChannel.bufferedAmount = 0;
+        senderQueue.onBufferedAmountChange();
+        runTasks();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testTransfersAreReassembled() {
+        createManagers(DataChannelSendQueue.DEFAULT_HIGH_WATERMARK, DataChannelSendQueue.DEFAULT_LOW_WATERMARK);
+        byte[] payload = randomBytes(50000);
+        long id = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(payload), true));
+        runTasks();
+
+        assertEquals(1, receiverListener.received.size());
+        assertArrayEquals(payload, receiverListener.received.get(0));
+        assertTrue(receiverListener.receivedBinary.get(0));
+        assertEquals(50000, receiverListener.lastProgress);
+        assertEquals(1, senderListener.sent.size());
+        assertEquals(id, (long) senderListener.sent.get(0));
+        assertEquals(50000, senderListener.lastProgress);
+        assertEquals(0, sender.getOutgoingTransferCount());
+        assertEquals(0, receiver.getIncomingTransferCount());
+
+        //text and empty payloads
+        sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap("text".getBytes()), false));
+        sender.startTransfer(new DataChannel.Buffer(ByteBuffer.allocate(0), true));
+        runTasks();
+        assertEquals("text", new String(receiverListener.received.get(1)));
+        assertFalse(receiverListener.receivedBinary.get(1));
+        assertEquals(0, receiverListener.received.get(2).length);
+
+        //buffers are returned to the pool
+        assertEquals(bufferPool.getAllocatedCount(), bufferPool.getFreeCount());
+    }
+
+    @Test
+    public void testConcurrentTransfersAreInterleaved() {
+        createManagers(4 * CHUNK_SIZE, CHUNK_SIZE);
+        //channel becomes not writable with the first chunk
+        senderChannel.bufferedAmount = 4 * CHUNK_SIZE;
+        byte[] first = randomBytes(10000);
+        byte[] second = randomBytes(3000);
+        long firstId = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(first), true));
+        long secondId = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(second), true));
+        runTasks();
+        assertTrue(senderChannel.sentTransferIds.isEmpty());
+
+        while (receiverListener.received.size() < 2) {
+            consumeSenderChannel();
+        }
+        List<Long> ids = senderChannel.sentTransferIds;
+        assertEquals(firstId, (long) ids.get(0));
+        assertEquals(secondId, (long) ids.get(1));
+        assertEquals(firstId, (long) ids.get(2));
+        assertEquals(secondId, (long) ids.get(3));
+
+        assertArrayEquals(second, receiverListener.received.get(0));
+        assertArrayEquals(first, receiverListener.received.get(1));
+    }
+
+    @Test
+    public void testChunksAreProducedWhileWritable() {
+        createManagers(4 * CHUNK_SIZE, CHUNK_SIZE);
+        byte[] payload = randomBytes(20 * CHUNK_SIZE);
+        sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(payload), true));
+
+        //production stops at the high watermark
+        assertEquals(4, senderQueue.getQueuedCount());
+        assertFalse(senderQueue.isWritable());
+        runTasks();
+        int sent = senderChannel.sentTransferIds.size();
+        assertEquals(4, sent);
+
+        while (receiverListener.received.isEmpty()) {
+            consumeSenderChannel();
+            assertTrue(senderChannel.sentTransferIds.size() > sent);
+            sent = senderChannel.sentTransferIds.size();
+        }
+        assertArrayEquals(payload, receiverListener.received.get(0));
+        assertEquals(1, senderListener.sent.size());
+    }
+
+    @Test
+    public void testTransferIsCancelled() {
+        createManagers(4 * CHUNK_SIZE, CHUNK_SIZE);
+        long id = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(randomBytes(20 * CHUNK_SIZE)), true));
+        runTasks();
+        assertEquals(1, receiver.getIncomingTransferCount());
+
+        //cancel frame is sent to the remote peer
+        assertTrue(sender.cancelTransfer(id));
+        consumeSenderChannel();
+        assertEquals(0, sender.getOutgoingTransferCount());
+        assertEquals(0, receiver.getIncomingTransferCount());
+        assertEquals(id, (long) senderListener.cancelled.get(0));
+        assertEquals(id, (long) receiverListener.cancelled.get(0));
+        assertFalse(sender.cancelTransfer(id));
+
+        //remaining chunks are not produced
+        int sent = senderChannel.sentTransferIds.size();
+        consumeSenderChannel();
+        assertEquals(sent, senderChannel.sentTransferIds.size());
+        assertTrue(receiverListener.received.isEmpty());
+        assertTrue(senderListener.sent.isEmpty());
+
+        //receiver cancels an incoming transfer
+        long secondId = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(randomBytes(20 * CHUNK_SIZE)), true));
+        runTasks();
+        assertTrue(receiver.cancelTransfer(secondId));
+        runTasks();
+        assertEquals(secondId, (long) senderListener.cancelled.get(1));
+        assertEquals(0, sender.getOutgoingTransferCount());
+    }
+
+    @Test
+    public void testLargeTransferIsRejected() {
+        createManagers(DataChannelSendQueue.DEFAULT_HIGH_WATERMARK, DataChannelSendQueue.DEFAULT_LOW_WATERMARK);
+        //receiver accepts up to 64 KiB
+        sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(randomBytes(100 * 1024)), true));
+        runTasks();
+        assertEquals(1, senderListener.sent.size());
+        assertTrue(receiverListener.received.isEmpty());
+        assertEquals(0, receiver.getIncomingTransferCount());
+
+        assertEquals(-1, receiver.startTransfer(new DataChannel.Buffer(ByteBuffer.allocate(64 * 1024 + 1), true)));
+    }
+
+    @Test
+    public void testReassemblyBufferGrowsWithReceivedBytes() {
+        createManagers(DataChannelSendQueue.DEFAULT_HIGH_WATERMARK, DataChannelSendQueue.DEFAULT_LOW_WATERMARK, 4 * 1024 * 1024);
+        byte[] payload = randomBytes(1024 * 1024);
+        sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(payload), true));
+        while (receiverListener.received.isEmpty()) {
+            consumeSenderChannel();
+        }
+        assertArrayEquals(payload, receiverListener.received.get(0));
+        assertEquals(0, receiver.getReservedIncomingBytes());
+
+        //total length in the header doesn't make the receiver allocate the whole payload
+        long id = 1;
+        assertTrue(receiver.onMessage(createDataFrame(id, 4 * 1024 * 1024, 0, 100)));
+        assertEquals(1, receiver.getIncomingTransferCount());
+        assertTrue(receiver.getReservedIncomingBytes() < 1024 * 1024);
+
+        //nor a chunk far ahead of the received bytes
+        assertTrue(receiver.onMessage(createDataFrame(id, 4 * 1024 * 1024, 3 * 1024 * 1024, 100)));
+        assertEquals(0, receiver.getIncomingTransferCount());
+        assertEquals(0, receiver.getReservedIncomingBytes());
+        assertEquals(id, (long) receiverListener.failed.get(0));
+        //remote peer is notified to stop sending
+        runTasks();
+        assertEquals(id, (long) receiverChannel.sentTransferIds.get(receiverChannel.sentTransferIds.size() - 1));
+    }
+
+    @Test
+    public void testIncomingTransfersAreLimitedInTotal() {
+        int maxTransferSize = 1024 * 1024;
+        createManagers(DataChannelSendQueue.DEFAULT_HIGH_WATERMARK, DataChannelSendQueue.DEFAULT_LOW_WATERMARK, maxTransferSize);
+        int accepted = 0;
+        for (int id = 1; id <= DataChannelTransferManager.MAX_INCOMING_TRANSFERS; id++) {
+            receiver.onMessage(createDataFrame(id, maxTransferSize, 0, 100));
+            accepted = receiver.getIncomingTransferCount();
+        }
+        assertTrue(accepted < DataChannelTransferManager.MAX_INCOMING_TRANSFERS);
+        assertTrue(receiver.getReservedIncomingBytes() <= maxTransferSize);
+    }
+
+    @Test
+    public void testStalledIncomingTransferExpires() throws InterruptedException {
+        createManagers(DataChannelSendQueue.DEFAULT_HIGH_WATERMARK, DataChannelSendQueue.DEFAULT_LOW_WATERMARK);
+        receiver.setIncomingTransferTimeoutMs(20);
+        receiver.onMessage(createDataFrame(1, 10000, 0, 100));
+        receiver.expireStalledTransfers();
+        assertEquals(1, receiver.getIncomingTransferCount());
+
+        Thread.sleep(50);
+        receiver.expireStalledTransfers();
+        assertEquals(0, receiver.getIncomingTransferCount());
+        assertEquals(0, receiver.getReservedIncomingBytes());
+        assertEquals(1, (long) receiverListener.failed.get(0));
+        //cancel frame is sent to the remote peer
+        runTasks();
+        assertEquals(bufferPool.getAllocatedCount(), bufferPool.getFreeCount());
+    }
+
+    private static DataChannel.Buffer createDataFrame(long transferId, int totalLength, int offset, int payloadLength) {
+        ByteBuffer frame = ByteBuffer.allocate(DataChannelTransferManager.HEADER_SIZE + payloadLength);
+        frame.putInt(DataChannelTransferManager.MAGIC);
+        frame.put(DataChannelTransferManager.TYPE_DATA);
+        frame.put((byte) 1);
+        frame.putShort((short) 0);
+        frame.putLong(transferId);
+        frame.putInt(totalLength);
+        frame.putInt(offset);
+        frame.clear();
+        return new DataChannel.Buffer(frame, true);
+    }
+
+    @Test
+    public void testCloseFailsTransfers() {
+        createManagers(4 * CHUNK_SIZE, CHUNK_SIZE);
+        long id = sender.startTransfer(new DataChannel.Buffer(ByteBuffer.wrap(randomBytes(20 * CHUNK_SIZE)), true));
+        runTasks();
+        sender.close();
+        receiver.close();
+        assertEquals(id, (long) senderListener.failed.get(0));
+        assertEquals(id, (long) receiverListener.failed.get(0));
+        assertEquals(-1, sender.startTransfer(new DataChannel.Buffer(ByteBuffer.allocate(10), true)));
+    }
+
+    @Test
+    public void testTransferFrame() {
+        assertFalse(DataChannelTransferManager.isTransferFrame(new DataChannel.Buffer(ByteBuffer.wrap("message".getBytes()), true)));
+        ByteBuffer frame = ByteBuffer.allocate(DataChannelTransferManager.HEADER_SIZE);
+        frame.putInt(0, DataChannelTransferManager.MAGIC);
+        assertTrue(DataChannelTransferManager.isTransferFrame(new DataChannel.Buffer(frame, true)));
+        //text messages are not transfer frames
+        assertFalse(DataChannelTransferManager.isTransferFrame(new DataChannel.Buffer(frame, false)));
+    }
+}
@@ -0,0 +1,48 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.antmedia.webrtcandroidframework.core.MediaClock;
+
+public class MediaClockTest {
+
+    private static class FakeMediaClock extends MediaClock {
+        long nowNs = 5000000000L;
+
+        @Override
+        protected long nanoTime() {
+            return nowNs;
+        }
+    }
+
+    @Test
+    public void testFramesAreDueAtTheirDistanceToTheAnchor() {
+        FakeMediaClock clock = new FakeMediaClock();
+        assertFalse(clock.isAnchored());
+        assertEquals(-1, clock.getMediaTimeUs());
+
+        //first timestamp anchors the clock
+        assertEquals(0, clock.getDelayUs(1000000));
+        assertTrue(clock.isAnchored());
+        assertEquals(33333, clock.getDelayUs(1033333));
+
+        clock.nowNs += 20000000;
+        assertEquals(13333, clock.getDelayUs(1033333));
+        assertEquals(1020000, clock.getMediaTimeUs());
+
+        //late frames have negative delay
+        clock.nowNs += 100000000;
+        assertEquals(-86667, clock.getDelayUs(1033333));
+
+        clock.anchor(1033333);
+        assertEquals(0, clock.getDelayUs(1033333));
+
+        clock.reset();
+        assertFalse(clock.isAnchored());
+        assertEquals(0, clock.getDelayUs(0));
+    }
+}
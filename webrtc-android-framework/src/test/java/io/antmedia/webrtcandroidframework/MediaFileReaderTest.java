@@ -1,21 +1,34 @@
 package io.antmedia.webrtcandroidframework;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.SurfaceTexture;
 import android.media.Image;
 import android.media.MediaCodec;
 import android.media.MediaExtractor;
+import android.media.MediaCrypto;
 import android.media.MediaFormat;
+import android.view.Surface;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -27,12 +40,165 @@ import org.webrtc.VideoFrame;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.antmedia.webrtcandroidframework.core.CustomVideoCapturer;
 import io.antmedia.webrtcandroidframework.core.MediaFileReader;
+import io.antmedia.webrtcandroidframework.core.SdkMetrics;
 
 public class MediaFileReaderTest {
 
+    private static final int FRAME_COUNT = 60;
+    private static final long FRAME_DURATION_US = 33333;
+
+    /**
+     * Decoder that decodes every queued sample in 2 ms. Output buffers are tracked to check how far
+     * the reader decodes ahead. It has a few input buffers as hardware decoders do and a sample holds
+     * its input buffer until its output buffer is released.
+     */
+    private static class FakeCodec {
+        static final int INPUT_BUFFER_COUNT = 6;
+        final MediaCodec decoder = mock(MediaCodec.class);
+        //accessed on the thread of the reader
+        final ArrayDeque<long[]> decodedSamples = new ArrayDeque<>();
+        final Set<Integer> heldOutputIndexes = new HashSet<>();
+        int outputIndex;
+        int inputIndex;
+        int freeInputBufferCount = INPUT_BUFFER_COUNT;
+        volatile int maxHeldOutputCount;
+
+        FakeCodec() {
+            when(decoder.dequeueInputBuffer(anyLong())).thenAnswer(invocation -> {
+                if (freeInputBufferCount == 0) {
+                    return MediaCodec.INFO_TRY_AGAIN_LATER;
+                }
+                freeInputBufferCount--;
+                return inputIndex++ % INPUT_BUFFER_COUNT;
+            });
+            when(decoder.getInputBuffer(anyInt())).thenAnswer(invocation -> ByteBuffer.allocate(1024));
+            doAnswer(invocation -> {
+                Object[] arguments = invocation.getArguments();
+                decodedSamples.add(new long[]{(Long) arguments[3], (Integer) arguments[4]});
+                return null;
+            }).when(decoder).queueInputBuffer(anyInt(), anyInt(), anyInt(), anyLong(), anyInt());
+            when(decoder.dequeueOutputBuffer(any(MediaCodec.BufferInfo.class), anyLong())).thenAnswer(invocation -> {
+                long[] sample = decodedSamples.poll();
+                if (sample == null) {
+                    Thread.sleep(1);
+                    return MediaCodec.INFO_TRY_AGAIN_LATER;
+                }
+                Thread.sleep(2);
+                MediaCodec.BufferInfo info = (MediaCodec.BufferInfo) invocation.getArguments()[0];
+                info.presentationTimeUs = sample[0];
+                info.flags = (int) sample[1];
+                info.size = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0 ? 0 : 100;
+                int index = outputIndex++ % 16;
+                heldOutputIndexes.add(index);
+                maxHeldOutputCount = Math.max(maxHeldOutputCount, heldOutputIndexes.size());
+                return index;
+            });
+            when(decoder.getOutputImage(anyInt())).thenReturn(mock(Image.class));
+            when(decoder.getOutputBuffer(anyInt())).thenAnswer(invocation -> ByteBuffer.allocate(2048));
+            doAnswer(invocation -> releaseOutputBuffer((Integer) invocation.getArguments()[0]))
+                    .when(decoder).releaseOutputBuffer(anyInt(), anyBoolean());
+            doAnswer(invocation -> releaseOutputBuffer((Integer) invocation.getArguments()[0]))
+                    .when(decoder).releaseOutputBuffer(anyInt(), anyLong());
+        }
+
+        private Void releaseOutputBuffer(int index) {
+            heldOutputIndexes.remove(index);
+            freeInputBufferCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Decoder and extractor of a 30 fps video
+     */
+    private static class FakeVideoDecoder {
+        final MediaExtractor extractor = mock(MediaExtractor.class);
+        final MediaFormat format = mock(MediaFormat.class);
+        final FakeCodec codec = new FakeCodec();
+        int sampleIndex;
+
+        FakeVideoDecoder() {
+            this("video/avc");
+        }
+
+        FakeVideoDecoder(String mime) {
+            when(extractor.getTrackCount()).thenReturn(1);
+            when(extractor.getTrackFormat(0)).thenReturn(format);
+            when(format.getString(MediaFormat.KEY_MIME)).thenReturn(mime);
+            when(extractor.readSampleData(any(ByteBuffer.class), anyInt())).thenAnswer(invocation -> sampleIndex < FRAME_COUNT ? 100 : -1);
+            when(extractor.getSampleTime()).thenAnswer(invocation -> sampleIndex * FRAME_DURATION_US);
+            when(extractor.advance()).thenAnswer(invocation -> ++sampleIndex < FRAME_COUNT);
+            doAnswer(invocation -> {
+                sampleIndex = 0;
+                return null;
+            }).when(extractor).seekTo(anyLong(), anyInt());
+        }
+
+        MediaFileReader createReader(MediaFileReader.VideoFrameListener listener) throws IOException {
+            MediaFileReader mfr = spy(MediaFileReader.fromPath("src/test/resources/dummy.file")
+                    .withVideoFrameListener(listener)
+                    .withFrameType(MediaFileReader.FrameType.video));
+            doReturn(codec.decoder).when(mfr).getMediaCodec();
+            mfr.setMediaExtractorForTest(extractor);
+            return mfr;
+        }
+    }
+
+    /**
+     * Extractor of a file with a 30 fps video track and an audio track of 1024 samples at 48 kHz per frame.
+     * Tracks are interleaved in chunks of a second as muxers do, a video chunk is followed by the audio chunk
+     * of the same time.
+     */
+    private static class FakeAudioVideoFile {
+        static final long AUDIO_FRAME_DURATION_US = 21333;
+        static final long CHUNK_DURATION_US = 1000000;
+        final MediaExtractor extractor = mock(MediaExtractor.class);
+        final MediaFormat videoFormat = mock(MediaFormat.class);
+        final MediaFormat audioFormat = mock(MediaFormat.class);
+        final FakeCodec videoCodec = new FakeCodec();
+        final FakeCodec audioCodec = new FakeCodec();
+        final List<long[]> samples = new ArrayList<>();
+        int sampleIndex;
+
+        FakeAudioVideoFile() {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                samples.add(new long[]{0, i * FRAME_DURATION_US});
+            }
+            for (long ptsUs = 0; ptsUs < FRAME_COUNT * FRAME_DURATION_US; ptsUs += AUDIO_FRAME_DURATION_US) {
+                samples.add(new long[]{1, ptsUs});
+            }
+            Collections.sort(samples, (first, second) -> {
+                int chunkOrder = Long.compare(first[1] / CHUNK_DURATION_US, second[1] / CHUNK_DURATION_US);
+                if (chunkOrder != 0) {
+                    return chunkOrder;
+                }
+                return first[0] != second[0] ? Long.compare(first[0], second[0]) : Long.compare(first[1], second[1]);
+            });
+
+            when(videoFormat.getString(MediaFormat.KEY_MIME)).thenReturn("video/avc");
+            when(audioFormat.getString(MediaFormat.KEY_MIME)).thenReturn("audio/mp4a-latm");
+            when(audioFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)).thenReturn(1);
+            when(audioFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE)).thenReturn(48000);
+            when(extractor.getTrackCount()).thenReturn(2);
+            when(extractor.getTrackFormat(0)).thenReturn(videoFormat);
+            when(extractor.getTrackFormat(1)).thenReturn(audioFormat);
+            when(extractor.getSampleTrackIndex()).thenAnswer(invocation -> sampleIndex < samples.size() ? (int) samples.get(sampleIndex)[0] : -1);
+            when(extractor.readSampleData(any(ByteBuffer.class), anyInt())).thenAnswer(invocation -> sampleIndex < samples.size() ? 100 : -1);
+            when(extractor.getSampleTime()).thenAnswer(invocation -> sampleIndex < samples.size() ? samples.get(sampleIndex)[1] : -1L);
+            when(extractor.advance()).thenAnswer(invocation -> ++sampleIndex < samples.size());
+        }
+    }
+
     @Test
     public void testCreateFromResources() throws IOException {
         Resources resources = mock(Resources.class);
@@ -55,6 +221,16 @@ public class MediaFileReaderTest {
         when(extractor.getTrackFormat(0)).thenReturn(format);
         when(format.getString(MediaFormat.KEY_MIME)).thenReturn("video/x");
         when(decoder.getOutputImage(0)).thenReturn(image);
+        //decoder outputs a frame and then the end of stream. Otherwise it would output frame 0 on every call
+        //and the reader would render it in a busy loop until it's stopped.
+        AtomicInteger outputCount = new AtomicInteger();
+        when(decoder.dequeueOutputBuffer(any(MediaCodec.BufferInfo.class), anyLong())).thenAnswer(invocation -> {
+            MediaCodec.BufferInfo info = (MediaCodec.BufferInfo) invocation.getArguments()[0];
+            boolean endOfStream = outputCount.getAndIncrement() > 0;
+            info.flags = endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0;
+            info.size = endOfStream ? 0 : 100;
+            return 0;
+        });
 
         MediaFileReader mfr = spy(MediaFileReader.fromPath("src/test/resources/dummy.file")
                 .withVideoFrameListener(videoListener)
@@ -67,14 +243,16 @@ public class MediaFileReaderTest {
         mfr.setMediaExtractorForTest(extractor);
 
         mfr.start();
+        try {
+            verify(extractor).selectTrack(0);
 
-        verify(extractor).selectTrack(0);
-
-        verify(videoListener, timeout(2000)).onYuvImage(image);
-
-        mfr.stop();
+            verify(videoListener, timeout(2000)).onYuvImage(image);
+        } finally {
+            mfr.stop();
+        }
 
         verify(extractor,timeout(2000)).release();
+        verify(videoListener, times(1)).onYuvImage(image);
     }
 
     @Test
@@ -115,4 +293,216 @@ public class MediaFileReaderTest {
 
         verify(extractor,timeout(2000)).release();
     }
+
+    @Test
+    public void testVideoIsPacedByPresentationTimestamps() throws IOException {
+        FakeVideoDecoder fakeDecoder = new FakeVideoDecoder();
+        List<Long> renderTimesNs = Collections.synchronizedList(new ArrayList<>());
+        MediaFileReader mfr = fakeDecoder.createReader(image -> renderTimesNs.add(System.nanoTime()));
+
+        mfr.start();
+        verify(fakeDecoder.extractor, timeout(5000)).release();
+
+        assertEquals(FRAME_COUNT, mfr.getRenderedFrameCount());
+        assertEquals(0, mfr.getDroppedFrameCount());
+        assertEquals(FRAME_COUNT, renderTimesNs.size());
+
+        //frames are released at their timestamps, not after fixed sleeps
+        long scheduleStartUs = Long.MAX_VALUE;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            scheduleStartUs = Math.min(scheduleStartUs, renderTimesNs.get(i) / 1000 - i * FRAME_DURATION_US);
+        }
+        long maxLatenessUs = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            maxLatenessUs = Math.max(maxLatenessUs, renderTimesNs.get(i) / 1000 - i * FRAME_DURATION_US - scheduleStartUs);
+        }
+        double frameRate = (FRAME_COUNT - 1) * 1e9 / (renderTimesNs.get(FRAME_COUNT - 1) - renderTimesNs.get(0));
+        assertEquals(30, frameRate, 1);
+        assertTrue("Max lateness " + maxLatenessUs + " us", maxLatenessUs < MediaFileReader.DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000);
+
+        //decoder runs ahead into a bounded number of output buffers
+        assertTrue(fakeDecoder.codec.maxHeldOutputCount > 1);
+        assertTrue(fakeDecoder.codec.maxHeldOutputCount <= MediaFileReader.DEFAULT_MAX_FRAMES_AHEAD);
+        assertTrue(fakeDecoder.codec.heldOutputIndexes.isEmpty());
+    }
+
+    @Test
+    public void testLateVideoFramesAreDropped() throws IOException {
+        FakeVideoDecoder fakeDecoder = new FakeVideoDecoder();
+        List<Long> renderTimesNs = Collections.synchronizedList(new ArrayList<>());
+        MediaFileReader mfr = fakeDecoder.createReader(image -> {
+            renderTimesNs.add(System.nanoTime());
+            if (renderTimesNs.size() == 1) {
+                //listener stalls for more than 4 frames
+                try {
+                    Thread.sleep(150);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        mfr.start();
+        verify(fakeDecoder.extractor, timeout(5000)).release();
+
+        assertTrue(mfr.getDroppedFrameCount() > 0);
+        assertEquals(FRAME_COUNT, mfr.getRenderedFrameCount() + mfr.getDroppedFrameCount());
+
+        //playout catches up with the clock instead of drifting
+        long durationUs = (renderTimesNs.get(renderTimesNs.size() - 1) - renderTimesNs.get(0)) / 1000;
+        assertEquals((FRAME_COUNT - 1) * FRAME_DURATION_US, durationUs, MediaFileReader.DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000);
+    }
+
+    @Test
+    public void testAudioAndVideoAreReadOnASharedClock() throws IOException {
+        FakeAudioVideoFile file = new FakeAudioVideoFile();
+        List<Long> videoTimesNs = Collections.synchronizedList(new ArrayList<>());
+        List<Long> audioTimesNs = Collections.synchronizedList(new ArrayList<>());
+        Set<Integer> audioChunkLengths = Collections.synchronizedSet(new HashSet<>());
+        long lipSyncCount = SdkMetrics.REGISTRY.getCount(SdkMetrics.FILE_LIP_SYNC_ERROR_SECONDS);
+
+        MediaFileReader mfr = spy(MediaFileReader.fromPath("src/test/resources/dummy.file")
+                .withVideoFrameListener(image -> videoTimesNs.add(System.nanoTime()))
+                .withAudioFrameListener(data -> {
+                    audioTimesNs.add(System.nanoTime());
+                    audioChunkLengths.add(data.length);
+                })
+                .withFrameType(MediaFileReader.FrameType.both));
+        doReturn(file.videoCodec.decoder).when(mfr).getMediaCodec(file.videoFormat);
+        doReturn(file.audioCodec.decoder).when(mfr).getMediaCodec(file.audioFormat);
+        mfr.setMediaExtractorForTest(file.extractor);
+
+        mfr.start();
+        verify(file.extractor).selectTrack(0);
+        verify(file.extractor).selectTrack(1);
+        verify(file.extractor, timeout(5000)).release();
+        verify(file.videoCodec.decoder).release();
+        verify(file.audioCodec.decoder).release();
+
+        assertEquals(0, mfr.getDroppedFrameCount());
+        assertEquals(FRAME_COUNT, videoTimesNs.size());
+        assertFalse(audioTimesNs.isEmpty());
+        //audio is passed in 10 ms chunks of 48 kHz mono
+        assertEquals(Collections.singleton(960), audioChunkLengths);
+
+        //both tracks start together and they stay in sync
+        long videoDurationUs = (videoTimesNs.get(FRAME_COUNT - 1) - videoTimesNs.get(0)) / 1000;
+        assertEquals((FRAME_COUNT - 1) * FRAME_DURATION_US, videoDurationUs, MediaFileReader.DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000);
+        long startSkewUs = Math.abs(videoTimesNs.get(0) - audioTimesNs.get(0)) / 1000;
+        assertTrue("Start skew " + startSkewUs + " us", startSkewUs < MediaFileReader.DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000);
+        assertTrue("Max lip sync error " + mfr.getMaxLipSyncErrorUs() + " us",
+                mfr.getMaxLipSyncErrorUs() < MediaFileReader.DEFAULT_LATE_FRAME_THRESHOLD_MS * 1000);
+        assertTrue(SdkMetrics.REGISTRY.getCount(SdkMetrics.FILE_LIP_SYNC_ERROR_SECONDS) > lipSyncCount);
+    }
+
+    /**
+     * Timestamps should increase by a frame duration, a dropped frame leaves a gap of more frames
+     */
+    private static void assertContinuousTimestamps(List<Long> timestampsUs) {
+        for (int i = 1; i < timestampsUs.size(); i++) {
+            long intervalUs = timestampsUs.get(i) - timestampsUs.get(i - 1);
+            assertTrue("Interval " + intervalUs + " at frame " + i, intervalUs > 0);
+            assertEquals(0, intervalUs % FRAME_DURATION_US);
+        }
+    }
+
+    @Test
+    public void testSingleFileIsLoopedOnTheSameDecoder() throws Exception {
+        FakeVideoDecoder fakeDecoder = new FakeVideoDecoder();
+        List<Long> timestampsUs = Collections.synchronizedList(new ArrayList<>());
+        MediaFileReader[] reader = new MediaFileReader[1];
+        MediaFileReader mfr = fakeDecoder.createReader(image -> timestampsUs.add(reader[0].getPresentationTimeUs()));
+        reader[0] = mfr;
+        mfr.withLooping(true);
+
+        mfr.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (timestampsUs.size() < FRAME_COUNT + 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        mfr.stop();
+        verify(fakeDecoder.extractor, timeout(5000)).release();
+
+        assertTrue(timestampsUs.size() >= FRAME_COUNT + 10);
+        verify(fakeDecoder.extractor, atLeastOnce()).seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        //decoder isn't flushed or created again at the loop boundary
+        verify(mfr, times(1)).getMediaCodec();
+        verify(fakeDecoder.codec.decoder, times(1)).start();
+        verify(fakeDecoder.codec.decoder, never()).queueInputBuffer(anyInt(), anyInt(), anyInt(), anyLong(), eq(MediaCodec.BUFFER_FLAG_END_OF_STREAM));
+        //second loop continues one frame after the last frame of the file
+        assertContinuousTimestamps(timestampsUs);
+        assertTrue(timestampsUs.contains(FRAME_COUNT * FRAME_DURATION_US) || mfr.getDroppedFrameCount() > 0);
+    }
+
+    @Test
+    public void testPlaylistSwitchesToPreloadedDecoder() throws IOException {
+        FakeVideoDecoder firstItem = new FakeVideoDecoder();
+        FakeVideoDecoder secondItem = new FakeVideoDecoder("video/hevc");
+        List<Long> timestampsUs = Collections.synchronizedList(new ArrayList<>());
+        MediaFileReader[] reader = new MediaFileReader[1];
+
+        MediaFileReader mfr = spy(MediaFileReader.fromPaths("src/test/resources/dummy.file", "src/test/resources/dummy.file")
+                .withVideoFrameListener(image -> timestampsUs.add(reader[0].getPresentationTimeUs()))
+                .withFrameType(MediaFileReader.FrameType.video));
+        reader[0] = mfr;
+        doReturn(firstItem.codec.decoder).when(mfr).getMediaCodec();
+        doReturn(secondItem.codec.decoder).when(mfr).getMediaCodec(secondItem.format);
+        doReturn(secondItem.extractor).when(mfr).createMediaExtractor(1);
+        mfr.setMediaExtractorForTest(firstItem.extractor);
+
+        mfr.start();
+        verify(secondItem.extractor, timeout(10000)).release();
+
+        assertEquals(1, mfr.getCurrentItemIndex());
+        assertEquals(2 * FRAME_COUNT, mfr.getRenderedFrameCount() + mfr.getDroppedFrameCount());
+        verify(secondItem.extractor).selectTrack(0);
+        //decoder of the second item is started before the first item ends, first decoder is drained and released
+        verify(secondItem.codec.decoder).configure(secondItem.format, null, null, 0);
+        verify(secondItem.codec.decoder).start();
+        verify(firstItem.codec.decoder).queueInputBuffer(anyInt(), anyInt(), anyInt(), anyLong(), eq(MediaCodec.BUFFER_FLAG_END_OF_STREAM));
+        verify(firstItem.extractor).release();
+        verify(firstItem.codec.decoder).release();
+        verify(secondItem.codec.decoder).release();
+        assertTrue(firstItem.codec.heldOutputIndexes.isEmpty());
+        assertTrue(secondItem.codec.heldOutputIndexes.isEmpty());
+
+        //timestamps of the second item continue from the end of the first one
+        assertContinuousTimestamps(timestampsUs);
+        if (mfr.getDroppedFrameCount() == 0) {
+            assertEquals((2 * FRAME_COUNT - 1) * FRAME_DURATION_US, (long) timestampsUs.get(timestampsUs.size() - 1));
+        }
+    }
+
+    @Test
+    public void testVideoIsRenderedToTheSurfaceOfTheCapturer() throws IOException {
+        FakeVideoDecoder fakeDecoder = new FakeVideoDecoder();
+        when(fakeDecoder.format.containsKey(MediaFormat.KEY_WIDTH)).thenReturn(true);
+        when(fakeDecoder.format.containsKey(MediaFormat.KEY_HEIGHT)).thenReturn(true);
+        when(fakeDecoder.format.getInteger(MediaFormat.KEY_WIDTH)).thenReturn(1920);
+        when(fakeDecoder.format.getInteger(MediaFormat.KEY_HEIGHT)).thenReturn(1080);
+        SurfaceTextureHelper surfaceTextureHelper = mock(SurfaceTextureHelper.class);
+        when(surfaceTextureHelper.getSurfaceTexture()).thenReturn(mock(SurfaceTexture.class));
+        CustomVideoCapturer videoCapturer = new CustomVideoCapturer();
+        videoCapturer.initialize(surfaceTextureHelper, mock(Context.class), mock(CapturerObserver.class));
+        MediaFileReader.VideoFrameListener videoListener = mock(MediaFileReader.VideoFrameListener.class);
+
+        MediaFileReader mfr = fakeDecoder.createReader(videoListener).withVideoCapturer(videoCapturer);
+        mfr.start();
+        verify(fakeDecoder.extractor, timeout(5000)).release();
+
+        verify(fakeDecoder.codec.decoder).configure(eq(fakeDecoder.format), any(Surface.class), (MediaCrypto) eq(null), eq(0));
+        verify(surfaceTextureHelper).setTextureSize(1920, 1080);
+        verify(surfaceTextureHelper).setFrameRotation(0);
+        //frames are released to the surface at their presentation time instead of being copied to the listener
+        assertEquals(FRAME_COUNT, mfr.getRenderedFrameCount() + mfr.getDroppedFrameCount());
+        verify(fakeDecoder.codec.decoder, times((int) mfr.getRenderedFrameCount())).releaseOutputBuffer(anyInt(), anyLong());
+        verify(fakeDecoder.codec.decoder, never()).getOutputImage(anyInt());
+        verify(videoListener, never()).onYuvImage(any(Image.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCapturerShouldBeInitializedForSurfaceOutput() throws IOException {
+        FakeVideoDecoder fakeDecoder = new FakeVideoDecoder();
+        fakeDecoder.createReader(image -> {}).withVideoCapturer(new CustomVideoCapturer()).start();
+    }
 }
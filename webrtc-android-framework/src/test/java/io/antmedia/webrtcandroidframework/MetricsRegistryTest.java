@@ -0,0 +1,141 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import io.antmedia.webrtcandroidframework.core.MetricsRegistry;
+import io.antmedia.webrtcandroidframework.core.MetricsServer;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testOpenMetricsText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        int reports = registry.counter("test_reports", "Parsed reports");
+        int bitrate1 = registry.gauge("test_bitrate", "Bitrate", MetricsRegistry.labels("stream_id", "stream1"));
+        int parseTime = registry.histogram("test_parse_seconds", "Parse time", new double[]{0.01, 0.1});
+        int bitrate2 = registry.gauge("test_bitrate", "Bitrate", MetricsRegistry.labels("stream_id", "stream\"2"));
+
+        registry.increment(reports);
+        registry.add(reports, 2);
+        registry.set(bitrate1, 500000);
+        registry.set(bitrate2, 0.5);
+        registry.observe(parseTime, 0.005);
+        registry.observe(parseTime, 0.05);
+        registry.observe(parseTime, 1);
+
+        String expected = "# TYPE test_reports counter\n"
+                + "# HELP test_reports Parsed reports\n"
+                + "test_reports_total 3\n"
+                + "# TYPE test_bitrate gauge\n"
+                + "# HELP test_bitrate Bitrate\n"
+                + "test_bitrate{stream_id=\"stream1\"} 500000\n"
+                + "test_bitrate{stream_id=\"stream\\\"2\"} 0.5\n"
+                + "# TYPE test_parse_seconds histogram\n"
+                + "# HELP test_parse_seconds Parse time\n"
+                + "test_parse_seconds_bucket{le=\"0.01\"} 1\n"
+                + "test_parse_seconds_bucket{le=\"0.1\"} 2\n"
+                + "test_parse_seconds_bucket{le=\"+Inf\"} 3\n"
+                + "test_parse_seconds_count 3\n"
+                + "test_parse_seconds_sum 1.055\n"
+                + "# EOF\n";
+        assertEquals(expected, registry.toOpenMetrics());
+    }
+
+    @Test
+    public void testRegisterAndRemove() {
+        MetricsRegistry registry = new MetricsRegistry();
+        int gauge = registry.gauge("test_gauge", null, MetricsRegistry.labels("stream_id", "stream1"));
+        assertEquals(gauge, registry.gauge("test_gauge", null, MetricsRegistry.labels("stream_id", "stream1")));
+
+        registry.set(gauge, 3);
+        registry.remove(gauge);
+        assertFalse(registry.toOpenMetrics().contains("test_gauge"));
+
+        //id of the removed metric is reused and starts from 0
+        assertEquals(gauge, registry.gauge("test_gauge", null, MetricsRegistry.labels("stream_id", "stream2")));
+        assertEquals(0, registry.getValue(gauge), 0);
+
+        //registry grows beyond its initial capacity
+        for (int i = 0; i < 100; i++) {
+            registry.increment(registry.counter("test_counter_" + i, null));
+        }
+        assertTrue(registry.toOpenMetrics().contains("test_counter_99_total 1\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_metric", null);
+        registry.gauge("test_metric", null);
+    }
+
+    @Test
+    public void testUpdatesDoNotAllocate() throws Exception {
+        if (!AllocationCounter.isSupported()) {
+            return;
+        }
+        MetricsRegistry registry = new MetricsRegistry();
+        int counter = registry.counter("test_counter", null);
+        int gauge = registry.gauge("test_gauge", null);
+        int histogram = registry.histogram("test_histogram", null, MetricsRegistry.DEFAULT_LATENCY_BUCKETS);
+
+        //warm-up lets the updates be compiled, the fewest bytes of the measured runs is checked
+        long allocatedBytes = AllocationCounter.measureMinAllocatedBytes(10, 10, () -> {
+            for (int i = 0; i < 10000; i++) {
+                update(registry, counter, gauge, histogram, i);
+            }
+        });
+
+        //an allocation per update would be at least 160000 bytes
+        assertTrue("Allocated " + allocatedBytes + " bytes for 10000 updates", allocatedBytes < 256);
+        assertEquals(200000, registry.getValue(counter), 0);
+        assertEquals(200000, registry.getCount(histogram));
+    }
+
+    private static void update(MetricsRegistry registry, int counter, int gauge, int histogram, int i) {
+        registry.increment(counter);
+        registry.set(gauge, i);
+        registry.observe(histogram, (i % 100) / 100.0);
+    }
+
+    @Test
+    public void testMetricsServer() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.increment(registry.counter("test_reports", null));
+        MetricsServer metricsServer = new MetricsServer(registry, 0);
+        metricsServer.start();
+        try {
+            assertTrue(metricsServer.isRunning());
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + metricsServer.getPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsRegistry.CONTENT_TYPE, connection.getContentType());
+            assertEquals(registry.toOpenMetrics(), read(connection.getInputStream()));
+            connection.disconnect();
+        } finally {
+            metricsServer.stop();
+        }
+        assertFalse(metricsServer.isRunning());
+        assertEquals(-1, metricsServer.getPort());
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        inputStream.close();
+        return outputStream.toString("UTF-8");
+    }
+}
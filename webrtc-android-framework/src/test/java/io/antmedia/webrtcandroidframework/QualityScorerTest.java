@@ -0,0 +1,98 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.antmedia.webrtcandroidframework.core.QualityScorer;
+import io.antmedia.webrtcandroidframework.core.model.QualityScore;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+public class QualityScorerTest {
+
+    @Test
+    public void testAudioMos() {
+        double perfect = QualityScorer.computeAudioMos(0, 0, 0);
+        assertTrue(perfect > 4.3 && perfect <= QualityScorer.MAX_MOS);
+
+        double typical = QualityScorer.computeAudioMos(1, 20, 100);
+        assertTrue(typical < perfect && typical > 4);
+
+        //latency impairment increases after 160ms effective latency
+        assertTrue(QualityScorer.computeAudioMos(0, 50, 600) < 3.8);
+        assertTrue(QualityScorer.computeAudioMos(20, 0, 50) < 2.6);
+        assertEquals(QualityScorer.MIN_SCORE, QualityScorer.computeAudioMos(50, 100, 1000), 0);
+    }
+
+    @Test
+    public void testVideoScore() {
+        assertEquals(QualityScorer.MAX_SCORE, QualityScorer.computeVideoScore(0, 50, 30, 0), 0);
+        assertEquals(4, QualityScorer.computeVideoScore(4, 50, 30, 0), 0.0001);
+        assertEquals(3, QualityScorer.computeVideoScore(0, 50, 30, 0.25), 0.0001);
+        assertEquals(4.25, QualityScorer.computeVideoScore(0, 50, 7.5, 0), 0.0001);
+        //unknown frame rate isn't penalized
+        assertEquals(QualityScorer.MAX_SCORE, QualityScorer.computeVideoScore(0, 50, 0, 0), 0);
+        assertEquals(QualityScorer.MIN_SCORE, QualityScorer.computeVideoScore(30, 1000, 5, 1), 0);
+    }
+
+    @Test
+    public void testTrackScore() {
+        TrackStats trackStats = new TrackStats();
+        trackStats.setJitter(0.01);
+        assertEquals(0, QualityScorer.score(trackStats, false, false, 0.1), 0);
+
+        trackStats.setPacketsReceived(0);
+        trackStats.updateRates(1000);
+        trackStats.setPacketsReceived(50);
+        trackStats.updateRates(2000);
+        double score = QualityScorer.score(trackStats, false, false, 0.1);
+        assertEquals(QualityScorer.computeAudioMos(0, 10, 100), score, 0.0001);
+        assertEquals(score, trackStats.getQualityScore(), 0);
+
+        //no packets flowed since the last report
+        trackStats.updateRates(3000);
+        assertEquals(0, QualityScorer.score(trackStats, false, false, 0.1), 0);
+    }
+
+    @Test
+    public void testFreezeRatio() {
+        TrackStats trackStats = new TrackStats();
+        trackStats.updateRates(1000);
+        trackStats.setTotalFreezesDuration(0.5);
+        trackStats.updateRates(3000);
+        assertEquals(0.25, trackStats.getFreezeRatio(), 0.0001);
+        trackStats.updateRates(4000);
+        assertEquals(0, trackStats.getFreezeRatio(), 0);
+    }
+
+    @Test
+    public void testCombinedScore() {
+        QualityScore qualityScore = new QualityScore();
+        qualityScore.begin();
+        assertFalse(qualityScore.end(1000));
+        assertEquals(QualityScore.QUALITY_UNKNOWN, qualityScore.getNetworkQuality());
+
+        qualityScore.begin();
+        qualityScore.addAudioMos(QualityScorer.MAX_MOS);
+        qualityScore.addVideoScore(4.5);
+        qualityScore.addVideoScore(0);
+        assertTrue(qualityScore.end(2000));
+        assertEquals(4.5, qualityScore.getScore(), 0.0001);
+        assertEquals(QualityScore.QUALITY_EXCELLENT, qualityScore.getNetworkQuality());
+
+        //worst track determines the score
+        qualityScore.begin();
+        qualityScore.addAudioMos(QualityScorer.MAX_MOS);
+        qualityScore.addVideoScore(4.5);
+        qualityScore.addVideoScore(3);
+        assertTrue(qualityScore.end(3000));
+        assertEquals(3, qualityScore.getVideoScore(), 0);
+        assertEquals(QualityScore.QUALITY_BAD, qualityScore.getNetworkQuality());
+        assertEquals(3000, qualityScore.getTimeMs());
+
+        assertEquals(QualityScore.QUALITY_VERY_BAD, QualityScore.toNetworkQuality(QualityScorer.MIN_SCORE));
+        assertEquals(QualityScorer.MAX_SCORE, QualityScore.normalizeMos(QualityScorer.MAX_MOS), 0.0001);
+    }
+}
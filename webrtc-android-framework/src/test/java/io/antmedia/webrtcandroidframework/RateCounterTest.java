@@ -0,0 +1,76 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import io.antmedia.webrtcandroidframework.core.model.RateCounter;
+
+public class RateCounterTest {
+
+    @Test
+    public void testRatesWithSubSecondPrecision() {
+        RateCounter rateCounter = new RateCounter(4, 0.5);
+
+        rateCounter.add(1000, 0);
+        assertEquals(0, rateCounter.getRate(), 0);
+        assertEquals(0, rateCounter.getWindowRate(), 0);
+
+        //1000 in 250ms -> 4000 per second
+        rateCounter.add(1250, 1000);
+        assertEquals(4000, rateCounter.getRate(), 0.001);
+        assertEquals(4000, rateCounter.getEwmaRate(), 0.001);
+        assertEquals(4000, rateCounter.getWindowRate(), 0.001);
+        assertEquals(1000, rateCounter.getDelta());
+
+        //1000 in 500ms -> 2000 per second
+        rateCounter.add(1750, 2000);
+        assertEquals(2000, rateCounter.getRate(), 0.001);
+        assertEquals(3000, rateCounter.getEwmaRate(), 0.001);
+        //2000 in 750ms
+        assertEquals(2666.666, rateCounter.getWindowRate(), 0.001);
+        assertEquals(2000, rateCounter.getWindowDelta());
+    }
+
+    @Test
+    public void testWindowSlides() {
+        RateCounter rateCounter = new RateCounter(3, 0.5);
+        rateCounter.add(0, 0);
+        rateCounter.add(1000, 100);
+        rateCounter.add(2000, 200);
+        rateCounter.add(3000, 1200);
+
+        assertEquals(3, rateCounter.size());
+        //window is 1000ms->3000ms, 1100 in 2 seconds
+        assertEquals(550, rateCounter.getWindowRate(), 0.001);
+        assertEquals(2000, rateCounter.getWindowDurationMs(), 0);
+        assertEquals(1000, rateCounter.getRate(), 0.001);
+        assertEquals(1200, rateCounter.getValue());
+    }
+
+    @Test
+    public void testStaleAndResetSamples() {
+        RateCounter rateCounter = new RateCounter();
+        rateCounter.add(1000, 100);
+        rateCounter.add(2000, 200);
+
+        //same timestamp is ignored
+        rateCounter.add(2000, 500);
+        assertEquals(200, rateCounter.getValue());
+        assertEquals(100, rateCounter.getRate(), 0.001);
+
+        //counter goes backwards, history is cleared
+        rateCounter.add(3000, 10);
+        assertEquals(1, rateCounter.size());
+        assertEquals(0, rateCounter.getRate(), 0);
+        assertEquals(10, rateCounter.getValue());
+
+        rateCounter.add(3500, 60);
+        assertEquals(100, rateCounter.getRate(), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new RateCounter(1, 0.5);
+    }
+}
@@ -0,0 +1,123 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.core.RtcEventLogRecorder;
+
+public class RtcEventLogRecorderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static class FakeEventLog implements RtcEventLogRecorder.EventLog {
+        private File outputFile;
+        private int maxSizeBytes;
+        private int startCount;
+        private int stopCount;
+
+        @Override
+        public boolean start(File outputFile, int maxSizeBytes) {
+            this.outputFile = outputFile;
+            this.maxSizeBytes = maxSizeBytes;
+            startCount++;
+            try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+                outputStream.write(new byte[16]);
+            } catch (IOException e) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            stopCount++;
+        }
+    }
+
+    @Test
+    public void testSegmentsAreRotated() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        RtcEventLogRecorder recorder = new RtcEventLogRecorder(directory, 4000, 0, 0, Runnable::run);
+        FakeEventLog eventLog = new FakeEventLog();
+
+        recorder.arm("stream1", eventLog);
+        assertTrue(recorder.isArmed("stream1"));
+        assertEquals(1000, eventLog.maxSizeBytes);
+
+        for (int i = 0; i < 6; i++) {
+            recorder.rotate("stream1");
+        }
+        List<File> segments = recorder.getSegments("stream1");
+        assertEquals(RtcEventLogRecorder.SEGMENT_COUNT, segments.size());
+        assertEquals(eventLog.outputFile, segments.get(segments.size() - 1));
+        assertEquals(RtcEventLogRecorder.SEGMENT_COUNT, eventLog.outputFile.getParentFile().listFiles().length);
+        assertEquals(7, eventLog.startCount);
+        assertEquals(6, eventLog.stopCount);
+
+        //segments are deleted if there is no anomaly
+        recorder.disarm("stream1");
+        assertFalse(recorder.isArmed("stream1"));
+        assertEquals(7, eventLog.stopCount);
+        assertEquals(0, eventLog.outputFile.getParentFile().listFiles().length);
+        assertTrue(recorder.getCaptures().isEmpty());
+    }
+
+    @Test
+    public void testAnomalyIsCaptured() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        RtcEventLogRecorder recorder = new RtcEventLogRecorder(directory, 4000, 0, 0, Runnable::run);
+        FakeEventLog eventLog = new FakeEventLog();
+
+        //streams that are not armed are ignored
+        recorder.onAnomaly("stream2", RtcEventLogRecorder.REASON_LOSS_BURST);
+
+        recorder.arm("stream1", eventLog);
+        recorder.rotate("stream1");
+        recorder.onAnomaly("stream1", RtcEventLogRecorder.REASON_RTT_SPIKE);
+
+        List<File> captures = recorder.getCaptures();
+        assertEquals(1, captures.size());
+        assertTrue(captures.get(0).getName().startsWith("stream1-"));
+        assertTrue(captures.get(0).getName().endsWith("-" + RtcEventLogRecorder.REASON_RTT_SPIKE));
+        assertEquals(2, captures.get(0).listFiles().length);
+
+        //logging continues in a new segment
+        assertTrue(recorder.isArmed("stream1"));
+        assertEquals(1, recorder.getSegments("stream1").size());
+        assertTrue(eventLog.outputFile.exists());
+
+        //anomalies in the cooldown are ignored
+        recorder.onAnomaly("stream1", RtcEventLogRecorder.REASON_LOSS_BURST);
+        assertEquals(1, recorder.getCaptures().size());
+
+        recorder.disarmAll();
+    }
+
+    @Test
+    public void testPendingCaptureIsPersistedOnDisarm() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        RtcEventLogRecorder recorder = new RtcEventLogRecorder(directory, 4000, 0, 60000, Runnable::run);
+        FakeEventLog eventLog = new FakeEventLog();
+
+        recorder.arm("stream1", eventLog);
+        recorder.onAnomaly("stream1", RtcEventLogRecorder.REASON_ICE_DISCONNECTED);
+        assertTrue(recorder.getCaptures().isEmpty());
+
+        //peer connection is closed before the post anomaly window ends
+        recorder.disarm("stream1");
+        List<File> captures = recorder.getCaptures();
+        assertEquals(1, captures.size());
+        assertEquals(1, captures.get(0).listFiles().length);
+    }
+}
@@ -0,0 +1,123 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
+import io.antmedia.webrtcandroidframework.core.StallDetector;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+public class StallDetectorTest {
+
+    @Test
+    public void testVideoStallIsDetectedFromFrames() {
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        StallDetector stallDetector = new StallDetector();
+        stallDetector.setWebRTCListener(listener);
+        List<Long> stallDurations = new ArrayList<>();
+        stallDetector.setStallRecovery((streamId, trackId, stallDurationMs) -> stallDurations.add(stallDurationMs), 300);
+
+        StallDetector.TrackMonitor monitor = stallDetector.monitor("stream1", "track1");
+        //30 fps
+        for (long time = 0; time <= 990; time += 33) {
+            monitor.onFrame(time);
+            stallDetector.check(time);
+        }
+        assertEquals(183, monitor.getFreezeThresholdMs());
+
+        stallDetector.check(1100);
+        assertFalse(monitor.isStalled());
+        verify(listener, never()).onVideoStalled(anyString(), anyString());
+
+        //detected within a check period of the freeze threshold
+        stallDetector.check(1200);
+        assertTrue(monitor.isStalled());
+        verify(listener, times(1)).onVideoStalled("stream1", "track1");
+
+        stallDetector.check(1300);
+        stallDetector.check(1400);
+        assertEquals(1, stallDurations.size());
+        assertEquals(310, (long) stallDurations.get(0));
+        verify(listener, times(1)).onVideoStalled("stream1", "track1");
+
+        monitor.onFrame(1500);
+        stallDetector.check(1550);
+        assertFalse(monitor.isStalled());
+        verify(listener, times(1)).onVideoResumed("stream1", "track1", 510);
+    }
+
+    @Test
+    public void testVideoStallIsDetectedFromStats() {
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        StallDetector stallDetector = new StallDetector();
+        stallDetector.setWebRTCListener(listener);
+
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+        long[] framesDecoded = {0, 30, 60, 60, 60, 90};
+        for (int i = 0; i < framesDecoded.length; i++) {
+            trackStats.setFramesDecoded(framesDecoded[i]);
+            trackStats.updateRates(i * 1000);
+            stallDetector.onVideoStats("stream1", trackStats, i * 1000L);
+        }
+
+        verify(listener, times(1)).onVideoStalled("stream1", "track1");
+        verify(listener, times(1)).onVideoResumed("stream1", "track1", 2000);
+    }
+
+    @Test
+    public void testStatsAreIgnoredForMonitoredTracks() {
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        StallDetector stallDetector = new StallDetector();
+        stallDetector.setWebRTCListener(listener);
+        stallDetector.monitor("stream1", "track1");
+
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+        for (int i = 0; i < 3; i++) {
+            trackStats.updateRates(i * 1000);
+            stallDetector.onVideoStats("stream1", trackStats, i * 1000L);
+        }
+
+        verify(listener, never()).onVideoStalled(anyString(), anyString());
+    }
+
+    @Test
+    public void testAudioConcealmentBurst() {
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        StallDetector stallDetector = new StallDetector();
+        stallDetector.setWebRTCListener(listener);
+
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("audio1");
+        long[] concealmentEvents = {100, 102, 104, 104 + StallDetector.AUDIO_CONCEALMENT_BURST_EVENTS, 110};
+        for (long events : concealmentEvents) {
+            trackStats.setConcealmentEvents(events);
+            stallDetector.onAudioStats("stream1", trackStats);
+        }
+
+        verify(listener, times(1)).onAudioConcealmentBurst("stream1", "audio1", StallDetector.AUDIO_CONCEALMENT_BURST_EVENTS);
+    }
+
+    @Test
+    public void testRemove() {
+        StallDetector stallDetector = new StallDetector();
+        stallDetector.monitor("stream1", "track1");
+        stallDetector.monitor("stream1", "track2");
+        stallDetector.monitor("stream2", "track1");
+
+        stallDetector.remove("stream1", "track1");
+        assertEquals(null, stallDetector.getMonitor("stream1", "track1"));
+        stallDetector.remove("stream1");
+        assertTrue(stallDetector.hasMonitors());
+        stallDetector.clear();
+        assertFalse(stallDetector.hasMonitors());
+    }
+}
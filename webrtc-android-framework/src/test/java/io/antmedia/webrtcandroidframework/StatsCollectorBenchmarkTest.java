@@ -0,0 +1,153 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.antmedia.webrtcandroidframework.core.StatsCollector;
+import io.antmedia.webrtcandroidframework.core.StatsRecorder;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+/**
+ * Feeds synthetic reports to {@link StatsCollector} and measures the bytes allocated per report.
+ * Fixtures are built once, like the member maps delivered by the native layer, so that only the
+ * allocations of the parsing pipeline are measured.
+ */
+public class StatsCollectorBenchmarkTest {
+
+    private static final int TRACK_COUNT = 24;
+    private static final int WARMUP_REPORTS = 2000;
+    private static final int MEASURED_REPORTS = 10000;
+
+    @Test
+    public void testParsingReusesTrackRecords() {
+        StatsCollector statsCollector = new StatsCollector();
+        RTCStatsReport report = createReport(TRACK_COUNT, 1000000);
+
+        statsCollector.onStatsReport("stream1", report);
+        TrackStats firstRecord = statsCollector.getPlayStats("stream1").getVideoTrackStatsMap().get("videoTrack0");
+        assertNotNull(firstRecord);
+
+        statsCollector.onStatsReport("stream1", createReport(TRACK_COUNT, 2000000));
+        TrackStats secondRecord = statsCollector.getPlayStats("stream1").getVideoTrackStatsMap().get("videoTrack0");
+
+        assertSame(firstRecord, secondRecord);
+        assertEquals(TRACK_COUNT, statsCollector.getPlayStats("stream1").getVideoTrackStatsMap().size());
+        assertEquals(TRACK_COUNT, statsCollector.getPlayStats("stream1").getAudioTrackStatsMap().size());
+    }
+
+    @Test
+    public void testAllocationsPerReport() throws Exception {
+        measureAllocations(new StatsCollector(), "Stats parsing");
+    }
+
+    @Test
+    public void testAllocationsPerReportWhileRecording() throws Exception {
+        StatsCollector statsCollector = new StatsCollector();
+        statsCollector.setStatsRecorder(new StatsRecorder(300));
+        measureAllocations(statsCollector, "Stats parsing and recording");
+    }
+
+    private void measureAllocations(StatsCollector statsCollector, String name) throws Exception {
+        if (!AllocationCounter.isSupported()) {
+            return;
+        }
+
+        //timestamps advance so that every report is recorded. Reports are built before the measurement
+        //and they share the member maps of a single report to keep the fixture small.
+        RTCStatsReport template = createReport(TRACK_COUNT, 0);
+        RTCStatsReport[] reports = new RTCStatsReport[WARMUP_REPORTS + MEASURED_REPORTS];
+        for (int i = 0; i < reports.length; i++) {
+            reports[i] = withTimestamp(template, 1000000L * (i + 1));
+        }
+
+        for (int i = 0; i < WARMUP_REPORTS; i++) {
+            statsCollector.onStatsReport("stream1", reports[i]);
+            reports[i] = null;
+        }
+
+        long allocatedBefore = AllocationCounter.getAllocatedBytes();
+        for (int i = WARMUP_REPORTS; i < reports.length; i++) {
+            statsCollector.onStatsReport("stream1", reports[i]);
+        }
+        long allocatedAfter = AllocationCounter.getAllocatedBytes();
+
+        long bytesPerReport = (allocatedAfter - allocatedBefore) / MEASURED_REPORTS;
+
+        //only the iterator of the stats map is expected to be allocated
+        assertTrue(name + " allocated " + bytesPerReport + " bytes per report", bytesPerReport < 256);
+    }
+
+    private static RTCStatsReport withTimestamp(RTCStatsReport template, long timestampUs) {
+        Map<String, RTCStats> statsMap = new HashMap<>();
+        for (RTCStats stats : template.getStatsMap().values()) {
+            statsMap.put(stats.getId(), new RTCStats(timestampUs, stats.getType(), stats.getId(), stats.getMembers()));
+        }
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+
+    private static RTCStatsReport createReport(int trackCount, long timestampUs) {
+        Map<String, RTCStats> statsMap = new HashMap<>();
+
+        Map<String, Object> outboundVideo = new HashMap<>();
+        outboundVideo.put(StatsCollector.SSRC, 1000L);
+        outboundVideo.put(StatsCollector.KIND, StatsCollector.VIDEO);
+        outboundVideo.put(StatsCollector.PACKETS_SENT, 1000L);
+        outboundVideo.put(StatsCollector.BYTES_SENT, BigInteger.valueOf(1000000));
+        outboundVideo.put(StatsCollector.FRAMES_ENCODED, 300L);
+        outboundVideo.put(StatsCollector.FRAMES_SENT, 300L);
+        outboundVideo.put(StatsCollector.NACK_COUNT, 3L);
+        outboundVideo.put(StatsCollector.PLI_COUNT, 2L);
+        outboundVideo.put(StatsCollector.FIR_COUNT, 1L);
+        outboundVideo.put(StatsCollector.TARGET_BITRATE, 1500000.0);
+        outboundVideo.put(StatsCollector.TOTAL_PACKET_SEND_DELAY, 0.5);
+        statsMap.put("outbound-video", new RTCStats(timestampUs, StatsCollector.OUTBOUND_RTP, "outbound-video", outboundVideo));
+
+        Map<String, Object> remoteInbound = new HashMap<>();
+        remoteInbound.put(StatsCollector.SSRC, 1000L);
+        remoteInbound.put(StatsCollector.KIND, StatsCollector.VIDEO);
+        remoteInbound.put(StatsCollector.PACKETS_LOST, 5);
+        remoteInbound.put(StatsCollector.JITTER, 0.01);
+        remoteInbound.put(StatsCollector.ROUND_TRIP_TIME, 0.05);
+        statsMap.put("remote-inbound-video", new RTCStats(timestampUs, StatsCollector.REMOTE_INBOUND_RTP, "remote-inbound-video", remoteInbound));
+
+        for (int i = 0; i < trackCount; i++) {
+            Map<String, Object> inboundVideo = new HashMap<>();
+            inboundVideo.put(StatsCollector.SSRC, (long) i);
+            inboundVideo.put(StatsCollector.KIND, StatsCollector.VIDEO);
+            inboundVideo.put(StatsCollector.TRACK_IDENTIFIER, StatsCollector.VIDEO_TRACK_ID + "videoTrack" + i);
+            inboundVideo.put(StatsCollector.PACKETS_RECEIVED, 1000L);
+            inboundVideo.put(StatsCollector.PACKETS_LOST, 3);
+            inboundVideo.put(StatsCollector.BYTES_RECEIVED, BigInteger.valueOf(1000000));
+            inboundVideo.put(StatsCollector.JITTER, 0.02);
+            inboundVideo.put(StatsCollector.FRAMES_DECODED, 300L);
+            inboundVideo.put(StatsCollector.FRAMES_RECEIVED, 300L);
+            inboundVideo.put(StatsCollector.FRAMES_DROPPED, 1L);
+            inboundVideo.put(StatsCollector.TOTAL_FREEZES_DURATION, 0.0);
+            inboundVideo.put(StatsCollector.NACK_COUNT, 3L);
+            inboundVideo.put(StatsCollector.PLI_COUNT, 2L);
+            inboundVideo.put(StatsCollector.FIR_COUNT, 1L);
+            statsMap.put("inbound-video-" + i, new RTCStats(timestampUs, StatsCollector.INBOUND_RTP, "inbound-video-" + i, inboundVideo));
+
+            Map<String, Object> inboundAudio = new HashMap<>();
+            inboundAudio.put(StatsCollector.SSRC, (long) (trackCount + i));
+            inboundAudio.put(StatsCollector.KIND, StatsCollector.AUDIO);
+            inboundAudio.put(StatsCollector.TRACK_IDENTIFIER, StatsCollector.AUDIO_TRACK_ID + "audioTrack" + i);
+            inboundAudio.put(StatsCollector.PACKETS_LOST, 1);
+            inboundAudio.put(StatsCollector.JITTER, 0.01);
+            inboundAudio.put(StatsCollector.CONCEALMENT_EVENTS, BigInteger.valueOf(2));
+            statsMap.put("inbound-audio-" + i, new RTCStats(timestampUs, StatsCollector.INBOUND_RTP, "inbound-audio-" + i, inboundAudio));
+        }
+
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+}
@@ -11,13 +11,19 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
+import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
 import io.antmedia.webrtcandroidframework.core.StatsCollector;
+import io.antmedia.webrtcandroidframework.core.model.DataChannelStats;
 import io.antmedia.webrtcandroidframework.core.model.PlayStats;
 import io.antmedia.webrtcandroidframework.core.model.PublishStats;
 import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+import io.antmedia.webrtcandroidframework.core.model.TransportStats;
 
 import static org.junit.Assert.assertEquals;
 
@@ -167,6 +173,346 @@ public class StatsCollectorTest {
         assertEquals(100.0, localAudioLevel, 0.0);
     }
 
+    @Test
+    public void testStatsArePartitionedPerStream() {
+        StatsCollector statsCollector = new StatsCollector();
+
+        Map<String, RTCStats> publishStatsMap = new HashMap<>();
+        publishStatsMap.put("publish", new RTCStats(1000, StatsCollector.OUTBOUND_RTP, "publish",
+                createMembersMap(StatsCollector.AUDIO, StatsCollector.OUTBOUND_RTP)));
+        statsCollector.onStatsReport("publisher", new RTCStatsReport(1000, publishStatsMap));
+
+        Map<String, RTCStats> play1StatsMap = new HashMap<>();
+        play1StatsMap.put("play1", new RTCStats(2000000, StatsCollector.INBOUND_RTP, "play1",
+                createMembersMap(StatsCollector.VIDEO, StatsCollector.INBOUND_RTP)));
+        statsCollector.onStatsReport("player1", new RTCStatsReport(2000000, play1StatsMap));
+
+        Map<String, Object> play2Members = createMembersMap(StatsCollector.VIDEO, StatsCollector.INBOUND_RTP);
+        play2Members.put(StatsCollector.TRACK_IDENTIFIER, "ARDAMSvvideoTrack2");
+        Map<String, RTCStats> play2StatsMap = new HashMap<>();
+        play2StatsMap.put("play2", new RTCStats(5000000, StatsCollector.INBOUND_RTP, "play2", play2Members));
+        statsCollector.onStatsReport("player2", new RTCStatsReport(5000000, play2StatsMap));
+
+        assertEquals(3, statsCollector.getPeerStatsMap().size());
+
+        //each peer keeps its own timestamp
+        assertEquals(1.0, statsCollector.getPeerStats("publisher").getLastKnownStatsTimeStampMs(), 0);
+        assertEquals(2000.0, statsCollector.getPeerStats("player1").getLastKnownStatsTimeStampMs(), 0);
+        assertEquals(5000.0, statsCollector.getPeerStats("player2").getLastKnownStatsTimeStampMs(), 0);
+
+        //each player has only its own tracks
+        assertNotNull(statsCollector.getPlayStats("player1").getVideoTrackStatsMap().get("videoTrack1"));
+        assertNull(statsCollector.getPlayStats("player1").getVideoTrackStatsMap().get("videoTrack2"));
+        assertNotNull(statsCollector.getPlayStats("player2").getVideoTrackStatsMap().get("videoTrack2"));
+        assertNull(statsCollector.getPlayStats("player2").getVideoTrackStatsMap().get("videoTrack1"));
+
+        //aggregated views
+        assertEquals(2, statsCollector.getPlayStats().getVideoTrackStatsMap().size());
+        assertSame(statsCollector.getPublishStats("publisher"), statsCollector.getPublishStats());
+        assertEquals(10, statsCollector.getPublishStats().getAudioTrackStats().getPacketsSent());
+
+        statsCollector.removePeerStats("player1");
+        assertNull(statsCollector.getPeerStats("player1"));
+        assertEquals(1, statsCollector.getPlayStats().getVideoTrackStatsMap().size());
+        assertNotNull(statsCollector.getPlayStats().getVideoTrackStatsMap().get("videoTrack2"));
+
+        statsCollector.reset();
+        assertTrue(statsCollector.getPeerStatsMap().isEmpty());
+        assertTrue(statsCollector.getPlayStats().getVideoTrackStatsMap().isEmpty());
+    }
+
+    @Test
+    public void testPublishStatsOfPrimaryPublisher() {
+        StatsCollector statsCollector = new StatsCollector();
+
+        statsCollector.onStatsReport("publisher1", createPublishReport(1000000, 1000, 100, 0));
+        statsCollector.onStatsReport("publisher2", createPublishReport(1000000, 2000, 200, 0));
+        statsCollector.onStatsReport("publisher1", createPublishReport(1500000, 3000, 300, 0));
+        statsCollector.onStatsReport("publisher2", createPublishReport(1500000, 4000, 400, 0));
+
+        //the last reporting peer doesn't replace the primary publisher
+        assertEquals("publisher1", statsCollector.getPrimaryPublisherId());
+        assertSame(statsCollector.getPublishStats("publisher1"), statsCollector.getPublishStats());
+
+        statsCollector.removePeerStats("publisher1");
+        assertNull(statsCollector.getPrimaryPublisherId());
+        assertEquals(0, statsCollector.getPublishStats().getVideoTrackStats().getPacketsSent());
+
+        statsCollector.onStatsReport("publisher2", createPublishReport(2000000, 5000, 500, 0));
+        assertEquals("publisher2", statsCollector.getPrimaryPublisherId());
+        assertSame(statsCollector.getPublishStats("publisher2"), statsCollector.getPublishStats());
+    }
+
+    @Test
+    public void testPublishBitrateAndLossRatio() {
+        StatsCollector statsCollector = new StatsCollector();
+
+        statsCollector.onStatsReport("publisher", createPublishReport(1000000, 1000, 100, 0));
+        PublishStats publishStats = statsCollector.getPublishStats("publisher");
+        assertEquals(0, publishStats.getVideoBitrate());
+
+        //100000 bytes and 100 packets in 500ms, 5 of them are lost
+        statsCollector.onStatsReport("publisher", createPublishReport(1500000, 101000, 200, 5));
+
+        assertEquals(1600000, publishStats.getVideoBitrate());
+        assertEquals(101000, publishStats.getLastKnownVideoBytesSent());
+
+        TrackStats videoTrackStats = publishStats.getVideoTrackStats();
+        assertEquals(200, videoTrackStats.getPacketsSentPerSecond());
+        assertEquals(5.0, videoTrackStats.getPacketLostRatio(), 0.001);
+        assertEquals(5.0, videoTrackStats.getWindowPacketLostRatio(), 0.001);
+        assertEquals(1600000, videoTrackStats.getWindowBitrate());
+    }
+
+    @Test
+    public void testScopedReportDoesNotUpdateQualityScore() {
+        StatsCollector statsCollector = new StatsCollector();
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        statsCollector.setWebRTCListener(listener);
+
+        //report of a single sender updates its track but it doesn't score the peer
+        statsCollector.onScopedStatsReport("publisher", createPublishReport(1000000, 1000, 100, 0));
+        statsCollector.onScopedStatsReport("publisher", createPublishReport(1500000, 101000, 200, 5));
+        assertEquals(1600000, statsCollector.getPublishStats("publisher").getVideoBitrate());
+        assertEquals(0, statsCollector.getPeerStats("publisher").getQualityScore().getScore(), 0);
+        verify(listener, never()).onNetworkQuality(anyString(), any());
+
+        statsCollector.onStatsReport("publisher", createPublishReport(2000000, 201000, 300, 10));
+        assertTrue(statsCollector.getPeerStats("publisher").getQualityScore().getScore() > 0);
+        verify(listener, times(1)).onNetworkQuality(eq("publisher"), any());
+    }
+
+    @Test
+    public void testPlayRates() {
+        StatsCollector statsCollector = new StatsCollector();
+        Map<String, Object> members = createMembersMap(StatsCollector.VIDEO, StatsCollector.INBOUND_RTP);
+        Map<String, RTCStats> statsMap = new HashMap<>();
+        statsMap.put("inbound", new RTCStats(1000000, StatsCollector.INBOUND_RTP, "inbound", members));
+        statsCollector.onStatsReport("player", new RTCStatsReport(1000000, statsMap));
+
+        members = createMembersMap(StatsCollector.VIDEO, StatsCollector.INBOUND_RTP);
+        members.put(StatsCollector.PACKETS_RECEIVED, 100L);
+        members.put(StatsCollector.PACKETS_LOST, 20);
+        members.put(StatsCollector.BYTES_RECEIVED, BigInteger.valueOf(26000));
+        members.put(StatsCollector.FRAMES_DECODED, 1015L);
+        statsMap.put("inbound", new RTCStats(1250000, StatsCollector.INBOUND_RTP, "inbound", members));
+        statsCollector.onStatsReport("player", new RTCStatsReport(1250000, statsMap));
+
+        TrackStats videoTrackStats = statsCollector.getPlayStats("player").getVideoTrackStatsMap().get("videoTrack1");
+        //25000 bytes in 250 ms
+        assertEquals(800000, videoTrackStats.getBitrate());
+        assertEquals(60, videoTrackStats.getFramesDecodedRate().getRate(), 0.001);
+        //10 lost, 90 received
+        assertEquals(10.0, videoTrackStats.getPacketLostRatio(), 0.001);
+    }
+
+    @Test
+    public void testTransportStats() {
+        StatsCollector statsCollector = new StatsCollector();
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        statsCollector.setWebRTCListener(listener);
+
+        statsCollector.onStatsReport("stream1", createTransportReport(1000000, "pair1", "relay", 100000));
+        TransportStats transportStats = statsCollector.getTransportStats("stream1");
+        assertNotNull(transportStats);
+        assertSame(transportStats, statsCollector.getPeerStats("stream1").getTransportStats());
+        assertEquals("pair1", transportStats.getSelectedCandidatePairId());
+        assertEquals(1500000, transportStats.getAvailableOutgoingBitrate(), 0);
+        assertEquals(0.04, transportStats.getCurrentRoundTripTime(), 0.0001);
+        assertEquals(0.05, transportStats.getAverageRoundTripTime(), 0.0001);
+        assertEquals("relay", transportStats.getLocalCandidateType());
+        assertEquals("10.0.0.1", transportStats.getLocalAddress());
+        assertEquals(50000, transportStats.getLocalPort());
+        assertEquals("udp", transportStats.getProtocol());
+        assertEquals("wifi", transportStats.getNetworkType());
+        assertEquals("host", transportStats.getRemoteCandidateType());
+        assertEquals("1.2.3.4", transportStats.getRemoteAddress());
+        assertTrue(transportStats.isRelayed());
+        verify(listener, times(1)).onSelectedCandidatePairChanged("stream1", transportStats);
+
+        //same pair, 50000 bytes in 500 ms
+        statsCollector.onStatsReport("stream1", createTransportReport(1500000, "pair1", "relay", 150000));
+        assertEquals(800000, transportStats.getSendBitrate(), 0.001);
+        verify(listener, times(1)).onSelectedCandidatePairChanged("stream1", transportStats);
+
+        //connection switches to a direct path
+        statsCollector.onStatsReport("stream1", createTransportReport(2000000, "pair2", "host", 200000));
+        assertEquals("pair2", transportStats.getSelectedCandidatePairId());
+        assertFalse(transportStats.isRelayed());
+        verify(listener, times(2)).onSelectedCandidatePairChanged("stream1", transportStats);
+    }
+
+    @Test
+    public void testDataChannelStats() {
+        StatsCollector statsCollector = new StatsCollector();
+
+        statsCollector.onStatsReport("stream1", createDataChannelReport(1000000, 10, 1000));
+        Map<String, DataChannelStats> dataChannelStatsMap = statsCollector.getPeerStats("stream1").getDataChannelStats();
+        assertEquals(2, dataChannelStatsMap.size());
+
+        DataChannelStats telemetryStats = dataChannelStatsMap.get("telemetry");
+        assertNotNull(telemetryStats);
+        assertEquals("open", telemetryStats.getState());
+        assertEquals("json", telemetryStats.getProtocol());
+        assertEquals(3, telemetryStats.getDataChannelIdentifier());
+        assertEquals(10, telemetryStats.getMessagesSent());
+        assertEquals(1000, telemetryStats.getBytesSent());
+        assertEquals(2, telemetryStats.getMessagesReceived());
+        assertEquals(200, telemetryStats.getBytesReceived());
+
+        //10 messages and 1000 bytes in 500 ms
+        statsCollector.onStatsReport("stream1", createDataChannelReport(1500000, 20, 2000));
+        assertSame(telemetryStats, dataChannelStatsMap.get("telemetry"));
+        assertEquals(20, telemetryStats.getMessagesSentPerSecond(), 0.001);
+        assertEquals(16000, telemetryStats.getSendBitrate(), 0.001);
+        assertEquals(0, telemetryStats.getMessagesReceivedPerSecond(), 0.001);
+        assertEquals(0, dataChannelStatsMap.get("stream1").getMessagesSent());
+
+        statsCollector.getPeerStats("stream1").reset();
+        assertTrue(dataChannelStatsMap.isEmpty());
+    }
+
+    @Test
+    public void testEncoderAndDecoderHealth() {
+        StatsCollector statsCollector = new StatsCollector();
+        IWebRTCListener listener = mock(IWebRTCListener.class);
+        statsCollector.setWebRTCListener(listener);
+
+        statsCollector.onStatsReport("stream1", createCodecReport(1000000, 300, 3.0, "MediaCodecVideoEncoder", 600, 6.0));
+        statsCollector.onStatsReport("stream1", createCodecReport(2000000, 330, 3.3, "MediaCodecVideoEncoder", 630, 6.15));
+
+        TrackStats publishTrackStats = statsCollector.getPublishStats("stream1").getVideoTrackStats();
+        assertEquals("bandwidth", publishTrackStats.getQualityLimitationReason());
+        assertEquals(1.5, publishTrackStats.getQualityLimitationDuration("bandwidth"), 0.0001);
+        assertEquals(0, publishTrackStats.getQualityLimitationDuration("cpu"), 0.0001);
+        assertEquals(640, publishTrackStats.getFrameWidth());
+        assertEquals(360, publishTrackStats.getFrameHeight());
+        assertEquals(30, publishTrackStats.getFramesPerSecond(), 0.0001);
+        assertTrue(publishTrackStats.isPowerEfficientEncoder());
+        //0.3 seconds for 30 frames
+        assertEquals(0.01, publishTrackStats.getEncodeTimePerFrame(), 0.0001);
+        assertEquals(0.01, publishTrackStats.getAverageEncodeTimePerFrame(), 0.0001);
+
+        TrackStats playTrackStats = statsCollector.getPlayStats("stream1").getVideoTrackStatsMap().get("videoTrack1");
+        assertEquals("libvpx", playTrackStats.getDecoderImplementation());
+        //0.15 seconds for 30 frames
+        assertEquals(0.005, playTrackStats.getDecodeTimePerFrame(), 0.0001);
+        //3 seconds in jitter buffer for 30 frames
+        assertEquals(0.1, playTrackStats.getJitterBufferDelayPerFrame(), 0.0001);
+        assertEquals(0.02, playTrackStats.getProcessingDelayPerFrame(), 0.0001);
+        verify(listener, never()).onCodecImplementationChanged(anyString(), anyString(), anyBoolean(), anyString(), anyString());
+
+        //hardware encoder falls back to software
+        statsCollector.onStatsReport("stream1", createCodecReport(3000000, 360, 3.9, "libvpx", 660, 6.3));
+        assertEquals("libvpx", publishTrackStats.getEncoderImplementation());
+        verify(listener, times(1)).onCodecImplementationChanged("stream1", StatsCollector.VIDEO, true, "MediaCodecVideoEncoder", "libvpx");
+    }
+
+    private RTCStatsReport createCodecReport(long timestampUs, long framesEncoded, double totalEncodeTime, String encoderImplementation,
+                                             long framesDecoded, double totalDecodeTime) {
+        Map<String, Object> outbound = createMembersMap(StatsCollector.VIDEO, StatsCollector.OUTBOUND_RTP);
+        outbound.put(StatsCollector.FRAMES_ENCODED, framesEncoded);
+        outbound.put(StatsCollector.TOTAL_ENCODE_TIME, totalEncodeTime);
+        outbound.put(StatsCollector.ENCODER_IMPLEMENTATION, encoderImplementation);
+        outbound.put(StatsCollector.POWER_EFFICIENT_ENCODER, true);
+        outbound.put(StatsCollector.QUALITY_LIMITATION_REASON, "bandwidth");
+        Map<String, Double> qualityLimitationDurations = new HashMap<>();
+        qualityLimitationDurations.put("none", 10.0);
+        qualityLimitationDurations.put("bandwidth", 1.5);
+        outbound.put(StatsCollector.QUALITY_LIMITATION_DURATIONS, qualityLimitationDurations);
+        outbound.put(StatsCollector.FRAME_WIDTH, 640L);
+        outbound.put(StatsCollector.FRAME_HEIGHT, 360L);
+        outbound.put(StatsCollector.FRAMES_PER_SECOND, 30.0);
+
+        Map<String, Object> inbound = createMembersMap(StatsCollector.VIDEO, StatsCollector.INBOUND_RTP);
+        inbound.put(StatsCollector.FRAMES_DECODED, framesDecoded);
+        inbound.put(StatsCollector.TOTAL_DECODE_TIME, totalDecodeTime);
+        inbound.put(StatsCollector.DECODER_IMPLEMENTATION, "libvpx");
+        inbound.put(StatsCollector.JITTER_BUFFER_DELAY, framesDecoded / 10.0);
+        inbound.put(StatsCollector.JITTER_BUFFER_EMITTED_COUNT, framesDecoded);
+        inbound.put(StatsCollector.TOTAL_PROCESSING_DELAY, framesDecoded / 50.0);
+
+        Map<String, RTCStats> statsMap = new HashMap<>();
+        statsMap.put("outbound", new RTCStats(timestampUs, StatsCollector.OUTBOUND_RTP, "outbound", outbound));
+        statsMap.put("inbound", new RTCStats(timestampUs, StatsCollector.INBOUND_RTP, "inbound", inbound));
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+
+    private RTCStatsReport createTransportReport(long timestampUs, String candidatePairId, String localCandidateType, long bytesSent) {
+        Map<String, RTCStats> statsMap = new HashMap<>();
+
+        Map<String, Object> transport = new HashMap<>();
+        transport.put(StatsCollector.SELECTED_CANDIDATE_PAIR_ID, candidatePairId);
+        transport.put(StatsCollector.DTLS_STATE, "connected");
+        transport.put(StatsCollector.BYTES_SENT, BigInteger.valueOf(bytesSent));
+        transport.put(StatsCollector.BYTES_RECEIVED, BigInteger.valueOf(1000));
+        statsMap.put("transport", new RTCStats(timestampUs, StatsCollector.TRANSPORT, "transport", transport));
+
+        Map<String, Object> candidatePair = new HashMap<>();
+        candidatePair.put(StatsCollector.LOCAL_CANDIDATE_ID, "local-" + candidatePairId);
+        candidatePair.put(StatsCollector.REMOTE_CANDIDATE_ID, "remote-" + candidatePairId);
+        candidatePair.put(StatsCollector.STATE, StatsCollector.SUCCEEDED);
+        candidatePair.put(StatsCollector.NOMINATED, true);
+        candidatePair.put(StatsCollector.AVAILABLE_OUTGOING_BITRATE, 1500000.0);
+        candidatePair.put(StatsCollector.CURRENT_ROUND_TRIP_TIME, 0.04);
+        candidatePair.put(StatsCollector.TOTAL_ROUND_TRIP_TIME, 0.5);
+        candidatePair.put(StatsCollector.RESPONSES_RECEIVED, BigInteger.valueOf(10));
+        statsMap.put(candidatePairId, new RTCStats(timestampUs, StatsCollector.CANDIDATE_PAIR, candidatePairId, candidatePair));
+
+        Map<String, Object> localCandidate = new HashMap<>();
+        localCandidate.put(StatsCollector.CANDIDATE_TYPE, localCandidateType);
+        localCandidate.put(StatsCollector.ADDRESS, "10.0.0.1");
+        localCandidate.put(StatsCollector.PORT, 50000);
+        localCandidate.put(StatsCollector.PROTOCOL, "udp");
+        localCandidate.put(StatsCollector.NETWORK_TYPE, "wifi");
+        statsMap.put("local-" + candidatePairId, new RTCStats(timestampUs, "local-candidate", "local-" + candidatePairId, localCandidate));
+
+        Map<String, Object> remoteCandidate = new HashMap<>();
+        remoteCandidate.put(StatsCollector.CANDIDATE_TYPE, "host");
+        remoteCandidate.put(StatsCollector.IP, "1.2.3.4");
+        remoteCandidate.put(StatsCollector.PORT, 5000);
+        statsMap.put("remote-" + candidatePairId, new RTCStats(timestampUs, "remote-candidate", "remote-" + candidatePairId, remoteCandidate));
+
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+
+    private RTCStatsReport createDataChannelReport(long timestampUs, long messagesSent, long bytesSent) {
+        Map<String, RTCStats> statsMap = new HashMap<>();
+
+        Map<String, Object> telemetry = new HashMap<>();
+        telemetry.put(StatsCollector.LABEL, "telemetry");
+        telemetry.put(StatsCollector.PROTOCOL, "json");
+        telemetry.put(StatsCollector.DATA_CHANNEL_IDENTIFIER, 3);
+        telemetry.put(StatsCollector.STATE, "open");
+        telemetry.put(StatsCollector.MESSAGES_SENT, messagesSent);
+        telemetry.put(StatsCollector.BYTES_SENT, BigInteger.valueOf(bytesSent));
+        telemetry.put(StatsCollector.MESSAGES_RECEIVED, 2L);
+        telemetry.put(StatsCollector.BYTES_RECEIVED, BigInteger.valueOf(200));
+        statsMap.put("D3", new RTCStats(timestampUs, StatsCollector.DATA_CHANNEL, "D3", telemetry));
+
+        Map<String, Object> defaultChannel = new HashMap<>();
+        defaultChannel.put(StatsCollector.LABEL, "stream1");
+        defaultChannel.put(StatsCollector.STATE, "connecting");
+        statsMap.put("D1", new RTCStats(timestampUs, StatsCollector.DATA_CHANNEL, "D1", defaultChannel));
+
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+
+    private RTCStatsReport createPublishReport(long timestampUs, long bytesSent, long packetsSent, int packetsLost) {
+        Map<String, Object> outbound = createMembersMap(StatsCollector.VIDEO, StatsCollector.OUTBOUND_RTP);
+        outbound.put(StatsCollector.BYTES_SENT, BigInteger.valueOf(bytesSent));
+        outbound.put(StatsCollector.PACKETS_SENT, BigInteger.valueOf(packetsSent));
+
+        Map<String, Object> remoteInbound = createMembersMap(StatsCollector.VIDEO, StatsCollector.REMOTE_INBOUND_RTP);
+        remoteInbound.put(StatsCollector.PACKETS_LOST, packetsLost);
+
+        Map<String, RTCStats> statsMap = new HashMap<>();
+        //order of the stats in a report is not defined, lost packets may be parsed before or after the sent ones
+        statsMap.put("remote-inbound", new RTCStats(timestampUs, StatsCollector.REMOTE_INBOUND_RTP, "remote-inbound", remoteInbound));
+        statsMap.put("outbound", new RTCStats(timestampUs, StatsCollector.OUTBOUND_RTP, "outbound", outbound));
+        return new RTCStatsReport(timestampUs, statsMap);
+    }
+
     // Helper method to create a members map
     private Map<String, Object> createMembersMap(String mediaType, String statType) {
         Map<String, Object> membersMap = new HashMap<>();
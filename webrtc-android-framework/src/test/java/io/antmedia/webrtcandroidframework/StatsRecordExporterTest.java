@@ -0,0 +1,77 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.core.StatsRecordExporter;
+import io.antmedia.webrtcandroidframework.core.StatsRecorder;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+public class StatsRecordExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static StatsRecorder createRecorder(long durationMs) {
+        StatsRecorder statsRecorder = new StatsRecorder(durationMs, 10, 10);
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+        statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, 1000);
+        return statsRecorder;
+    }
+
+    @Test
+    public void testRepeatedReasonIsSkippedWithinHistoryDuration() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        StatsRecordExporter exporter = new StatsRecordExporter(createRecorder(60000), directory, Runnable::run);
+
+        assertTrue(exporter.export("no_stream_exist"));
+        //errors of play retries don't write the same history again
+        assertFalse(exporter.export("no_stream_exist"));
+        assertTrue(exporter.export("ice_disconnected"));
+
+        List<File> exports = exporter.getExports();
+        assertEquals(2, exports.size());
+        assertTrue(exports.get(0).getName().endsWith("-no_stream_exist.amsr"));
+        assertTrue(exports.get(0).length() > 0);
+    }
+
+    @Test
+    public void testReasonIsExportedAgainAfterHistoryDuration() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        StatsRecordExporter exporter = new StatsRecordExporter(createRecorder(10), directory, Runnable::run);
+
+        assertTrue(exporter.export("no_stream_exist"));
+        Thread.sleep(20);
+        assertTrue(exporter.export("no_stream_exist"));
+        assertEquals(2, exporter.getExports().size());
+    }
+
+    @Test
+    public void testOldestExportsAreDeleted() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        File otherFile = new File(directory, "other.amsr");
+        assertTrue(otherFile.createNewFile());
+        StatsRecordExporter exporter = new StatsRecordExporter(createRecorder(60000), directory, Runnable::run);
+
+        for (int i = 0; i < StatsRecordExporter.MAX_EXPORTS + 2; i++) {
+            assertTrue(exporter.export("error" + i));
+        }
+
+        List<File> exports = exporter.getExports();
+        assertEquals(StatsRecordExporter.MAX_EXPORTS, exports.size());
+        assertTrue(exports.get(0).getName().endsWith("-error2.amsr"));
+        assertTrue(exports.get(exports.size() - 1).getName().endsWith("-error" + (StatsRecordExporter.MAX_EXPORTS + 1) + ".amsr"));
+        //files of others in the directory are kept
+        assertTrue(otherFile.exists());
+    }
+}
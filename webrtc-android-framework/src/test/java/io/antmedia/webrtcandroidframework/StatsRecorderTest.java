@@ -0,0 +1,153 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import io.antmedia.webrtcandroidframework.core.StatsRecordReader;
+import io.antmedia.webrtcandroidframework.core.StatsRecorder;
+import io.antmedia.webrtcandroidframework.core.model.TrackStats;
+
+public class StatsRecorderTest {
+
+    @Test
+    public void testRingKeepsLatestSamples() {
+        StatsRecorder statsRecorder = new StatsRecorder(3);
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+
+        for (int i = 1; i <= 5; i++) {
+            trackStats.setJitter(i);
+            statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, i * 1000L);
+        }
+        //stale sample is ignored
+        statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, 5000);
+
+        List<StatsRecorder.TrackSeries> seriesList = statsRecorder.snapshot();
+        assertEquals(1, seriesList.size());
+        StatsRecorder.TrackSeries series = seriesList.get(0);
+        assertEquals(3, series.size());
+        assertEquals(3000, series.getTimeMs(0));
+        assertEquals(5000, series.getTimeMs(2));
+        assertEquals(3, series.getValue(0, StatsRecorder.COLUMN_JITTER), 0);
+        assertEquals(5, series.getValue(2, StatsRecorder.COLUMN_JITTER), 0);
+    }
+
+    @Test
+    public void testSamplesAreEvictedByTime() {
+        //expects a sample per second but the track is polled every 250ms and then backed off to 5s
+        StatsRecorder statsRecorder = new StatsRecorder(10000, 10, 100);
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+
+        long timeMs = 0;
+        for (int i = 0; i < 80; i++) {
+            timeMs += 250;
+            statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, timeMs);
+        }
+        StatsRecorder.TrackSeries series = statsRecorder.snapshot().get(0);
+        //ring has grown to keep the last 10 seconds
+        assertEquals(41, series.size());
+        assertEquals(timeMs - 10000, series.getTimeMs(0));
+        assertEquals(timeMs, series.getTimeMs(40));
+
+        for (int i = 0; i < 4; i++) {
+            timeMs += 5000;
+            statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, timeMs);
+        }
+        series = statsRecorder.snapshot().get(0);
+        assertEquals(3, series.size());
+        assertEquals(timeMs - 10000, series.getTimeMs(0));
+        assertEquals(timeMs, series.getTimeMs(2));
+    }
+
+    @Test
+    public void testRingDoesNotGrowBeyondMaxCapacity() {
+        StatsRecorder statsRecorder = new StatsRecorder(10000, 2, 5);
+        TrackStats trackStats = new TrackStats();
+
+        for (int i = 1; i <= 20; i++) {
+            statsRecorder.record("stream1", trackStats, false, StatsRecorder.DIRECTION_PUBLISH, i * 100L);
+        }
+        StatsRecorder.TrackSeries series = statsRecorder.snapshot().get(0);
+        assertEquals(5, series.size());
+        assertEquals(1600, series.getTimeMs(0));
+        assertEquals(2000, series.getTimeMs(4));
+    }
+
+    @Test
+    public void testBinaryExportIsDecoded() throws IOException {
+        StatsRecorder statsRecorder = new StatsRecorder(10);
+        TrackStats videoTrackStats = new TrackStats();
+        TrackStats audioTrackStats = new TrackStats();
+        audioTrackStats.setTrackId("audio1");
+
+        for (int i = 0; i < 4; i++) {
+            videoTrackStats.setBytesSent(i * 125000L);
+            videoTrackStats.setNackCount(i);
+            videoTrackStats.updateRates(i * 1000);
+            statsRecorder.record("stream1", videoTrackStats, true, StatsRecorder.DIRECTION_PUBLISH, i * 1000L);
+
+            audioTrackStats.setRoundTripTime(0.05);
+            audioTrackStats.setConcealmentEvents(i * 2);
+            statsRecorder.record("stream2", audioTrackStats, false, StatsRecorder.DIRECTION_PLAY, i * 1000L);
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        statsRecorder.exportBinary(outputStream);
+        List<StatsRecorder.TrackSeries> seriesList = StatsRecordReader.read(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        assertEquals(2, seriesList.size());
+        for (StatsRecorder.TrackSeries series : seriesList) {
+            assertEquals(4, series.size());
+            if (series.isVideo()) {
+                assertEquals("stream1", series.getStreamId());
+                assertEquals("video", series.getTrackId());
+                assertEquals(StatsRecorder.DIRECTION_PUBLISH, series.getDirection());
+                assertEquals(1000000, series.getValue(3, StatsRecorder.COLUMN_BITRATE), 0);
+                assertEquals(3, series.getValue(3, StatsRecorder.COLUMN_NACK_COUNT), 0);
+            } else {
+                assertEquals("stream2", series.getStreamId());
+                assertEquals("audio1", series.getTrackId());
+                assertEquals(StatsRecorder.DIRECTION_PLAY, series.getDirection());
+                assertEquals(0.05, series.getValue(0, StatsRecorder.COLUMN_ROUND_TRIP_TIME), 0.0001);
+                assertEquals(6, series.getValue(3, StatsRecorder.COLUMN_CONCEALMENT_EVENTS), 0);
+            }
+        }
+
+        //time + 11 floats per sample
+        int sampleBytes = 8 + 4 * StatsRecorder.COLUMNS.length;
+        assertTrue(outputStream.size() < 8 * sampleBytes + 512);
+    }
+
+    @Test
+    public void testCsvExport() throws IOException {
+        StatsRecorder statsRecorder = new StatsRecorder(10);
+        TrackStats trackStats = new TrackStats();
+        trackStats.setTrackId("track1");
+        trackStats.setJitter(0.5);
+        statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, 1000);
+        statsRecorder.record("stream1", trackStats, true, StatsRecorder.DIRECTION_PLAY, 2000);
+
+        StringWriter writer = new StringWriter();
+        statsRecorder.exportCsv(writer);
+        String[] lines = writer.toString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("streamId,trackId,kind,direction,timeMs,bitrate"));
+        assertTrue(lines[2].startsWith("stream1,track1,video,play,2000,"));
+        assertEquals(5 + StatsRecorder.COLUMNS.length, lines[1].split(",").length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFileIsRejected() throws IOException {
+        StatsRecordReader.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+}
@@ -0,0 +1,160 @@
+package io.antmedia.webrtcandroidframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.antmedia.webrtcandroidframework.core.StatsScheduler;
+
+public class StatsSchedulerTest {
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> lastRequestIds = new ConcurrentHashMap<>();
+
+    private final StatsScheduler statsScheduler = new StatsScheduler((streamId, requestId) -> {
+        AtomicInteger count = requests.get(streamId);
+        if (count == null) {
+            count = new AtomicInteger();
+            requests.put(streamId, count);
+            lastRequestIds.put(streamId, new AtomicLong());
+        }
+        lastRequestIds.get(streamId).set(requestId);
+        count.incrementAndGet();
+    });
+
+    @After
+    public void after() {
+        statsScheduler.unsubscribeAll();
+    }
+
+    private int requestCount(String streamId) {
+        AtomicInteger count = requests.get(streamId);
+        return count != null ? count.get() : 0;
+    }
+
+    private long lastRequestId(String streamId) {
+        AtomicLong requestId = lastRequestIds.get(streamId);
+        return requestId != null ? requestId.get() : StatsScheduler.NO_REQUEST;
+    }
+
+    private void completeLastRequest(String streamId, boolean healthy) {
+        statsScheduler.onStatsRequestCompleted(streamId, lastRequestId(streamId), healthy);
+    }
+
+    /**
+     * @return id of the first request after the given one
+     */
+    private long awaitRequest(String streamId, long previousRequestId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lastRequestId(streamId) == previousRequestId && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        long requestId = lastRequestId(streamId);
+        assertNotEquals(previousRequestId, requestId);
+        return requestId;
+    }
+
+    @Test
+    public void testStreamsArePolledIndependently() throws InterruptedException {
+        statsScheduler.subscribe("stream1", 20);
+        statsScheduler.subscribe("stream2", 20);
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(30);
+            completeLastRequest("stream1", false);
+            completeLastRequest("stream2", false);
+        }
+        assertTrue(requestCount("stream1") >= 3);
+        assertTrue(requestCount("stream2") >= 3);
+
+        statsScheduler.unsubscribe("stream1");
+        assertFalse(statsScheduler.isSubscribed("stream1"));
+        int stream1Requests = requestCount("stream1");
+        int stream2Requests = requestCount("stream2");
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(30);
+            completeLastRequest("stream2", false);
+        }
+        assertEquals(stream1Requests, requestCount("stream1"));
+        assertTrue(requestCount("stream2") > stream2Requests);
+    }
+
+    @Test
+    public void testOverlappingRequestsAreCoalesced() throws InterruptedException {
+        statsScheduler.subscribe("stream1", 50);
+
+        //request is not completed in this period, so ticks in between are skipped
+        Thread.sleep(120);
+        assertEquals(1, requestCount("stream1"));
+        assertEquals(1, statsScheduler.getRequestCount("stream1"));
+        assertTrue(statsScheduler.getSkippedRequestCount("stream1") >= 1);
+
+        completeLastRequest("stream1", false);
+        Thread.sleep(60);
+        assertEquals(2, requestCount("stream1"));
+    }
+
+    @Test
+    public void testLateCompletionIsIgnored() throws InterruptedException {
+        statsScheduler.subscribe("stream1", 20);
+        long firstRequestId = awaitRequest("stream1", StatsScheduler.NO_REQUEST);
+
+        //first request times out and it's replaced
+        long secondRequestId = awaitRequest("stream1", firstRequestId);
+        statsScheduler.onStatsRequestCompleted("stream1", firstRequestId, false);
+        //completions of the requests that are not made by the scheduler are ignored too
+        statsScheduler.onStatsRequestCompleted("stream1", StatsScheduler.NO_REQUEST, false);
+        long skippedCount = statsScheduler.getSkippedRequestCount("stream1");
+
+        //second request is still in flight, so the next tick is skipped
+        Thread.sleep(30);
+        assertEquals(secondRequestId, lastRequestId("stream1"));
+        assertEquals(2, requestCount("stream1"));
+        assertTrue(statsScheduler.getSkippedRequestCount("stream1") > skippedCount);
+
+        statsScheduler.onStatsRequestCompleted("stream1", secondRequestId, false);
+        awaitRequest("stream1", secondRequestId);
+        assertEquals(3, requestCount("stream1"));
+    }
+
+    @Test
+    public void testPeriodBacksOff() throws InterruptedException {
+        statsScheduler.subscribe("stream1", 20);
+        statsScheduler.subscribe("stream2", 5000);
+        assertEquals(20, statsScheduler.getEffectivePeriodMs("stream1"));
+
+        long requestId = StatsScheduler.NO_REQUEST;
+        for (int i = 0; i < StatsScheduler.HEALTHY_REPORTS_TO_BACK_OFF - 1; i++) {
+            requestId = awaitRequest("stream1", requestId);
+            statsScheduler.onStatsRequestCompleted("stream1", requestId, true);
+        }
+        assertEquals(20, statsScheduler.getEffectivePeriodMs("stream1"));
+
+        requestId = awaitRequest("stream1", requestId);
+        statsScheduler.onStatsRequestCompleted("stream1", requestId, true);
+        assertEquals(20 * StatsScheduler.HEALTHY_PERIOD_MULTIPLIER, statsScheduler.getEffectivePeriodMs("stream1"));
+
+        statsScheduler.setBackground(true);
+        assertEquals(20 * StatsScheduler.HEALTHY_PERIOD_MULTIPLIER * StatsScheduler.BACKGROUND_PERIOD_MULTIPLIER,
+                statsScheduler.getEffectivePeriodMs("stream1"));
+        assertEquals(StatsScheduler.MAX_BACKED_OFF_PERIOD_MS, statsScheduler.getEffectivePeriodMs("stream2"));
+
+        //coming to foreground polls immediately
+        statsScheduler.setBackground(false);
+        requestId = awaitRequest("stream1", requestId);
+        statsScheduler.onStatsRequestCompleted("stream1", requestId, false);
+        assertEquals(20, statsScheduler.getEffectivePeriodMs("stream1"));
+
+        assertEquals(0, statsScheduler.getEffectivePeriodMs("unknown"));
+    }
+}
@@ -42,6 +42,7 @@ import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
 import org.webrtc.AudioTrack;
+import org.webrtc.CandidatePairChangeEvent;
 import org.webrtc.DataChannel;
 import org.webrtc.IceCandidate;
 import org.webrtc.IceCandidateErrorEvent;
@@ -49,6 +50,9 @@ import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
 import org.webrtc.RtpParameters;
 import org.webrtc.RtpReceiver;
 import org.webrtc.RtpSender;
@@ -62,15 +66,24 @@ import org.webrtc.VideoTrack;
 import org.webrtc.audio.AudioDeviceModule;
 import org.webrtc.audio.JavaAudioDeviceModule;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import io.antmedia.webrtcandroidframework.api.DataChannelParams;
+import io.antmedia.webrtcandroidframework.api.DefaultDataChannelObserver;
 import io.antmedia.webrtcandroidframework.api.IDataChannelObserver;
 import io.antmedia.webrtcandroidframework.api.IWebRTCClient;
 import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
@@ -78,9 +91,16 @@ import io.antmedia.webrtcandroidframework.api.PlayParams;
 import io.antmedia.webrtcandroidframework.apprtc.AppRTCAudioManager;
 import io.antmedia.webrtcandroidframework.core.BlackFrameSender;
 import io.antmedia.webrtcandroidframework.core.CustomVideoCapturer;
+import io.antmedia.webrtcandroidframework.core.DataChannelBatcher;
+import io.antmedia.webrtcandroidframework.core.DataChannelBufferPool;
+import io.antmedia.webrtcandroidframework.core.DataChannelCompressor;
+import io.antmedia.webrtcandroidframework.core.DataChannelMessenger;
 import io.antmedia.webrtcandroidframework.core.ProxyVideoSink;
+import io.antmedia.webrtcandroidframework.core.SdkMetrics;
+import io.antmedia.webrtcandroidframework.core.StatsCollector;
 import io.antmedia.webrtcandroidframework.core.StreamInfo;
 import io.antmedia.webrtcandroidframework.core.WebRTCClient;
+import io.antmedia.webrtcandroidframework.core.model.PlayStats;
 import io.antmedia.webrtcandroidframework.websocket.Broadcast;
 import io.antmedia.webrtcandroidframework.websocket.WebSocketConstants;
 import io.antmedia.webrtcandroidframework.websocket.WebSocketHandler;
@@ -833,6 +853,8 @@ public class WebRTCClientTest {
         webRTCClient.initDataChannel(streamId);
 
         assertEquals(dc, peerInfo.dataChannel);
+        assertTrue(webRTCClient.isDataChannelWritable(streamId));
+        assertFalse(webRTCClient.isDataChannelWritable("stream2"));
 
         IDataChannelObserver dcObserver = mock(IDataChannelObserver.class);
         webRTCClient.getConfig().dataChannelObserver = dcObserver;
@@ -853,9 +875,346 @@ public class WebRTCClientTest {
         webRTCClient.sendMessageViaDataChannel(streamId, buffer);
         verify(dcObserver, timeout(1000).times(2)).onMessageSent(buffer, false);
 
+        assertEquals(-1, webRTCClient.startDataChannelTransfer("stream2", buffer));
+        assertFalse(webRTCClient.cancelDataChannelTransfer(streamId, 1));
+
         webRTCClient.setDataChannelEnabled(false);
         webRTCClient.sendMessageViaDataChannel(streamId, buffer);
         verify(dcObserver, timeout(1000).times(2)).onMessageSent(buffer, false);
+        assertEquals(-1, webRTCClient.startDataChannelTransfer(streamId, buffer));
+    }
+
+    @Test
+    public void testDataChannelDeliveryModes() {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo =  new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PLAY);
+        PeerConnection pc = mock(PeerConnection.class);
+        DataChannel dc = mock(DataChannel.class);
+        when(dc.label()).thenReturn(streamId);
+        when(pc.createDataChannel(anyString(), any())).thenReturn(dc);
+        peerInfo.peerConnection = pc;
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        webRTCClient.setDataChannelEnabled(true);
+        webRTCClient.initDataChannel(streamId);
+
+        ArgumentCaptor<DataChannel.Observer> observerCaptor = ArgumentCaptor.forClass(DataChannel.Observer.class);
+        verify(dc).registerObserver(observerCaptor.capture());
+        DataChannel.Observer internalObserver = observerCaptor.getValue();
+        DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.wrap("message".getBytes()), false);
+
+        //main thread delivery gets a copy of the message
+        IDataChannelObserver dcObserver = mock(IDataChannelObserver.class);
+        webRTCClient.getConfig().dataChannelObserver = dcObserver;
+        internalObserver.onMessage(buffer);
+        ArgumentCaptor<DataChannel.Buffer> bufferCaptor = ArgumentCaptor.forClass(DataChannel.Buffer.class);
+        verify(dcObserver, times(1)).onMessage(bufferCaptor.capture(), eq(streamId));
+        assertFalse(buffer == bufferCaptor.getValue());
+        buffer.data.rewind();
+        assertEquals(buffer.data, bufferCaptor.getValue().data);
+
+        //data channel thread delivery gets a pooled direct buffer on the dispatcher thread
+        List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        webRTCClient.getConfig().dataChannelDeliveryMode = IWebRTCClient.DataChannelDeliveryMode.DATA_CHANNEL_THREAD;
+        webRTCClient.getConfig().dataChannelObserver = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                assertTrue(buffer.data.isDirect());
+                messages.add(toTextMessage(buffer));
+                threads.add(Thread.currentThread());
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            internalObserver.onMessage(buffer);
+        }
+        await().atMost(5, SECONDS).until(() -> messages.size() == 10);
+        assertEquals(Collections.nCopies(10, "message"), messages);
+        assertEquals(webRTCClient.getDataChannelDispatcher().getThread(), threads.get(0));
+        assertEquals(0, buffer.data.position());
+        //buffers are returned to the pool after the callback
+        DataChannelBufferPool bufferPool = webRTCClient.getDataChannelDispatcher().getBufferPool();
+        await().atMost(5, SECONDS).until(() -> bufferPool.getFreeCount() == bufferPool.getAllocatedCount());
+
+        //synchronous observer gets the received buffer on the calling thread
+        List<DataChannel.Buffer> buffers = new ArrayList<>();
+        webRTCClient.getConfig().dataChannelObserver = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                buffers.add(buffer);
+            }
+
+            @Override
+            public boolean isSynchronous() {
+                return true;
+            }
+        };
+        internalObserver.onMessage(buffer);
+        assertEquals(1, buffers.size());
+        assertTrue(buffer == buffers.get(0));
+
+        webRTCClient.getDataChannelDispatcher().shutdown();
+    }
+
+    @Test
+    public void testNamedDataChannels() {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo =  new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PUBLISH);
+        PeerConnection pc = mock(PeerConnection.class);
+        DataChannel dc = mock(DataChannel.class);
+        DataChannel telemetryDc = mock(DataChannel.class);
+        when(telemetryDc.label()).thenReturn("telemetry");
+        when(pc.createDataChannel(eq(streamId), any())).thenReturn(dc);
+        when(pc.createDataChannel(eq("telemetry"), any())).thenReturn(telemetryDc);
+        peerInfo.peerConnection = pc;
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        webRTCClient.setDataChannelEnabled(true);
+        webRTCClient.getConfig().dataChannels.add(DataChannelParams.unreliable("telemetry"));
+        webRTCClient.initDataChannel(streamId);
+
+        ArgumentCaptor<DataChannel.Init> initCaptor = ArgumentCaptor.forClass(DataChannel.Init.class);
+        verify(pc).createDataChannel(eq("telemetry"), initCaptor.capture());
+        assertFalse(initCaptor.getValue().ordered);
+        assertEquals(0, initCaptor.getValue().maxRetransmits);
+        assertEquals(-1, initCaptor.getValue().maxRetransmitTimeMs);
+        assertEquals(dc, peerInfo.dataChannel);
+        assertEquals(telemetryDc, peerInfo.namedDataChannels.get("telemetry"));
+        assertTrue(webRTCClient.isDataChannelWritable(streamId, "telemetry"));
+        assertTrue(webRTCClient.isDataChannelWritable(streamId, streamId));
+        assertFalse(webRTCClient.isDataChannelWritable(streamId, "chat"));
+
+        IDataChannelObserver dcObserver = mock(IDataChannelObserver.class);
+        webRTCClient.getConfig().dataChannelObserver = dcObserver;
+        doNothing().when(webRTCClient).reportError(anyString(), anyString());
+        DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.allocate(10), false);
+
+        when(telemetryDc.send(buffer)).thenReturn(true);
+        webRTCClient.sendMessageViaDataChannel(streamId, "telemetry", buffer);
+        verify(dcObserver, timeout(1000).times(1)).onMessageSent(buffer, true);
+        verify(telemetryDc, times(1)).send(buffer);
+        verify(dc, never()).send(buffer);
+        assertNotNull(peerInfo.namedDataChannelSendQueues.get("telemetry"));
+
+        webRTCClient.sendMessageViaDataChannel(streamId, "chat", buffer);
+        verify(webRTCClient, times(1)).reportError(streamId, "Data Channel chat not found for sending message");
+
+        //channels created by the remote peer are added by their labels
+        DataChannel chatDc = mock(DataChannel.class);
+        when(chatDc.label()).thenReturn("chat");
+        webRTCClient.getPCObserver(streamId).onDataChannel(chatDc);
+        assertEquals(chatDc, peerInfo.namedDataChannels.get("chat"));
+        assertEquals(dc, peerInfo.dataChannel);
+
+        webRTCClient.closeInternal();
+        assertTrue(peerInfo.namedDataChannels.isEmpty());
+        assertTrue(peerInfo.namedDataChannelSendQueues.isEmpty());
+        verify(telemetryDc, times(1)).dispose();
+    }
+
+    @Test
+    public void testDataChannelBatching() {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo =  new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PUBLISH);
+        PeerConnection pc = mock(PeerConnection.class);
+        DataChannel dc = mock(DataChannel.class);
+        when(dc.label()).thenReturn(streamId);
+        when(dc.state()).thenReturn(DataChannel.State.OPEN);
+        when(dc.send(any())).thenReturn(true);
+        when(pc.createDataChannel(anyString(), any())).thenReturn(dc);
+        peerInfo.peerConnection = pc;
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        webRTCClient.setDataChannelEnabled(true);
+        webRTCClient.getConfig().dataChannelBatchingEnabled = true;
+        webRTCClient.getConfig().dataChannelBatchFlushWindowMs = 60000;
+        webRTCClient.initDataChannel(streamId);
+
+        List<String> messages = new ArrayList<>();
+        webRTCClient.getConfig().dataChannelObserver = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                messages.add(toTextMessage(buffer));
+            }
+
+            @Override
+            public boolean isSynchronous() {
+                return true;
+            }
+        };
+
+        //hello is sent when the channel is opened
+        ArgumentCaptor<DataChannel.Observer> observerCaptor = ArgumentCaptor.forClass(DataChannel.Observer.class);
+        verify(dc).registerObserver(observerCaptor.capture());
+        observerCaptor.getValue().onStateChange();
+        ArgumentCaptor<DataChannel.Buffer> frameCaptor = ArgumentCaptor.forClass(DataChannel.Buffer.class);
+        verify(dc, timeout(1000).times(1)).send(frameCaptor.capture());
+        assertTrue(DataChannelBatcher.isHelloFrame(frameCaptor.getValue()));
+
+        //messages are sent one by one until the remote peer sends hello
+        webRTCClient.sendMessageViaDataChannel(streamId, new DataChannel.Buffer(ByteBuffer.wrap("first".getBytes()), false));
+        verify(dc, timeout(1000).times(2)).send(frameCaptor.capture());
+        assertFalse(DataChannelBatcher.isBatchFrame(frameCaptor.getValue()));
+
+        //hello of the remote peer is not delivered to the observer
+        observerCaptor.getValue().onMessage(DataChannelBatcher.createHelloFrame());
+        assertTrue(messages.isEmpty());
+        assertTrue(peerInfo.dataChannelBatcher.isRemoteEnabled());
+
+        //messages are sent in a single batch
+        webRTCClient.sendMessageViaDataChannel(streamId, new DataChannel.Buffer(ByteBuffer.wrap("first".getBytes()), false));
+        webRTCClient.sendMessageViaDataChannel(streamId, new DataChannel.Buffer(ByteBuffer.wrap("second".getBytes()), false));
+        assertNotNull(peerInfo.dataChannelBatcher);
+        assertEquals(2, peerInfo.dataChannelBatcher.getPendingMessageCount());
+        peerInfo.dataChannelBatcher.flush();
+        verify(dc, timeout(1000).times(3)).send(frameCaptor.capture());
+        assertTrue(DataChannelBatcher.isBatchFrame(frameCaptor.getValue()));
+
+        //received batch is delivered message by message
+        ByteBuffer frame = ByteBuffer.allocate(4 + 5 + 5 + 5 + 6);
+        frame.putInt(DataChannelBatcher.MAGIC);
+        frame.put((byte) 0).putInt(5).put("first".getBytes());
+        frame.put((byte) 0).putInt(6).put("second".getBytes());
+        frame.flip();
+        observerCaptor.getValue().onMessage(new DataChannel.Buffer(frame, true));
+        assertEquals(Arrays.asList("first", "second"), messages);
+
+        webRTCClient.closeInternal();
+        assertNull(peerInfo.dataChannelBatcher);
+    }
+
+    @Test
+    public void testDataChannelCompression() throws InterruptedException {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo =  new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PUBLISH);
+        PeerConnection pc = mock(PeerConnection.class);
+        DataChannel dc = mock(DataChannel.class);
+        when(dc.label()).thenReturn(streamId);
+        when(dc.state()).thenReturn(DataChannel.State.OPEN);
+        when(dc.send(any())).thenReturn(true);
+        when(pc.createDataChannel(anyString(), any())).thenReturn(dc);
+        peerInfo.peerConnection = pc;
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        webRTCClient.setDataChannelEnabled(true);
+        webRTCClient.getConfig().dataChannelCompressionEnabled = true;
+        webRTCClient.initDataChannel(streamId);
+
+        List<String> messages = new ArrayList<>();
+        BlockingQueue<DataChannel.Buffer> sentMessages = new ArrayBlockingQueue<>(10);
+        webRTCClient.getConfig().dataChannelObserver = new DefaultDataChannelObserver() {
+            @Override
+            public void onMessage(DataChannel.Buffer buffer, String dataChannelLabel) {
+                messages.add(toTextMessage(buffer));
+            }
+
+            @Override
+            public void onMessageSent(DataChannel.Buffer buffer, boolean successful) {
+                sentMessages.add(buffer);
+            }
+
+            @Override
+            public boolean isSynchronous() {
+                return true;
+            }
+        };
+
+        //hello is sent when the channel is opened
+        ArgumentCaptor<DataChannel.Observer> observerCaptor = ArgumentCaptor.forClass(DataChannel.Observer.class);
+        verify(dc).registerObserver(observerCaptor.capture());
+        DataChannel.Observer dcObserver = observerCaptor.getValue();
+        dcObserver.onStateChange();
+        ArgumentCaptor<DataChannel.Buffer> frameCaptor = ArgumentCaptor.forClass(DataChannel.Buffer.class);
+        verify(dc, timeout(1000).times(1)).send(frameCaptor.capture());
+        assertTrue(DataChannelCompressor.isHelloFrame(frameCaptor.getValue()));
+
+        //hello of the remote peer is not delivered to the observer
+        dcObserver.onMessage(DataChannelCompressor.createHelloFrame());
+        assertTrue(messages.isEmpty());
+        DataChannelCompressor compressor = peerInfo.dataChannelCompressors.get(dc);
+        assertNotNull(compressor);
+        assertTrue(compressor.isRemoteEnabled());
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.append("{\"eventType\":\"UPDATE_AUDIO_LEVEL\",\"streamId\":\"participant").append(i).append("\",\"audioLevel\":0.5}");
+        }
+        String message = builder.toString();
+        DataChannel.Buffer buffer = new DataChannel.Buffer(ByteBuffer.wrap(message.getBytes()), false);
+        webRTCClient.sendMessageViaDataChannel(streamId, buffer);
+        verify(dc, timeout(1000).times(2)).send(frameCaptor.capture());
+        DataChannel.Buffer compressed = frameCaptor.getValue();
+        assertTrue(DataChannelCompressor.isCompressionFrame(compressed));
+        assertTrue(compressed.data.remaining() < message.length());
+
+        //observer receives the original message
+        assertTrue(buffer == sentMessages.poll(1, SECONDS));
+
+        //compressed messages of the remote peer are decompressed
+        DataChannelCompressor remote = new DataChannelCompressor(new DataChannelBufferPool(), 0, DataChannelCompressor.DEFAULT_MAX_MESSAGE_SIZE);
+        remote.onHello(DataChannelCompressor.createHelloFrame());
+        dcObserver.onMessage(remote.compress(new DataChannel.Buffer(ByteBuffer.wrap(message.getBytes()), false)));
+        assertEquals(Arrays.asList(message), messages);
+        remote.close();
+
+        webRTCClient.closeInternal();
+        assertTrue(peerInfo.dataChannelCompressors.isEmpty());
+    }
+
+    @Test
+    public void testDataChannelMessengerIsInstalledAsObserver() {
+        IDataChannelObserver dcObserver = mock(IDataChannelObserver.class);
+        webRTCClient.getConfig().dataChannelObserver = dcObserver;
+
+        DataChannelMessenger messenger = webRTCClient.getDataChannelMessenger();
+        assertTrue(messenger == webRTCClient.getDataChannelMessenger());
+        assertTrue(messenger == webRTCClient.getConfig().dataChannelObserver);
+        assertTrue(messenger.isSynchronous());
+
+        //messages that are not routed reach the previous observer
+        messenger.onMessage(new DataChannel.Buffer(ByteBuffer.wrap("hello".getBytes()), false), "stream1");
+        verify(dcObserver, timeout(1000).times(1)).onMessage(any(), eq("stream1"));
+
+        webRTCClient.getDataChannelDispatcher().shutdown();
+    }
+
+    @Test
+    public void testDataChannelMessengerKeepsDeliveryModeOfPreviousObserver() {
+        List<Runnable> posted = new CopyOnWriteArrayList<>();
+        Handler handler = mock(Handler.class);
+        when(handler.post(any(Runnable.class))).thenAnswer((Answer<?>) invocation -> {
+            posted.add(invocation.getArgumentAt(0, Runnable.class));
+            return true;
+        });
+        webRTCClient.setHandler(handler);
+        IDataChannelObserver dcObserver = mock(IDataChannelObserver.class);
+        webRTCClient.getConfig().dataChannelObserver = dcObserver;
+        webRTCClient.getConfig().dataChannelDeliveryMode = IWebRTCClient.DataChannelDeliveryMode.MAIN_THREAD;
+
+        DataChannelMessenger messenger = webRTCClient.getDataChannelMessenger();
+        messenger.onMessage(new DataChannel.Buffer(ByteBuffer.wrap("hello".getBytes()), false), "stream1");
+        messenger.onStateChange(DataChannel.State.OPEN, "stream1");
+
+        //events are posted to the main thread with a heap copy of the message
+        ArgumentCaptor<DataChannel.Buffer> buffer = ArgumentCaptor.forClass(DataChannel.Buffer.class);
+        long deadline = System.currentTimeMillis() + 1000;
+        while (posted.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        webRTCClient.getDataChannelDispatcher().shutdown();
+        verify(dcObserver, never()).onMessage(any(), anyString());
+        for (Runnable runnable : posted) {
+            runnable.run();
+        }
+        verify(dcObserver).onMessage(buffer.capture(), eq("stream1"));
+        verify(dcObserver).onStateChange(DataChannel.State.OPEN, "stream1");
+        assertFalse(buffer.getValue().data.isDirect());
+        assertEquals(5, buffer.getValue().data.remaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataChannelParamsWithRetransmitsAndLifetime() {
+        new DataChannelParams("telemetry", false, 1, 100, "").toInit();
     }
 
 
@@ -992,6 +1351,126 @@ public class WebRTCClientTest {
 
     }
 
+    @Test
+    public void testSelectedTrackStats() {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo = new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PLAY);
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        PeerConnection pc = mock(PeerConnection.class);
+        peerInfo.peerConnection = pc;
+
+        RtpReceiver receiver1 = mock(RtpReceiver.class);
+        when(receiver1.id()).thenReturn("ARDAMSvtrack1");
+        RtpReceiver receiver2 = mock(RtpReceiver.class);
+        when(receiver2.id()).thenReturn("ARDAMSvtrack2");
+        RtpReceiver receiver3 = mock(RtpReceiver.class);
+        when(receiver3.id()).thenReturn("ARDAMSatrack1");
+        List<RtpReceiver> receivers = new ArrayList<>();
+        receivers.add(receiver1);
+        receivers.add(receiver2);
+        receivers.add(receiver3);
+        when(pc.getReceivers()).thenReturn(receivers);
+
+        Set<String> trackIds = new HashSet<>();
+        trackIds.add("track1");
+        webRTCClient.setStatsTrackSelection(streamId, trackIds);
+        assertEquals(trackIds, webRTCClient.getStatsTrackSelection(streamId));
+
+        webRTCClient.getStats(streamId);
+        verify(pc, times(1)).getStats(eq(receiver1), any());
+        verify(pc, times(1)).getStats(eq(receiver3), any());
+        verify(pc, never()).getStats(eq(receiver2), any());
+        verify(pc, never()).getStats(Mockito.any(org.webrtc.RTCStatsCollectorCallback.class));
+
+        //whole peer connection is polled again when the selection is cleared
+        webRTCClient.setStatsTrackSelection(streamId, null);
+        webRTCClient.getStats(streamId);
+        verify(pc, times(1)).getStats(Mockito.any(org.webrtc.RTCStatsCollectorCallback.class));
+    }
+
+    @Test
+    public void testSelectedTrackStatsAreParsedOnce() {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo = new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PLAY);
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        PeerConnection pc = mock(PeerConnection.class);
+        peerInfo.peerConnection = pc;
+
+        RtpReceiver videoReceiver = mock(RtpReceiver.class);
+        when(videoReceiver.id()).thenReturn("ARDAMSvtrack1");
+        RtpReceiver audioReceiver = mock(RtpReceiver.class);
+        when(audioReceiver.id()).thenReturn("ARDAMSatrack1");
+        when(pc.getReceivers()).thenReturn(Arrays.asList(videoReceiver, audioReceiver));
+
+        webRTCClient.setStatsTrackSelection(streamId, Collections.singleton("track1"));
+        double parsedReports = SdkMetrics.REGISTRY.getValue(SdkMetrics.STATS_REPORTS);
+        webRTCClient.getStats(streamId);
+
+        ArgumentCaptor<RTCStatsCollectorCallback> videoCallback = ArgumentCaptor.forClass(RTCStatsCollectorCallback.class);
+        verify(pc).getStats(eq(videoReceiver), videoCallback.capture());
+        ArgumentCaptor<RTCStatsCollectorCallback> audioCallback = ArgumentCaptor.forClass(RTCStatsCollectorCallback.class);
+        verify(pc).getStats(eq(audioReceiver), audioCallback.capture());
+
+        videoCallback.getValue().onStatsDelivered(createInboundReport("video", "ARDAMSvtrack1"));
+        //nothing is parsed until the reports of all selected receivers arrive
+        assertEquals(parsedReports, SdkMetrics.REGISTRY.getValue(SdkMetrics.STATS_REPORTS), 0);
+
+        audioCallback.getValue().onStatsDelivered(createInboundReport("audio", "ARDAMSatrack1"));
+        assertEquals(parsedReports + 1, SdkMetrics.REGISTRY.getValue(SdkMetrics.STATS_REPORTS), 0);
+        PlayStats playStats = webRTCClient.getStatsCollector().getPlayStats(streamId);
+        assertNotNull(playStats.getVideoTrackStatsMap().get("track1"));
+        assertNotNull(playStats.getAudioTrackStatsMap().get("track1"));
+    }
+
+    @Test
+    public void testCandidatePairChangeCollectsSelectedTracks() throws Exception {
+        String streamId = "stream1";
+
+        WebRTCClient.PeerInfo peerInfo = new WebRTCClient.PeerInfo(streamId, WebRTCClient.Mode.PLAY);
+        webRTCClient.getPeersForTest().put(streamId, peerInfo);
+        PeerConnection pc = mock(PeerConnection.class);
+        peerInfo.peerConnection = pc;
+
+        RtpReceiver receiver1 = mock(RtpReceiver.class);
+        when(receiver1.id()).thenReturn("ARDAMSvtrack1");
+        RtpReceiver receiver2 = mock(RtpReceiver.class);
+        when(receiver2.id()).thenReturn("ARDAMSvtrack2");
+        when(pc.getReceivers()).thenReturn(Arrays.asList(receiver1, receiver2));
+        webRTCClient.setStatsTrackSelection(streamId, Collections.singleton("track1"));
+
+        webRTCClient.enableStatsEvents(streamId, true, 60000);
+        try {
+            //first poll of the subscription
+            verify(pc, timeout(1000).times(1)).getStats(eq(receiver1), any());
+
+            Constructor<CandidatePairChangeEvent> constructor = CandidatePairChangeEvent.class.getDeclaredConstructor(
+                    IceCandidate.class, IceCandidate.class, int.class, String.class, int.class);
+            constructor.setAccessible(true);
+            webRTCClient.getPCObserver(streamId).onSelectedCandidatePairChanged(
+                    constructor.newInstance(null, null, 0, "test", 0));
+
+            //tracks that are not selected are not updated
+            verify(pc, timeout(1000).times(2)).getStats(eq(receiver1), any());
+            verify(pc, never()).getStats(eq(receiver2), any());
+            verify(pc, never()).getStats(Mockito.any(RTCStatsCollectorCallback.class));
+        } finally {
+            webRTCClient.enableStatsEvents(streamId, false, 0);
+        }
+    }
+
+    private RTCStatsReport createInboundReport(String kind, String trackIdentifier) {
+        Map<String, Object> members = new HashMap<>();
+        members.put(StatsCollector.SSRC, 1L);
+        members.put(StatsCollector.KIND, kind);
+        members.put(StatsCollector.TRACK_IDENTIFIER, trackIdentifier);
+        Map<String, RTCStats> statsMap = new HashMap<>();
+        statsMap.put(kind, new RTCStats(1000000, StatsCollector.INBOUND_RTP, kind, members));
+        statsMap.put("transport", new RTCStats(1000000, StatsCollector.TRANSPORT, "transport", new HashMap<>()));
+        return new RTCStatsReport(1000000, statsMap);
+    }
+
     @Test
     public void testCreateSDP() {
         String streamId = "stream1";
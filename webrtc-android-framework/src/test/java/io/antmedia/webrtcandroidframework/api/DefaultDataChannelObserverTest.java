@@ -8,6 +8,7 @@ import org.webrtc.DataChannel;
 
 import java.nio.ByteBuffer;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
 
 public class DefaultDataChannelObserverTest {
@@ -38,6 +39,29 @@ public class DefaultDataChannelObserverTest {
         assert result.equals(message);
     }
 
+    @Test
+    public void testToTextMessageDirectBuffer() {
+        String message = "Test Message";
+        ByteBuffer data = ByteBuffer.allocateDirect(64);
+        data.put(message.getBytes());
+        data.flip();
+        DataChannel.Buffer buffer = new DataChannel.Buffer(data, false);
+        String result = defaultDataChannelObserver.toTextMessage(buffer);
+        assert result.equals(message);
+        assert data.position() == 0;
+    }
+
+    @Test
+    public void testToTextMessageOfSlicedBuffer() {
+        ByteBuffer batch = ByteBuffer.wrap("[first][Test Message][last]".getBytes());
+        batch.position(7);
+        ByteBuffer data = batch.slice();
+        data.position(1).limit(13);
+        DataChannel.Buffer buffer = new DataChannel.Buffer(data, false);
+        assertEquals("Test Message", defaultDataChannelObserver.toTextMessage(buffer));
+        assertEquals(1, data.position());
+    }
+
     @Test
     public void testOtherMethodsWithoutCallback() {
         String message = "Test Message";
@@ -12,6 +12,7 @@ import android.widget.Toast;
 import androidx.annotation.RequiresApi;
 
 import org.webrtc.SurfaceViewRenderer;
+import org.webrtc.audio.CustomWebRtcAudioRecord;
 
 import io.antmedia.webrtc_android_sample_app.R;
 import io.antmedia.webrtc_android_sample_app.TestableActivity;
@@ -72,8 +73,11 @@ public class MP3PublishActivity extends TestableActivity {
     }
 
     private void onAudioData(byte[] data) {
-        webRTCClient.getAudioInput().pushAudio(data, data.length);
-
+        CustomWebRtcAudioRecord audioInput = webRTCClient.getAudioInput();
+        if (audioInput != null) {
+            //reader passes 48 kHz mono, audio input buffers and paces it at the recording rate
+            audioInput.writeAudio(data, 0, data.length, 48000, 1);
+        }
     }
 
     public void startStopStream(View v) {
@@ -15,6 +15,7 @@ import androidx.annotation.RequiresApi;
 import org.webrtc.JavaI420Buffer;
 import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoFrame;
+import org.webrtc.audio.CustomWebRtcAudioRecord;
 
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
@@ -58,15 +59,18 @@ public class MP4PublishActivity extends TestableActivity {
                 .setServerUrl(serverUrl)
                 .setActivity(this)
                 .setVideoSource(IWebRTCClient.StreamSource.CUSTOM)
+                .setCustomAudioFeed(true)
                 .setWebRTCListener(createWebRTCListener())
                 .setDataChannelObserver(createDatachannelObserver())
                 .setInitiateBeforeStream(true)
                 .build();
 
 
+        //video and audio of the file are read together, audio is pushed after publishing starts
         mediaFileReader = MediaFileReader.fromResources(getResources(), R.raw.test)
-                .withFrameType(MediaFileReader.FrameType.video)
-                .withVideoFrameListener(yuvImage -> onYuvImage(yuvImage));
+                .withFrameType(MediaFileReader.FrameType.both)
+                .withVideoFrameListener(yuvImage -> onYuvImage(yuvImage))
+                .withAudioFrameListener(audioData -> onAudioData(audioData));
 
         mediaFileReader.start();
 
@@ -101,6 +105,14 @@ public class MP4PublishActivity extends TestableActivity {
         ((CustomVideoCapturer)webRTCClient.getVideoCapturer()).writeFrame(videoFrame);
     }
 
+    private void onAudioData(byte[] data) {
+        CustomWebRtcAudioRecord audioInput = webRTCClient.getAudioInput();
+        if (audioInput != null) {
+            //reader passes 48 kHz mono, audio input buffers and paces it at the recording rate
+            audioInput.writeAudio(data, 0, data.length, 48000, 1);
+        }
+    }
+
     public void startStopStream(View v) {
         incrementIdle();
 
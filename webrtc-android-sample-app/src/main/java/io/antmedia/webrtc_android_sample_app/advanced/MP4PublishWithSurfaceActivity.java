@@ -1,11 +1,8 @@
 package io.antmedia.webrtc_android_sample_app.advanced;
 
-import android.graphics.SurfaceTexture;
-import android.media.Image;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
-import android.view.Surface;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -25,15 +22,9 @@ import io.antmedia.webrtcandroidframework.api.IDataChannelObserver;
 import io.antmedia.webrtcandroidframework.api.IWebRTCClient;
 import io.antmedia.webrtcandroidframework.api.IWebRTCListener;
 import io.antmedia.webrtcandroidframework.core.MediaFileReader;
-//import io.github.crow_misia.libyuv.AbgrBuffer;
-//import io.github.crow_misia.libyuv.I420Buffer;
-//import io.github.crow_misia.libyuv.PlanePrimitive;
 
 public class MP4PublishWithSurfaceActivity extends TestableActivity {
 
-
-    private Surface surface;
-
     private View broadcastingView;
     private View startStreamingButton;
     private String streamId;
@@ -65,10 +56,6 @@ public class MP4PublishWithSurfaceActivity extends TestableActivity {
                 .build();
 
 
-        mediaFileReader = MediaFileReader.fromResources(getResources(), R.raw.test)
-                .withFrameType(MediaFileReader.FrameType.video)
-                .withVideoFrameListener(yuvImage->onYuvImage(yuvImage));
-
         View startStreamingButton = findViewById(R.id.start_streaming_button);
         startStreamingButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -79,33 +66,6 @@ public class MP4PublishWithSurfaceActivity extends TestableActivity {
         });
     }
 
-
-    //We can use surface with rgb so we convert yuv to rgb first
-    private void onYuvImage(Image image) {
-        /*
-        ByteBuffer bufferY = image.getPlanes()[0].getBuffer();
-        ByteBuffer bufferU = image.getPlanes()[1].getBuffer();
-        ByteBuffer bufferV = image.getPlanes()[2].getBuffer();
-
-        int strideY = image.getPlanes()[0].getRowStride();
-        int strideU = image.getPlanes()[1].getRowStride();
-        int strideV = image.getPlanes()[2].getRowStride();
-
-        PlanePrimitive planeY = new PlanePrimitive(strideY, bufferY);
-        PlanePrimitive planeU = new PlanePrimitive(strideU, bufferU);
-        PlanePrimitive planeV = new PlanePrimitive(strideV, bufferV);
-
-        I420Buffer yuvBuffer = I420Buffer.Factory.wrap(planeY, planeU, planeV, 640, 360);
-        AbgrBuffer rgbBuffer = AbgrBuffer.Factory.allocate(640, 360);
-
-        yuvBuffer.convertTo(rgbBuffer);
-
-        Canvas canvas = surface.lockCanvas(null);
-        canvas.drawBitmap(rgbBuffer.asBitmap(), 0, 0, null);
-        surface.unlockCanvasAndPost(canvas);
-        */
-    }
-
     public void startStopStream(View v) {
         incrementIdle();
 
@@ -114,20 +74,15 @@ public class MP4PublishWithSurfaceActivity extends TestableActivity {
             Log.i(getClass().getSimpleName(), "Calling publish start");
 
             webRTCClient.publish(streamId);
-
-            if(surface == null) {
-                SurfaceTexture surfaceTexture = ((CustomVideoCapturer) webRTCClient.getVideoCapturer())
-                        .getSurfaceTextureHelper().getSurfaceTexture();
-                surface = new Surface(surfaceTexture);
-            }
-
-            mediaFileReader.start();
         }
         else {
             ((Button) v).setText("Start");
             Log.i(getClass().getSimpleName(), "Calling publish start");
 
-            mediaFileReader.stop();
+            if (mediaFileReader != null) {
+                mediaFileReader.stop();
+                mediaFileReader = null;
+            }
             webRTCClient.stop(streamId);
         }
     }
@@ -142,12 +97,27 @@ public class MP4PublishWithSurfaceActivity extends TestableActivity {
         };
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void startMediaFileReader() {
+        //video is decoded to the surface texture of the capturer and encoded as textures without copies
+        mediaFileReader = MediaFileReader.fromResources(getResources(), R.raw.test)
+                .withFrameType(MediaFileReader.FrameType.video)
+                .withVideoCapturer((CustomVideoCapturer) webRTCClient.getVideoCapturer())
+                .withLooping(true);
+        mediaFileReader.start();
+    }
+
     private IWebRTCListener createWebRTCListener() {
         return new DefaultWebRTCListener() {
+            @RequiresApi(api = Build.VERSION_CODES.N)
             @Override
             public void onPublishStarted(String streamId) {
                 super.onPublishStarted(streamId);
                 broadcastingView.setVisibility(View.VISIBLE);
+                //capturer is initialized when the publishing starts
+                if (mediaFileReader == null) {
+                    startMediaFileReader();
+                }
                 decrementIdle();
             }
 